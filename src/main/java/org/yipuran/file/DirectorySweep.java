@@ -1,17 +1,19 @@
 package org.yipuran.file;
 
-import java.io.File;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * ディレクトリ過去ファイル削除.
  * <pre>
  * jcron.xml にスケジュール実行クラスとして登録して使用する
+ * 削除は FileSweeper で実行する。規則、並列数、削除数制限を指定する場合は FileSweeper を直接使用する。
+ * 対象ディレクトリ直下の古いファイル、空ディレクトリ、シンボリックリンクを削除する。
+ * シンボリックリンクはリンク先ではなくリンク自身の更新時刻で判定する。
  * </pre>
  * @since 1.0.0
  */
@@ -32,20 +34,12 @@ public class DirectorySweep{
 		cal.setTime(nowDate);
 		cal.add(Calendar.HOUR,keep * 24 * -1);
 		Date chkDt = cal.getTime();
-		File logDir = new File(args[1]);
-		Map<String,String> map = new HashMap<String,String>();
-		for(int i=2;i < args.length;i++){
-			map.put(args[i],args[i]);
-		}
-		File[] targetFiles = logDir.listFiles();
-		for(int i=0;i < targetFiles.length;i++){
-			if (!map.containsKey(targetFiles[i].getName())){
-				Date ldt = new Date(targetFiles[i].lastModified());
-				if (chkDt.compareTo(ldt) > 0){
-					targetFiles[i].delete();
-				}
-			}
-		}
+		FileSweeper.of(Paths.get(args[1]))
+		.modifiedBefore(chkDt.getTime())
+		.excludeNames(Arrays.asList(args).subList(2, args.length))
+		.emptyDirectories(true)
+		.symbolicLinks(true)
+		.execute();
 	}
 
 }
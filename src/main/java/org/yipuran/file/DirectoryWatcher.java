@@ -0,0 +1,201 @@
+package org.yipuran.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ディレクトリツリー監視.
+ * <PRE>
+ * WatchService でディレクトリツリー全体を監視し、ファイルの作成、変更、削除をまとめて Consumer に通知する。
+ * FileCollection#scan や DaysOverFileFilter による定期的な走査の代わりに使用する。
+ *
+ * DirectoryWatcher watcher = DirectoryWatcher.of(Paths.get("/var/log/app"))
+ *                            .filter(p->p.toString().endsWith(".log"))
+ *                            .debounce(500)
+ *                            .start(changes->{
+ *                                changes.forEach(c->System.out.println(c.getKind() + " " + c.getPath()));
+ *                            });
+ *   :
+ * watcher.close();
+ *
+ * ・サブディレクトリは作成されたものも含めて監視する。
+ * ・最後のイベントから debounce ミリ秒イベントが無いか、最初のイベントから maxDelay ミリ秒経過した時点で
+ *   変更を検出し、１回の通知にまとめる。同じファイルの複数の変更は１つになる。
+ * ・イベント溢れ（OVERFLOW）の場合は、ツリー全体を前回の状態と比較して変更を求める。
+ * ・通知は executor で実行する。指定しない場合は監視毎の１スレッドで順に実行する。
+ * ・通知対象はファイルだけで、ディレクトリの削除はその配下のファイルの削除として通知する。
+ * </PRE>
+ */
+public final class DirectoryWatcher implements Closeable{
+	private static final Logger logger = LoggerFactory.getLogger(DirectoryWatcher.class);
+	private final Path root;
+	private Predicate<Path> filter = p->true;
+	private long debounce = 200L;
+	private long maxDelay = 2000L;
+	private Executor executor;
+	private ExecutorService ownExecutor;
+	private Consumer<Exception> onError = e->logger.error(e.getMessage(), e);
+	private FileIndex index;
+	private Thread thread;
+	private volatile boolean running;
+
+	private DirectoryWatcher(Path root){
+		this.root = root;
+	}
+	/**
+	 * DirectoryWatcher 生成.
+	 * @param root 監視するディレクトリ
+	 * @return DirectoryWatcher
+	 */
+	public static DirectoryWatcher of(Path root){
+		return new DirectoryWatcher(root);
+	}
+	/**
+	 * 通知対象の制限.
+	 * @param filter 通知するファイルの Predicate&lt;Path&gt;
+	 * @return DirectoryWatcher
+	 */
+	public DirectoryWatcher filter(Predicate<Path> filter){
+		this.filter = filter;
+		return this;
+	}
+	/**
+	 * イベントをまとめる時間指定.
+	 * @param millis 最後のイベントからこの時間イベントが無ければ通知する（ミリ秒）、デフォルト 200
+	 * @return DirectoryWatcher
+	 */
+	public DirectoryWatcher debounce(long millis){
+		if (millis < 0) throw new IllegalArgumentException("debounce must not be negative : " + millis);
+		debounce = millis;
+		return this;
+	}
+	/**
+	 * 通知の最大遅延指定.
+	 * @param millis イベントが続いても最初のイベントからこの時間で通知する（ミリ秒）、デフォルト 2000
+	 * @return DirectoryWatcher
+	 */
+	public DirectoryWatcher maxDelay(long millis){
+		if (millis < 0) throw new IllegalArgumentException("maxDelay must not be negative : " + millis);
+		maxDelay = millis;
+		return this;
+	}
+	/**
+	 * 通知を実行する Executor 指定.
+	 * <PRE>
+	 * 複数スレッドの Executor の場合、通知が並行、または順不同で実行される場合がある。
+	 * </PRE>
+	 * @param executor Executor
+	 * @return DirectoryWatcher
+	 */
+	public DirectoryWatcher executor(Executor executor){
+		this.executor = executor;
+		return this;
+	}
+	/**
+	 * 監視、通知でのエラー処理指定.
+	 * @param onError Exception を受け取る Consumer、デフォルトはログ出力
+	 * @return DirectoryWatcher
+	 */
+	public DirectoryWatcher onError(Consumer<Exception> onError){
+		this.onError = onError;
+		return this;
+	}
+	/**
+	 * 監視開始.
+	 * <PRE>
+	 * 開始時のツリーを走査して監視を登録する。開始時に存在するファイルは通知しない。
+	 * </PRE>
+	 * @param consumer 変更の List を受け取る Consumer
+	 * @return DirectoryWatcher
+	 */
+	public synchronized DirectoryWatcher start(Consumer<List<FileChange>> consumer){
+		if (running) throw new IllegalStateException("already started");
+		index = FileCollection.of(root.toString()).index(null);
+		index.refresh();
+		index.watch();
+		if (executor==null){
+			ownExecutor = Executors.newSingleThreadExecutor(r->{
+				Thread t = new Thread(r, "DirectoryWatcher-notify");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		Executor notifier = executor==null ? ownExecutor : executor;
+		running = true;
+		thread = new Thread(()->loop(consumer, notifier), "DirectoryWatcher-" + root.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+	/**
+	 * 監視中判定.
+	 * @return true = 監視中
+	 */
+	public boolean isRunning(){
+		return running;
+	}
+	/**
+	 * 監視終了.
+	 * 通知実行中の Consumer は中断しない。
+	 */
+	@Override
+	public synchronized void close() throws IOException{
+		if (!running) return;
+		running = false;
+		try{
+			index.close();
+		}finally{
+			thread.interrupt();
+			if (ownExecutor != null) ownExecutor.shutdown();
+		}
+	}
+
+	private void loop(Consumer<List<FileChange>> consumer, Executor notifier){
+		while(running){
+			try{
+				index.awaitEvent(-1, TimeUnit.MILLISECONDS);
+				long first = System.currentTimeMillis();
+				for(;;){
+					long remain = Math.min(debounce, first + maxDelay - System.currentTimeMillis());
+					if (remain <= 0 || !index.awaitEvent(remain, TimeUnit.MILLISECONDS)) break;
+				}
+				FileIndex.Diff diff = index.refresh();
+				List<FileChange> changes = new ArrayList<>();
+				add(changes, FileChange.Kind.CREATED, diff.getAdded());
+				add(changes, FileChange.Kind.MODIFIED, diff.getModified());
+				add(changes, FileChange.Kind.DELETED, diff.getRemoved());
+				if (changes.isEmpty()) continue;
+				notifier.execute(()->{
+					try{
+						consumer.accept(changes);
+					}catch(RuntimeException e){
+						onError.accept(e);
+					}
+				});
+			}catch(InterruptedException | ClosedWatchServiceException e){
+				// close()
+				break;
+			}catch(RuntimeException e){
+				if (running) onError.accept(e);
+			}
+		}
+	}
+	private void add(List<FileChange> changes, FileChange.Kind kind, List<Path> paths){
+		for(Path p : paths){
+			if (filter.test(p)) changes.add(new FileChange(kind, p));
+		}
+	}
+}
@@ -13,6 +13,8 @@ import org.slf4j.LoggerFactory;
  * FileBackup  ファイルバックアップ
  * 連番を付与するローテーションバックアップを行う
  * 連番は、'#' 文字が置換される
+ * rotateNum は既存のバックアップの連番を全て付け替える。
+ * 大きなファイル、世代数が多い場合は、タイムスタンプ名で圧縮する rotator を使用する。
  */
 public class FileBackup{
 	private String name;
@@ -38,6 +40,21 @@ public class FileBackup{
 			this.suffix = s[1];
 		}
 	}
+	/**
+	 * タイムスタンプ名ローテーション取得.
+	 * <PRE>
+	 * format の '#' をタイムスタンプに置換した名前でバックアップし、rotateMax を世代数とする FileRotator を返す。
+	 * 圧縮、合計サイズ、経過時間の制限は返した FileRotator で指定する。
+	 * </PRE>
+	 * @param targetDir 対象ファイルのディレクトリ
+	 * @param backupDir バックアップディレクトリ
+	 * @return FileRotator
+	 */
+	public FileRotator rotator(File targetDir,File backupDir){
+		return FileRotator.of(new File(targetDir, this.name).toPath(), backupDir.toPath())
+			.format(this.prefix + "#" + this.suffix)
+			.maxFiles(Math.max(this.rotateMax, 0));
+	}
 	public void rotateNum(String targetDir,String backupDir){
 		this.rotateNum(new File(targetDir),new File(backupDir));
 	}
@@ -0,0 +1,49 @@
+package org.yipuran.file;
+
+import java.nio.file.Path;
+
+/**
+ * ファイル変更イベント.
+ * <PRE>
+ * DirectoryWatcher が通知する１ファイルの変更。
+ * 通知間隔内の変更はまとめられ、作成して削除したファイルは通知されない。
+ * </PRE>
+ */
+public final class FileChange{
+	/**
+	 * 変更種別.
+	 */
+	public enum Kind{
+		/** 作成 */
+		CREATED,
+		/** サイズ、更新時刻、inode の変更 */
+		MODIFIED,
+		/** 削除 */
+		DELETED
+	}
+	private final Kind kind;
+	private final Path path;
+
+	FileChange(Kind kind, Path path){
+		this.kind = kind;
+		this.path = path;
+	}
+	/**
+	 * 変更種別.
+	 * @return Kind
+	 */
+	public Kind getKind(){
+		return kind;
+	}
+	/**
+	 * 変更されたファイル.
+	 * @return 絶対パス
+	 */
+	public Path getPath(){
+		return path;
+	}
+	@Override
+	public String toString(){
+		return kind + " " + path;
+	}
+}
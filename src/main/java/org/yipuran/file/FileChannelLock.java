@@ -0,0 +1,205 @@
+package org.yipuran.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FileChannel ロック.
+ * <pre>
+ * FilebaseLock と同じく、同一プラットフォームで動作する異なる JVM の処理で排他制御を行う。
+ * ロックファイルの有無ではなく FileChannel#lock による OS のファイルロックで排他するので、
+ * ロックを保持したプロセスが異常終了してもロックは OS が解放し、ロックファイルが残ってもロックされたままにならない。
+ * 同じ JVM 内のスレッドは、ロックファイルのパス毎のストライプロックで排他してからファイルロックを取得する。
+ *
+ * （使用例）
+ *     FileChannelLock lock = new FileChannelLock("/var/run/app.lock");
+ *     if (lock.begin(60, TimeUnit.SECONDS)){   // 最大 60 秒 待つ。引数なしの begin(); 実行なら、永久に待つ！！
+ *         try{
+ *             :  //対象処理
+ *         }finally{
+ *             lock.end();
+ *         }
+ *     }
+ *
+ * ・begin() は OS のファイルロックで待つので、ポーリングしない。
+ * ・begin(long, TimeUnit) は FileChannel#tryLock を間隔を伸ばしながら再試行する（最初は数マイクロ秒、最大 10 ミリ秒）。
+ * ・begin と end は同じスレッドで実行すること。インスタンスは複数スレッドで共有できるが、
+ *   同じスレッドが同じインスタンスで begin を重ねて実行すると IllegalStateException になる。
+ * ・ロックファイルは削除しない。FileChannel はインスタンスで開いたままにして、次の begin で再利用する。
+ *   close() で FileChannel を閉じる。
+ * ・別のパスでもストライプが同じ場合は、同じ JVM 内では排他される。
+ * ・同じスレッドが同じロックファイルを別のインスタンスで重ねてロックする、
+ *   またはシンボリックリンク等の別のパスで同じファイルをロックすると OverlappingFileLockException になる。
+ * </pre>
+ */
+public final class FileChannelLock implements AutoCloseable{
+	private static final int STRIPES = 64;
+	private static final ReentrantLock[] TABLE = new ReentrantLock[STRIPES];
+	static{
+		for(int i=0; i < STRIPES; i++){
+			TABLE[i] = new ReentrantLock();
+		}
+	}
+	private static final long MIN_BACKOFF = TimeUnit.MICROSECONDS.toNanos(5);
+	private static final long MAX_BACKOFF = TimeUnit.MILLISECONDS.toNanos(10);
+	private final Path path;
+	private final ReentrantLock stripe;
+	// channel、lock はストライプを保持したスレッドだけが参照、更新する。
+	private FileChannel channel;
+	private volatile FileLock lock;
+
+	/**
+	 * コンストラクタ.
+	 * @param filepath ロックファイルの path を指定する、存在しなければ begin で生成する。
+	 */
+	public FileChannelLock(String filepath){
+		this(Paths.get(filepath));
+	}
+	/**
+	 * コンストラクタ.
+	 * @param path ロックファイルの Path を指定する、存在しなければ begin で生成する。
+	 */
+	public FileChannelLock(Path path){
+		this.path = path.toAbsolutePath().normalize();
+		int h = this.path.hashCode();
+		stripe = TABLE[(h ^ (h >>> 16)) & (STRIPES - 1)];
+	}
+	/**
+	 * 排他開始.
+	 * <br/> ロックできるまで待たされる。
+	 * @return true ロック成功、待機中の割込みは false
+	 */
+	public boolean begin(){
+		try{
+			stripe.lockInterruptibly();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		checkReentry();
+		try{
+			lock = channel().lock();
+			return true;
+		}catch(IOException | RuntimeException e){
+			release();
+			if (Thread.currentThread().isInterrupted()) return false;
+			throw e instanceof RuntimeException ? (RuntimeException)e : new RuntimeException(e.getMessage(), e);
+		}
+	}
+	/**
+	 * 排他開始.
+	 * <pre>
+	 * 待ち合わせ時間を経過してもロックできない時、既に他の処理が排他を開始して終了していない時は、false を返します。
+	 * 待ち合わせ時間に 0 以下の値を指定すると、待たずにロックを試みます。
+	 * </pre>
+	 * @param timeout 最大待ち合わせ時間
+	 * @param unit 時間単位
+	 * @return true＝ロック成功、false＝ロック失敗
+	 */
+	public boolean begin(long timeout, TimeUnit unit){
+		long deadline = System.nanoTime() + Math.max(0, unit.toNanos(timeout));
+		try{
+			if (!stripe.tryLock(Math.max(0, timeout), unit)) return false;
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		checkReentry();
+		try{
+			FileChannel ch = channel();
+			for(long backoff=MIN_BACKOFF; ; backoff=Math.min(backoff * 2, MAX_BACKOFF)){
+				lock = ch.tryLock();
+				if (lock != null) return true;
+				long remain = deadline - System.nanoTime();
+				if (remain <= 0 || Thread.currentThread().isInterrupted()) break;
+				LockSupport.parkNanos(Math.min(backoff, remain));
+			}
+			release();
+			return false;
+		}catch(IOException | RuntimeException e){
+			release();
+			throw e instanceof RuntimeException ? (RuntimeException)e : new RuntimeException(e.getMessage(), e);
+		}
+	}
+	/**
+	 * 排他開始（待ち合わせなし）.
+	 * @return true＝ロック成功、false＝ロック失敗
+	 */
+	public boolean tryBegin(){
+		return begin(0, TimeUnit.NANOSECONDS);
+	}
+	/**
+	 * ロック中判定.
+	 * @return true = このインスタンスがロックしている。
+	 */
+	public boolean isLocked(){
+		return lock != null && lock.isValid();
+	}
+	/**
+	 * 排他終了.
+	 * <pre>
+	 * begin を実行したスレッドで呼び出さなくてはなりません。ロックしていなければ何もしない。
+	 * </pre>
+	 */
+	public void end(){
+		if (!stripe.isHeldByCurrentThread() || lock==null) return;
+		try{
+			if (lock.isValid()) lock.release();
+		}catch(IOException e){
+			throw new RuntimeException(e.getMessage(), e);
+		}finally{
+			lock = null;
+			stripe.unlock();
+		}
+	}
+	/**
+	 * 排他終了、FileChannel を閉じる.
+	 */
+	@Override
+	public void close(){
+		end();
+		stripe.lock();
+		try{
+			if (channel != null) channel.close();
+		}catch(IOException e){
+			throw new RuntimeException(e.getMessage(), e);
+		}finally{
+			channel = null;
+			stripe.unlock();
+		}
+	}
+	/**
+	 * ロックファイル.
+	 * @return 絶対パス
+	 */
+	public Path getPath(){
+		return path;
+	}
+
+	private FileChannel channel() throws IOException{
+		// 割込みで閉じられた FileChannel は開き直す。
+		if (channel==null || !channel.isOpen()){
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		}
+		return channel;
+	}
+	/** 同じスレッドが同じインスタンスで begin を重ねた場合 */
+	private void checkReentry(){
+		if (lock != null){
+			stripe.unlock();
+			throw new IllegalStateException("already locked : " + path);
+		}
+	}
+	/** ファイルロック取得失敗時のストライプ解放 */
+	private void release(){
+		lock = null;
+		stripe.unlock();
+	}
+}
@@ -1,20 +1,44 @@
 package org.yipuran.file;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * ファイルコレクション.
  * <PRE>
  * ファイルツリー操作→コレクション
  * （注意）シンボリックリンクが存在する場合、通常に解釈される。
+ * 走査は Files.walkFileTree で行い、ディレクトリの後にその配下を返す（深さ優先、行きがけ順）。
+ * 再帰呼出しをしないので深いツリーでもスタックオーバーフローしない。
+ * シンボリックリンクによる循環は、循環するディレクトリを走査しない。
+ * 読めないディレクトリは RuntimeException とする。
+ *
+ * scanParallel は、サブディレクトリ毎に ForkJoinPool で並列に走査する。結果の順序は scan と同じである。
+ * stream は、ツリー全体を読まずに走査した順に Path を返す Stream である。
  * </PRE>
  */
 public final class FileCollection implements Serializable{
+	private static final EnumSet<FileVisitOption> FOLLOW_LINKS = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
 	private File file;
 	private FileCollection(String path){
 		file = new File(path);
@@ -39,7 +63,9 @@ public final class FileCollection implements Serializable{
 	 * @return List&lt;File&gt;
 	 */
 	public List<File> scan(){
-		return parse(file, new ArrayList<>());
+		List<File> list = new ArrayList<>();
+		walk(f->true, list::add);
+		return list;
 	}
 	/**
 	 * Predicate走査実行→コレクション取得.
@@ -47,14 +73,16 @@ public final class FileCollection implements Serializable{
 	 * @return List&lt;File&gt;
 	 */
 	public List<File> scanProvision(Predicate<File> p){
-		return parse(file, new ArrayList<>(), p);
+		List<File> list = new ArrayList<>();
+		walk(p, list::add);
+		return list;
 	}
 	/**
 	 * 走査 Consumer実行.
 	 * @param c Consumer&lt;File&gt;
 	 */
 	public void scan(Consumer<File> c){
-		parse(file, c);
+		walk(f->true, c);
 	}
 	/**
 	 * Predicate走査 Consumer実行.
@@ -62,7 +90,17 @@ public final class FileCollection implements Serializable{
 	 * @param c Consumer&lt;File&gt;
 	 */
 	public void scan(Predicate<File> p, Consumer<File> c){
-		parse(file, p, c);
+		walk(p, c);
+	}
+	/**
+	 * 属性付き走査 BiConsumer実行.
+	 * <PRE>
+	 * 走査で読んだ BasicFileAttributes を渡すので、サイズ、更新時刻、種別の判定で再度ファイル属性を読まない。
+	 * </PRE>
+	 * @param c BiConsumer&lt;Path, BasicFileAttributes&gt;
+	 */
+	public void scan(BiConsumer<Path, BasicFileAttributes> c){
+		walk(path(), (p, a)->true, c);
 	}
 	/**
 	 * Predicate検査一致の成否.
@@ -70,50 +108,212 @@ public final class FileCollection implements Serializable{
 	 * @return true=１つ以上一致するものがある。false=一致するものが存在しない。
 	 */
 	public boolean anyMatch(Predicate<File> p){
-		return findmatch(file, p);
-	}
-
-	private List<File> parse(File file, List<File> list){
-		list.add(file);
-		if (file.isDirectory()){
-			for(File f:file.listFiles()){
-				parse(f, list);
+		Path root = path();
+		if (!exists(root)) return p.test(file);
+		boolean[] found = new boolean[1];
+		walk(root, (f, a)->{
+			if (p.test(f.equals(root) ? file : f.toFile())){
+				found[0] = true;
+				return false;
 			}
+			return true;
+		}, (f, a)->{});
+		return found[0];
+	}
+	/**
+	 * 並列走査実行→コレクション取得.
+	 * <PRE>
+	 * サブディレクトリ毎に ForkJoinPool.commonPool() で並列に走査する。結果の順序は scan() と同じである。
+	 * </PRE>
+	 * @return List&lt;File&gt;
+	 */
+	public List<File> scanParallel(){
+		return scanParallel(f->true, ForkJoinPool.commonPool());
+	}
+	/**
+	 * Predicate並列走査実行→コレクション取得.
+	 * <PRE>
+	 * サブディレクトリ毎に pool で並列に走査する。結果の順序は scanProvision(Predicate) と同じである。
+	 * Predicate は複数スレッドから呼ばれる。
+	 * </PRE>
+	 * @param p 検査するPredicate&lt;File&gt;
+	 * @param pool 走査を実行する ForkJoinPool
+	 * @return List&lt;File&gt;
+	 */
+	public List<File> scanParallel(Predicate<File> p, ForkJoinPool pool){
+		Path root = path();
+		List<File> list = new ArrayList<>();
+		BasicFileAttributes a = attributes(root);
+		if (a==null || !a.isDirectory()){
+			if (p.test(file)) list.add(file);
+			return list;
 		}
+		if (p.test(file)) list.add(file);
+		list.addAll(pool.invoke(new ScanTask(root, p, new Ancestor(a.fileKey(), null))));
 		return list;
 	}
-	private void parse(File file, Consumer<File> c){
-		c.accept(file);
-		if (file.isDirectory()){
-			for(File f:file.listFiles()){
-				parse(f, c);
-			}
+	/**
+	 * 走査 Stream.
+	 * <PRE>
+	 * ツリー全体を読まずに、走査した順に Path を返す。使用後は close すること。
+	 *     try(Stream&lt;Path&gt; stream = FileCollection.of(path).stream()){
+	 *         stream.filter(p->p.toString().endsWith(".log")).findFirst();
+	 *     }
+	 * 走査中の読込エラー、シンボリックリンクの循環は UncheckedIOException になる。
+	 * </PRE>
+	 * @return Stream&lt;Path&gt;
+	 */
+	public Stream<Path> stream(){
+		try{
+			return Files.walk(path(), FileVisitOption.FOLLOW_LINKS);
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
 		}
 	}
-	private List<File> parse(File file, List<File> list, Predicate<File> p){
-		if (p.test(file)) list.add(file);
-		if (file.isDirectory()){
-			for(File f:file.listFiles()){
-				parse(f, list, p);
+	/**
+	 * 属性判定付き走査 Stream.
+	 * <PRE>
+	 * 走査で読んだ BasicFileAttributes で判定し、一致した Path を走査した順に返す。使用後は close すること。
+	 * </PRE>
+	 * @param matcher BiPredicate&lt;Path, BasicFileAttributes&gt;
+	 * @return Stream&lt;Path&gt;
+	 */
+	public Stream<Path> stream(BiPredicate<Path, BasicFileAttributes> matcher){
+		try{
+			return Files.find(path(), Integer.MAX_VALUE, matcher, FileVisitOption.FOLLOW_LINKS);
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+	}
+	/**
+	 * 永続インデックス取得.
+	 * <PRE>
+	 * 同じツリーを繰り返し走査する場合に、インデックスファイルに保存した前回の走査結果との差分だけを更新する。
+	 * 詳細は FileIndex を参照
+	 * </PRE>
+	 * @param indexFile インデックスファイル、存在すれば読み込む。null は保存しない。
+	 * @return FileIndex
+	 */
+	public FileIndex index(Path indexFile){
+		return FileIndex.open(this, indexFile);
+	}
+
+	private Path path(){
+		return file.toPath();
+	}
+	private void walk(Predicate<File> p, Consumer<File> c){
+		Path root = path();
+		if (!exists(root)){
+			if (p.test(file)) c.accept(file);
+			return;
+		}
+		walk(root, (f, a)->true, (f, a)->{
+			File t = f.equals(root) ? file : f.toFile();
+			if (p.test(t)) c.accept(t);
+		});
+	}
+	/**
+	 * walkFileTree 実行.
+	 * @param root 開始 Path
+	 * @param next false を返すと走査を終了する。
+	 * @param c 各 Path の処理
+	 */
+	private static void walk(Path root, BiPredicate<Path, BasicFileAttributes> next, BiConsumer<Path, BasicFileAttributes> c){
+		try{
+			Files.walkFileTree(root, FOLLOW_LINKS, Integer.MAX_VALUE, new SimpleFileVisitor<Path>(){
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs){
+					return visitFile(dir, attrs);
+				}
+				@Override
+				public FileVisitResult visitFile(Path f, BasicFileAttributes attrs){
+					if (!next.test(f, attrs)) return FileVisitResult.TERMINATE;
+					c.accept(f, attrs);
+					return FileVisitResult.CONTINUE;
+				}
+				@Override
+				public FileVisitResult visitFileFailed(Path f, IOException ex) throws IOException{
+					// 循環するリンクはリンク自身を返し、配下は走査しない。
+					if (ex instanceof FileSystemLoopException){
+						return visitFile(f, Files.readAttributes(f, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+					}
+					throw ex;
+				}
+			});
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+	}
+	private static boolean exists(Path path){
+		return Files.exists(path) || Files.exists(path, LinkOption.NOFOLLOW_LINKS);
+	}
+	/** シンボリックリンク先の属性、リンク切れはリンク自身の属性、存在しなければ null */
+	private static BasicFileAttributes attributes(Path path){
+		try{
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		}catch(IOException e){
+			try{
+				return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			}catch(IOException ex){
+				return null;
 			}
 		}
-		return list;
 	}
-	private void parse(File file, Predicate<File> p, Consumer<File> c){
-		if (p.test(file)) c.accept(file);
-		if (file.isDirectory()){
-			for(File f:file.listFiles()){
-				parse(f, p, c);
+
+	/** 走査中ディレクトリの祖先、シンボリックリンクの循環検出用 */
+	private static final class Ancestor{
+		final Object key;
+		final Ancestor parent;
+		Ancestor(Object key, Ancestor parent){
+			this.key = key;
+			this.parent = parent;
+		}
+		boolean contains(Object k){
+			if (k==null) return false;
+			for(Ancestor a=this; a != null; a=a.parent){
+				if (k.equals(a.key)) return true;
 			}
+			return false;
 		}
 	}
-	private boolean findmatch(File file, Predicate<File> p){
-		if (p.test(file)) return true;
-		if (file.isDirectory()){
-			for(File f:file.listFiles()){
-				if (findmatch(f, p)) return true;
+	/** ディレクトリ１つの並列走査 */
+	private static final class ScanTask extends RecursiveTask<List<File>>{
+		private static final long serialVersionUID = 1L;
+		private final Path dir;
+		private final Predicate<File> p;
+		private final Ancestor ancestor;
+		ScanTask(Path dir, Predicate<File> p, Ancestor ancestor){
+			this.dir = dir;
+			this.p = p;
+			this.ancestor = ancestor;
+		}
+		@Override
+		protected List<File> compute(){
+			// File は一致したファイル、ScanTask はサブディレクトリ配下、走査順に並べる。
+			List<Object> order = new ArrayList<>();
+			try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)){
+				for(Path child : ds){
+					BasicFileAttributes a = attributes(child);
+					File f = child.toFile();
+					if (p.test(f)) order.add(f);
+					if (a != null && a.isDirectory() && !ancestor.contains(a.fileKey())){
+						ScanTask task = new ScanTask(child, p, new Ancestor(a.fileKey(), ancestor));
+						task.fork();
+						order.add(task);
+					}
+				}
+			}catch(IOException ex){
+				throw new RuntimeException(ex.getMessage(), ex);
+			}
+			List<File> list = new ArrayList<>();
+			for(Object o : order){
+				if (o instanceof File){
+					list.add((File)o);
+				}else{
+					list.addAll(((ScanTask)o).join());
+				}
 			}
+			return list;
 		}
-		return false;
 	}
 }
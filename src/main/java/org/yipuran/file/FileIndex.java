@@ -0,0 +1,654 @@
+package org.yipuran.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * ファイルツリーの永続インデックス.
+ * <PRE>
+ * FileCollection のツリーのパス、サイズ、更新時刻、inode（BasicFileAttributes#fileKey）をインデックスファイルに保存し、
+ * 次回以降は差分だけを更新する。FileCollection#index(Path) で取得する。
+ *
+ * try(FileIndex index = FileCollection.of(path).index(Paths.get("/var/tmp/logs.index"))){
+ *     FileIndex.Diff diff = index.refresh();
+ *     diff.getAdded().forEach(...);
+ *     List&lt;File&gt; files = index.scan();
+ *     index.save();
+ * }
+ *
+ * refresh() の差分検出
+ *   ・ディレクトリの更新時刻が前回と異なるディレクトリだけ、ディレクトリの一覧を読み直す。
+ *   ・ファイルはサイズ、更新時刻、inode を前回と比較する。
+ *   ・watch() 実行後は WatchService のイベントがあったディレクトリだけを読み直すので、
+ *     イベントが無ければファイル属性も読まない。イベント溢れ（OVERFLOW）の場合は全体を比較する。
+ * scan() はファイルシステムを読まずにインデックスから FileCollection#scan() と同じ順序で返す。
+ * シンボリックリンクの扱いは FileCollection と同じである。
+ * 本クラスはスレッドセーフである。
+ * </PRE>
+ */
+public final class FileIndex implements Closeable{
+	private static final String HEADER = "# yipuran file index : type\tsize\tmtime\tkey\tpath\t";
+	private static final char DIRECTORY = 'd';
+	private static final char FILE = 'f';
+	/** 循環するシンボリックリンク、配下は持たない */
+	private static final char LOOP = 'l';
+	/** 更新時刻の分解能、前回の更新直前に更新されたディレクトリは更新時刻が同じでも一覧を読み直す。 */
+	private static final long RACY_MILLIS = 2000L;
+
+	private final File rootFile;
+	private final Path root;
+	private final Path indexFile;
+	private final Map<String, Node> nodes = new HashMap<>();
+	private boolean refreshed;
+	private WatchService watchService;
+	private final Map<WatchKey, String> watchKeys = new HashMap<>();
+	private final Map<String, WatchKey> watchDirs = new HashMap<>();
+	/** awaitEvent で受け取ったイベントのディレクトリ */
+	private final Set<String> dirtyDirs = new HashSet<>();
+	private boolean fullRefresh;
+	/** 前回の refresh() 開始時刻 */
+	private long refreshTime;
+
+	private FileIndex(File rootFile, Path indexFile){
+		this.rootFile = rootFile;
+		this.root = rootFile.toPath().toAbsolutePath().normalize();
+		this.indexFile = indexFile;
+	}
+	/**
+	 * インデックス取得.
+	 * <PRE>
+	 * indexFile が存在し、同じルートのインデックスであれば読み込む。
+	 * </PRE>
+	 * @param collection 対象 FileCollection
+	 * @param indexFile インデックスファイル、null は保存しない。
+	 * @return FileIndex
+	 */
+	static FileIndex open(FileCollection collection, Path indexFile){
+		FileIndex index = new FileIndex(collection.getFile(), indexFile);
+		if (indexFile != null && Files.isRegularFile(indexFile)){
+			try{
+				index.load();
+			}catch(IOException ex){
+				throw new RuntimeException(ex.getMessage(), ex);
+			}
+		}
+		return index;
+	}
+	/**
+	 * インデックス更新.
+	 * <PRE>
+	 * インデックスが無い場合は全体を走査し、全てのファイルを追加として返す。
+	 * </PRE>
+	 * @return 前回の更新からの差分
+	 */
+	public synchronized Diff refresh(){
+		Diff diff = new Diff();
+		long previous = refreshTime;
+		refreshTime = System.currentTimeMillis();
+		try{
+			BasicFileAttributes ra = attributes(root);
+			if (ra==null){
+				for(String k : new ArrayList<>(nodes.keySet())){
+					if (nodes.get(k).type != DIRECTORY) diff.removed.add(resolve(k));
+				}
+				nodes.clear();
+				cancelAll();
+			}else if (nodes.isEmpty() || (ra.isDirectory() != (nodes.get("").type==DIRECTORY))){
+				removeSubtree("", diff, false);
+				addSubtree("", diff);
+			}else if (!ra.isDirectory()){
+				compare("", root, ra, diff);
+			}else if (watchService != null && !fullRefresh){
+				Set<String> dirty = pollEvents();
+				if (fullRefresh){
+					refreshAll(ra, previous, diff);
+				}else{
+					// 親ディレクトリから処理し、削除済みの配下は処理しない。
+					for(String k : dirty){
+						Node n = nodes.get(k);
+						if (n != null && n.type==DIRECTORY) rescan(k, true, false, previous, diff);
+					}
+				}
+			}else{
+				pollEvents();
+				refreshAll(ra, previous, diff);
+			}
+			fullRefresh = false;
+			refreshed = true;
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		return diff;
+	}
+	/**
+	 * WatchService 監視開始.
+	 * <PRE>
+	 * インデックスの全ディレクトリを WatchService に登録する。以後の refresh() はイベントのあったディレクトリだけを読む。
+	 * 登録直後の refresh() は、登録前の変更を検出するために全体を比較する。
+	 * </PRE>
+	 * @return FileIndex
+	 */
+	public synchronized FileIndex watch(){
+		if (watchService != null) return this;
+		try{
+			watchService = root.getFileSystem().newWatchService();
+			for(Map.Entry<String, Node> e : nodes.entrySet()){
+				if (e.getValue().type==DIRECTORY) register(e.getKey());
+			}
+			fullRefresh = true;
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		return this;
+	}
+	/**
+	 * 走査結果.
+	 * <PRE>
+	 * ファイルシステムを読まずに、インデックスから FileCollection#scan() と同じ順序で返す。
+	 * インデックスが空の場合は refresh() を実行する。
+	 * </PRE>
+	 * @return List&lt;File&gt;
+	 */
+	public List<File> scan(){
+		return scanProvision(f->true);
+	}
+	/**
+	 * Predicate 走査結果.
+	 * @param p 検査するPredicate&lt;File&gt;
+	 * @return List&lt;File&gt;
+	 */
+	public synchronized List<File> scanProvision(Predicate<File> p){
+		if (!refreshed && nodes.isEmpty()) refresh();
+		List<File> list = new ArrayList<>(nodes.size());
+		if (nodes.isEmpty()) return list;
+		Deque<String> stack = new ArrayDeque<>();
+		stack.push("");
+		while(!stack.isEmpty()){
+			String k = stack.pop();
+			File f = k.isEmpty() ? rootFile : new File(rootFile, k);
+			if (p.test(f)) list.add(f);
+			Node n = nodes.get(k);
+			if (n.children != null){
+				for(int i=n.children.size() - 1; i >= 0; i--){
+					stack.push(child(k, n.children.get(i)));
+				}
+			}
+		}
+		return list;
+	}
+	/**
+	 * インデックスのファイル、ディレクトリ数.
+	 * @return 件数
+	 */
+	public synchronized int size(){
+		return nodes.size();
+	}
+	/**
+	 * インデックスファイル保存.
+	 * <PRE>
+	 * 一時ファイルに書き込んでから置き換える。
+	 * </PRE>
+	 */
+	public synchronized void save(){
+		if (indexFile==null) throw new IllegalStateException("index file not specified");
+		try{
+			Path dir = indexFile.toAbsolutePath().getParent();
+			Path temp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+			try{
+				try(BufferedWriter w = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)){
+					w.write(HEADER + root);
+					w.newLine();
+					w.write("#refreshTime\t" + refreshTime);
+					w.newLine();
+					for(String k : preorder()){
+						Node n = nodes.get(k);
+						w.write(n.type + "\t" + n.size + "\t" + n.mtime + "\t" + n.key + "\t" + k);
+						w.newLine();
+					}
+				}
+				try{
+					Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}catch(AtomicMoveNotSupportedException e){
+					Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}finally{
+				Files.deleteIfExists(temp);
+			}
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+	}
+	/**
+	 * WatchService 監視終了.
+	 */
+	@Override
+	public synchronized void close() throws IOException{
+		if (watchService==null) return;
+		try{
+			watchService.close();
+		}finally{
+			watchService = null;
+			watchKeys.clear();
+			watchDirs.clear();
+			dirtyDirs.clear();
+		}
+	}
+
+	private void load() throws IOException{
+		try(BufferedReader r = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)){
+			String line = r.readLine();
+			if (line==null || !line.equals(HEADER + root)) return;
+			while((line = r.readLine()) != null){
+				if (line.startsWith("#refreshTime\t")){
+					refreshTime = Long.parseLong(line.substring(13));
+					continue;
+				}
+				String[] s = line.split("\t", 5);
+				if (s.length < 5 || s[0].length() != 1){
+					nodes.clear();
+					return;
+				}
+				Node n = new Node(s[0].charAt(0), Long.parseLong(s[1]), Long.parseLong(s[2]), s[3]);
+				String k = s[4];
+				if (!k.isEmpty()){
+					Node parent = nodes.get(parent(k));
+					if (parent==null || parent.children==null){
+						nodes.clear();
+						return;
+					}
+					parent.children.add(name(k));
+				}
+				nodes.put(k, n);
+			}
+		}catch(NumberFormatException e){
+			// 壊れたインデックスは使用しない。
+			nodes.clear();
+		}
+	}
+	private void refreshAll(BasicFileAttributes ra, long previous, Diff diff) throws IOException{
+		Node r = nodes.get("");
+		boolean changed = mtime(ra) != r.mtime || racy(r.mtime, previous);
+		r.mtime = mtime(ra);
+		rescan("", changed, true, previous, diff);
+	}
+	/**
+	 * ディレクトリの差分検出.
+	 * @param dirKey ディレクトリ
+	 * @param relist true = ディレクトリ一覧を読み直す
+	 * @param recursive true = サブディレクトリも処理する
+	 * @param previous 前回の refresh() 開始時刻
+	 * @param diff 差分
+	 */
+	private void rescan(String dirKey, boolean relist, boolean recursive, long previous, Diff diff) throws IOException{
+		Deque<String> dirs = new ArrayDeque<>();
+		Deque<Boolean> relists = new ArrayDeque<>();
+		dirs.push(dirKey);
+		relists.push(relist);
+		while(!dirs.isEmpty()){
+			String k = dirs.pop();
+			boolean list = relists.pop();
+			Node d = nodes.get(k);
+			if (d==null || d.type != DIRECTORY) continue;
+			Path dir = resolve(k);
+			List<String> check = new ArrayList<>(d.children);
+			if (list){
+				List<String> current;
+				try{
+					current = list(dir);
+				}catch(NoSuchFileException | NotDirectoryException e){
+					// 親ディレクトリの処理で削除、または種別変更として扱う。
+					continue;
+				}
+				Set<String> cur = new LinkedHashSet<>(current);
+				for(String name : d.children){
+					if (!cur.contains(name)) removeSubtree(child(k, name), diff, false);
+				}
+				Set<String> old = new HashSet<>(d.children);
+				d.children.clear();
+				d.children.addAll(current);
+				check.retainAll(cur);
+				for(String name : current){
+					if (!old.contains(name)) addSubtree(child(k, name), diff);
+				}
+			}
+			for(String name : check){
+				String ck = child(k, name);
+				Node n = nodes.get(ck);
+				if (n==null || n.type==LOOP) continue;
+				Path p = dir.resolve(name);
+				BasicFileAttributes a = attributes(p);
+				if (a==null){
+					removeSubtree(ck, diff, true);
+				}else if (a.isDirectory() != (n.type==DIRECTORY)){
+					removeSubtree(ck, diff, false);
+					addSubtree(ck, diff);
+				}else if (n.type==DIRECTORY){
+					boolean changed = mtime(a) != n.mtime || racy(n.mtime, previous);
+					n.mtime = mtime(a);
+					if (recursive){
+						dirs.push(ck);
+						relists.push(changed);
+					}
+				}else{
+					compare(ck, p, a, diff);
+				}
+			}
+		}
+	}
+	/** ファイルの変更判定 */
+	private void compare(String k, Path p, BasicFileAttributes a, Diff diff){
+		Node n = nodes.get(k);
+		long mtime = mtime(a);
+		String key = key(a);
+		if (n.size != a.size() || n.mtime != mtime || !n.key.equals(key)){
+			n.size = a.size();
+			n.mtime = mtime;
+			n.key = key;
+			diff.modified.add(p);
+		}
+	}
+	/** k とその配下をインデックスに追加 */
+	private void addSubtree(String k, Diff diff) throws IOException{
+		Path start = resolve(k);
+		Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>(){
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException{
+				add(dir, DIRECTORY, attrs, diff, dir.equals(start));
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult visitFile(Path f, BasicFileAttributes attrs){
+				add(f, FILE, attrs, diff, f.equals(start));
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult visitFileFailed(Path f, IOException ex) throws IOException{
+				if (ex instanceof FileSystemLoopException){
+					add(f, LOOP, Files.readAttributes(f, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS), diff, f.equals(start));
+					return FileVisitResult.CONTINUE;
+				}
+				// 走査中に削除されたファイルは追加しない。
+				if (ex instanceof NoSuchFileException && !f.equals(start)) return FileVisitResult.CONTINUE;
+				throw ex;
+			}
+		});
+	}
+	private void add(Path p, char type, BasicFileAttributes a, Diff diff, boolean top){
+		String k = key(p);
+		Node n = new Node(type, type==DIRECTORY ? 0 : a.size(), mtime(a), key(a));
+		nodes.put(k, n);
+		if (!k.isEmpty()){
+			List<String> siblings = nodes.get(parent(k)).children;
+			// 配下は作成したばかりの親に追加、起点は一覧を読み直した親に既にある場合がある。
+			if (!top || !siblings.contains(name(k))) siblings.add(name(k));
+		}
+		if (type != DIRECTORY){
+			diff.added.add(p);
+		}else if (watchService != null){
+			register(k);
+		}
+	}
+	/**
+	 * k とその配下をインデックスから削除.
+	 * @param detach true = 親の children からも削除する。
+	 */
+	private void removeSubtree(String k, Diff diff, boolean detach){
+		Node n = nodes.remove(k);
+		if (n==null) return;
+		if (n.type==DIRECTORY){
+			WatchKey wk = watchDirs.remove(k);
+			if (wk != null){
+				wk.cancel();
+				watchKeys.remove(wk);
+			}
+			for(String name : n.children){
+				removeSubtree(child(k, name), diff, false);
+			}
+		}else{
+			diff.removed.add(resolve(k));
+		}
+		if (detach && !k.isEmpty()){
+			Node parent = nodes.get(parent(k));
+			if (parent != null && parent.children != null) parent.children.remove(name(k));
+		}
+	}
+	private void register(String k){
+		try{
+			WatchKey wk = resolve(k).register(watchService, StandardWatchEventKinds.ENTRY_CREATE
+					, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			watchKeys.put(wk, k);
+			watchDirs.put(k, wk);
+		}catch(IOException e){
+			// 登録できないディレクトリは次回の refresh() で全体を比較する。
+			fullRefresh = true;
+		}
+	}
+	/**
+	 * WatchService イベント待ち.
+	 * <PRE>
+	 * イベントを受け取ったディレクトリは次の refresh() で処理する。
+	 * 受け取ったキーはすぐに reset するので、同じディレクトリの後続イベントも通知される。
+	 * </PRE>
+	 * @param timeout 待ち時間、負数は無限
+	 * @param unit 時間単位
+	 * @return true = イベント有り、false = タイムアウト
+	 * @throws InterruptedException
+	 * @throws ClosedWatchServiceException close() 済
+	 */
+	boolean awaitEvent(long timeout, TimeUnit unit) throws InterruptedException{
+		WatchService ws;
+		synchronized(this){
+			ws = watchService;
+		}
+		if (ws==null) throw new ClosedWatchServiceException();
+		WatchKey wk = timeout < 0 ? ws.take() : ws.poll(timeout, unit);
+		if (wk==null) return false;
+		synchronized(this){
+			drain(wk);
+		}
+		return true;
+	}
+	private void drain(WatchKey wk){
+		String k = watchKeys.get(wk);
+		for(WatchEvent<?> e : wk.pollEvents()){
+			if (e.kind()==StandardWatchEventKinds.OVERFLOW) fullRefresh = true;
+		}
+		if (k != null) dirtyDirs.add(k);
+		if (!wk.reset()){
+			watchKeys.remove(wk);
+			if (k != null) watchDirs.remove(k);
+		}
+	}
+	/** WatchService イベントのあったディレクトリ、浅い順 */
+	private Set<String> pollEvents(){
+		Set<String> dirty = new TreeSet<>((a, b)->{
+			int c = Integer.compare(depth(a), depth(b));
+			return c != 0 ? c : a.compareTo(b);
+		});
+		if (watchService != null){
+			WatchKey wk;
+			try{
+				while((wk = watchService.poll()) != null){
+					drain(wk);
+				}
+			}catch(ClosedWatchServiceException e){
+				fullRefresh = true;
+			}
+		}
+		dirty.addAll(dirtyDirs);
+		dirtyDirs.clear();
+		return dirty;
+	}
+	private void cancelAll(){
+		watchKeys.keySet().forEach(WatchKey::cancel);
+		watchKeys.clear();
+		watchDirs.clear();
+	}
+	private List<String> preorder(){
+		List<String> list = new ArrayList<>(nodes.size());
+		if (nodes.isEmpty()) return list;
+		Deque<String> stack = new ArrayDeque<>();
+		stack.push("");
+		while(!stack.isEmpty()){
+			String k = stack.pop();
+			list.add(k);
+			Node n = nodes.get(k);
+			if (n.children != null){
+				for(int i=n.children.size() - 1; i >= 0; i--){
+					stack.push(child(k, n.children.get(i)));
+				}
+			}
+		}
+		return list;
+	}
+	private static List<String> list(Path dir) throws IOException{
+		List<String> names = new ArrayList<>();
+		try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)){
+			for(Path p : ds){
+				names.add(p.getFileName().toString());
+			}
+		}
+		return names;
+	}
+	/** シンボリックリンク先の属性、リンク切れはリンク自身の属性、存在しなければ null */
+	private static BasicFileAttributes attributes(Path path){
+		try{
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		}catch(IOException e){
+			try{
+				return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			}catch(IOException ex){
+				return null;
+			}
+		}
+	}
+	/** 更新時刻（ナノ秒） */
+	private static long mtime(BasicFileAttributes a){
+		return a.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+	}
+	private static boolean racy(long mtime, long previous){
+		return TimeUnit.NANOSECONDS.toMillis(mtime) + RACY_MILLIS >= previous;
+	}
+	private static String key(BasicFileAttributes a){
+		Object k = a.fileKey();
+		return k==null ? "" : k.toString().replace('\t', ' ');
+	}
+	private String key(Path p){
+		return root.relativize(p.toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+	}
+	private Path resolve(String k){
+		return k.isEmpty() ? root : root.resolve(k);
+	}
+	private static String child(String dir, String name){
+		return dir.isEmpty() ? name : dir + "/" + name;
+	}
+	private static String parent(String k){
+		int i = k.lastIndexOf('/');
+		return i < 0 ? "" : k.substring(0, i);
+	}
+	private static String name(String k){
+		return k.substring(k.lastIndexOf('/') + 1);
+	}
+	private static int depth(String k){
+		if (k.isEmpty()) return 0;
+		int d = 1;
+		for(int i=0; i < k.length(); i++){
+			if (k.charAt(i)=='/') d++;
+		}
+		return d;
+	}
+
+	/** インデックスの１ファイル、ディレクトリ */
+	private static final class Node{
+		final char type;
+		long size;
+		long mtime;
+		String key;
+		final List<String> children;
+		Node(char type, long size, long mtime, String key){
+			this.type = type;
+			this.size = size;
+			this.mtime = mtime;
+			this.key = key;
+			children = type==DIRECTORY ? new ArrayList<>() : null;
+		}
+	}
+
+	/**
+	 * インデックスの差分.
+	 */
+	public static final class Diff{
+		private final List<Path> added = new ArrayList<>();
+		private final List<Path> removed = new ArrayList<>();
+		private final List<Path> modified = new ArrayList<>();
+		private Diff(){}
+		/**
+		 * 追加されたファイル.
+		 * @return List&lt;Path&gt;
+		 */
+		public List<Path> getAdded(){
+			return Collections.unmodifiableList(added);
+		}
+		/**
+		 * 削除されたファイル.
+		 * @return List&lt;Path&gt;
+		 */
+		public List<Path> getRemoved(){
+			return Collections.unmodifiableList(removed);
+		}
+		/**
+		 * サイズ、更新時刻、inode のいずれかが変更されたファイル.
+		 * @return List&lt;Path&gt;
+		 */
+		public List<Path> getModified(){
+			return Collections.unmodifiableList(modified);
+		}
+		/**
+		 * 差分無し判定.
+		 * @return true = 差分無し
+		 */
+		public boolean isEmpty(){
+			return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+		}
+		@Override
+		public String toString(){
+			return "added=" + added + ", removed=" + removed + ", modified=" + modified;
+		}
+	}
+}
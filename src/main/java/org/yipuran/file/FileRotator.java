@@ -0,0 +1,352 @@
+package org.yipuran.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * タイムスタンプ名ローテーション.
+ * <PRE>
+ * 対象ファイルをバックアップディレクトリにタイムスタンプを付けた名前で移動し、
+ * 移動したファイルの gzip 圧縮、世代数、合計サイズ、経過時間による古いバックアップの削除をバックグラウンドで実行する。
+ * FileBackup#rotateNum のように既存のバックアップの名前を順に付け替えないので、ローテーションは１回の名前変更である。
+ *
+ * try(FileRotator rotator = FileRotator.of(Paths.get("/var/log/app/app.log"), Paths.get("/var/log/app/backup"))
+ *                           .format("app-#.log")
+ *                           .maxFiles(30)
+ *                           .maxTotalSize(1L << 30)
+ *                           .maxAge(90, TimeUnit.DAYS)
+ *                           .triggerSize(100L << 20)){
+ *     :
+ *     rotator.rotateIfNeeded();    // 100MB 以上ならローテーション
+ * }
+ *
+ * ・format の '#' は yyyyMMdd-HHmmss-SSS のタイムスタンプに置換する。同じ時刻の場合は "-1","-2"…を付ける。
+ * ・圧縮したバックアップは ".gz" を付けた名前になり、更新時刻は圧縮前と同じにする。
+ * ・削除は新しいものから数えて、世代数、合計サイズを超えたもの、経過時間を過ぎたものを削除する。
+ *   圧縮中のファイルは削除しない。
+ * ・executor を指定しない場合は１スレッドで順に圧縮する。複数スレッドの executor を指定すると並列に圧縮する。
+ * </PRE>
+ */
+public final class FileRotator implements Closeable{
+	private static final Logger logger = LoggerFactory.getLogger(FileRotator.class);
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+	private static final String GZ = ".gz";
+	private final Path target;
+	private final Path backupDir;
+	private String prefix;
+	private String suffix;
+	private Pattern pattern;
+	private boolean compress = true;
+	private int maxFiles;
+	private long maxTotalSize;
+	private long maxAgeMillis;
+	private long triggerSize;
+	private long triggerMillis;
+	private ExecutorService executor;
+	private ExecutorService ownExecutor;
+	private long lastRotate = System.currentTimeMillis();
+	private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+	private final Object pruneLock = new Object();
+
+	private FileRotator(Path target, Path backupDir){
+		this.target = target;
+		this.backupDir = backupDir;
+		format(target.getFileName() + ".#");
+	}
+	/**
+	 * FileRotator 生成.
+	 * <PRE>
+	 * デフォルトは、名前は "対象ファイル名.#"、圧縮する、削除しない、自動ローテーションしない。
+	 * </PRE>
+	 * @param target ローテーションするファイル
+	 * @param backupDir バックアップディレクトリ
+	 * @return FileRotator
+	 */
+	public static FileRotator of(Path target, Path backupDir){
+		return new FileRotator(target, backupDir);
+	}
+	/**
+	 * バックアップ名指定.
+	 * @param format '#' がタイムスタンプに置換される名前
+	 * @return FileRotator
+	 */
+	public FileRotator format(String format){
+		int i = format.indexOf('#');
+		if (i < 0) throw new IllegalArgumentException("format Error '#' required");
+		prefix = format.substring(0, i);
+		suffix = format.substring(i + 1);
+		pattern = Pattern.compile(Pattern.quote(prefix) + "(\\d{8}-\\d{6}-\\d{3})(?:-(\\d+))?" + Pattern.quote(suffix) + "(?:\\.gz)?");
+		return this;
+	}
+	/**
+	 * 圧縮指定.
+	 * @param compress true = gzip 圧縮する（デフォルト）
+	 * @return FileRotator
+	 */
+	public FileRotator compress(boolean compress){
+		this.compress = compress;
+		return this;
+	}
+	/**
+	 * 世代数制限.
+	 * @param maxFiles 残すバックアップ数、0 は制限無し
+	 * @return FileRotator
+	 */
+	public FileRotator maxFiles(int maxFiles){
+		this.maxFiles = maxFiles;
+		return this;
+	}
+	/**
+	 * 合計サイズ制限.
+	 * @param bytes バックアップの合計サイズ、0 は制限無し。最新のバックアップはこのサイズを超えていても削除しない。
+	 * @return FileRotator
+	 */
+	public FileRotator maxTotalSize(long bytes){
+		maxTotalSize = bytes;
+		return this;
+	}
+	/**
+	 * 経過時間制限.
+	 * @param duration バックアップ名のタイムスタンプからこの時間を過ぎたものを削除する。0 は制限無し。最新のバックアップは削除しない。
+	 * @param unit 時間単位
+	 * @return FileRotator
+	 */
+	public FileRotator maxAge(long duration, TimeUnit unit){
+		maxAgeMillis = unit.toMillis(duration);
+		return this;
+	}
+	/**
+	 * サイズによる自動ローテーション指定.
+	 * @param bytes rotateIfNeeded で対象ファイルがこのサイズ以上ならローテーションする。0 は判定しない。
+	 * @return FileRotator
+	 */
+	public FileRotator triggerSize(long bytes){
+		triggerSize = bytes;
+		return this;
+	}
+	/**
+	 * 時間による自動ローテーション指定.
+	 * @param duration rotateIfNeeded で前回のローテーション（初回は生成時）からこの時間を過ぎていればローテーションする。0 は判定しない。
+	 * @param unit 時間単位
+	 * @return FileRotator
+	 */
+	public FileRotator triggerInterval(long duration, TimeUnit unit){
+		triggerMillis = unit.toMillis(duration);
+		return this;
+	}
+	/**
+	 * 圧縮、削除を実行する ExecutorService 指定.
+	 * @param executor ExecutorService、close() でシャットダウンしない。
+	 * @return FileRotator
+	 */
+	public FileRotator executor(ExecutorService executor){
+		this.executor = executor;
+		return this;
+	}
+	/**
+	 * ローテーション実行.
+	 * <PRE>
+	 * 対象ファイルをバックアップ名に移動して、圧縮と削除は非同期で実行する。
+	 * 返す CompletableFuture は、圧縮、削除の終了で最終的なバックアップの Path になる。
+	 * </PRE>
+	 * @return CompletableFuture&lt;Path&gt;
+	 */
+	public synchronized CompletableFuture<Path> rotate(){
+		Path backup;
+		try{
+			Files.createDirectories(backupDir);
+			backup = backupName();
+			try{
+				Files.move(target, backup, StandardCopyOption.ATOMIC_MOVE);
+			}catch(AtomicMoveNotSupportedException e){
+				Files.move(target, backup);
+			}
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		lastRotate = System.currentTimeMillis();
+		logger.trace("## rotate ## from [" + target + "]  to [" + backup + "]");
+		if (compress) pending.add(backup);
+		return CompletableFuture.supplyAsync(()->{
+			try{
+				Path result = compress ? gzip(backup) : backup;
+				prune();
+				return result;
+			}catch(IOException ex){
+				throw new RuntimeException(ex.getMessage(), ex);
+			}finally{
+				pending.remove(backup);
+			}
+		}, executor());
+	}
+	/**
+	 * 条件によるローテーション実行.
+	 * <PRE>
+	 * triggerSize、triggerInterval のどちらかに該当すればローテーションする。対象ファイルが存在しなければ何もしない。
+	 * </PRE>
+	 * @return ローテーションした場合は rotate() の結果、しなかった場合は null
+	 */
+	public synchronized CompletableFuture<Path> rotateIfNeeded(){
+		long size;
+		try{
+			size = Files.size(target);
+		}catch(NoSuchFileException e){
+			return null;
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		boolean bySize = triggerSize > 0 && size >= triggerSize;
+		boolean byTime = triggerMillis > 0 && System.currentTimeMillis() - lastRotate >= triggerMillis;
+		return bySize || byTime ? rotate() : null;
+	}
+	/**
+	 * 現在のバックアップ.
+	 * @return 新しい順の List&lt;Path&gt;
+	 */
+	public List<Path> backups(){
+		List<Backup> list = list();
+		List<Path> paths = new ArrayList<>(list.size());
+		for(Backup b : list){
+			paths.add(b.path);
+		}
+		return paths;
+	}
+	/**
+	 * 終了.
+	 * 実行中の圧縮、削除の終了を待つ。
+	 */
+	@Override
+	public synchronized void close(){
+		if (ownExecutor==null) return;
+		ownExecutor.shutdown();
+		try{
+			ownExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}finally{
+			ownExecutor = null;
+		}
+	}
+
+	private ExecutorService executor(){
+		if (executor != null) return executor;
+		if (ownExecutor==null){
+			ownExecutor = Executors.newSingleThreadExecutor(r->{
+				Thread t = new Thread(r, "FileRotator-" + target.getFileName());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return ownExecutor;
+	}
+	private Path backupName(){
+		String stamp = LocalDateTime.now().format(TIMESTAMP);
+		for(int n=0; ; n++){
+			Path p = backupDir.resolve(prefix + stamp + (n==0 ? "" : "-" + n) + suffix);
+			if (!Files.exists(p) && !Files.exists(p.resolveSibling(p.getFileName() + GZ))) return p;
+		}
+	}
+	private static Path gzip(Path file) throws IOException{
+		Path gz = file.resolveSibling(file.getFileName() + GZ);
+		Path temp = file.resolveSibling(file.getFileName() + GZ + ".tmp");
+		FileTime mtime = Files.getLastModifiedTime(file);
+		try(InputStream in = Files.newInputStream(file);
+			OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 65536)){
+			byte[] b = new byte[65536];
+			for(int n; (n = in.read(b)) > 0; ){
+				out.write(b, 0, n);
+			}
+		}catch(IOException ex){
+			Files.deleteIfExists(temp);
+			throw ex;
+		}
+		Files.setLastModifiedTime(temp, mtime);
+		Files.move(temp, gz, StandardCopyOption.ATOMIC_MOVE);
+		Files.delete(file);
+		logger.trace("## rotate ## compressed [" + gz + "]");
+		return gz;
+	}
+	private void prune() throws IOException{
+		if (maxFiles < 1 && maxTotalSize < 1 && maxAgeMillis < 1) return;
+		synchronized(pruneLock){
+			pruneBackups();
+		}
+	}
+	private void pruneBackups() throws IOException{
+		String limit = maxAgeMillis < 1 ? null
+			: LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(maxAgeMillis)).format(TIMESTAMP);
+		int count = 0;
+		long total = 0;
+		for(Backup b : list()){
+			if (pending.contains(b.path)) continue;
+			long size;
+			try{
+				size = Files.size(b.path);
+			}catch(NoSuchFileException e){
+				continue;
+			}
+			count++;
+			total += size;
+			// 最新のバックアップは、単独で合計サイズ、経過時間の制限を超えていても残す。
+			if (count > 1 && ((maxFiles > 0 && count > maxFiles) || (maxTotalSize > 0 && total > maxTotalSize)
+				|| (limit != null && b.stamp.compareTo(limit) < 0))){
+				Files.deleteIfExists(b.path);
+				logger.trace("## rotate ## delete [" + b.path + "]");
+			}
+		}
+	}
+	/** 新しい順のバックアップ */
+	private List<Backup> list(){
+		List<Backup> list = new ArrayList<>();
+		if (!Files.isDirectory(backupDir)) return list;
+		try(DirectoryStream<Path> ds = Files.newDirectoryStream(backupDir)){
+			for(Path p : ds){
+				Matcher m = pattern.matcher(p.getFileName().toString());
+				if (m.matches()) list.add(new Backup(p, m.group(1), m.group(2)==null ? 0 : Integer.parseInt(m.group(2))));
+			}
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		Collections.sort(list, Comparator.<Backup, String>comparing(b->b.stamp).thenComparingInt(b->b.seq).reversed());
+		return list;
+	}
+
+	/** バックアップ名 */
+	private static final class Backup{
+		final Path path;
+		final String stamp;
+		final int seq;
+		Backup(Path path, String stamp, int seq){
+			this.path = path;
+			this.stamp = stamp;
+			this.seq = seq;
+		}
+	}
+}
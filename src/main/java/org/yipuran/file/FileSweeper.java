@@ -0,0 +1,476 @@
+package org.yipuran.file;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 古いファイルの一括削除.
+ * <PRE>
+ * ディレクトリツリーを走査し、規則に一致するファイルを複数スレッドでまとめて削除する。
+ *
+ * FileSweeper.Result result = FileSweeper.of(Paths.get("/var/log/app"))
+ *                             .olderThan(30, TimeUnit.DAYS)
+ *                             .include(".*\\.log(\\.gz)?")
+ *                             .excludeNames("current.log")
+ *                             .maxDepth(Integer.MAX_VALUE)
+ *                             .rateLimit(500)
+ *                             .execute();
+ * System.out.println(result);
+ *
+ * ・対象はデフォルトでは通常ファイルだけである。emptyDirectories(true) で空ディレクトリ、
+ *   symbolicLinks(true) でシンボリックリンクも規則で判定して削除する。シンボリックリンク先は走査しない。
+ * ・指定した規則（更新時刻、サイズ、ファイル名、rule）の全てに一致し、除外に一致しないファイルを削除する。
+ * ・走査で読んだ BasicFileAttributes で判定するので、ファイル毎に属性を読み直さない。
+ * ・削除は batchSize 件毎に parallelism スレッドで並列に実行し、rateLimit で１秒あたりの削除数を制限する。
+ * ・dryRun(true) の場合は削除せずに、削除対象の件数、サイズを結果として返す。
+ * ・削除に失敗したファイルは Result#getFailed() で返し、処理は継続する。
+ * </PRE>
+ */
+public final class FileSweeper{
+	private final Path root;
+	private int maxDepth = 1;
+	private long modifiedBefore = Long.MIN_VALUE;
+	private long olderThanMillis = -1L;
+	private long minSize = -1L;
+	private Pattern include;
+	private Pattern exclude;
+	private final Set<String> excludeNames = new HashSet<>();
+	private final List<BiPredicate<Path, BasicFileAttributes>> rules = new ArrayList<>();
+	private int batchSize = 100;
+	private int parallelism = 4;
+	private int rateLimit;
+	private boolean dryRun;
+	private boolean emptyDirectories;
+	private boolean symbolicLinks;
+	private Consumer<Path> onDelete = p->{};
+
+	private FileSweeper(Path root){
+		this.root = root;
+	}
+	/**
+	 * FileSweeper 生成.
+	 * <PRE>
+	 * デフォルトは、root 直下のファイルだけを対象、4スレッド、100件毎、削除数制限無しである。
+	 * </PRE>
+	 * @param root 対象ディレクトリ
+	 * @return FileSweeper
+	 */
+	public static FileSweeper of(Path root){
+		return new FileSweeper(root);
+	}
+	/**
+	 * 走査する深さ指定.
+	 * @param maxDepth 1 = root 直下のみ（デフォルト）、Integer.MAX_VALUE = ツリー全体
+	 * @return FileSweeper
+	 */
+	public FileSweeper maxDepth(int maxDepth){
+		if (maxDepth < 1) throw new IllegalArgumentException("maxDepth must be positive : " + maxDepth);
+		this.maxDepth = maxDepth;
+		return this;
+	}
+	/**
+	 * 経過時間による規則.
+	 * @param duration 実行時刻からこの時間以上前に更新されたファイルを対象とする。
+	 * @param unit 時間単位
+	 * @return FileSweeper
+	 */
+	public FileSweeper olderThan(long duration, TimeUnit unit){
+		olderThanMillis = unit.toMillis(duration);
+		return this;
+	}
+	/**
+	 * 更新時刻による規則.
+	 * @param epochMillis この時刻より前に更新されたファイルを対象とする。
+	 * @return FileSweeper
+	 */
+	public FileSweeper modifiedBefore(long epochMillis){
+		modifiedBefore = epochMillis;
+		return this;
+	}
+	/**
+	 * サイズによる規則.
+	 * @param bytes このサイズ以上のファイルを対象とする。
+	 * @return FileSweeper
+	 */
+	public FileSweeper largerThan(long bytes){
+		minSize = bytes;
+		return this;
+	}
+	/**
+	 * ファイル名による規則.
+	 * @param regex ファイル名全体が一致するファイルを対象とする正規表現
+	 * @return FileSweeper
+	 */
+	public FileSweeper include(String regex){
+		include = Pattern.compile(regex);
+		return this;
+	}
+	/**
+	 * ファイル名による除外.
+	 * @param regex ファイル名全体が一致するファイルを除外する正規表現
+	 * @return FileSweeper
+	 */
+	public FileSweeper exclude(String regex){
+		exclude = Pattern.compile(regex);
+		return this;
+	}
+	/**
+	 * ファイル名による除外.
+	 * @param names 除外するファイル名
+	 * @return FileSweeper
+	 */
+	public FileSweeper excludeNames(String...names){
+		return excludeNames(Arrays.asList(names));
+	}
+	/**
+	 * ファイル名による除外.
+	 * @param names 除外するファイル名
+	 * @return FileSweeper
+	 */
+	public FileSweeper excludeNames(Collection<String> names){
+		excludeNames.addAll(names);
+		return this;
+	}
+	/**
+	 * 任意の規則追加.
+	 * @param rule 対象とするファイルで true を返す BiPredicate&lt;Path, BasicFileAttributes&gt;
+	 * @return FileSweeper
+	 */
+	public FileSweeper rule(BiPredicate<Path, BasicFileAttributes> rule){
+		rules.add(rule);
+		return this;
+	}
+	/**
+	 * １回の削除タスクで削除するファイル数指定.
+	 * @param batchSize デフォルト 100
+	 * @return FileSweeper
+	 */
+	public FileSweeper batchSize(int batchSize){
+		if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive : " + batchSize);
+		this.batchSize = batchSize;
+		return this;
+	}
+	/**
+	 * 削除スレッド数指定.
+	 * @param parallelism デフォルト 4
+	 * @return FileSweeper
+	 */
+	public FileSweeper parallelism(int parallelism){
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive : " + parallelism);
+		this.parallelism = parallelism;
+		return this;
+	}
+	/**
+	 * １秒あたりの削除数制限.
+	 * @param filesPerSecond 0 は制限無し（デフォルト）
+	 * @return FileSweeper
+	 */
+	public FileSweeper rateLimit(int filesPerSecond){
+		if (filesPerSecond < 0) throw new IllegalArgumentException("rateLimit must not be negative : " + filesPerSecond);
+		rateLimit = filesPerSecond;
+		return this;
+	}
+	/**
+	 * 削除せずに対象だけを求める指定.
+	 * @param dryRun true = 削除しない。
+	 * @return FileSweeper
+	 */
+	public FileSweeper dryRun(boolean dryRun){
+		this.dryRun = dryRun;
+		return this;
+	}
+	/**
+	 * 空ディレクトリ削除指定.
+	 * <PRE>
+	 * root 配下のディレクトリも規則で判定し、ファイルの削除が全て終わった時点で空のものを深い順に削除する。
+	 * 判定する更新時刻は走査時のディレクトリの更新時刻である。root は削除しない。
+	 * dryRun の場合は実行時点で空のディレクトリを削除対象とする。
+	 * </PRE>
+	 * @param emptyDirectories true = 空ディレクトリを削除する。
+	 * @return FileSweeper
+	 */
+	public FileSweeper emptyDirectories(boolean emptyDirectories){
+		this.emptyDirectories = emptyDirectories;
+		return this;
+	}
+	/**
+	 * シンボリックリンク削除指定.
+	 * <PRE>
+	 * シンボリックリンクをリンク先ではなくリンク自身の属性で判定して、リンクを削除する。リンク先は削除しない。
+	 * </PRE>
+	 * @param symbolicLinks true = シンボリックリンクを削除する。
+	 * @return FileSweeper
+	 */
+	public FileSweeper symbolicLinks(boolean symbolicLinks){
+		this.symbolicLinks = symbolicLinks;
+		return this;
+	}
+	/**
+	 * 削除したファイルの通知.
+	 * <PRE>
+	 * dryRun の場合は削除対象のファイルを通知する。複数スレッドから呼ばれる。
+	 * </PRE>
+	 * @param onDelete 削除したファイルの Consumer
+	 * @return FileSweeper
+	 */
+	public FileSweeper onDelete(Consumer<Path> onDelete){
+		this.onDelete = onDelete;
+		return this;
+	}
+	/**
+	 * 削除実行.
+	 * @return Result
+	 */
+	public Result execute(){
+		long start = System.nanoTime();
+		long threshold = olderThanMillis < 0 ? modifiedBefore : Math.max(modifiedBefore, System.currentTimeMillis() - olderThanMillis);
+		Stats stats = new Stats();
+		RateLimiter limiter = rateLimit > 0 && !dryRun ? new RateLimiter(rateLimit) : null;
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, r->{
+			Thread t = new Thread(r, "FileSweeper");
+			t.setDaemon(true);
+			return t;
+		});
+		// 削除待ちのバッチを制限して、走査が削除より先行し過ぎないようにする。
+		Semaphore inflight = new Semaphore(parallelism * 2);
+		// 走査順（親が先）の削除対象ディレクトリ
+		List<Path> dirs = new ArrayList<>();
+		try{
+			List<Target> batch = new ArrayList<>(batchSize);
+			Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>(){
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs){
+					if (emptyDirectories && !dir.equals(root)){
+						stats.scanned.increment();
+						if (matches(dir, attrs, threshold)) dirs.add(dir);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException{
+					// maxDepth の深さのディレクトリは visitFile で通知される。
+					if (attrs.isDirectory()) return preVisitDirectory(file, attrs);
+					if (!attrs.isRegularFile() && !(symbolicLinks && attrs.isSymbolicLink())) return FileVisitResult.CONTINUE;
+					stats.scanned.increment();
+					if (matches(file, attrs, threshold)){
+						batch.add(new Target(file, attrs.size()));
+						if (batch.size() >= batchSize){
+							try{
+								submit(executor, inflight, new ArrayList<>(batch), limiter, stats);
+							}catch(InterruptedException ex){
+								Thread.currentThread().interrupt();
+								throw new InterruptedIOException(ex.getMessage());
+							}
+							batch.clear();
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException ex){
+					if (!(ex instanceof NoSuchFileException)) stats.failed.add(file);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			if (!batch.isEmpty()) submit(executor, inflight, batch, limiter, stats);
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			Collections.reverse(dirs);
+			for(Path dir : dirs){
+				if (limiter != null) limiter.acquire();
+				deleteDirectory(dir, stats);
+			}
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex.getMessage(), ex);
+		}finally{
+			executor.shutdownNow();
+		}
+		return new Result(stats, dryRun, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	private boolean matches(Path file, BasicFileAttributes attrs, long threshold){
+		String name = file.getFileName().toString();
+		if (excludeNames.contains(name)) return false;
+		if (exclude != null && exclude.matcher(name).matches()) return false;
+		if (include != null && !include.matcher(name).matches()) return false;
+		if (threshold != Long.MIN_VALUE && attrs.lastModifiedTime().toMillis() >= threshold) return false;
+		if (minSize >= 0 && attrs.size() < minSize) return false;
+		for(BiPredicate<Path, BasicFileAttributes> rule : rules){
+			if (!rule.test(file, attrs)) return false;
+		}
+		return true;
+	}
+	/** 空ディレクトリ削除、空でなければ削除しない。 */
+	private void deleteDirectory(Path dir, Stats stats){
+		try{
+			if (dryRun){
+				try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)){
+					if (ds.iterator().hasNext()) return;
+				}
+			}else{
+				Files.delete(dir);
+			}
+			stats.deleted.increment();
+			onDelete.accept(dir);
+		}catch(DirectoryNotEmptyException | NoSuchFileException e){
+			// 削除しないファイルが残っている、または削除済
+		}catch(IOException | RuntimeException e){
+			stats.failed.add(dir);
+		}
+	}
+	private void submit(ExecutorService executor, Semaphore inflight, List<Target> batch, RateLimiter limiter, Stats stats) throws InterruptedException{
+		inflight.acquire();
+		executor.execute(()->{
+			try{
+				for(Target t : batch){
+					if (limiter != null) limiter.acquire();
+					try{
+						if (!dryRun) Files.delete(t.path);
+						stats.deleted.increment();
+						stats.bytes.add(t.size);
+						onDelete.accept(t.path);
+					}catch(NoSuchFileException e){
+						// 走査後に削除済
+					}catch(IOException | RuntimeException e){
+						stats.failed.add(t.path);
+					}
+				}
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}finally{
+				inflight.release();
+			}
+		});
+	}
+
+	/** 削除対象 */
+	private static final class Target{
+		final Path path;
+		final long size;
+		Target(Path path, long size){
+			this.path = path;
+			this.size = size;
+		}
+	}
+	/** 集計 */
+	private static final class Stats{
+		final LongAdder scanned = new LongAdder();
+		final LongAdder deleted = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final ConcurrentLinkedQueue<Path> failed = new ConcurrentLinkedQueue<>();
+	}
+	/** １秒あたりの実行数を平準化して制限する */
+	private static final class RateLimiter{
+		private final long intervalNanos;
+		private long next = System.nanoTime();
+		RateLimiter(int perSecond){
+			intervalNanos = TimeUnit.SECONDS.toNanos(1) / perSecond;
+		}
+		void acquire() throws InterruptedException{
+			long wait;
+			synchronized(this){
+				long now = System.nanoTime();
+				if (next < now) next = now;
+				wait = next - now;
+				next += intervalNanos;
+			}
+			if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * 削除結果.
+	 */
+	public static final class Result{
+		private final long scanned;
+		private final long deleted;
+		private final long bytes;
+		private final List<Path> failed;
+		private final boolean dryRun;
+		private final long elapsedMillis;
+		private Result(Stats stats, boolean dryRun, long elapsedMillis){
+			scanned = stats.scanned.sum();
+			deleted = stats.deleted.sum();
+			bytes = stats.bytes.sum();
+			failed = Collections.unmodifiableList(new ArrayList<>(stats.failed));
+			this.dryRun = dryRun;
+			this.elapsedMillis = elapsedMillis;
+		}
+		/**
+		 * 走査したファイル数、emptyDirectories 指定時は root 以外のディレクトリを含む.
+		 * @return 件数
+		 */
+		public long getScanned(){
+			return scanned;
+		}
+		/**
+		 * 削除したファイル（ディレクトリ、シンボリックリンクを含む）数、dryRun の場合は削除対象の数.
+		 * @return 件数
+		 */
+		public long getDeleted(){
+			return deleted;
+		}
+		/**
+		 * 削除したファイルの合計サイズ、dryRun の場合は削除対象の合計サイズ.
+		 * @return バイト数
+		 */
+		public long getDeletedBytes(){
+			return bytes;
+		}
+		/**
+		 * 読込、削除に失敗したファイル.
+		 * @return List&lt;Path&gt;
+		 */
+		public List<Path> getFailed(){
+			return failed;
+		}
+		/**
+		 * dryRun 判定.
+		 * @return true = 削除していない。
+		 */
+		public boolean isDryRun(){
+			return dryRun;
+		}
+		/**
+		 * 処理時間.
+		 * @return ミリ秒
+		 */
+		public long getElapsedMillis(){
+			return elapsedMillis;
+		}
+		@Override
+		public String toString(){
+			return "scanned=" + scanned + ", deleted=" + deleted + ", deletedBytes=" + bytes + ", failed=" + failed.size()
+				+ ", dryRun=" + dryRun + ", elapsedMillis=" + elapsedMillis;
+		}
+	}
+}
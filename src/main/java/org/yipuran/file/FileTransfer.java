@@ -0,0 +1,336 @@
+package org.yipuran.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ファイル一括移動、コピー.
+ * <PRE>
+ * 移動元ディレクトリ配下のファイルを、同じ相対パスで移動先ディレクトリに複数スレッドで移動、コピーする。
+ *
+ * FileTransfer.Result result = FileTransfer.of(Paths.get("/data/in"), Paths.get("/backup/in"))
+ *                              .parallelism(8)
+ *                              .move(FileCollection.of("/data/in").stream().collect(Collectors.toList()));
+ * result.getFailed().forEach(i->System.out.println(i.getSource() + " : " + i.getError()));
+ * System.out.println(result.getBytesPerSecond());
+ *
+ * ・移動は同じファイルシステム内ならアトミックな名前変更で行う。
+ *   別のファイルシステムの場合は FileChannel#transferTo でコピーしてから移動元を削除する。
+ * ・コピー、別ファイルシステムへの移動は、移動先ディレクトリの一時ファイルに書いてから名前変更するので、
+ *   移動先に書込中のファイルが見えることはない。更新時刻は移動元と同じにする。
+ * ・対象のディレクトリは移動先に作成するだけで、移動元のディレクトリは残る。
+ * ・失敗したファイルがあっても残りのファイルを処理し、結果はファイル毎に Result#getItems() で返す。
+ * </PRE>
+ */
+public final class FileTransfer{
+	private final Path fromDir;
+	private final Path toDir;
+	private int parallelism = 4;
+	private boolean replaceExisting = true;
+
+	private FileTransfer(Path fromDir, Path toDir){
+		this.fromDir = fromDir.toAbsolutePath().normalize();
+		this.toDir = toDir.toAbsolutePath().normalize();
+	}
+	/**
+	 * FileTransfer 生成.
+	 * @param fromDir 移動元ディレクトリ、対象はこの配下に存在すること。
+	 * @param toDir 移動先ディレクトリ
+	 * @return FileTransfer
+	 */
+	public static FileTransfer of(Path fromDir, Path toDir){
+		return new FileTransfer(fromDir, toDir);
+	}
+	/**
+	 * 並列数指定.
+	 * @param parallelism デフォルト 4
+	 * @return FileTransfer
+	 */
+	public FileTransfer parallelism(int parallelism){
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive : " + parallelism);
+		this.parallelism = parallelism;
+		return this;
+	}
+	/**
+	 * 移動先に存在するファイルの扱い指定.
+	 * @param replaceExisting true = 上書きする（デフォルト）、false = FileAlreadyExistsException として失敗にする。
+	 * @return FileTransfer
+	 */
+	public FileTransfer replaceExisting(boolean replaceExisting){
+		this.replaceExisting = replaceExisting;
+		return this;
+	}
+	/**
+	 * 移動実行.
+	 * @param sources 移動対象の Path、ディレクトリ（fromDir 自身を含む）は移動先に作成する。
+	 * @return Result
+	 */
+	public Result move(Collection<Path> sources){
+		return execute(sources, true);
+	}
+	/**
+	 * コピー実行.
+	 * @param sources コピー対象の Path、ディレクトリ（fromDir 自身を含む）は移動先に作成する。
+	 * @return Result
+	 */
+	public Result copy(Collection<Path> sources){
+		return execute(sources, false);
+	}
+
+	private Result execute(Collection<Path> sources, boolean move){
+		long start = System.nanoTime();
+		List<Path[]> files = new ArrayList<>();
+		Set<Path> dirs = new LinkedHashSet<>();
+		for(Path s : sources){
+			Path source = s.toAbsolutePath().normalize();
+			if (!source.startsWith(fromDir)){
+				throw new IllegalArgumentException(s + " is not in " + fromDir);
+			}
+			// fromDir 自身（FileCollection#scan の先頭）は toDir の作成だけとする。
+			Path target = toDir.resolve(fromDir.relativize(source).toString());
+			if (source.equals(fromDir) || Files.isDirectory(source)){
+				dirs.add(target);
+			}else{
+				dirs.add(target.getParent());
+				files.add(new Path[]{ source, target });
+			}
+		}
+		try{
+			for(Path d : dirs){
+				Files.createDirectories(d);
+			}
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		List<Item> items = new ArrayList<>(files.size());
+		if (!files.isEmpty()){
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, files.size()), r->{
+				Thread t = new Thread(r, "FileTransfer");
+				t.setDaemon(true);
+				return t;
+			});
+			try{
+				List<Callable<Item>> tasks = new ArrayList<>(files.size());
+				for(Path[] f : files){
+					tasks.add(()->transfer(f[0], f[1], move));
+				}
+				for(Future<Item> future : executor.invokeAll(tasks)){
+					items.add(future.get());
+				}
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex.getMessage(), ex);
+			}catch(ExecutionException ex){
+				throw new RuntimeException(ex.getCause().getMessage(), ex.getCause());
+			}finally{
+				executor.shutdownNow();
+			}
+		}
+		return new Result(items, System.nanoTime() - start);
+	}
+	private Item transfer(Path source, Path target, boolean move){
+		long start = System.nanoTime();
+		long size = 0;
+		try{
+			size = Files.size(source);
+			if (!replaceExisting && Files.exists(target, LinkOption.NOFOLLOW_LINKS)){
+				throw new FileAlreadyExistsException(target.toString());
+			}
+			if (move){
+				try{
+					Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+					return new Item(source, target, size, System.nanoTime() - start, true, null);
+				}catch(AtomicMoveNotSupportedException e){
+					// 別のファイルシステム
+				}
+			}
+			copyChannel(source, target);
+			if (move) Files.delete(source);
+			return new Item(source, target, size, System.nanoTime() - start, false, null);
+		}catch(IOException | RuntimeException ex){
+			return new Item(source, target, size, System.nanoTime() - start, false, ex);
+		}
+	}
+	private static void copyChannel(Path source, Path target) throws IOException{
+		Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+		try{
+			try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+				long size = in.size();
+				for(long pos=0; pos < size; ){
+					long n = in.transferTo(pos, size - pos, out);
+					if (n <= 0) break;
+					pos += n;
+				}
+			}
+			Files.setLastModifiedTime(temp, Files.getLastModifiedTime(source));
+			// 一時ファイルは所有者だけの権限で作成されるので、移動元の権限にする。
+			try{
+				Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(source));
+			}catch(UnsupportedOperationException e){
+				// POSIX 以外のファイルシステム
+			}
+			try{
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+			}catch(AtomicMoveNotSupportedException e){
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}finally{
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * １ファイルの移動、コピー結果.
+	 */
+	public static final class Item{
+		private final Path source;
+		private final Path target;
+		private final long bytes;
+		private final long nanos;
+		private final boolean renamed;
+		private final Exception error;
+		private Item(Path source, Path target, long bytes, long nanos, boolean renamed, Exception error){
+			this.source = source;
+			this.target = target;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.renamed = renamed;
+			this.error = error;
+		}
+		/**
+		 * 移動元.
+		 * @return 絶対パス
+		 */
+		public Path getSource(){
+			return source;
+		}
+		/**
+		 * 移動先.
+		 * @return 絶対パス
+		 */
+		public Path getTarget(){
+			return target;
+		}
+		/**
+		 * ファイルサイズ.
+		 * @return バイト数
+		 */
+		public long getBytes(){
+			return bytes;
+		}
+		/**
+		 * 処理時間.
+		 * @return ナノ秒
+		 */
+		public long getNanos(){
+			return nanos;
+		}
+		/**
+		 * 名前変更による移動判定.
+		 * @return true = アトミックな名前変更で移動した。false = コピーした。
+		 */
+		public boolean isRenamed(){
+			return renamed;
+		}
+		/**
+		 * 成功判定.
+		 * @return true = 成功
+		 */
+		public boolean isSuccess(){
+			return error==null;
+		}
+		/**
+		 * 失敗原因.
+		 * @return 成功の場合は null
+		 */
+		public Exception getError(){
+			return error;
+		}
+		@Override
+		public String toString(){
+			return source + " -> " + target + (error==null ? "" : " : " + error);
+		}
+	}
+
+	/**
+	 * 一括移動、コピー結果.
+	 */
+	public static final class Result{
+		private final List<Item> items;
+		private final long nanos;
+		private final long bytes;
+		private Result(List<Item> items, long nanos){
+			this.items = Collections.unmodifiableList(items);
+			this.nanos = nanos;
+			long b = 0;
+			for(Item i : items){
+				if (i.isSuccess()) b += i.getBytes();
+			}
+			bytes = b;
+		}
+		/**
+		 * ファイル毎の結果.
+		 * @return 対象のファイルの順の List&lt;Item&gt;
+		 */
+		public List<Item> getItems(){
+			return items;
+		}
+		/**
+		 * 失敗したファイルの結果.
+		 * @return List&lt;Item&gt;
+		 */
+		public List<Item> getFailed(){
+			List<Item> list = new ArrayList<>();
+			for(Item i : items){
+				if (!i.isSuccess()) list.add(i);
+			}
+			return list;
+		}
+		/**
+		 * 成功したファイルの合計サイズ.
+		 * @return バイト数
+		 */
+		public long getBytes(){
+			return bytes;
+		}
+		/**
+		 * 処理時間.
+		 * @return ミリ秒
+		 */
+		public long getElapsedMillis(){
+			return TimeUnit.NANOSECONDS.toMillis(nanos);
+		}
+		/**
+		 * スループット.
+		 * @return 成功したファイルの１秒あたりのバイト数
+		 */
+		public double getBytesPerSecond(){
+			return nanos==0 ? 0 : bytes * 1e9 / nanos;
+		}
+		@Override
+		public String toString(){
+			return "files=" + items.size() + ", failed=" + getFailed().size() + ", bytes=" + bytes
+				+ ", elapsedMillis=" + getElapsedMillis() + ", bytesPerSecond=" + (long)getBytesPerSecond();
+		}
+	}
+}
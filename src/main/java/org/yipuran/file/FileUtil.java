@@ -1,11 +1,7 @@
 package org.yipuran.file;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,30 +14,51 @@ public final class FileUtil{
 
 	/**
 	 * ディレクトリ指定の特定ファイル移動. （注意：ディレクトリは残る）
+	 * <PRE>
+	 * FileTransfer で複数スレッドで移動する。同じファイルシステム内はアトミックな名前変更、
+	 * 別のファイルシステムへは FileChannel#transferTo でコピーして移動元を削除する。
+	 * ファイル毎の結果、スループットが必要な場合は FileTransfer を直接使用する。
+	 * </PRE>
 	 * @param fromDir 移動元ファイルのディレクトリ、この配下に移動対象が存在すること。
 	 * @param fromlist 移動対象の File リスト
 	 * @param toDir 移動先ディレクトリ、すでに対象が存在する場合は上書きする。
 	 * @return 移動後のファイルの java.nio.file.Path リストを返す。
 	 * 移動後のファイルの絶対パス文字列は、Path の toFile().getAbsolutePath() で参照
+	 * 移動に失敗したファイルがある場合は、他のファイルを移動した後で RuntimeException を発生する。
 	 */
 	public static List<Path> moveFiles(File fromDir,  List<File> fromlist, File toDir){
-		List<Path> results = new ArrayList<>();
-		fromlist.stream().filter(e->e.isDirectory())
-		.map(e->new File(e.getAbsolutePath().replace(fromDir.getAbsolutePath() + File.separator, "")))
-		.forEach(e->new File(toDir.getAbsolutePath() + "/" + e.getPath()).mkdirs());
+		return targets(FileTransfer.of(fromDir.toPath(), toDir.toPath()).move(paths(fromlist)));
+	}
+	/**
+	 * ディレクトリ指定の特定ファイルコピー.
+	 * <PRE>
+	 * FileTransfer で複数スレッドで FileChannel#transferTo によりコピーする。更新時刻は移動元と同じにする。
+	 * </PRE>
+	 * @param fromDir コピー元ファイルのディレクトリ、この配下にコピー対象が存在すること。
+	 * @param fromlist コピー対象の File リスト
+	 * @param toDir コピー先ディレクトリ、すでに対象が存在する場合は上書きする。
+	 * @return コピー後のファイルの java.nio.file.Path リストを返す。
+	 * コピーに失敗したファイルがある場合は、他のファイルをコピーした後で RuntimeException を発生する。
+	 */
+	public static List<Path> copyFiles(File fromDir,  List<File> fromlist, File toDir){
+		return targets(FileTransfer.of(fromDir.toPath(), toDir.toPath()).copy(paths(fromlist)));
+	}
 
-		fromlist.stream().filter(e->e.isFile())
-		.map(e->new File(e.getAbsolutePath().replace(fromDir.getAbsolutePath() + File.separator, "")))
-		.forEach(e->{
-			try{
-				results.add(Files.move(Paths.get(fromDir.getAbsolutePath() + "/" + e.getPath())
-					, Paths.get(toDir.getAbsolutePath() + "/" + e.getPath())
-					, StandardCopyOption.REPLACE_EXISTING)
-				);
-			}catch(IOException e1){
-				throw new RuntimeException(e1);
+	private static List<Path> paths(List<File> list){
+		List<Path> paths = new ArrayList<>(list.size());
+		for(File f : list){
+			paths.add(f.toPath());
+		}
+		return paths;
+	}
+	private static List<Path> targets(FileTransfer.Result result){
+		List<Path> results = new ArrayList<>();
+		for(FileTransfer.Item i : result.getItems()){
+			if (!i.isSuccess()){
+				throw new RuntimeException(i.toString(), i.getError());
 			}
-		});
+			results.add(i.getTarget());
+		}
 		return results;
 	}
 }
@@ -20,6 +20,9 @@ import java.io.File;
  *     }finally{
  *        s.end();
  *     }
+ *
+ * ロックファイル生成を１秒毎に再試行し、異常終了したプロセスのロックファイルは残る。
+ * OS のファイルロックで排他する FileChannelLock は、待ち合わせがマイクロ秒単位で異常終了時にロックが解放される。
  * </pre>
  */
 public final class FilebaseLock{
@@ -1,6 +1,5 @@
 package org.yipuran.file;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -14,6 +13,9 @@ import java.util.Optional;
  * PATH指定ファイル取得.
  * <PRE>
  * 現在実行中のクラスローダーより、PATH による、File取得, InputStream取得 , テキストへの読込み、を行う。
+ * 呼出し元クラスは、Java 9 以降は StackWalker で呼出し元のフレームだけを辿って求める。
+ * readText は一括で読み込み、デコードしたテキストをリソース数、文字数を制限した LRU キャッシュに保持する。
+ * ファイルのリソースは更新時刻、サイズが変われば読み直す。jar 内のリソースは変わらないものとしてキャッシュを返す。
  * </PRE>
  */
 public interface IPath{
@@ -39,9 +41,7 @@ public interface IPath{
 	 * @return File
 	 */
 	public static File getCurrentPathFile(String path){
-		String s = Thread.currentThread().getStackTrace()[2].getClassName();
-		int n = s.lastIndexOf(".");
-		String f = n < 0 ? path : s.substring(0, n).replaceAll("\\.", "/") + "/" + path;
+		String f = ResourceReader.callerResource(path);
 		try{
 			return new File(ClassLoader.getSystemClassLoader().getResource(f).toURI());
 		}catch(URISyntaxException e){
@@ -55,9 +55,7 @@ public interface IPath{
 	 * @throws IOException
 	 */
 	public static File getCurrentPathFileSafety(String path) throws IOException{
-		String s = Thread.currentThread().getStackTrace()[2].getClassName();
-		int n = s.lastIndexOf(".");
-		String f = n < 0 ? path : s.substring(0, n).replaceAll("\\.", "/") + "/" + path;
+		String f = ResourceReader.callerResource(path);
 		return Optional.ofNullable(
 			ClassLoader.getSystemClassLoader().getResource(f)
 		).map(u->{
@@ -74,9 +72,7 @@ public interface IPath{
 	 * @return InputStream
 	 */
 	public static InputStream getInputStream(String path){
-		String s = Thread.currentThread().getStackTrace()[2].getClassName();
-		int n = s.lastIndexOf(".");
-		String f = n < 0 ? path : s.substring(0, n).replaceAll("\\.", "/") + "/" + path;
+		String f = ResourceReader.callerResource(path);
 		try{
 			return new FileInputStream(new File(ClassLoader.getSystemClassLoader().getResource(f).toURI()));
 		}catch(URISyntaxException e){
@@ -95,26 +91,7 @@ public interface IPath{
 	 * @return String
 	 */
 	public static String readText(String path) {
-		String s = Thread.currentThread().getStackTrace()[2].getClassName();
-		int n = s.lastIndexOf(".");
-		String f = n < 0 ? path : s.substring(0, n).replaceAll("\\.", "/") + "/" + path;
-		try{
-			File file = new File(ClassLoader.getSystemClassLoader().getResource(f).toURI());
-			InputStream in = new FileInputStream(file);
-			ByteArrayOutputStream bo = new ByteArrayOutputStream();
-			int i;
-			while((i = in.read()) > 0) {
-				bo.write(i);
-			}
-			bo.flush();
-			bo.close();
-			in.close();
-			return bo.toString(StandardCharsets.UTF_8.name());
-		}catch(IOException e){
-			throw new RuntimeException(e);
-		}catch(URISyntaxException e){
-			throw new RuntimeException(e);
-		}
+		return ResourceReader.text(ResourceReader.callerResource(path), StandardCharsets.UTF_8, true);
 	}
 	/**
 	 * 現在実行中のクラス起点PATH テキスト取得（文字セット指定）.
@@ -123,25 +100,47 @@ public interface IPath{
 	 * @return String
 	 */
 	public static String readText(String path, Charset charset) {
-		String s = Thread.currentThread().getStackTrace()[2].getClassName();
-		int n = s.lastIndexOf(".");
-		String f = n < 0 ? path : s.substring(0, n).replaceAll("\\.", "/") + "/" + path;
-		try{
-			File file = new File(ClassLoader.getSystemClassLoader().getResource(f).toURI());
-			InputStream in = new FileInputStream(file);
-			ByteArrayOutputStream bo = new ByteArrayOutputStream();
-			int i;
-			while((i = in.read()) > 0) {
-				bo.write(i);
-			}
-			bo.flush();
-			bo.close();
-			in.close();
-			return bo.toString(charset.name());
-		}catch(IOException e){
-			throw new RuntimeException(e);
-		}catch(URISyntaxException e){
-			throw new RuntimeException(e);
-		}
+		return ResourceReader.text(ResourceReader.callerResource(path), charset, true);
+	}
+	/**
+	 * クラス起点PATH テキスト取得.
+	 * <PRE>
+	 * 呼出し元クラスを解決しないので、呼出し元以外のクラス起点や、頻繁に読む場合に使用する。UTF-8 で読み込む。
+	 * </PRE>
+	 * @param cls PATH起点位置に置かれたクラス
+	 * @param path PATH
+	 * @return String
+	 */
+	public static String readText(Class<?> cls, String path) {
+		return readText(cls, path, StandardCharsets.UTF_8);
+	}
+	/**
+	 * クラス起点PATH テキスト取得（文字セット指定）.
+	 * @param cls PATH起点位置に置かれたクラス
+	 * @param path PATH
+	 * @param charset 文字セット
+	 * @return String
+	 */
+	public static String readText(Class<?> cls, String path, Charset charset) {
+		return ResourceReader.text(ResourceReader.resourceName(cls.getName(), path), charset, true);
+	}
+	/**
+	 * クラス起点PATH テキスト取得（キャッシュしない）.
+	 * <PRE>
+	 * 一度しか読まない大きなファイルをキャッシュに残さない場合に使用する。
+	 * </PRE>
+	 * @param cls PATH起点位置に置かれたクラス
+	 * @param path PATH
+	 * @param charset 文字セット
+	 * @return String
+	 */
+	public static String readTextNoCache(Class<?> cls, String path, Charset charset) {
+		return ResourceReader.text(ResourceReader.resourceName(cls.getName(), path), charset, false);
+	}
+	/**
+	 * readText のキャッシュ消去.
+	 */
+	public static void clearCache() {
+		ResourceReader.clear();
 	}
 }
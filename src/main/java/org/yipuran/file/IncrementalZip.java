@@ -0,0 +1,167 @@
+package org.yipuran.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.yipuran.file.ParallelZip.Deflated;
+import org.yipuran.file.ParallelZip.Target;
+
+/**
+ * ZIP 差分圧縮.
+ * <PRE>
+ * ZipProcessor#compressIncremental の実装。
+ * ZIPファイルと同じ場所にマニフェスト（ZIPファイル名 + ".manifest"）を作成し、ファイル毎に
+ * エントリ名、サイズ、更新時刻、CRC-32 を記録する。
+ * 次回の圧縮では、マニフェストとサイズ、更新時刻が一致するファイルは前回の ZIP の圧縮データを
+ * 再圧縮せずに複写する。サイズが一致して更新時刻だけが異なるファイルは CRC-32 を計算し、一致すれば複写する。
+ * それ以外のファイルは ParallelZip と同様に並列に圧縮する。
+ * 新しい ZIP は一時ファイルに作成してから置き換える。
+ * </PRE>
+ */
+final class IncrementalZip{
+	/** マニフェストファイル名の拡張子 */
+	static final String MANIFEST_SUFFIX = ".manifest";
+	private static final String MANIFEST_HEADER = "# yipuran zip manifest : crc32\tsize\tmtime\tname";
+
+	private IncrementalZip(){}
+
+	/**
+	 * 差分圧縮実行.
+	 * @param collections 圧縮対象
+	 * @param zipPath 作成する ZIPファイルパス
+	 * @param p 対象制限 Predicate
+	 * @param pool 圧縮を実行する ForkJoinPool
+	 * @return ZIPエントリ名 Collection
+	 */
+	static Collection<String> compress(Collection<FileCollection> collections, String zipPath, Predicate<File> p, ForkJoinPool pool){
+		File zip = new File(zipPath).getAbsoluteFile();
+		File manifestFile = new File(zip.getPath() + MANIFEST_SUFFIX);
+		List<Target> targets = ParallelZip.targets(collections, p);
+		Collection<String> entries = new ArrayList<>();
+		List<ManifestEntry> manifest = new ArrayList<>();
+		Path temp = null;
+		try{
+			Map<String, ManifestEntry> previous = zip.isFile() ? readManifest(manifestFile) : Collections.emptyMap();
+			temp = Files.createTempFile(zip.getParentFile().toPath(), zip.getName(), ".tmp");
+			try(ZipArchiveReader reader = previous.isEmpty() ? null : open(zip)){
+				ParallelZip.write(targets, temp.toFile(), pool, t->reuse(t, previous, reader), d->{
+					entries.add(d.entry.getName());
+					if (!d.entry.isDirectory()){
+						manifest.add(new ManifestEntry(d.entry.getName(), d.entry.getSize(), d.mtime, d.entry.getCrc()));
+					}
+				});
+			}
+			replace(temp, zip.toPath());
+			Path manifestTemp = Files.createTempFile(zip.getParentFile().toPath(), manifestFile.getName(), ".tmp");
+			writeManifest(manifestTemp, manifest);
+			replace(manifestTemp, manifestFile.toPath());
+		}catch(IOException ex){
+			throw new RuntimeException(ex);
+		}finally{
+			if (temp != null) temp.toFile().delete();
+		}
+		return entries;
+	}
+	/** マニフェストと一致すれば前回の圧縮データ、一致しなければ圧縮 */
+	private static Deflated reuse(Target t, Map<String, ManifestEntry> previous, ZipArchiveReader reader) throws IOException{
+		File f = t.file;
+		ManifestEntry m = reader==null || !f.isFile() ? null : previous.get(t.name);
+		if (m != null && f.length()==m.size){
+			ZipEntry old = reader.entry(t.name);
+			long mtime = f.lastModified();
+			if (old != null && old.getCrc()==m.crc && old.getSize()==m.size && (mtime==m.mtime || crc(f)==m.crc)){
+				old.setTime(mtime);
+				return new Deflated(old, mtime, ()->reader.raw(t.name), null);
+			}
+		}
+		return ParallelZip.deflate(t);
+	}
+	private static ZipArchiveReader open(File zip) throws IOException{
+		try{
+			return new ZipArchiveReader(zip.toPath());
+		}catch(ZipException e){
+			// 読めない ZIP は全て圧縮し直す。
+			return null;
+		}
+	}
+	private static long crc(File f) throws IOException{
+		CRC32 crc = new CRC32();
+		try(InputStream in = Files.newInputStream(f.toPath())){
+			byte[] b = new byte[65536];
+			int n;
+			while((n = in.read(b)) > 0){
+				crc.update(b, 0, n);
+			}
+		}
+		return crc.getValue();
+	}
+	private static Map<String, ManifestEntry> readManifest(File file) throws IOException{
+		Map<String, ManifestEntry> map = new HashMap<>();
+		if (!file.isFile()) return map;
+		try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)){
+			String line;
+			while((line = reader.readLine()) != null){
+				if (line.isEmpty() || line.charAt(0)=='#') continue;
+				String[] s = line.split("\t", 4);
+				if (s.length < 4) return new HashMap<>();
+				try{
+					map.put(s[3], new ManifestEntry(s[3], Long.parseLong(s[1]), Long.parseLong(s[2]), Long.parseLong(s[0], 16)));
+				}catch(NumberFormatException e){
+					// 壊れたマニフェストは使用しない。
+					return new HashMap<>();
+				}
+			}
+		}
+		return map;
+	}
+	private static void writeManifest(Path path, List<ManifestEntry> manifest) throws IOException{
+		try(BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)){
+			writer.write(MANIFEST_HEADER);
+			writer.newLine();
+			for(ManifestEntry m : manifest){
+				writer.write(Long.toHexString(m.crc) + "\t" + m.size + "\t" + m.mtime + "\t" + m.name);
+				writer.newLine();
+			}
+		}
+	}
+	private static void replace(Path source, Path target) throws IOException{
+		try{
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}catch(AtomicMoveNotSupportedException e){
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/** マニフェストの１ファイル */
+	private static final class ManifestEntry{
+		final String name;
+		final long size;
+		final long mtime;
+		final long crc;
+		ManifestEntry(String name, long size, long mtime, long crc){
+			this.name = name;
+			this.size = size;
+			this.mtime = mtime;
+			this.crc = crc;
+		}
+	}
+}
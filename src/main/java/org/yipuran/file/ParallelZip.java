@@ -0,0 +1,224 @@
+package org.yipuran.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * ZIP 並列圧縮.
+ * <PRE>
+ * ZipProcessor#compressParallel の実装。
+ * ファイル毎の deflate 圧縮を ForkJoinPool で並列に実行し、結果をエントリ走査順に ZipArchiveWriter で書き込む。
+ * 圧縮結果は MEMORY_LIMIT 以下のファイルはメモリ、超えるファイルは一時ファイルに保持する。
+ * 書込み待ちの圧縮結果は並列数の２倍までとし、メモリ使用量を制限する。
+ * </PRE>
+ */
+final class ParallelZip{
+	/** 圧縮結果をメモリに保持するファイルサイズの上限 */
+	static final long MEMORY_LIMIT = 4L * 1024 * 1024;
+	private static final int BUFFER_SIZE = 65536;
+
+	private ParallelZip(){}
+
+	/**
+	 * 並列圧縮実行.
+	 * @param collections 圧縮対象
+	 * @param zipPath 作成する ZIPファイルパス
+	 * @param p 対象制限 Predicate
+	 * @param pool 圧縮を実行する ForkJoinPool
+	 * @return ZIPエントリ名 Collection
+	 */
+	static Collection<String> compress(Collection<FileCollection> collections, String zipPath, Predicate<File> p, ForkJoinPool pool){
+		Collection<String> entries = new ArrayList<>();
+		try{
+			write(targets(collections, p), new File(zipPath), pool, ParallelZip::deflate, d->entries.add(d.entry.getName()));
+		}catch(IOException ex){
+			throw new RuntimeException(ex);
+		}
+		return entries;
+	}
+	/**
+	 * 圧縮対象の走査.
+	 * @param collections 圧縮対象
+	 * @param p 対象制限 Predicate
+	 * @return 走査順の圧縮対象、エントリ名は先頭 "/" 無し
+	 */
+	static List<Target> targets(Collection<FileCollection> collections, Predicate<File> p){
+		List<Target> targets = new ArrayList<>();
+		collections.forEach(fc->{
+			String prefix = fc.getFile().getAbsoluteFile().getParentFile().getAbsolutePath().replaceAll("\\\\", "/");
+			fc.scan(p, f->{
+				String entryName = f.getAbsolutePath().replaceAll("\\\\", "/").substring(prefix.length());
+				targets.add(new Target(f, entryName.charAt(0)=='/' ? entryName.substring(1) : entryName));
+			});
+		});
+		return targets;
+	}
+	/**
+	 * 圧縮対象毎に task を並列実行し、結果を走査順に書き込む.
+	 * @param targets 圧縮対象
+	 * @param zipFile 作成する ZIPファイル
+	 * @param pool task を実行する ForkJoinPool
+	 * @param task 圧縮対象 → 圧縮結果
+	 * @param written 書込み済の圧縮結果を受け取る Consumer、書込み順に呼ばれる。
+	 * @throws IOException
+	 */
+	static void write(List<Target> targets, File zipFile, ForkJoinPool pool, Task task, Consumer<Deflated> written) throws IOException{
+		int window = Math.max(2, pool.getParallelism() * 2);
+		Deque<ForkJoinTask<Deflated>> pending = new ArrayDeque<>();
+		try(ZipArchiveWriter writer = new ZipArchiveWriter(new FileOutputStream(zipFile))){
+			for(Target t : targets){
+				pending.add(pool.submit(()->task.apply(t)));
+				if (pending.size() >= window){
+					write(writer, pending.poll().join(), written);
+				}
+			}
+			while(!pending.isEmpty()){
+				write(writer, pending.poll().join(), written);
+			}
+		}finally{
+			discard(pending);
+		}
+	}
+	private static void write(ZipArchiveWriter writer, Deflated d, Consumer<Deflated> written) throws IOException{
+		try(InputStream in = d.open()){
+			writer.write(d.entry, in);
+		}finally{
+			d.release();
+		}
+		written.accept(d);
+	}
+	/** 異常終了時、書込み前の圧縮結果を破棄 */
+	private static void discard(Deque<ForkJoinTask<Deflated>> pending){
+		for(ForkJoinTask<Deflated> task : pending){
+			try{
+				task.join().release();
+			}catch(RuntimeException e){
+				// 圧縮失敗、一時ファイルは作成時に削除済み
+			}
+		}
+		pending.clear();
+	}
+	/**
+	 * deflate 圧縮.
+	 * @param t 圧縮対象
+	 * @return 圧縮結果
+	 * @throws IOException
+	 */
+	static Deflated deflate(Target t) throws IOException{
+		File f = t.file;
+		long mtime = f.lastModified();
+		if (f.isDirectory()){
+			ZipEntry entry = new ZipEntry(t.name + "/");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setTime(mtime);
+			entry.setSize(0);
+			entry.setCompressedSize(0);
+			entry.setCrc(0);
+			return new Deflated(entry, mtime, ()->new ByteArrayInputStream(new byte[0]), null);
+		}
+		Path temp = f.length() > MEMORY_LIMIT ? Files.createTempFile("yipuran-zip", ".tmp") : null;
+		Buffer buf = temp==null ? new Buffer((int)Math.max(32, f.length() / 2)) : null;
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		CRC32 crc = new CRC32();
+		long size = 0;
+		try(InputStream in = new FileInputStream(f)
+		; OutputStream o = temp==null ? buf : new FileOutputStream(temp.toFile())
+		; DeflaterOutputStream dos = new DeflaterOutputStream(o, deflater, BUFFER_SIZE)){
+			byte[] b = new byte[BUFFER_SIZE];
+			int n;
+			while((n = in.read(b)) > 0){
+				crc.update(b, 0, n);
+				dos.write(b, 0, n);
+				size += n;
+			}
+			dos.finish();
+			ZipEntry entry = new ZipEntry(t.name);
+			entry.setMethod(ZipEntry.DEFLATED);
+			entry.setTime(mtime);
+			entry.setSize(size);
+			entry.setCompressedSize(deflater.getBytesWritten());
+			entry.setCrc(crc.getValue());
+			return new Deflated(entry, mtime, temp==null ? buf::input : ()->Files.newInputStream(temp), temp);
+		}catch(IOException | RuntimeException e){
+			if (temp != null) Files.deleteIfExists(temp);
+			throw e;
+		}finally{
+			deflater.end();
+		}
+	}
+
+	/** 圧縮対象 → 圧縮結果 */
+	@FunctionalInterface
+	interface Task{
+		Deflated apply(Target t) throws IOException;
+	}
+	/** 書込みデータの取得 */
+	@FunctionalInterface
+	interface Source{
+		InputStream open() throws IOException;
+	}
+	/** 圧縮対象 */
+	static final class Target{
+		final File file;
+		final String name;
+		Target(File file, String name){
+			this.file = file;
+			this.name = name;
+		}
+	}
+	/** 圧縮結果 */
+	static final class Deflated{
+		final ZipEntry entry;
+		/** 圧縮開始時のファイル更新時刻 */
+		final long mtime;
+		private final Source source;
+		private final Path temp;
+		Deflated(ZipEntry entry, long mtime, Source source, Path temp){
+			this.entry = entry;
+			this.mtime = mtime;
+			this.source = source;
+			this.temp = temp;
+		}
+		InputStream open() throws IOException{
+			return source.open();
+		}
+		void release(){
+			if (temp==null) return;
+			try{
+				Files.deleteIfExists(temp);
+			}catch(IOException e){
+				temp.toFile().deleteOnExit();
+			}
+		}
+	}
+	/** 複写せずに読み出せる ByteArrayOutputStream */
+	private static final class Buffer extends ByteArrayOutputStream{
+		Buffer(int size){
+			super(size);
+		}
+		InputStream input(){
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
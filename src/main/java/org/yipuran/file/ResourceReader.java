@@ -0,0 +1,199 @@
+package org.yipuran.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * IPath のリソース読込.
+ * <PRE>
+ * 呼出し元クラスの解決は、Java 9 以降は StackWalker で必要なフレームだけを辿り、Java 8 は Throwable のスタックトレースを使用する。
+ * テキストは LRU キャッシュに保持し、file: のリソースは更新時刻、サイズが変わっていれば読み直す。
+ * </PRE>
+ */
+final class ResourceReader{
+	/** キャッシュするリソース数 */
+	static final int MAX_ENTRIES = 128;
+	/** キャッシュするテキストの最大長 */
+	static final int MAX_CACHE_LENGTH = 1 << 20;
+	/** キャッシュするテキストの合計長 */
+	static final long MAX_TOTAL_LENGTH = 8L << 20;
+	private static final Supplier<String> WALKER = walker();
+	/** アクセス順、CACHE で同期する */
+	private static final LinkedHashMap<String, Cached> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+	private static long totalLength;
+
+	private ResourceReader(){}
+
+	/**
+	 * IPath を呼び出したクラス起点のリソース名.
+	 * @param path クラス起点PATH
+	 * @return リソース名
+	 */
+	static String callerResource(String path){
+		return resourceName(callerClassName(), path);
+	}
+	/**
+	 * クラス起点のリソース名.
+	 * @param className クラス名
+	 * @param path クラス起点PATH
+	 * @return リソース名
+	 */
+	static String resourceName(String className, String path){
+		int n = className.lastIndexOf('.');
+		return n < 0 ? path : className.substring(0, n).replace('.', '/') + "/" + path;
+	}
+	/**
+	 * リソース URL.
+	 * @param name リソース名
+	 * @return URL、存在しなければ null
+	 */
+	static URL url(String name){
+		return ClassLoader.getSystemClassLoader().getResource(name);
+	}
+	/**
+	 * テキスト読込.
+	 * @param name リソース名
+	 * @param charset 文字セット
+	 * @param cache true = キャッシュを使用する。
+	 * @return テキスト
+	 */
+	static String text(String name, Charset charset, boolean cache){
+		String key = charset.name() + ":" + name;
+		try{
+			if (cache){
+				Cached c;
+				synchronized(CACHE){
+					c = CACHE.get(key);
+				}
+				// 解決済みのリソースは getResource を再実行しない。
+				if (c != null && (c.file==null || c.fresh())) return c.text;
+			}
+			URL url = url(name);
+			if (url==null) throw new FileNotFoundException(name);
+			Path file = "file".equals(url.getProtocol()) ? Paths.get(url.toURI()) : null;
+			BasicFileAttributes attrs = cache && file != null ? Files.readAttributes(file, BasicFileAttributes.class) : null;
+			String text = new String(read(url, file), charset);
+			if (cache && text.length() <= MAX_CACHE_LENGTH){
+				put(key, new Cached(text, file, attrs));
+			}
+			return text;
+		}catch(IOException | URISyntaxException e){
+			throw new RuntimeException(e);
+		}
+	}
+	/**
+	 * キャッシュ消去.
+	 */
+	static void clear(){
+		synchronized(CACHE){
+			CACHE.clear();
+			totalLength = 0;
+		}
+	}
+
+	private static void put(String key, Cached c){
+		synchronized(CACHE){
+			Cached old = CACHE.put(key, c);
+			if (old != null) totalLength -= old.text.length();
+			totalLength += c.text.length();
+			// 最も古いアクセスから削除する。
+			for(Iterator<Cached> it=CACHE.values().iterator(); it.hasNext() && (CACHE.size() > MAX_ENTRIES || totalLength > MAX_TOTAL_LENGTH); ){
+				totalLength -= it.next().text.length();
+				it.remove();
+			}
+		}
+	}
+	private static byte[] read(URL url, Path file) throws IOException{
+		if (file != null) return Files.readAllBytes(file);
+		try(InputStream in = url.openStream()){
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+			byte[] b = new byte[8192];
+			for(int n; (n = in.read(b)) >= 0; ){
+				out.write(b, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+	private static String callerClassName(){
+		if (WALKER != null){
+			String s = WALKER.get();
+			if (s != null) return s;
+		}
+		for(StackTraceElement e : new Throwable().getStackTrace()){
+			if (!internal(e.getClassName())) return e.getClassName();
+		}
+		throw new IllegalStateException("caller not found");
+	}
+	private static boolean internal(String className){
+		return className.equals(ResourceReader.class.getName()) || className.equals(IPath.class.getName());
+	}
+	/** StackWalker による呼出し元クラス名、Java 8 は null */
+	private static Supplier<String> walker(){
+		try{
+			Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+			Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Object walker = walkerClass.getMethod("getInstance").invoke(null);
+			MethodHandle walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class))
+				.bindTo(walker).asType(MethodType.methodType(Object.class, Function.class));
+			MethodHandle getClassName = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class))
+				.asType(MethodType.methodType(String.class, Object.class));
+			Function<Stream<Object>, String> finder = s->s.map(f->{
+				try{
+					return (String)getClassName.invokeExact(f);
+				}catch(Throwable e){
+					throw new IllegalStateException(e);
+				}
+			}).filter(n->!internal(n)).findFirst().orElse(null);
+			return ()->{
+				try{
+					return (String)(Object)walk.invokeExact(finder);
+				}catch(Throwable e){
+					return null;
+				}
+			};
+		}catch(ReflectiveOperationException | RuntimeException e){
+			return null;
+		}
+	}
+
+	/** キャッシュしたテキスト */
+	private static final class Cached{
+		final String text;
+		final Path file;
+		final long mtime;
+		final long size;
+		Cached(String text, Path file, BasicFileAttributes attrs){
+			this.text = text;
+			this.file = file;
+			mtime = attrs==null ? 0 : attrs.lastModifiedTime().toMillis();
+			size = attrs==null ? 0 : attrs.size();
+		}
+		/** ファイルのリソースが読込時から変わっていない */
+		boolean fresh(){
+			try{
+				BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+				return a.lastModifiedTime().toMillis()==mtime && a.size()==size;
+			}catch(IOException e){
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.yipuran.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 圧縮データのままの ZIP 読込み.
+ * <PRE>
+ * セントラルディレクトリを読み、エントリの圧縮データを展開せずに読み出す。
+ * ZipArchiveWriter#write と組み合わせて、既存 ZIP のエントリを再圧縮せずに複写する。
+ * 分割 ZIP、暗号化エントリは対象外である。
+ * </PRE>
+ */
+final class ZipArchiveReader implements Closeable{
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private final FileChannel channel;
+	private final Map<String, RawEntry> entries = new HashMap<>();
+
+	/**
+	 * コンストラクタ.
+	 * @param zip ZIPファイル
+	 * @throws IOException ZIP形式でない場合は ZipException
+	 */
+	ZipArchiveReader(Path zip) throws IOException{
+		channel = FileChannel.open(zip, StandardOpenOption.READ);
+		try{
+			readCentralDirectory();
+		}catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+	}
+	/**
+	 * エントリ取得.
+	 * @param name エントリ名
+	 * @return method, crc, size, compressedSize を設定した ZipEntry、無ければ null
+	 */
+	ZipEntry entry(String name){
+		RawEntry r = entries.get(name);
+		if (r==null) return null;
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(r.method);
+		entry.setCrc(r.crc);
+		entry.setSize(r.size);
+		entry.setCompressedSize(r.csize);
+		return entry;
+	}
+	/**
+	 * 圧縮データ読込み.
+	 * @param name エントリ名
+	 * @return 圧縮データの InputStream
+	 * @throws IOException
+	 */
+	InputStream raw(String name) throws IOException{
+		RawEntry r = entries.get(name);
+		if (r==null) throw new ZipException("entry not found : " + name);
+		ByteBuffer local = read(r.offset, 30);
+		if (local.getInt(0) != 0x04034b50) throw new ZipException("invalid local header : " + name);
+		long start = r.offset + 30 + (local.getShort(26) & 0xffff) + (local.getShort(28) & 0xffff);
+		return new RangeInputStream(start, start + r.csize);
+	}
+	@Override
+	public void close() throws IOException{
+		channel.close();
+	}
+
+	private void readCentralDirectory() throws IOException{
+		long fileSize = channel.size();
+		int tail = (int)Math.min(fileSize, 22 + 0xFFFF);
+		ByteBuffer b = read(fileSize - tail, tail);
+		int eocd = -1;
+		for(int i=tail - 22; i >= 0; i--){
+			if (b.getInt(i)==0x06054b50){
+				eocd = i;
+				break;
+			}
+		}
+		if (eocd < 0) throw new ZipException("end of central directory not found");
+		long count = b.getShort(eocd + 10) & 0xffff;
+		long cdSize = b.getInt(eocd + 12) & ZIP64_MAGIC;
+		long cdOffset = b.getInt(eocd + 16) & ZIP64_MAGIC;
+		long eocdPos = fileSize - tail + eocd;
+		if ((count==0xFFFF || cdSize==ZIP64_MAGIC || cdOffset==ZIP64_MAGIC) && eocdPos >= 20){
+			ByteBuffer locator = read(eocdPos - 20, 20);
+			if (locator.getInt(0)==0x07064b50){
+				ByteBuffer z = read(locator.getLong(8), 56);
+				if (z.getInt(0) != 0x06064b50) throw new ZipException("invalid zip64 end of central directory");
+				count = z.getLong(32);
+				cdSize = z.getLong(40);
+				cdOffset = z.getLong(48);
+			}
+		}
+		if (cdSize > Integer.MAX_VALUE) throw new ZipException("central directory too large");
+		ByteBuffer cd = read(cdOffset, (int)cdSize);
+		int pos = 0;
+		for(long n=0; n < count; n++){
+			if (cd.getInt(pos) != 0x02014b50) throw new ZipException("invalid central directory");
+			int method = cd.getShort(pos + 10) & 0xffff;
+			long crc = cd.getInt(pos + 16) & ZIP64_MAGIC;
+			long csize = cd.getInt(pos + 20) & ZIP64_MAGIC;
+			long size = cd.getInt(pos + 24) & ZIP64_MAGIC;
+			int nameLen = cd.getShort(pos + 28) & 0xffff;
+			int extraLen = cd.getShort(pos + 30) & 0xffff;
+			int commentLen = cd.getShort(pos + 32) & 0xffff;
+			long offset = cd.getInt(pos + 42) & ZIP64_MAGIC;
+			byte[] nb = new byte[nameLen];
+			cd.position(pos + 46);
+			cd.get(nb);
+			int e = pos + 46 + nameLen;
+			int extraEnd = e + extraLen;
+			while(e + 4 <= extraEnd){
+				int id = cd.getShort(e) & 0xffff;
+				int len = cd.getShort(e + 2) & 0xffff;
+				if (id==0x0001){
+					int z = e + 4;
+					if (size==ZIP64_MAGIC){ size = cd.getLong(z); z += 8; }
+					if (csize==ZIP64_MAGIC){ csize = cd.getLong(z); z += 8; }
+					if (offset==ZIP64_MAGIC){ offset = cd.getLong(z); }
+				}
+				e += 4 + len;
+			}
+			entries.put(new String(nb, StandardCharsets.UTF_8), new RawEntry(method, crc, size, csize, offset));
+			pos = extraEnd + commentLen;
+		}
+	}
+	private ByteBuffer read(long position, int length) throws IOException{
+		ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while(b.hasRemaining()){
+			if (channel.read(b, position + b.position()) < 0) throw new ZipException("unexpected end of zip");
+		}
+		b.flip();
+		return b;
+	}
+
+	/** セントラルディレクトリのエントリ情報 */
+	private static final class RawEntry{
+		final int method;
+		final long crc;
+		final long size;
+		final long csize;
+		final long offset;
+		RawEntry(int method, long crc, long size, long csize, long offset){
+			this.method = method;
+			this.crc = crc;
+			this.size = size;
+			this.csize = csize;
+			this.offset = offset;
+		}
+	}
+	/** FileChannel の範囲を読む InputStream */
+	private final class RangeInputStream extends InputStream{
+		private long position;
+		private final long end;
+		RangeInputStream(long position, long end){
+			this.position = position;
+			this.end = end;
+		}
+		@Override
+		public int read() throws IOException{
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			if (position >= end) return -1;
+			int n = channel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, end - position)), position);
+			if (n < 0) throw new ZipException("unexpected end of zip");
+			position += n;
+			return n;
+		}
+	}
+}
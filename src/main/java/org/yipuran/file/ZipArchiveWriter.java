@@ -0,0 +1,229 @@
+package org.yipuran.file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * 圧縮済データの ZIP 書込み.
+ * <PRE>
+ * ZipOutputStream は書込み時に圧縮するため、別スレッドで圧縮したデータや
+ * 既存 ZIP の圧縮データをそのまま書き込めない。
+ * 本クラスは ZipEntry の method, crc, size, compressedSize に従い、圧縮済データを
+ * ローカルヘッダ、セントラルディレクトリとともに書き込む。
+ * エントリ名は UTF-8、サイズ・件数・オフセットが ZIP の上限を超える場合は ZIP64 形式で書き込む。
+ * </PRE>
+ */
+final class ZipArchiveWriter implements Closeable{
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private final OutputStream out;
+	private final List<CentralEntry> central = new ArrayList<>();
+	private final byte[] buffer = new byte[65536];
+	private long position;
+	private boolean closed;
+
+	/**
+	 * コンストラクタ.
+	 * @param out 出力先、close() で close する。
+	 */
+	ZipArchiveWriter(OutputStream out){
+		this.out = new BufferedOutputStream(out, 65536);
+	}
+	/**
+	 * ディレクトリエントリ書込み.
+	 * @param name エントリ名、"/" で終わらなければ付加する。
+	 * @param time 更新時刻（ミリ秒）
+	 * @throws IOException
+	 */
+	void putDirectory(String name, long time) throws IOException{
+		ZipEntry entry = new ZipEntry(name.endsWith("/") ? name : name + "/");
+		entry.setMethod(ZipEntry.STORED);
+		entry.setTime(time);
+		entry.setSize(0);
+		entry.setCompressedSize(0);
+		entry.setCrc(0);
+		write(entry, null);
+	}
+	/**
+	 * 圧縮済エントリ書込み.
+	 * @param entry method（STORED / DEFLATED）、time, crc, size, compressedSize を設定した ZipEntry
+	 * @param data compressedSize バイトの圧縮済データ、STORED の場合は元データ
+	 * @throws IOException
+	 */
+	void write(ZipEntry entry, InputStream data) throws IOException{
+		if (closed) throw new IOException("ZipArchiveWriter closed");
+		if (entry.getMethod()==-1 || entry.getCrc()==-1 || entry.getSize()==-1 || entry.getCompressedSize()==-1){
+			throw new IllegalArgumentException("method, crc, size and compressedSize required : " + entry.getName());
+		}
+		byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+		long time = entry.getTime()==-1 ? System.currentTimeMillis() : entry.getTime();
+		CentralEntry ce = new CentralEntry(name, isAscii(entry.getName()) ? 0 : 0x0800, entry.getMethod(), dosTime(time)
+				, entry.getCrc(), entry.getSize(), entry.getCompressedSize(), position);
+		central.add(ce);
+		boolean zip64 = ce.size >= ZIP64_MAGIC || ce.csize >= ZIP64_MAGIC;
+		writeInt(0x04034b50L);
+		writeShort(zip64 ? 45 : 20);
+		writeShort(ce.flag);
+		writeShort(ce.method);
+		writeInt(ce.dostime);
+		writeInt(ce.crc);
+		writeInt(zip64 ? ZIP64_MAGIC : ce.csize);
+		writeInt(zip64 ? ZIP64_MAGIC : ce.size);
+		writeShort(name.length);
+		writeShort(zip64 ? 20 : 0);
+		writeBytes(name, name.length);
+		if (zip64){
+			writeShort(0x0001);
+			writeShort(16);
+			writeLong(ce.size);
+			writeLong(ce.csize);
+		}
+		long remain = ce.csize;
+		while(remain > 0){
+			int n = data.read(buffer, 0, (int)Math.min(buffer.length, remain));
+			if (n < 0) throw new IOException("unexpected end of data : " + entry.getName());
+			writeBytes(buffer, n);
+			remain -= n;
+		}
+	}
+	/**
+	 * セントラルディレクトリを書き込んで close.
+	 */
+	@Override
+	public void close() throws IOException{
+		if (closed) return;
+		closed = true;
+		try{
+			long cdStart = position;
+			for(CentralEntry ce : central){
+				writeCentral(ce);
+			}
+			long cdSize = position - cdStart;
+			int count = central.size();
+			if (count >= 0xFFFF || cdStart >= ZIP64_MAGIC || cdSize >= ZIP64_MAGIC){
+				long zip64End = position;
+				writeInt(0x06064b50L);
+				writeLong(44);
+				writeShort(45);
+				writeShort(45);
+				writeInt(0);
+				writeInt(0);
+				writeLong(count);
+				writeLong(count);
+				writeLong(cdSize);
+				writeLong(cdStart);
+				writeInt(0x07064b50L);
+				writeInt(0);
+				writeLong(zip64End);
+				writeInt(1);
+			}
+			writeInt(0x06054b50L);
+			writeShort(0);
+			writeShort(0);
+			writeShort(Math.min(count, 0xFFFF));
+			writeShort(Math.min(count, 0xFFFF));
+			writeInt(Math.min(cdSize, ZIP64_MAGIC));
+			writeInt(Math.min(cdStart, ZIP64_MAGIC));
+			writeShort(0);
+		}finally{
+			out.close();
+		}
+	}
+	private void writeCentral(CentralEntry ce) throws IOException{
+		ByteArrayOutputStream extra = new ByteArrayOutputStream();
+		if (ce.size >= ZIP64_MAGIC) putLong(extra, ce.size);
+		if (ce.csize >= ZIP64_MAGIC) putLong(extra, ce.csize);
+		if (ce.offset >= ZIP64_MAGIC) putLong(extra, ce.offset);
+		boolean zip64 = extra.size() > 0;
+		writeInt(0x02014b50L);
+		writeShort(zip64 ? 45 : 20);
+		writeShort(zip64 ? 45 : 20);
+		writeShort(ce.flag);
+		writeShort(ce.method);
+		writeInt(ce.dostime);
+		writeInt(ce.crc);
+		writeInt(Math.min(ce.csize, ZIP64_MAGIC));
+		writeInt(Math.min(ce.size, ZIP64_MAGIC));
+		writeShort(ce.name.length);
+		writeShort(zip64 ? extra.size() + 4 : 0);
+		writeShort(0);
+		writeShort(0);
+		writeShort(0);
+		writeInt(0);
+		writeInt(Math.min(ce.offset, ZIP64_MAGIC));
+		writeBytes(ce.name, ce.name.length);
+		if (zip64){
+			writeShort(0x0001);
+			writeShort(extra.size());
+			writeBytes(extra.toByteArray(), extra.size());
+		}
+	}
+	private void writeShort(int v) throws IOException{
+		out.write(v & 0xff);
+		out.write((v >>> 8) & 0xff);
+		position += 2;
+	}
+	private void writeInt(long v) throws IOException{
+		writeShort((int)(v & 0xffff));
+		writeShort((int)((v >>> 16) & 0xffff));
+	}
+	private void writeLong(long v) throws IOException{
+		writeInt(v & 0xffffffffL);
+		writeInt(v >>> 32);
+	}
+	private void writeBytes(byte[] b, int len) throws IOException{
+		out.write(b, 0, len);
+		position += len;
+	}
+	private static void putLong(ByteArrayOutputStream o, long v){
+		for(int i=0; i < 8; i++){
+			o.write((int)(v >>> (i * 8)) & 0xff);
+		}
+	}
+	private static boolean isAscii(String s){
+		for(int i=0; i < s.length(); i++){
+			if (s.charAt(i) > 0x7f) return false;
+		}
+		return true;
+	}
+	/** MS-DOS 形式の日時（上位16bit 日付、下位16bit 時刻） */
+	private static long dosTime(long time){
+		LocalDateTime d = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+		int year = d.getYear() - 1980;
+		if (year < 0) return (1 << 21) | (1 << 16);
+		return ((long)year << 25 | d.getMonthValue() << 21 | d.getDayOfMonth() << 16
+				| d.getHour() << 11 | d.getMinute() << 5 | d.getSecond() >> 1) & 0xffffffffL;
+	}
+
+	/** セントラルディレクトリ用エントリ情報 */
+	private static final class CentralEntry{
+		final byte[] name;
+		final int flag;
+		final int method;
+		final long dostime;
+		final long crc;
+		final long size;
+		final long csize;
+		final long offset;
+		CentralEntry(byte[] name, int flag, int method, long dostime, long crc, long size, long csize, long offset){
+			this.name = name;
+			this.flag = flag;
+			this.method = method;
+			this.dostime = dostime;
+			this.crc = crc;
+			this.size = size;
+			this.csize = csize;
+			this.offset = offset;
+		}
+	}
+}
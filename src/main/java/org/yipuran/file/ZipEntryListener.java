@@ -0,0 +1,33 @@
+package org.yipuran.file;
+
+import java.util.zip.ZipEntry;
+
+/**
+ * ZIPエントリ処理通知.
+ * <PRE>
+ * ZipProcessor の OutputStream への圧縮、InputStream からの展開で、エントリ毎の処理完了時に呼ばれる。
+ * 進捗表示、転送量・時間の計測に使用する。
+ *
+ * processor.compress(response.getOutputStream(), f->true, (entry, bytes, nanos)->{
+ *     logger.info(entry.getName() + " " + entry.getSize() + " -> " + entry.getCompressedSize() + " total=" + bytes);
+ * });
+ * </PRE>
+ */
+@FunctionalInterface
+public interface ZipEntryListener{
+	/**
+	 * エントリ処理完了.
+	 * @param entry 処理したエントリ、size, compressedSize, crc は設定済
+	 * @param bytes 開始からの OutputStream 書込み、または InputStream 読込みの累計バイト数
+	 * @param nanos エントリの処理時間（ナノ秒）
+	 */
+	void completed(ZipEntry entry, long bytes, long nanos);
+
+	/**
+	 * 何もしない ZipEntryListener.
+	 * @return ZipEntryListener
+	 */
+	public static ZipEntryListener none(){
+		return (entry, bytes, nanos)->{};
+	}
+}
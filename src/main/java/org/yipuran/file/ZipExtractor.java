@@ -0,0 +1,117 @@
+package org.yipuran.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ZipFile による ZIP 展開.
+ * <PRE>
+ * ZipProcessor#viewPath / ZipProcessor#decompress の実装。
+ * ZipFile はセントラルディレクトリからエントリを取得するので、一覧取得、一部エントリの展開で
+ * ZIP 全体を読む必要がない。
+ * 展開先ディレクトリ外を指すエントリ名（"../" を含む等）は RuntimeException とする。
+ * </PRE>
+ */
+final class ZipExtractor{
+	private ZipExtractor(){}
+
+	/**
+	 * エントリ名一覧.
+	 * @param zipPath ZIPファイルパス
+	 * @return ZIPエントリ名 Set
+	 */
+	static Set<String> names(String zipPath){
+		TreeSet<String> entries = new TreeSet<>();
+		try(ZipFile zip = new ZipFile(zipPath)){
+			for(ZipEntry e : Collections.list(zip.entries())){
+				entries.add(e.getName());
+			}
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		return entries;
+	}
+	/**
+	 * 展開.
+	 * @param zipPath ZIPファイルパス
+	 * @param dirPath 展開先ディレクトリパス
+	 * @param p 展開するエントリ名の Predicate
+	 * @param pool 並列展開する ForkJoinPool、null は呼出しスレッドで展開
+	 * @return 展開した ZIPエントリ名 Set
+	 */
+	static Set<String> extract(String zipPath, String dirPath, Predicate<String> p, ForkJoinPool pool){
+		Path dir = Paths.get(dirPath).toAbsolutePath().normalize();
+		TreeSet<String> entries = new TreeSet<>();
+		try(ZipFile zip = new ZipFile(zipPath)){
+			List<ZipEntry> files = new ArrayList<>();
+			for(ZipEntry e : Collections.list(zip.entries())){
+				if (!p.test(e.getName())) continue;
+				entries.add(e.getName());
+				Path target = resolve(dir, e.getName());
+				if (e.isDirectory()){
+					Files.createDirectories(target);
+				}else{
+					Files.createDirectories(target.getParent());
+					files.add(e);
+				}
+			}
+			if (pool==null || files.size() < 2){
+				for(ZipEntry e : files){
+					copy(zip, e, dir);
+				}
+			}else{
+				List<Callable<Void>> tasks = new ArrayList<>(files.size());
+				for(ZipEntry e : files){
+					tasks.add(()->{
+						copy(zip, e, dir);
+						return null;
+					});
+				}
+				for(Future<Void> f : pool.invokeAll(tasks)){
+					f.get();
+				}
+			}
+		}catch(IOException ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}catch(ExecutionException ex){
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			throw new RuntimeException(cause.getMessage(), cause);
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		return entries;
+	}
+	private static void copy(ZipFile zip, ZipEntry e, Path dir) throws IOException{
+		try(InputStream in = zip.getInputStream(e)){
+			Files.copy(in, resolve(dir, e.getName()), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	/** 展開先パス、compress で作成した先頭 "/" のエントリ名は dir からの相対とする。 */
+	private static Path resolve(Path dir, String name){
+		String s = name;
+		while(s.startsWith("/")){
+			s = s.substring(1);
+		}
+		Path target = dir.resolve(s).normalize();
+		if (!target.startsWith(dir)) throw new RuntimeException("illegal zip entry : " + name);
+		return target;
+	}
+}
@@ -1,22 +1,20 @@
 package org.yipuran.file;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collection;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
-import org.yipuran.function.ThrowableConsumer;
+import org.yipuran.function.ThrowableBiConsumer;
 
 /**
  * ZIP 圧縮／解凍プロセッサ.
@@ -29,6 +27,15 @@ import org.yipuran.function.ThrowableConsumer;
  * メソッド戻り値は、tarエントリ名 Collection
  * （展開）
  * void decompress(String zipPath, String dirPath) で展開する。
+ * decompress(String, String, Predicate) で一部エントリの展開、decompressParallel で並列展開する。
+ * （ストリーム）
+ * compress(OutputStream) で任意の OutputStream に圧縮し、decompress(InputStream, ThrowableBiConsumer) で
+ * 任意の InputStream から展開する。ZipEntryListener でエントリ毎の完了通知を受け取れる。
+ * （並列圧縮）
+ * Collection&lt;String&gt; compressParallel(String zipPath) で、ファイル毎の圧縮を並列に実行する。
+ * エントリの順序は compress と同じ走査順である。
+ * （差分圧縮）
+ * Collection&lt;String&gt; compressIncremental(String zipPath) で、前回から変更の無いファイルは再圧縮しない。
  * @since 1.1
  *  </PRE>
  */
@@ -56,30 +63,7 @@ public interface ZipProcessor extends Supplier<Collection<FileCollection>>{
 	 * @return ZIPエントリ名 Collection
 	 */
 	public default Collection<String> compress(String zipPath){
-		Collection<String> entries = new ArrayList<>();
-		try(ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(zipPath)))){
-			get().forEach(fc->{
-				String prefix = fc.getFile().getParentFile().getAbsolutePath().replaceAll("\\\\", "/");
-				fc.scan(ThrowableConsumer.of(f->{
-					String entryName = f.getAbsolutePath().replaceAll("\\\\", "/").replaceFirst(prefix, "");
-					ZipEntry entry = new ZipEntry(f.isDirectory() ? entryName + "/" : entryName);
-					entries.add(entry.getName().charAt(0)=='/' ? entry.getName().substring(1) : entry.getName());
-					zos.putNextEntry(entry);
-					if (f.isFile()){
-						try(FileInputStream fis = new FileInputStream(f); BufferedInputStream bis = new BufferedInputStream(fis)){
-							int size = 0;
-							byte[] buf = new byte[1024];
-							while((size = bis.read(buf)) > 0){
-								zos.write(buf, 0, size);
-							}
-						}
-					}
-				}));
-			});
-		}catch(IOException ex){
-			throw new RuntimeException(ex);
-		}
-		return entries;
+		return compress(zipPath, f->true);
 	}
 	/**
 	 * zip 圧縮実行（対象制限）.
@@ -91,83 +75,196 @@ public interface ZipProcessor extends Supplier<Collection<FileCollection>>{
 	 * @return ZIPエントリ名 Collection
 	 */
 	public default Collection<String> compress(String zipPath, Predicate<File> p){
-		Collection<String> entries = new ArrayList<>();
-		try(ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(zipPath)))){
-			get().forEach(fc->{
-				String prefix = fc.getFile().getParentFile().getAbsolutePath().replaceAll("\\\\", "/");
-				fc.scan(p, ThrowableConsumer.of(f->{
-					String entryName = f.getAbsolutePath().replaceAll("\\\\", "/").replaceFirst(prefix, "");
-					ZipEntry entry = new ZipEntry(f.isDirectory() ? entryName + "/" : entryName);
-					entries.add(entry.getName().charAt(0)=='/' ? entry.getName().substring(1) : entry.getName());
-					zos.putNextEntry(entry);
-					if (f.isFile()){
-						try(FileInputStream fis = new FileInputStream(f); BufferedInputStream bis = new BufferedInputStream(fis)){
-							int size = 0;
-							byte[] buf = new byte[1024];
-							while((size = bis.read(buf)) > 0){
-								zos.write(buf, 0, size);
-							}
-						}
-					}
-				}));
-			});
+		try(FileOutputStream fos = new FileOutputStream(new File(zipPath))){
+			return compress(fos, p, ZipEntryListener.none());
 		}catch(IOException ex){
 			throw new RuntimeException(ex);
 		}
-		return entries;
+	}
+	/**
+	 * ZIP 圧縮実行（OutputStream 出力）.
+	 * <PRE>
+	 * ファイルに作成せずに OutputStream に直接書き込む。１エントリずつ固定長のバッファで処理するので、
+	 * HTTP応答などに ZIP 全体を保持せずに送信できる。out は close しない。
+	 * </PRE>
+	 * @param out 出力先 OutputStream
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compress(OutputStream out){
+		return compress(out, f->true, ZipEntryListener.none());
+	}
+	/**
+	 * ZIP 圧縮実行（OutputStream 出力、対象制限、エントリ完了通知）.
+	 * @param out 出力先 OutputStream、close しない。
+	 * @param p Predicate&lt;File&gt;制限規則の付与
+	 * @param listener エントリ毎の完了通知
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compress(OutputStream out, Predicate<File> p, ZipEntryListener listener){
+		return ZipStreams.compress(get(), out, p, listener);
+	}
+	/**
+	 * ZIP 圧縮実行（WritableByteChannel 出力、対象制限、エントリ完了通知）.
+	 * @param channel 出力先 WritableByteChannel、close しない。
+	 * @param p Predicate&lt;File&gt;制限規則の付与
+	 * @param listener エントリ毎の完了通知
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compress(WritableByteChannel channel, Predicate<File> p, ZipEntryListener listener){
+		return ZipStreams.compress(get(), Channels.newOutputStream(channel), p, listener);
+	}
+	/**
+	 * ZIP 並列圧縮実行.
+	 * <PRE>
+	 * ファイル毎の deflate 圧縮を ForkJoinPool.commonPool() で並列に実行し、走査順に ZIPファイルに書き込む。
+	 * compress(String) との違いは以下のとおり。
+	 *   ・エントリ名の先頭に "/" を付けない。
+	 *   ・エントリの更新時刻はファイルの更新時刻
+	 * </PRE>
+	 * @param zipPath 作成する ZIPファイルパス、 *.zip
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compressParallel(String zipPath){
+		return compressParallel(zipPath, f->true, ForkJoinPool.commonPool());
+	}
+	/**
+	 * ZIP 並列圧縮実行（対象制限）.
+	 * @param zipPath 作成する ZIPファイルパス、 *.zip
+	 * @param p Predicate&lt;File&gt;制限規則の付与
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compressParallel(String zipPath, Predicate<File> p){
+		return compressParallel(zipPath, p, ForkJoinPool.commonPool());
+	}
+	/**
+	 * ZIP 並列圧縮実行（対象制限、ForkJoinPool 指定）.
+	 * <PRE>
+	 * 4MB 以下のファイルの圧縮結果はメモリ、超えるファイルは一時ファイルに保持して書込み順を待つ。
+	 * 書込み待ちの圧縮結果は pool の並列数の２倍までである。
+	 * </PRE>
+	 * @param zipPath 作成する ZIPファイルパス、 *.zip
+	 * @param p Predicate&lt;File&gt;制限規則の付与
+	 * @param pool 圧縮を実行する ForkJoinPool
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compressParallel(String zipPath, Predicate<File> p, ForkJoinPool pool){
+		return ParallelZip.compress(get(), zipPath, p, pool);
+	}
+	/**
+	 * ZIP 差分圧縮実行.
+	 * <PRE>
+	 * 同じ対象を繰り返し圧縮する場合に、前回から変更の無いファイルは前回の ZIP の圧縮データを複写し、
+	 * 追加、変更されたファイルだけを圧縮する。処理時間は対象全体ではなく変更量に比例する。
+	 * ZIPファイルと同じ場所に zipPath + ".manifest" のマニフェストを作成し、
+	 * エントリ名、サイズ、更新時刻、CRC-32 を記録する。
+	 * サイズと更新時刻がマニフェストと一致するファイルを変更無しとし、更新時刻だけが異なる場合は
+	 * CRC-32 を比較する。マニフェストが無い、または ZIP が読めない場合は全て圧縮する。
+	 * エントリ名、順序は compressParallel と同じである。
+	 * </PRE>
+	 * @param zipPath 作成する ZIPファイルパス、 *.zip
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compressIncremental(String zipPath){
+		return compressIncremental(zipPath, f->true, ForkJoinPool.commonPool());
+	}
+	/**
+	 * ZIP 差分圧縮実行（対象制限、ForkJoinPool 指定）.
+	 * @param zipPath 作成する ZIPファイルパス、 *.zip
+	 * @param p Predicate&lt;File&gt;制限規則の付与
+	 * @param pool 圧縮を実行する ForkJoinPool
+	 * @return ZIPエントリ名 Collection
+	 */
+	public default Collection<String> compressIncremental(String zipPath, Predicate<File> p, ForkJoinPool pool){
+		return IncrementalZip.compress(get(), zipPath, p, pool);
 	}
 	/**
 	 * ZIPファイル展開.
+	 * <PRE>
+	 * ZipFile のセントラルディレクトリからエントリを取得して展開する。
+	 * 展開先ディレクトリ外を指すエントリ名（"../" を含む等）は RuntimeException とする。
+	 * </PRE>
 	 * @param zipPath ZIPファイルパス
 	 * @param dirPath 展開先ディレクトリパス
 	 * @return Set&lt;String&gt; ZIPエントリ名 Collection
 	 */
 	public static Set<String> decompress(String zipPath, String dirPath){
-		TreeSet<String> entries = new TreeSet<>();
-		// 展開
-		try(ZipInputStream zin = new ZipInputStream(new FileInputStream(zipPath))){
-			ZipEntry entry;
-			while((entry = zin.getNextEntry()) != null){
-				entries.add(entry.getName());
-				if (entry.isDirectory()){
-					String s = entry.getName();
-					new File(dirPath + "/" + s.substring(0, s.length()-1)).mkdir();
-				}else{
-					String[] d = entry.getName().split("/");
-					String dir = dirPath;
-					for(int i=0;i < d.length-1;i++){
-						dir += "/" + d[i];
-						new File(dir).mkdir();
-					}
-					try(FileOutputStream fos = new FileOutputStream(dirPath+"/"+entry.getName()); BufferedOutputStream bos = new BufferedOutputStream(fos)){
-						int size = 0;
-						byte[] buf = new byte[1024];
-						while((size = zin.read(buf)) > 0){
-							bos.write(buf, 0, size);
-						}
-					}
-				}
-			}
-		}catch(IOException ex){
-			throw new RuntimeException(ex.getMessage(), ex);
-		}
-		return entries;
+		return ZipExtractor.extract(zipPath, dirPath, n->true, null);
+	}
+	/**
+	 * ZIPファイル展開（対象制限）.
+	 * <PRE>
+	 * Predicate&lt;String&gt; でエントリ名を判定し、一致したエントリだけを展開する。
+	 * 一致しないエントリのデータは読まない。
+	 * 例）
+	 *    ZipProcessor.decompress(zipPath, dirPath, n->n.startsWith("logs/2024/"));
+	 * </PRE>
+	 * @param zipPath ZIPファイルパス
+	 * @param dirPath 展開先ディレクトリパス
+	 * @param p 展開するエントリ名の Predicate&lt;String&gt;
+	 * @return Set&lt;String&gt; 展開した ZIPエントリ名 Collection
+	 */
+	public static Set<String> decompress(String zipPath, String dirPath, Predicate<String> p){
+		return ZipExtractor.extract(zipPath, dirPath, p, null);
+	}
+	/**
+	 * ZIPファイル並列展開.
+	 * <PRE>
+	 * ディレクトリ作成後、ファイルエントリの展開を ForkJoinPool.commonPool() で並列に実行する。
+	 * </PRE>
+	 * @param zipPath ZIPファイルパス
+	 * @param dirPath 展開先ディレクトリパス
+	 * @return Set&lt;String&gt; ZIPエントリ名 Collection
+	 */
+	public static Set<String> decompressParallel(String zipPath, String dirPath){
+		return ZipExtractor.extract(zipPath, dirPath, n->true, ForkJoinPool.commonPool());
+	}
+	/**
+	 * ZIPファイル並列展開（対象制限、ForkJoinPool 指定）.
+	 * @param zipPath ZIPファイルパス
+	 * @param dirPath 展開先ディレクトリパス
+	 * @param p 展開するエントリ名の Predicate&lt;String&gt;
+	 * @param pool 展開を実行する ForkJoinPool
+	 * @return Set&lt;String&gt; 展開した ZIPエントリ名 Collection
+	 */
+	public static Set<String> decompressParallel(String zipPath, String dirPath, Predicate<String> p, ForkJoinPool pool){
+		return ZipExtractor.extract(zipPath, dirPath, p, pool);
+	}
+	/**
+	 * ZIP 展開（InputStream 入力）.
+	 * <PRE>
+	 * ZIP を InputStream から順に読み、エントリ毎に sink を呼び出す。in は close しない。
+	 * sink に渡す InputStream はエントリのデータであり、読み残しは読み捨てる。
+	 * 例）
+	 *    ZipProcessor.decompress(request.getInputStream(), (entry, in)->{
+	 *        if (!entry.isDirectory()) storage.put(entry.getName(), in);
+	 *    });
+	 * </PRE>
+	 * @param in ZIP の InputStream
+	 * @param sink ZipEntry と、エントリのデータの InputStream を受け取る ThrowableBiConsumer
+	 * @return Set&lt;String&gt; ZIPエントリ名 Collection
+	 */
+	public static Set<String> decompress(InputStream in, ThrowableBiConsumer<ZipEntry, InputStream> sink){
+		return ZipStreams.decompress(in, sink, ZipEntryListener.none());
+	}
+	/**
+	 * ZIP 展開（InputStream 入力、エントリ完了通知）.
+	 * @param in ZIP の InputStream、close しない。
+	 * @param sink ZipEntry と、エントリのデータの InputStream を受け取る ThrowableBiConsumer
+	 * @param listener エントリ毎の完了通知
+	 * @return Set&lt;String&gt; ZIPエントリ名 Collection
+	 */
+	public static Set<String> decompress(InputStream in, ThrowableBiConsumer<ZipEntry, InputStream> sink, ZipEntryListener listener){
+		return ZipStreams.decompress(in, sink, listener);
 	}
 	/**
 	 * エントリ名コレクション.
+	 * <PRE>
+	 * ZipFile のセントラルディレクトリから取得するので、エントリのデータは読まない。
+	 * </PRE>
 	 * @param zipPath ZIPファイルパス、 *.zip
 	 * @return Set&lt;String&gt; ZIPエントリ名 Collection
 	 */
 	public static Set<String> viewPath(String zipPath){
-		TreeSet<String> entries = new TreeSet<>();
-		try(ZipInputStream zin = new ZipInputStream(new FileInputStream(zipPath))){
-			ZipEntry entry;
-			while((entry = zin.getNextEntry()) != null){
-				entries.add(entry.getName());
-			}
-		}catch(IOException ex){
-			throw new RuntimeException(ex.getMessage(), ex);
-		}
-		return entries;
+		return ZipExtractor.names(zipPath);
 	}
 }
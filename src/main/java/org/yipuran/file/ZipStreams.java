@@ -0,0 +1,159 @@
+package org.yipuran.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.yipuran.function.ThrowableBiConsumer;
+import org.yipuran.function.ThrowableConsumer;
+
+/**
+ * ストリームへの ZIP 圧縮、ストリームからの展開.
+ * <PRE>
+ * ZipProcessor#compress / ZipProcessor#decompress の OutputStream / InputStream 版の実装。
+ * ファイルは固定長のバッファで１エントリずつ処理するので、ZIP 全体をメモリやディスクに保持しない。
+ * 指定された OutputStream / InputStream は close しない。
+ * </PRE>
+ */
+final class ZipStreams{
+	private static final int BUFFER_SIZE = 65536;
+
+	private ZipStreams(){}
+
+	/**
+	 * 圧縮.
+	 * @param collections 圧縮対象
+	 * @param out 出力先、close しない。
+	 * @param p 対象制限 Predicate
+	 * @param listener エントリ毎の完了通知
+	 * @return ZIPエントリ名 Collection
+	 */
+	static Collection<String> compress(Collection<FileCollection> collections, OutputStream out, Predicate<File> p, ZipEntryListener listener){
+		Collection<String> entries = new ArrayList<>();
+		CountingOutputStream cout = new CountingOutputStream(out);
+		byte[] buf = new byte[BUFFER_SIZE];
+		try(ZipOutputStream zos = new ZipOutputStream(cout)){
+			collections.forEach(fc->{
+				String prefix = fc.getFile().getAbsoluteFile().getParentFile().getAbsolutePath().replaceAll("\\\\", "/");
+				fc.scan(p, ThrowableConsumer.of(f->{
+					long start = System.nanoTime();
+					String entryName = f.getAbsolutePath().replaceAll("\\\\", "/").substring(prefix.length());
+					ZipEntry entry = new ZipEntry(f.isDirectory() ? entryName + "/" : entryName);
+					entries.add(entry.getName().charAt(0)=='/' ? entry.getName().substring(1) : entry.getName());
+					zos.putNextEntry(entry);
+					if (f.isFile()){
+						try(InputStream in = new FileInputStream(f)){
+							int size;
+							while((size = in.read(buf)) > 0){
+								zos.write(buf, 0, size);
+							}
+						}
+					}
+					zos.closeEntry();
+					listener.completed(entry, cout.count, System.nanoTime() - start);
+				}));
+			});
+		}catch(IOException ex){
+			throw new RuntimeException(ex);
+		}
+		return entries;
+	}
+	/**
+	 * 展開.
+	 * @param in ZIP 入力、close しない。
+	 * @param sink エントリと、エントリのデータを読む InputStream を受け取る。InputStream の close は不要
+	 * @param listener エントリ毎の完了通知
+	 * @return ZIPエントリ名 Set
+	 */
+	static Set<String> decompress(InputStream in, ThrowableBiConsumer<ZipEntry, InputStream> sink, ZipEntryListener listener){
+		TreeSet<String> entries = new TreeSet<>();
+		CountingInputStream cin = new CountingInputStream(in);
+		try(ZipInputStream zin = new ZipInputStream(cin)){
+			InputStream entryIn = new FilterInputStream(zin){
+				@Override
+				public void close(){
+				}
+			};
+			ZipEntry entry;
+			while((entry = zin.getNextEntry()) != null){
+				long start = System.nanoTime();
+				entries.add(entry.getName());
+				sink.accept(entry, entryIn);
+				// 読み残しを読み捨てて、データディスクリプタのサイズ、CRC を entry に反映する。
+				zin.closeEntry();
+				listener.completed(entry, cin.count, System.nanoTime() - start);
+			}
+		}catch(RuntimeException ex){
+			throw ex;
+		}catch(Exception ex){
+			throw new RuntimeException(ex.getMessage(), ex);
+		}
+		return entries;
+	}
+
+	/** 書込みバイト数を数え、close で close しない OutputStream */
+	private static final class CountingOutputStream extends FilterOutputStream{
+		long count;
+		CountingOutputStream(OutputStream out){
+			super(out);
+		}
+		@Override
+		public void write(int b) throws IOException{
+			out.write(b);
+			count++;
+		}
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			out.write(b, off, len);
+			count += len;
+		}
+		@Override
+		public void close() throws IOException{
+			out.flush();
+		}
+	}
+	/** 読込みバイト数を数え、close で close しない InputStream */
+	private static final class CountingInputStream extends FilterInputStream{
+		long count;
+		CountingInputStream(InputStream in){
+			super(in);
+		}
+		@Override
+		public int read() throws IOException{
+			int b = in.read();
+			if (b >= 0) count++;
+			return b;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			int n = in.read(b, off, len);
+			if (n > 0) count += n;
+			return n;
+		}
+		@Override
+		public long skip(long n) throws IOException{
+			long s = in.skip(n);
+			count += s;
+			return s;
+		}
+		@Override
+		public boolean markSupported(){
+			return false;
+		}
+		@Override
+		public void close(){
+		}
+	}
+}
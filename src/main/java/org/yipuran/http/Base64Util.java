@@ -1,13 +1,38 @@
 package org.yipuran.http;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * BASE64変換ユーティリティ.
  * <pre>
  * BASE64 エンコード処理とデコード処理を提供します。
  *
+ * 大きなデータは、全体をメモリに展開しないストリーミング処理を使用する。
+ *   encoder(OutputStream) … 書き込んだバイト列を BASE64 にして出力する OutputStream
+ *   decoder(InputStream)  … BASE64 を読み込んでデコードしたバイト列を返す InputStream（空白、改行は無視）
+ *   encode(ByteBuffer, ByteBuffer, boolean) / decode(ByteBuffer, ByteBuffer)
+ *                         … 呼出し側が用意した ByteBuffer 間で変換する。内部でメモリを確保しない。
+ *
+ * try(OutputStream out = Base64Util.encoder(new FileOutputStream(dest))){
+ *    Files.copy(src, out);
+ * }
  * </pre>
  */
 public final class Base64Util{
+   private static final byte[] ENCODE_TABLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+   private static final byte[] DECODE_TABLE = new byte[256];
+   private static final byte PAD = '=';
+   static{
+      Arrays.fill(DECODE_TABLE, (byte)-1);
+      for(int i=0; i < ENCODE_TABLE.length; i++){
+         DECODE_TABLE[ENCODE_TABLE[i]] = (byte)i;
+      }
+   }
    private Base64Util(){}
    /**
     * BASE64エンコード処理
@@ -115,4 +140,231 @@ public final class Base64Util{
       if (c == '=') return 0;
       return -1;
    }
+   /**
+    * BASE64エンコード後の長さ.
+    * @param length 変換対象バイト数
+    * @return エンコード後のバイト数（パディング含む）
+    */
+   public static int encodedLength(int length){
+      return (length + 2) / 3 * 4;
+   }
+   /**
+    * ByteBuffer 間の BASE64 エンコード処理.
+    * <pre>
+    * src の残りを 3バイト単位で dst に収まるだけエンコードし、src、dst の position を進める。
+    * endOfInput = true の場合は、3バイトに満たない末尾もパディングを付けてエンコードする。
+    * endOfInput = false で 3バイトに満たない末尾は src に残るので、次のデータと合わせて再度呼び出す。
+    * 内部でメモリを確保しない。
+    * </pre>
+    * @param src 変換対象
+    * @param dst 変換結果の格納先
+    * @param endOfInput true = src の残りが入力の最後
+    * @return dst に書き込んだバイト数
+    */
+   public static int encode(ByteBuffer src, ByteBuffer dst, boolean endOfInput){
+      int written = 0;
+      while(src.remaining() >= 3 && dst.remaining() >= 4){
+         int block = (src.get() & 0xff) << 16 | (src.get() & 0xff) << 8 | (src.get() & 0xff);
+         dst.put(ENCODE_TABLE[block >>> 18 & 0x3f]);
+         dst.put(ENCODE_TABLE[block >>> 12 & 0x3f]);
+         dst.put(ENCODE_TABLE[block >>> 6 & 0x3f]);
+         dst.put(ENCODE_TABLE[block & 0x3f]);
+         written += 4;
+      }
+      if (endOfInput && src.remaining() > 0 && src.remaining() < 3 && dst.remaining() >= 4){
+         int slack = src.remaining();
+         int block = (src.get() & 0xff) << 16 | (slack==2 ? (src.get() & 0xff) << 8 : 0);
+         dst.put(ENCODE_TABLE[block >>> 18 & 0x3f]);
+         dst.put(ENCODE_TABLE[block >>> 12 & 0x3f]);
+         dst.put(slack==2 ? ENCODE_TABLE[block >>> 6 & 0x3f] : PAD);
+         dst.put(PAD);
+         written += 4;
+      }
+      return written;
+   }
+   /**
+    * ByteBuffer 間の BASE64 デコード処理.
+    * <pre>
+    * src の残りを 4文字単位で dst に収まるだけデコードし、src、dst の position を進める。
+    * 4文字に満たない末尾は src に残るので、次のデータと合わせて再度呼び出す。
+    * パディング '=' を含む4文字は入力の最後でなければならない。
+    * 内部でメモリを確保しない。
+    * </pre>
+    * @param src BASE64形式のバイト列、空白、改行を含んではならない。
+    * @param dst デコード結果の格納先
+    * @return dst に書き込んだバイト数
+    * @throws IllegalArgumentException BASE64形式ではない文字を含む、'=' の後に '=' 以外の文字、パディング後にデータがある
+    */
+   public static int decode(ByteBuffer src, ByteBuffer dst){
+      int written = 0;
+      while(src.remaining() >= 4){
+         int p = src.position();
+         byte c2 = src.get(p + 2);
+         byte c3 = src.get(p + 3);
+         int n = c2==PAD ? 1 : c3==PAD ? 2 : 3;
+         if (n==1 && c3 != PAD) throw new IllegalArgumentException("Illegal base64 padding : " + (char)(c3 & 0xff) + " after =");
+         if (n < 3 && src.remaining() > 4) throw new IllegalArgumentException("Illegal base64 data after padding");
+         if (dst.remaining() < n) break;
+         int block = decodeValue(src.get()) << 18 | decodeValue(src.get()) << 12;
+         src.get();
+         src.get();
+         if (n > 1) block |= decodeValue(c2) << 6;
+         if (n > 2) block |= decodeValue(c3);
+         dst.put((byte)(block >>> 16));
+         if (n > 1) dst.put((byte)(block >>> 8));
+         if (n > 2) dst.put((byte)block);
+         written += n;
+      }
+      return written;
+   }
+   /**
+    * BASE64エンコード OutputStream.
+    * <pre>
+    * 書き込んだバイト列を BASE64 にして out に出力する。改行は出力しない。
+    * close() で末尾をパディングを付けて出力し、out を close する。
+    * </pre>
+    * @param out 出力先
+    * @return OutputStream
+    */
+   public static OutputStream encoder(OutputStream out){
+      return new Base64OutputStream(out);
+   }
+   /**
+    * BASE64デコード InputStream.
+    * <pre>
+    * in から BASE64 を読み込み、デコードしたバイト列を返す。空白、改行は無視する。
+    * </pre>
+    * @param in BASE64形式の入力
+    * @return InputStream
+    */
+   public static InputStream decoder(InputStream in){
+      return new Base64InputStream(in);
+   }
+   private static int decodeValue(byte c){
+      int v = DECODE_TABLE[c & 0xff];
+      if (v < 0) throw new IllegalArgumentException("Illegal base64 character : " + (char)(c & 0xff));
+      return v;
+   }
+
+   /** BASE64エンコード OutputStream */
+   private static final class Base64OutputStream extends FilterOutputStream{
+      private final byte[] in = new byte[3 * 1024];
+      private final byte[] buf = new byte[4 * 1024];
+      private final ByteBuffer src = ByteBuffer.wrap(in);
+      private final ByteBuffer dst = ByteBuffer.wrap(buf);
+      private boolean closed;
+      Base64OutputStream(OutputStream out){
+         super(out);
+      }
+      @Override
+      public void write(int b) throws IOException{
+         if (closed) throw new IOException("Stream closed");
+         if (!src.hasRemaining()) drain(false);
+         src.put((byte)b);
+      }
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException{
+         if (closed) throw new IOException("Stream closed");
+         while(len > 0){
+            if (!src.hasRemaining()) drain(false);
+            int n = Math.min(len, src.remaining());
+            src.put(b, off, n);
+            off += n;
+            len -= n;
+         }
+      }
+      @Override
+      public void flush() throws IOException{
+         drain(false);
+         out.flush();
+      }
+      @Override
+      public void close() throws IOException{
+         if (closed) return;
+         closed = true;
+         try{
+            drain(true);
+         }finally{
+            out.close();
+         }
+      }
+      private void drain(boolean endOfInput) throws IOException{
+         src.flip();
+         encode(src, dst, endOfInput);
+         src.compact();
+         if (dst.position() > 0){
+            out.write(buf, 0, dst.position());
+            dst.clear();
+         }
+      }
+   }
+   /** BASE64デコード InputStream */
+   private static final class Base64InputStream extends InputStream{
+      private final InputStream in;
+      private final byte[] raw = new byte[4 * 1024];
+      private final byte[] chars = new byte[4 * 1024];
+      private final byte[] decoded = new byte[3 * 1024];
+      private final ByteBuffer src = ByteBuffer.wrap(chars);
+      private final ByteBuffer dst = ByteBuffer.wrap(decoded);
+      private boolean eof;
+      /** パディング付きの4文字をデコード済 */
+      private boolean padded;
+      Base64InputStream(InputStream in){
+         this.in = in;
+         dst.flip();
+      }
+      @Override
+      public int read() throws IOException{
+         if (!fill()) return -1;
+         return dst.get() & 0xff;
+      }
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException{
+         if (len==0) return 0;
+         if (!fill()) return -1;
+         int n = Math.min(len, dst.remaining());
+         dst.get(b, off, n);
+         return n;
+      }
+      @Override
+      public int available() throws IOException{
+         return dst.remaining();
+      }
+      @Override
+      public void close() throws IOException{
+         in.close();
+      }
+      private boolean fill() throws IOException{
+         while(!dst.hasRemaining()){
+            if (eof && src.position() < 4){
+               if (src.position() > 0) throw new IOException("Truncated base64 input");
+               return false;
+            }
+            if (!eof){
+               int n = in.read(raw, 0, Math.min(raw.length, src.remaining()));
+               if (n < 0){
+                  eof = true;
+               }else{
+                  for(int i=0; i < n; i++){
+                     byte c = raw[i];
+                     if (c != ' ' && c != '\r' && c != '\n' && c != '\t') src.put(c);
+                  }
+               }
+            }
+            // 前回の読込でパディングまでデコード済なら、以降のデータは不正
+            if (padded && src.position() > 0) throw new IOException("Illegal base64 data after padding");
+            src.flip();
+            dst.clear();
+            try{
+               // dst は src 全体のデコード結果が収まるので、3 の倍数でなければ最後の4文字がパディング付き
+               if (decode(src, dst) % 3 != 0) padded = true;
+            }catch(IllegalArgumentException e){
+               throw new IOException(e.getMessage(), e);
+            }
+            dst.flip();
+            src.compact();
+         }
+         return true;
+      }
+   }
 }
@@ -0,0 +1,21 @@
+package org.yipuran.http;
+
+import java.io.IOException;
+
+/**
+ * サーキットブレーカー遮断中.
+ * <PRE>
+ * HttpPolicy#circuitBreaker(int, long) の指定で、連続して失敗したホストへの要求を送信せずに中断した場合に発生する。
+ * HttpClient#execute では RuntimeException の cause として通知される。
+ * </PRE>
+ */
+public class CircuitOpenException extends IOException{
+	private static final long serialVersionUID = 1L;
+	/**
+	 * コンストラクタ.
+	 * @param host 遮断中のホスト（scheme://host:port）
+	 */
+	public CircuitOpenException(String host){
+		super("circuit open : " + host);
+	}
+}
@@ -0,0 +1,50 @@
+package org.yipuran.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP要求１回分の応答.
+ * <PRE>
+ * HttpClient#execute が HttpURLConnection 実行と HttpConnectionPool 実行を
+ * 同じ手順で処理するための package 内インタフェース。
+ * close() で応答本体を読み捨てて接続を解放する。
+ * </PRE>
+ */
+interface ClientExchange extends Closeable{
+	/**
+	 * HTTPステータスコード.
+	 * @return HTTPステータスコード
+	 * @throws IOException 受信エラー
+	 */
+	int status() throws IOException;
+	/**
+	 * Content-Type ヘッダ値.
+	 * @return Content-Type、無ければ null
+	 */
+	String contentType();
+	/**
+	 * HTTP応答ヘッダ.
+	 * @return HttpURLConnection#getHeaderFields() と同じ形式の Map
+	 */
+	Map<String, List<String>> headerFields();
+	/**
+	 * HTTP応答ヘッダ値.
+	 * @param name ヘッダ名、大文字小文字は区別しない。
+	 * @return ヘッダ値、無ければ null
+	 */
+	default String header(String name){
+		return headerFields().entrySet().stream().filter(e->name.equalsIgnoreCase(e.getKey()))
+			.map(e->String.join(",", e.getValue())).findFirst().orElse(null);
+	}
+	/**
+	 * 応答本体.
+	 * HttpURLConnection#getInputStream() と同様に、ステータスが 400 以上の場合は IOException になる。
+	 * @return InputStream
+	 * @throws IOException 受信エラー
+	 */
+	InputStream body() throws IOException;
+}
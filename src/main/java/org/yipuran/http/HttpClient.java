@@ -1,14 +1,21 @@
 package org.yipuran.http;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import javax.net.ssl.SSLSocketFactory;
+
 /**
  * HttpClient.
  * HttpClientBuilder で HttpClientインスタンスを生成する。
@@ -45,6 +52,15 @@ import java.util.function.Consumer;
  * });
  *
  * 注意すべきは、１つのインスタンスで併用はできない。
+ *
+ * HttpClientBuilder#connectionPool(HttpConnectionPool) を指定すると、HttpURLConnection の代わりに
+ * HttpConnectionPool の Keep-Alive ソケットで送受信する。
+ *
+ * HttpClientBuilder#chunked(int) を指定すると送信データを chunked 転送で逐次送信する。（HttpStreams 参照）
+ * HttpClientBuilder#policy(HttpPolicy) で、タイムアウト、リトライ、サーキットブレーカーを指定できる。
+ * HttpClientBuilder#compression() で、gzip / deflate 圧縮された応答を展開して InputStream Consumer に渡す。
+ * HttpClientBuilder#metrics(HttpMetricsListener) で、接続時間、応答時間、送受信バイト数などを計測できる。（HttpMetrics 参照）
+ * executeAsync は execute を HttpClientBuilder#executor(Executor) の Executor で実行し、CompletableFuture を返す。
  *  </PRE>
  */
 public class HttpClient{
@@ -52,6 +68,19 @@ public class HttpClient{
 	private String method;
 	private String contentType;
 	private Map<String, String> headerOptions;
+	private final HttpConnectionPool pool;
+	/** executeAsync 実行 Executor、null は HttpExecutors.defaultExecutor() */
+	private final Executor executor;
+	/** chunked 転送のチャンクサイズ、0 は送信データ全体を送信 */
+	private final int chunkSize;
+	/** タイムアウト、リトライ規則、null は規則無し */
+	private final HttpPolicy policy;
+	/** Accept-Encoding を送信して応答を展開する。 */
+	private final boolean decompress;
+	/** 送信データを gzip 圧縮する。 */
+	private final boolean gzipRequest;
+	/** 計測通知、null は通知しない。 */
+	private final HttpMetricsListener metrics;
 
 	/**
 	 * コンストラクタ.
@@ -61,49 +90,243 @@ public class HttpClient{
 	 * @param contentType Content-Type をHTTPヘッダにつける場合に、null 以外を指定
 	 */
 	protected HttpClient(URL url, String method, String contentType, Map<String, String> headerOptions){
+		this(url, method, contentType, headerOptions, null);
+	}
+	/**
+	 * コンストラクタ（コネクションプール指定）.
+	 * @param url HTTP先URL
+	 * @param method HTTPメソッド
+	 * @param contentType Content-Type をHTTPヘッダにつける場合に、null 以外を指定
+	 * @param headerOptions 追加するHTTPヘッダ
+	 * @param pool HttpConnectionPool、null の場合は HttpURLConnection で送受信する。
+	 */
+	protected HttpClient(URL url, String method, String contentType, Map<String, String> headerOptions, HttpConnectionPool pool){
+		this(url, method, contentType, headerOptions, pool, null, 0, null, false, false, null);
+	}
+	/**
+	 * コンストラクタ（Builder の全指定）.
+	 * @param url HTTP先URL
+	 * @param method HTTPメソッド
+	 * @param contentType Content-Type をHTTPヘッダにつける場合に、null 以外を指定
+	 * @param headerOptions 追加するHTTPヘッダ
+	 * @param pool HttpConnectionPool、null の場合は HttpURLConnection で送受信する。
+	 * @param executor executeAsync 実行 Executor、null は HttpExecutors.defaultExecutor()
+	 * @param chunkSize chunked 転送のチャンクサイズ、0 は送信データ全体を送信
+	 * @param policy タイムアウト、リトライ規則、null は規則無し
+	 * @param decompress true = Accept-Encoding を送信して応答を展開する。
+	 * @param gzipRequest true = 送信データを gzip 圧縮する。
+	 * @param metrics 計測通知、null は通知しない。
+	 */
+	HttpClient(URL url, String method, String contentType, Map<String, String> headerOptions, HttpConnectionPool pool
+			, Executor executor, int chunkSize, HttpPolicy policy, boolean decompress, boolean gzipRequest, HttpMetricsListener metrics){
 		this.url = url;
 		this.method = method;
 		this.contentType = contentType;
 		this.headerOptions = headerOptions;
+		this.pool = pool;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+		this.policy = policy;
+		this.decompress = decompress;
+		this.gzipRequest = gzipRequest;
+		this.metrics = metrics;
 	}
 	/**
 	 * HTTP要求送受信.
 	 * @param outconsumer 送信 OutputStream Consumer
 	 * @param headconsumer HTTP通信結果、受け取ったHTTP ContentType、HTTPヘッダを読取り処理する BiConsumer
 	 * @param inconsumer 要求した結果の受け取り InputStream を指定する Consumer
-	 * @return 要求した結果を受信したテキスト文字列。受信失敗は、null を返す。
+	 * @return HTTPステータスコード
 	 */
 	public int execute(Consumer<OutputStream> outconsumer, BiConsumer<String, Map<String, List<String>>> headconsumer, Consumer<InputStream> inconsumer){
-		int status;
-		try{
-			HttpURLConnection uc = (HttpURLConnection)url.openConnection();
-			/* HTTPリクエストヘッダの設定 */
-			uc.setDoOutput(true);              // こちらからのデータ送信を可能とする
-			uc.setReadTimeout(0);              // 読み取りタイムアウト値をミリ秒単位で設定(0は無限)
-			uc.setRequestMethod(method);       // URL 要求のメソッドを設定
-			if (contentType != null) uc.setRequestProperty("Content-Type", contentType);
-			if (headerOptions.size() > 0) {
-				headerOptions.entrySet().stream().forEach(e->{
-					uc.setRequestProperty(e.getKey(), e.getValue());
-				});
-			}
-			// コネクション確立→送信
-			uc.connect();
-
-			try(OutputStream out = uc.getOutputStream()){
-				outconsumer.accept(out);
-				out.flush();
+		HttpPolicy p = policy==null ? HttpPolicy.DEFAULT : policy;
+		try(RequestContext ctx = new RequestContext(p, metrics, metrics==null ? null : HttpConnectionPool.hostKey(url))){
+			for(int attempt=0;;attempt++){
+				boolean trial = p.acquire(url);
+				ctx.start();
+				boolean recorded = false;
+				boolean delivered = false;
+				try(ClientExchange exchange = open(outconsumer, ctx)){
+					int status = exchange.status();
+					ctx.responded(status);
+					p.record(url, status < 500);
+					recorded = true;
+					if (p.isRetryStatus(status) && p.canRetry(method, attempt) && ctx.backoff(attempt)){
+						ctx.completed();
+						continue;
+					}
+					delivered = true;
+					checkStatus(status);
+					// Header 戻り値取得
+					headconsumer.accept(exchange.contentType(), exchange.headerFields());
+					// 応答読込
+					if (decompress){
+						try(InputStream in = HttpCompression.decode(exchange.header("Content-Encoding"), ctx.countIn(exchange.body()))){
+							inconsumer.accept(in);
+						}
+					}else{
+						inconsumer.accept(ctx.countIn(exchange.body()));
+					}
+					ctx.completed();
+					return status;
+				}catch(IOException e){
+					ctx.failed(e);
+					if (!recorded) p.record(url, false);
+					if (ctx.isExpired()) throw ctx.timeout();
+					if (!delivered && p.canRetry(method, attempt) && ctx.backoff(attempt)) continue;
+					throw e;
+				}catch(RuntimeException | Error e){
+					ctx.failed(e);
+					// サーキットブレーカーは送受信エラーだけを失敗とし、呼出し側 Consumer の例外は記録しない。
+					if (!recorded){
+						if (isIOFailure(e)){
+							p.record(url, false);
+						}else if(trial){
+							p.abandon(url);
+						}
+					}
+					throw e;
+				}
 			}
-
-			status = uc.getResponseCode();
-
-			// Header 戻り値取得
-			headconsumer.accept(uc.getContentType(), uc.getHeaderFields());
-			// 応答読込
-			inconsumer.accept(uc.getInputStream());
 		}catch(Exception e){
 		   throw new RuntimeException(e);
 		}
-		return status;
+	}
+	/**
+	 * 送受信エラーの RuntimeException か.
+	 * Consumer の中で発生した送受信エラーは UncheckedIOException 等で包まれるので、原因を辿って判定する。
+	 * @param e 例外
+	 * @return true = 原因に IOException を含む
+	 */
+	private static boolean isIOFailure(Throwable e){
+		for(Throwable t=e; t != null; t=t.getCause()){
+			if (t instanceof IOException) return true;
+			if (t.getCause()==t) break;
+		}
+		return false;
+	}
+	/**
+	 * HTTP要求送受信（非同期）.
+	 * <PRE>
+	 * execute と同じ処理を Builder で指定した Executor（未指定は HttpExecutors.defaultExecutor()）で実行する。
+	 * 呼出しスレッドはブロックされない。送受信エラー、Executor の受付拒否は CompletableFuture の例外完了となる。
+	 * </PRE>
+	 * @param outconsumer 送信 OutputStream Consumer
+	 * @param headconsumer HTTP通信結果、受け取ったHTTP ContentType、HTTPヘッダを読取り処理する BiConsumer
+	 * @param inconsumer 要求した結果の受け取り InputStream を指定する Consumer
+	 * @return HTTPステータスコードの CompletableFuture
+	 */
+	public CompletableFuture<Integer> executeAsync(Consumer<OutputStream> outconsumer, BiConsumer<String, Map<String, List<String>>> headconsumer, Consumer<InputStream> inconsumer){
+		try{
+			return CompletableFuture.supplyAsync(()->execute(outconsumer, headconsumer, inconsumer)
+					, executor==null ? HttpExecutors.defaultExecutor() : executor);
+		}catch(RejectedExecutionException e){
+			CompletableFuture<Integer> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		}
+	}
+	/**
+	 * HTTP要求送信.
+	 * @param outconsumer 送信 OutputStream Consumer
+	 * @param ctx 実行状態
+	 * @return ClientExchange
+	 * @throws Exception
+	 */
+	private ClientExchange open(Consumer<OutputStream> outconsumer, RequestContext ctx) throws Exception{
+		// 送信バイト数は gzip 圧縮後の送信路側で計測する。
+		Consumer<OutputStream> sender = ctx.countOut(gzipRequest ? HttpCompression.gzip(outconsumer) : outconsumer);
+		if (pool==null) return openConnection(sender, ctx);
+		return pool.open(url, method, requestHeaders(), sslSocketFactory(), chunkSize, sender, ctx);
+	}
+	/**
+	 * HttpURLConnection による送信.
+	 * @param outconsumer 送信 OutputStream Consumer
+	 * @param ctx 実行状態
+	 * @return ClientExchange
+	 * @throws IOException
+	 */
+	private ClientExchange openConnection(Consumer<OutputStream> outconsumer, RequestContext ctx) throws IOException{
+		HttpURLConnection uc = openConnection(url);
+		ctx.bind(()->uc.disconnect());
+		long start = System.nanoTime();
+		/* HTTPリクエストヘッダの設定 */
+		uc.setDoOutput(true);              // こちらからのデータ送信を可能とする
+		uc.setConnectTimeout(ctx.connectTimeout()); // 接続タイムアウト値をミリ秒単位で設定(0は無限)
+		uc.setReadTimeout(ctx.readTimeout());       // 読み取りタイムアウト値をミリ秒単位で設定(0は無限)
+		uc.setRequestMethod(method);       // URL 要求のメソッドを設定
+		if (chunkSize > 0) uc.setChunkedStreamingMode(chunkSize);
+		requestHeaders().entrySet().stream().forEach(e->{
+			uc.setRequestProperty(e.getKey(), e.getValue());
+		});
+		// コネクション確立→送信
+		uc.connect();
+		ctx.connected(System.nanoTime() - start);
+
+		try(OutputStream out = uc.getOutputStream()){
+			outconsumer.accept(out);
+			out.flush();
+		}
+		return new ClientExchange(){
+			private InputStream in;
+			@Override
+			public int status() throws IOException{
+				return uc.getResponseCode();
+			}
+			@Override
+			public String contentType(){
+				return uc.getContentType();
+			}
+			@Override
+			public Map<String, List<String>> headerFields(){
+				return uc.getHeaderFields();
+			}
+			@Override
+			public InputStream body() throws IOException{
+				in = uc.getInputStream();
+				return in;
+			}
+			@Override
+			public void close() throws IOException{
+				// 読込完了した InputStream の close で HttpURLConnection の Keep-Alive キャッシュに戻る。
+				if (in != null) in.close();
+			}
+		};
+	}
+	/**
+	 * 送信するHTTPヘッダ.
+	 * @return Content-Type と Header property を合わせた Map
+	 */
+	private Map<String, String> requestHeaders(){
+		Map<String, String> map = new LinkedHashMap<>();
+		if (contentType != null) map.put("Content-Type", contentType);
+		if (decompress) map.put("Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
+		if (gzipRequest) map.put("Content-Encoding", "gzip");
+		map.putAll(headerOptions);
+		return map;
+	}
+	/**
+	 * HttpURLConnection 生成.
+	 * @param url HTTP先URL
+	 * @return HttpURLConnection
+	 * @throws IOException
+	 */
+	protected HttpURLConnection openConnection(URL url) throws IOException{
+		return (HttpURLConnection)url.openConnection();
+	}
+	/**
+	 * https 通信で使用する SSLSocketFactory.
+	 * @return SSLSocketFactory、null の場合はデフォルト
+	 * @throws Exception
+	 */
+	protected SSLSocketFactory sslSocketFactory() throws Exception{
+		return null;
+	}
+	/**
+	 * HTTPステータスコード検査.
+	 * HTTPヘッダ、応答読込の前に実行される。
+	 * @param status HTTPステータスコード
+	 */
+	protected void checkStatus(int status){
 	}
 }
@@ -4,6 +4,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * HttpClientを生成するビルダー.
@@ -13,6 +14,13 @@ public final class HttpClientBuilder{
 	private String method;
 	private String contentType;
 	private Map<String, String> headerOptions;
+	private HttpConnectionPool pool;
+	private Executor executor;
+	private int chunkSize;
+	private HttpPolicy policy;
+	private boolean decompress;
+	private boolean gzipRequest;
+	private HttpMetricsListener metrics;
 	/**
 	 * private constructor.
 	 * @param path URL path
@@ -61,6 +69,96 @@ public final class HttpClientBuilder{
 		headerOptions.put(name, value);
 		return this;
 	}
+	/**
+	 * コネクションプール指定.
+	 * <PRE>
+	 * 指定すると HttpURLConnection の代わりに HttpConnectionPool の Keep-Alive ソケットで送受信する。
+	 * HttpConnectionPool は複数の Builder で共有できる。
+	 * </PRE>
+	 * @param pool HttpConnectionPool
+	 * @return HttpClientBuilder
+	 */
+	public HttpClientBuilder connectionPool(HttpConnectionPool pool){
+		this.pool = pool;
+		return this;
+	}
+	/**
+	 * executeAsync 実行 Executor 指定.
+	 * <PRE>
+	 * 未指定の場合は HttpExecutors.defaultExecutor()（仮想スレッドまたは上限付きスレッドプール）
+	 * </PRE>
+	 * @param executor Executor
+	 * @return HttpClientBuilder
+	 */
+	public HttpClientBuilder executor(Executor executor){
+		this.executor = executor;
+		return this;
+	}
+	/**
+	 * chunked 転送指定.
+	 * <PRE>
+	 * 送信データをメモリに保持せず、chunkSize 毎に Transfer-Encoding: chunked で送信する。
+	 * 大きなデータの送信に使用する。（HttpStreams 参照）
+	 * </PRE>
+	 * @param chunkSize チャンクサイズ（バイト）
+	 * @return HttpClientBuilder
+	 */
+	public HttpClientBuilder chunked(int chunkSize){
+		if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive : " + chunkSize);
+		this.chunkSize = chunkSize;
+		return this;
+	}
+	/**
+	 * タイムアウト、リトライ、サーキットブレーカー規則指定.
+	 * <PRE>
+	 * 未指定の場合は、タイムアウト無し（無限）、リトライ無し、サーキットブレーカー無し。
+	 * サーキットブレーカーの状態は HttpPolicy が保持するので、同じホストへの要求には同じ HttpPolicy を指定すること。
+	 * </PRE>
+	 * @param policy HttpPolicy
+	 * @return HttpClientBuilder
+	 */
+	public HttpClientBuilder policy(HttpPolicy policy){
+		this.policy = policy;
+		return this;
+	}
+	/**
+	 * 応答圧縮指定.
+	 * <PRE>
+	 * Accept-Encoding: gzip, deflate を送信し、Content-Encoding が gzip / deflate の応答を展開して
+	 * 要求した結果の受け取り InputStream Consumer に渡す。HTTPヘッダは受信したまま渡す。
+	 * </PRE>
+	 * @return HttpClientBuilder
+	 */
+	public HttpClientBuilder compression(){
+		return compression(false);
+	}
+	/**
+	 * 応答圧縮、送信データ圧縮指定.
+	 * <PRE>
+	 * compression() に加えて、gzipRequest = true の場合は送信 OutputStream Consumer が書き込んだデータを
+	 * gzip 圧縮し、Content-Encoding: gzip を付けて送信する。（要求先が gzip 送信に対応していること）
+	 * </PRE>
+	 * @param gzipRequest true = 送信データを gzip 圧縮する。
+	 * @return HttpClientBuilder
+	 */
+	public HttpClientBuilder compression(boolean gzipRequest){
+		this.decompress = true;
+		this.gzipRequest = gzipRequest;
+		return this;
+	}
+	/**
+	 * 計測通知指定.
+	 * <PRE>
+	 * 接続時間、応答ヘッダ受信までの時間、全体時間、送受信バイト数、HTTPステータス、コネクションプールの空き待ちを通知する。
+	 * インメモリ集計は HttpMetrics を指定する。
+	 * </PRE>
+	 * @param metrics HttpMetricsListener
+	 * @return HttpClientBuilder
+	 */
+	public HttpClientBuilder metrics(HttpMetricsListener metrics){
+		this.metrics = metrics;
+		return this;
+	}
 	/**
 	 * HttpClient生成.
 	 * @return HttpClient
@@ -69,6 +167,6 @@ public final class HttpClientBuilder{
 		if (method==null) {
 			throw new RuntimeException("method is unknown");
 		}
-		return new HttpClient(url, method, contentType, headerOptions);
+		return new HttpClient(url, method, contentType, headerOptions, pool, executor, chunkSize, policy, decompress, gzipRequest, metrics);
 	}
 }
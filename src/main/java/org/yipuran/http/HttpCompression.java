@@ -0,0 +1,72 @@
+package org.yipuran.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP圧縮（gzip / deflate）.
+ * <PRE>
+ * HttpClientBuilder#compression() / HttpClientBuilder#compression(boolean) 指定時に HttpClient が使用する。
+ * </PRE>
+ */
+final class HttpCompression{
+	/** 送信する Accept-Encoding */
+	static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private HttpCompression(){}
+
+	/**
+	 * 送信データを gzip 圧縮する Consumer.
+	 * @param outconsumer 送信 OutputStream Consumer
+	 * @return gzip 圧縮して送信する Consumer
+	 */
+	static Consumer<OutputStream> gzip(Consumer<OutputStream> outconsumer){
+		return out->{
+			try(GZIPOutputStream gz = new GZIPOutputStream(out, 8192)){
+				outconsumer.accept(gz);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		};
+	}
+	/**
+	 * Content-Encoding に従った応答本体の展開.
+	 * @param contentEncoding Content-Encoding ヘッダ値、null 可
+	 * @param in 応答本体
+	 * @return 展開する InputStream、圧縮されていなければ in
+	 * @throws IOException
+	 */
+	static InputStream decode(String contentEncoding, InputStream in) throws IOException{
+		if (contentEncoding==null) return in;
+		String encoding = contentEncoding.trim().toLowerCase();
+		boolean gzip = encoding.equals("gzip") || encoding.equals("x-gzip");
+		if (!gzip && !encoding.equals("deflate")) return in;
+		PushbackInputStream pin = new PushbackInputStream(in, 2);
+		int b0 = pin.read();
+		if (b0 < 0) return new ByteArrayInputStream(new byte[0]);
+		if (gzip){
+			pin.unread(b0);
+			return new GZIPInputStream(pin, 8192);
+		}
+		int b1 = pin.read();
+		if (b1 >= 0) pin.unread(b1);
+		pin.unread(b0);
+		// deflate は zlib 形式が規定だが、ヘッダ無し（raw deflate）を送信するサーバもある。
+		boolean zlib = b1 >= 0 && (b0 & 0x0f)==8 && ((b0 << 8) | b1) % 31==0;
+		return new InflaterInputStream(pin, new Inflater(!zlib), 8192){
+			@Override
+			public void close() throws IOException{
+				super.close();
+				inf.end();
+			}
+		};
+	}
+}
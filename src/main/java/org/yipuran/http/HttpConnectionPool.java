@@ -0,0 +1,665 @@
+package org.yipuran.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * HTTP コネクションプール.
+ * <PRE>
+ * HttpClientBuilder / HttpsClientBuilder の connectionPool(HttpConnectionPool) で指定すると、
+ * HttpClient / HttpsClient の execute は HttpURLConnection を使用せず、
+ * 本プールが保持する Keep-Alive ソケットを再利用して HTTP/1.1 で送受信する。
+ * 同一ホストへの繰り返し要求では TCP（HTTPS は TLS）ハンドシェイクが省略される。
+ *
+ * HttpConnectionPool pool = HttpConnectionPool.of(8, 30000);
+ *
+ * HttpClient client = HttpClientBuilder.of("http://xxx/xxx")
+ *                    .method("POST")
+ *                    .contentType("application/json; charset=utf-8")
+ *                    .connectionPool(pool)
+ *                    .build();
+ *
+ * ・ホスト（scheme://host:port）毎の同時接続数を maxPerHost で制限する。上限に達すると空きを待つ。
+ *   HttpPolicy#connectTimeout(int) 指定時は、その時間で空き待ちを打ち切る。
+ * ・未使用時間が idleTimeout ミリ秒（応答に Keep-Alive: timeout= があればその短い方）を超えたソケットは破棄する。
+ *   使用中・アイドルの接続が無くなったホストの管理情報も破棄する。
+ * ・https の接続は SSLSocketFactory のインスタンス毎に分けて保持し、異なる SSLSocketFactory の要求には再利用しない。
+ * ・送信データは Content-Length を付けて送信する。HttpClientBuilder#chunked(int) 指定時は chunked 転送で逐次送信する。
+ * ・プールはスレッドセーフであり、複数の HttpClient / HttpsClient で共有できる。
+ * ・Proxy 指定の HttpsClient ではプールは使用されない。
+ * ・不要になったら close() でアイドル中のソケットを閉じる。
+ * </PRE>
+ */
+public final class HttpConnectionPool implements AutoCloseable{
+	private static final int DRAIN_LIMIT = 64 * 1024;
+	private static final int LINE_LIMIT = 64 * 1024;
+	private final int maxPerHost;
+	private final long idleTimeout;
+	private final ConcurrentMap<HostKey, HostEntry> hosts = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	private HttpConnectionPool(int maxPerHost, long idleTimeout){
+		if (maxPerHost < 1) throw new IllegalArgumentException("maxPerHost must be positive : " + maxPerHost);
+		if (idleTimeout < 1) throw new IllegalArgumentException("idleTimeout must be positive : " + idleTimeout);
+		this.maxPerHost = maxPerHost;
+		this.idleTimeout = idleTimeout;
+		evictor = Executors.newSingleThreadScheduledExecutor(r->{
+			Thread t = new Thread(r, "HttpConnectionPool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(idleTimeout / 2, 1000L);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * デフォルト設定の HttpConnectionPool 生成.
+	 * ホスト毎の最大接続数 8、アイドルタイムアウト 30秒
+	 * @return HttpConnectionPool
+	 */
+	public static HttpConnectionPool of(){
+		return new HttpConnectionPool(8, 30000L);
+	}
+	/**
+	 * HttpConnectionPool 生成.
+	 * @param maxPerHost ホスト毎の最大同時接続数
+	 * @param idleTimeout アイドル状態のソケットを保持する最大時間（ミリ秒）
+	 * @return HttpConnectionPool
+	 */
+	public static HttpConnectionPool of(int maxPerHost, long idleTimeout){
+		return new HttpConnectionPool(maxPerHost, idleTimeout);
+	}
+	/**
+	 * ホスト毎の最大同時接続数.
+	 * @return maxPerHost
+	 */
+	public int getMaxPerHost(){
+		return maxPerHost;
+	}
+	/**
+	 * アイドルタイムアウト（ミリ秒）.
+	 * @return idleTimeout
+	 */
+	public long getIdleTimeout(){
+		return idleTimeout;
+	}
+	/**
+	 * 使用中の接続数.
+	 * @return 全ホストで要求処理中の接続数
+	 */
+	public int leasedCount(){
+		return hosts.values().stream().mapToInt(h->maxPerHost - h.permits.availablePermits()).sum();
+	}
+	/**
+	 * アイドル中の接続数.
+	 * @return 全ホストで再利用待ちの接続数
+	 */
+	public int idleCount(){
+		return hosts.values().stream().mapToInt(h->h.idle.size()).sum();
+	}
+	/** 保持しているホスト（SSLSocketFactory 毎）の数 */
+	int hostCount(){
+		return hosts.size();
+	}
+	/**
+	 * アイドルタイムアウトを超えたソケットを閉じる.
+	 * 内部のデーモンスレッドから定期的に実行されるが、任意に実行してもよい。
+	 */
+	public void evictIdle(){
+		long now = now();
+		hosts.values().forEach(h->{
+			h.idle.removeIf(c->{
+				if (c.expireAt > now && !c.socket.isClosed()) return false;
+				c.close();
+				return true;
+			});
+		});
+		// 使用中もアイドルも無いホストは、SSLSocketFactory の参照ごと破棄する。
+		hosts.keySet().forEach(k->hosts.computeIfPresent(k, (key, h)->h.users==0 && h.idle.isEmpty() ? null : h));
+	}
+	/**
+	 * プールを閉じる.
+	 * アイドル中のソケットを閉じ、使用中の接続は要求完了時に閉じる。
+	 */
+	@Override
+	public void close(){
+		closed = true;
+		evictor.shutdownNow();
+		hosts.values().forEach(h->{
+			PooledConnection c;
+			while((c = h.idle.pollFirst()) != null){
+				c.close();
+			}
+		});
+	}
+
+	/**
+	 * HTTP要求送信.
+	 * @param url 要求先URL
+	 * @param method HTTPメソッド
+	 * @param headers 送信するHTTPヘッダ
+	 * @param sslFactory https の場合に使用する SSLSocketFactory、null ならデフォルト
+	 * @param chunkSize 0 より大きい場合、送信データを chunked 転送でバッファせずに送信する。
+	 * @param outconsumer 送信 OutputStream Consumer
+	 * @param ctx 実行状態（タイムアウト）
+	 * @return ClientExchange、close() で接続をプールに返す。
+	 * @throws IOException 送受信エラー
+	 */
+	ClientExchange open(URL url, String method, Map<String, String> headers, SSLSocketFactory sslFactory, int chunkSize, Consumer<OutputStream> outconsumer, RequestContext ctx) throws IOException{
+		if (closed) throw new IllegalStateException("HttpConnectionPool is closed");
+		ByteArrayOutputStream body = null;
+		byte[] head;
+		if (chunkSize > 0){
+			head = requestHead(url, method, headers, -1, true);
+		}else{
+			body = new ByteArrayOutputStream();
+			outconsumer.accept(body);
+			boolean sendLength = body.size() > 0 || "POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method);
+			head = requestHead(url, method, headers, sendLength ? body.size() : -1, false);
+		}
+		// 異なる SSLSocketFactory（鍵・証明書、検証方法）で確立した接続は共有しない。
+		HostEntry entry = hosts.compute(new HostKey(hostKey(url), sslFactory), (k, h)->{
+			if (h==null) h = new HostEntry(k, maxPerHost);
+			h.users++;
+			return h;
+		});
+		long waitStart = System.nanoTime();
+		try{
+			int wait = ctx.connectTimeout();
+			if (wait==0){
+				entry.permits.acquire();
+			}else if(!entry.permits.tryAcquire(wait, TimeUnit.MILLISECONDS)){
+				unuse(entry);
+				throw new SocketTimeoutException("timeout waiting for connection : " + hostKey(url));
+			}
+		}catch(InterruptedException e){
+			unuse(entry);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted waiting for connection : " + url);
+		}
+		ctx.poolAcquired(System.nanoTime() - waitStart, maxPerHost - entry.permits.availablePermits(), maxPerHost);
+		try{
+			for(;;){
+				PooledConnection c = lease(entry);
+				boolean reused = c != null;
+				if (c==null) c = connect(url, sslFactory, ctx);
+				try{
+					ctx.bind(c.socket);
+					c.socket.setSoTimeout(ctx.readTimeout());
+					c.out.write(head);
+					if (body==null){
+						try(ChunkedOutputStream out = new ChunkedOutputStream(c.out, chunkSize)){
+							outconsumer.accept(out);
+						}
+					}else{
+						body.writeTo(c.out);
+					}
+					c.out.flush();
+					return readResponse(url, method, c, entry);
+				}catch(IOException e){
+					c.close();
+					// 再利用したソケットがサーバ側で閉じられていた場合は新しい接続で再送する。
+					// chunked 転送は送信データを再生成できないので再送しない。
+					if (reused && body != null && (e instanceof StaleConnectionException || e instanceof SocketException)) continue;
+					throw e;
+				}catch(RuntimeException e){
+					c.close();
+					throw e;
+				}
+			}
+		}catch(IOException | RuntimeException e){
+			release(entry);
+			throw e;
+		}
+	}
+	/** 接続の使用終了 */
+	private void release(HostEntry entry){
+		entry.permits.release();
+		unuse(entry);
+	}
+	/** 使用数を減らす、使用数が 0 でアイドルも無くなった HostEntry は evictIdle で破棄する。 */
+	private void unuse(HostEntry entry){
+		hosts.computeIfPresent(entry.key, (k, h)->{
+			h.users--;
+			return h;
+		});
+	}
+
+	private PooledConnection lease(HostEntry entry){
+		long now = now();
+		PooledConnection c;
+		while((c = entry.idle.pollFirst()) != null){
+			if (c.expireAt > now && !c.socket.isClosed()) return c;
+			c.close();
+		}
+		return null;
+	}
+	private PooledConnection connect(URL url, SSLSocketFactory sslFactory, RequestContext ctx) throws IOException{
+		String host = url.getHost();
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		long start = System.nanoTime();
+		Socket socket = new Socket();
+		try{
+			ctx.bind(socket);
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(new InetSocketAddress(host, port), ctx.connectTimeout());
+			socket.setSoTimeout(ctx.readTimeout());
+			if ("https".equalsIgnoreCase(url.getProtocol())){
+				SSLSocketFactory factory = sslFactory==null ? (SSLSocketFactory)SSLSocketFactory.getDefault() : sslFactory;
+				SSLSocket ssl = (SSLSocket)factory.createSocket(socket, host, port, true);
+				SSLParameters params = ssl.getSSLParameters();
+				params.setEndpointIdentificationAlgorithm("HTTPS");
+				ssl.setSSLParameters(params);
+				ctx.bind(ssl);
+				ssl.startHandshake();
+				socket = ssl;
+			}
+			ctx.connected(System.nanoTime() - start);
+			return new PooledConnection(socket);
+		}catch(IOException | RuntimeException e){
+			socket.close();
+			throw e;
+		}
+	}
+	private ClientExchange readResponse(URL url, String method, PooledConnection c, HostEntry entry) throws IOException{
+		String statusLine;
+		int status;
+		Map<String, List<String>> fields;
+		do{
+			statusLine = readLine(c.in, true);
+			status = parseStatus(statusLine);
+			fields = readHeaders(c.in, statusLine);
+		}while(status >= 100 && status < 200 && status != 101);
+
+		String connection = headerValue(fields, "Connection");
+		boolean keepAlive = statusLine.startsWith("HTTP/1.0")
+				? connection != null && connection.toLowerCase().contains("keep-alive")
+				: connection==null || !connection.toLowerCase().contains("close");
+		InputStream body;
+		String transferEncoding = headerValue(fields, "Transfer-Encoding");
+		String contentLength = headerValue(fields, "Content-Length");
+		if ("HEAD".equals(method) || status==204 || status==304 || status < 200){
+			body = new FixedLengthInputStream(c.in, 0);
+		}else if(transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")){
+			body = new ChunkedInputStream(c.in);
+		}else if(contentLength != null){
+			body = new FixedLengthInputStream(c.in, Long.parseLong(contentLength.trim()));
+		}else{
+			body = c.in;
+			keepAlive = false;
+		}
+		long expire = idleTimeout;
+		String keepAliveHeader = headerValue(fields, "Keep-Alive");
+		if (keepAliveHeader != null){
+			for(String p : keepAliveHeader.split(",")){
+				String[] kv = p.trim().split("=");
+				if (kv.length==2 && "timeout".equalsIgnoreCase(kv[0].trim())){
+					try{
+						expire = Math.min(expire, Long.parseLong(kv[1].trim()) * 1000L);
+					}catch(NumberFormatException e){
+					}
+				}
+			}
+		}
+		return new PooledExchange(url, status, Collections.unmodifiableMap(fields), body, keepAlive, expire, c, entry);
+	}
+
+	static String hostKey(URL url){
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + (url.getPort() < 0 ? url.getDefaultPort() : url.getPort());
+	}
+	private static byte[] requestHead(URL url, String method, Map<String, String> headers, long length, boolean chunked){
+		StringBuilder sb = new StringBuilder(256);
+		String file = url.getFile();
+		sb.append(method).append(' ').append(file.isEmpty() ? "/" : file).append(" HTTP/1.1\r\n");
+		if (!containsKey(headers, "Host")){
+			sb.append("Host: ").append(url.getHost());
+			if (url.getPort() >= 0 && url.getPort() != url.getDefaultPort()) sb.append(':').append(url.getPort());
+			sb.append("\r\n");
+		}
+		if (!containsKey(headers, "User-Agent")) sb.append("User-Agent: Java/").append(System.getProperty("java.version")).append("\r\n");
+		if (!containsKey(headers, "Accept")) sb.append("Accept: */*\r\n");
+		if (!containsKey(headers, "Connection")) sb.append("Connection: keep-alive\r\n");
+		headers.entrySet().stream().forEach(e->{
+			sb.append(e.getKey()).append(": ").append(e.getValue()).append("\r\n");
+		});
+		if (chunked){
+			sb.append("Transfer-Encoding: chunked\r\n");
+		}else if(length >= 0 && !containsKey(headers, "Content-Length")){
+			sb.append("Content-Length: ").append(length).append("\r\n");
+		}
+		sb.append("\r\n");
+		return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+	private static boolean containsKey(Map<String, String> headers, String name){
+		return headers.keySet().stream().anyMatch(k->name.equalsIgnoreCase(k));
+	}
+	private static String headerValue(Map<String, List<String>> fields, String name){
+		return fields.entrySet().stream().filter(e->name.equalsIgnoreCase(e.getKey()))
+			.map(e->String.join(",", e.getValue())).findFirst().orElse(null);
+	}
+	private static int parseStatus(String statusLine) throws IOException{
+		String[] s = statusLine.split(" ", 3);
+		if (s.length < 2 || !s[0].startsWith("HTTP/")) throw new IOException("Invalid HTTP response: " + statusLine);
+		try{
+			return Integer.parseInt(s[1]);
+		}catch(NumberFormatException e){
+			throw new IOException("Invalid HTTP response: " + statusLine);
+		}
+	}
+	private static Map<String, List<String>> readHeaders(InputStream in, String statusLine) throws IOException{
+		Map<String, List<String>> fields = new LinkedHashMap<>();
+		fields.put(null, Collections.singletonList(statusLine));
+		String line;
+		while(!(line = readLine(in, false)).isEmpty()){
+			int i = line.indexOf(':');
+			if (i < 1) continue;
+			String name = line.substring(0, i).trim();
+			String value = line.substring(i + 1).trim();
+			String key = fields.keySet().stream().filter(k->name.equalsIgnoreCase(k)).findFirst().orElse(name);
+			fields.computeIfAbsent(key, k->new ArrayList<>()).add(value);
+		}
+		return fields;
+	}
+	private static String readLine(InputStream in, boolean first) throws IOException{
+		StringBuilder sb = new StringBuilder();
+		int b;
+		while((b = in.read()) != '\n'){
+			if (b < 0){
+				if (first && sb.length()==0) throw new StaleConnectionException();
+				throw new EOFException("unexpected end of HTTP response");
+			}
+			if (sb.length() >= LINE_LIMIT) throw new IOException("HTTP response line too long");
+			sb.append((char)b);
+		}
+		int len = sb.length();
+		if (len > 0 && sb.charAt(len - 1)=='\r') sb.setLength(len - 1);
+		return sb.toString();
+	}
+	private static long now(){
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/** ホストと SSLSocketFactory のインスタンスの組、SSLSocketFactory は同一インスタンスだけを等しいとする。 */
+	private static final class HostKey{
+		final String host;
+		final SSLSocketFactory sslFactory;
+		HostKey(String host, SSLSocketFactory sslFactory){
+			this.host = host;
+			this.sslFactory = sslFactory;
+		}
+		@Override
+		public boolean equals(Object o){
+			if (!(o instanceof HostKey)) return false;
+			HostKey k = (HostKey)o;
+			return host.equals(k.host) && sslFactory==k.sslFactory;
+		}
+		@Override
+		public int hashCode(){
+			return host.hashCode() * 31 + System.identityHashCode(sslFactory);
+		}
+	}
+	/** ホスト毎の同時接続数制御とアイドル接続 */
+	private static final class HostEntry{
+		final HostKey key;
+		final Semaphore permits;
+		final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+		/** 接続待ち・使用中の要求数、hosts の compute 内で更新する。 */
+		int users;
+		HostEntry(HostKey key, int maxPerHost){
+			this.key = key;
+			permits = new Semaphore(maxPerHost, true);
+		}
+	}
+	/** プールされるソケット */
+	private static final class PooledConnection{
+		final Socket socket;
+		final InputStream in;
+		final OutputStream out;
+		volatile long expireAt;
+		PooledConnection(Socket socket) throws IOException{
+			this.socket = socket;
+			in = new BufferedInputStream(socket.getInputStream(), 8192);
+			out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+		}
+		void close(){
+			try{
+				socket.close();
+			}catch(IOException e){
+			}
+		}
+	}
+	/** 再利用したソケットが応答前に閉じられていた */
+	private static final class StaleConnectionException extends IOException{
+		private static final long serialVersionUID = 1L;
+		StaleConnectionException(){
+			super("connection closed by peer before response");
+		}
+	}
+	/** プール接続による応答 */
+	private final class PooledExchange implements ClientExchange{
+		private final URL url;
+		private final int status;
+		private final Map<String, List<String>> fields;
+		private final InputStream body;
+		private final boolean keepAlive;
+		private final long expire;
+		private final PooledConnection connection;
+		private final HostEntry entry;
+		private boolean released;
+		PooledExchange(URL url, int status, Map<String, List<String>> fields, InputStream body, boolean keepAlive, long expire, PooledConnection connection, HostEntry entry){
+			this.url = url;
+			this.status = status;
+			this.fields = fields;
+			this.body = body;
+			this.keepAlive = keepAlive;
+			this.expire = expire;
+			this.connection = connection;
+			this.entry = entry;
+		}
+		@Override
+		public int status(){
+			return status;
+		}
+		@Override
+		public String contentType(){
+			return headerValue(fields, "Content-Type");
+		}
+		@Override
+		public Map<String, List<String>> headerFields(){
+			return fields;
+		}
+		@Override
+		public InputStream body() throws IOException{
+			if (status >= 400) throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
+			// 利用側の close() でソケットが閉じられないようにする。
+			return new FilterInputStream(body){
+				@Override
+				public void close(){
+				}
+			};
+		}
+		@Override
+		public void close(){
+			if (released) return;
+			released = true;
+			boolean reusable = keepAlive && !closed;
+			try{
+				if (reusable) reusable = drain(body);
+			}catch(IOException e){
+				reusable = false;
+			}
+			if (reusable){
+				connection.expireAt = now() + expire;
+				entry.idle.offerFirst(connection);
+			}else{
+				connection.close();
+			}
+			release(entry);
+		}
+		private boolean drain(InputStream in) throws IOException{
+			byte[] buf = new byte[4096];
+			int total = 0;
+			int n;
+			while((n = in.read(buf)) >= 0){
+				total += n;
+				if (total > DRAIN_LIMIT) return false;
+			}
+			return true;
+		}
+	}
+	/** Content-Length 指定の応答本体 */
+	private static final class FixedLengthInputStream extends InputStream{
+		private final InputStream in;
+		private long remaining;
+		FixedLengthInputStream(InputStream in, long length){
+			this.in = in;
+			remaining = length;
+		}
+		@Override
+		public int read() throws IOException{
+			if (remaining <= 0) return -1;
+			int b = in.read();
+			if (b < 0) throw new EOFException("unexpected end of HTTP response body");
+			remaining--;
+			return b;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			if (len==0) return 0;
+			if (remaining <= 0) return -1;
+			int n = in.read(b, off, (int)Math.min(len, remaining));
+			if (n < 0) throw new EOFException("unexpected end of HTTP response body");
+			remaining -= n;
+			return n;
+		}
+		@Override
+		public int available() throws IOException{
+			return (int)Math.min(in.available(), remaining);
+		}
+	}
+	/** Transfer-Encoding: chunked の送信データ、close() で終端チャンクを送信する。 */
+	private static final class ChunkedOutputStream extends OutputStream{
+		private final OutputStream out;
+		private final byte[] buf;
+		private int count;
+		private boolean closed;
+		ChunkedOutputStream(OutputStream out, int chunkSize){
+			this.out = out;
+			buf = new byte[chunkSize];
+		}
+		@Override
+		public void write(int b) throws IOException{
+			if (count==buf.length) writeChunk();
+			buf[count++] = (byte)b;
+		}
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			while(len > 0){
+				if (count==buf.length) writeChunk();
+				int n = Math.min(len, buf.length - count);
+				System.arraycopy(b, off, buf, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+		@Override
+		public void flush() throws IOException{
+			writeChunk();
+			out.flush();
+		}
+		@Override
+		public void close() throws IOException{
+			if (closed) return;
+			closed = true;
+			writeChunk();
+			out.write(new byte[]{ '0', '\r', '\n', '\r', '\n' });
+		}
+		private void writeChunk() throws IOException{
+			if (count==0) return;
+			out.write((Integer.toHexString(count) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			out.write(buf, 0, count);
+			out.write('\r');
+			out.write('\n');
+			count = 0;
+		}
+	}
+	/** Transfer-Encoding: chunked の応答本体 */
+	private static final class ChunkedInputStream extends InputStream{
+		private final InputStream in;
+		private long remaining;
+		private boolean started;
+		private boolean eof;
+		ChunkedInputStream(InputStream in){
+			this.in = in;
+		}
+		private boolean nextChunk() throws IOException{
+			if (eof) return false;
+			if (remaining > 0) return true;
+			if (started) readLine(in, false);
+			started = true;
+			String line = readLine(in, false);
+			int i = line.indexOf(';');
+			try{
+				remaining = Long.parseLong((i < 0 ? line : line.substring(0, i)).trim(), 16);
+			}catch(NumberFormatException e){
+				throw new IOException("Invalid chunk size: " + line);
+			}
+			if (remaining==0){
+				while(!readLine(in, false).isEmpty());
+				eof = true;
+				return false;
+			}
+			return true;
+		}
+		@Override
+		public int read() throws IOException{
+			if (!nextChunk()) return -1;
+			int b = in.read();
+			if (b < 0) throw new EOFException("unexpected end of chunked HTTP response");
+			remaining--;
+			return b;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			if (len==0) return 0;
+			if (!nextChunk()) return -1;
+			int n = in.read(b, off, (int)Math.min(len, remaining));
+			if (n < 0) throw new EOFException("unexpected end of chunked HTTP response");
+			remaining -= n;
+			return n;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package org.yipuran.http;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HttpClient#executeAsync 用 Executor.
+ * <PRE>
+ * HttpClientBuilder / HttpsClientBuilder の executor(Executor) を指定しない場合、
+ * defaultExecutor() が使用される。
+ * defaultExecutor() は、実行環境が仮想スレッド（Java 21以降）をサポートしていれば仮想スレッドの Executor、
+ * サポートしていなければ newBoundedExecutor(CPU数×8, 1024) と同じ上限付きスレッドプールである。
+ *
+ * ExecutorService executor = HttpExecutors.newBoundedExecutor(32, 512);
+ * HttpClient client = HttpClientBuilder.of("http://xxx/xxx")
+ *                    .method("POST")
+ *                    .executor(executor)
+ *                    .build();
+ * CompletableFuture&lt;Integer&gt; future = client.executeAsync(out->{}, (type, m)->{}, in->{});
+ * </PRE>
+ */
+public final class HttpExecutors{
+	private static volatile ExecutorService defaultExecutor;
+
+	private HttpExecutors(){}
+
+	/**
+	 * 上限付きスレッドプール生成.
+	 * <PRE>
+	 * スレッドはデーモンスレッドで、待ち行列が queueCapacity を超えると RejectedExecutionException となり、
+	 * executeAsync の CompletableFuture は例外で完了する。
+	 * </PRE>
+	 * @param threads 最大スレッド数
+	 * @param queueCapacity 実行待ち行列の上限
+	 * @return ExecutorService
+	 */
+	public static ExecutorService newBoundedExecutor(int threads, int queueCapacity){
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS
+				, new ArrayBlockingQueue<>(queueCapacity), daemonThreadFactory("HttpClient-async-"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	/**
+	 * 仮想スレッド Executor 生成.
+	 * @return 実行環境が仮想スレッドをサポートしていれば、タスク毎に仮想スレッドを生成する ExecutorService
+	 */
+	public static Optional<ExecutorService> newVirtualThreadExecutor(){
+		try{
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return Optional.of((ExecutorService)m.invoke(null));
+		}catch(ReflectiveOperationException | RuntimeException e){
+			return Optional.empty();
+		}
+	}
+	/**
+	 * executeAsync デフォルト Executor.
+	 * @return 仮想スレッド Executor、または上限付きスレッドプール
+	 */
+	public static ExecutorService defaultExecutor(){
+		if (defaultExecutor==null){
+			synchronized(HttpExecutors.class){
+				if (defaultExecutor==null){
+					defaultExecutor = newVirtualThreadExecutor()
+						.orElseGet(()->newBoundedExecutor(Runtime.getRuntime().availableProcessors() * 8, 1024));
+				}
+			}
+		}
+		return defaultExecutor;
+	}
+	private static ThreadFactory daemonThreadFactory(String prefix){
+		AtomicInteger counter = new AtomicInteger();
+		return r->{
+			Thread t = new Thread(r, prefix + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
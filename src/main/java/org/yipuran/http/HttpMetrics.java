@@ -0,0 +1,288 @@
+package org.yipuran.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP要求のインメモリ計測.
+ * <PRE>
+ * HttpMetricsListener の実装で、ホスト毎に以下を集計する。集計はロックを使用しない。
+ *   ・接続時間、応答ヘッダ受信までの時間（TTFB）、全体時間のヒストグラム
+ *   ・送信、受信バイト数
+ *   ・HTTPステータスコード別の件数、失敗件数
+ *   ・コネクションプールの空き待ち時間、上限に達していた回数
+ *
+ * HttpMetrics metrics = new HttpMetrics();
+ * HttpClient client = HttpClientBuilder.of("http://xxx/xxx")
+ *                    .method("GET")
+ *                    .metrics(metrics)
+ *                    .build();
+ *   :
+ * metrics.snapshot().forEach((host, stats)->System.out.println(host + " " + stats));
+ *
+ * ヒストグラムは 1マイクロ秒 ～ 約 18分を２倍毎に区切った区間の件数であり、パーセンタイルは区間の上限値で近似する。
+ * </PRE>
+ */
+public final class HttpMetrics implements HttpMetricsListener{
+	private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+	/**
+	 * コンストラクタ.
+	 */
+	public HttpMetrics(){}
+
+	/**
+	 * 集計値のスナップショット.
+	 * @return ホスト（scheme://host:port）→ 集計値の Map
+	 */
+	public Map<String, HostStats> snapshot(){
+		Map<String, HostStats> map = new TreeMap<>();
+		hosts.forEach((host, m)->map.put(host, m.snapshot()));
+		return Collections.unmodifiableMap(map);
+	}
+	/**
+	 * 集計値の初期化.
+	 */
+	public void reset(){
+		hosts.clear();
+	}
+	@Override
+	public void connected(String host, long connectNanos){
+		metrics(host).connect.record(connectNanos);
+	}
+	@Override
+	public void poolAcquired(String host, long waitNanos, int leased, int maxPerHost){
+		HostMetrics m = metrics(host);
+		m.poolWait.record(waitNanos);
+		if (leased >= maxPerHost) m.poolSaturated.increment();
+	}
+	@Override
+	public void responded(String host, int status, long ttfbNanos){
+		HostMetrics m = metrics(host);
+		m.ttfb.record(ttfbNanos);
+		m.status.computeIfAbsent(status, k->new LongAdder()).increment();
+	}
+	@Override
+	public void completed(String host, long totalNanos, long bytesOut, long bytesIn){
+		HostMetrics m = metrics(host);
+		m.total.record(totalNanos);
+		m.bytesOut.add(bytesOut);
+		m.bytesIn.add(bytesIn);
+	}
+	@Override
+	public void failed(String host, long totalNanos, Throwable cause){
+		HostMetrics m = metrics(host);
+		m.total.record(totalNanos);
+		m.failures.increment();
+	}
+	private HostMetrics metrics(String host){
+		HostMetrics m = hosts.get(host);
+		return m==null ? hosts.computeIfAbsent(host, k->new HostMetrics()) : m;
+	}
+
+	/** ホスト毎の集計 */
+	private static final class HostMetrics{
+		final Histogram connect = new Histogram();
+		final Histogram ttfb = new Histogram();
+		final Histogram total = new Histogram();
+		final Histogram poolWait = new Histogram();
+		final LongAdder poolSaturated = new LongAdder();
+		final LongAdder bytesOut = new LongAdder();
+		final LongAdder bytesIn = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final ConcurrentMap<Integer, LongAdder> status = new ConcurrentHashMap<>();
+		HostStats snapshot(){
+			Map<Integer, Long> codes = new TreeMap<>();
+			status.forEach((k, v)->codes.put(k, v.sum()));
+			return new HostStats(connect.snapshot(), ttfb.snapshot(), total.snapshot(), poolWait.snapshot()
+					, poolSaturated.sum(), bytesOut.sum(), bytesIn.sum(), failures.sum(), Collections.unmodifiableMap(codes));
+		}
+	}
+	/** 2のべき乗区間のヒストグラム */
+	private static final class Histogram{
+		private static final int BUCKETS = 31;
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+		void record(long nanos){
+			long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+			int i = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+			counts.incrementAndGet(i);
+			sum.add(micros);
+			max.accumulate(micros);
+		}
+		LatencyStats snapshot(){
+			long[] c = new long[BUCKETS];
+			for(int i=0; i < BUCKETS; i++){
+				c[i] = counts.get(i);
+			}
+			return new LatencyStats(c, sum.sum(), max.get());
+		}
+	}
+
+	/**
+	 * 時間の集計値.
+	 */
+	public static final class LatencyStats{
+		private final long[] buckets;
+		private final long count;
+		private final long sumMicros;
+		private final long maxMicros;
+		private LatencyStats(long[] buckets, long sumMicros, long maxMicros){
+			this.buckets = buckets;
+			long n = 0;
+			for(long c : buckets){
+				n += c;
+			}
+			count = n;
+			this.sumMicros = sumMicros;
+			this.maxMicros = maxMicros;
+		}
+		/**
+		 * 件数.
+		 * @return 件数
+		 */
+		public long getCount(){
+			return count;
+		}
+		/**
+		 * 平均.
+		 * @return ミリ秒
+		 */
+		public double getMeanMillis(){
+			return count==0 ? 0.0 : sumMicros / 1000.0 / count;
+		}
+		/**
+		 * 最大.
+		 * @return ミリ秒
+		 */
+		public double getMaxMillis(){
+			return maxMicros / 1000.0;
+		}
+		/**
+		 * パーセンタイル.
+		 * @param percentile 0.0 ～ 100.0
+		 * @return ミリ秒（区間の上限値、最大値を超えない）
+		 */
+		public double getPercentileMillis(double percentile){
+			if (count==0) return 0.0;
+			long rank = (long)Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+			long n = 0;
+			for(int i=0; i < buckets.length; i++){
+				n += buckets[i];
+				if (n >= rank && n > 0){
+					return Math.min(((1L << i) - 1) / 1000.0, getMaxMillis());
+				}
+			}
+			return getMaxMillis();
+		}
+		@Override
+		public String toString(){
+			return String.format("count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms, max=%.3fms"
+					, count, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+		}
+	}
+
+	/**
+	 * ホスト毎の集計値.
+	 */
+	public static final class HostStats{
+		private final LatencyStats connect;
+		private final LatencyStats ttfb;
+		private final LatencyStats total;
+		private final LatencyStats poolWait;
+		private final long poolSaturated;
+		private final long bytesOut;
+		private final long bytesIn;
+		private final long failures;
+		private final Map<Integer, Long> statusCounts;
+		private HostStats(LatencyStats connect, LatencyStats ttfb, LatencyStats total, LatencyStats poolWait
+				, long poolSaturated, long bytesOut, long bytesIn, long failures, Map<Integer, Long> statusCounts){
+			this.connect = connect;
+			this.ttfb = ttfb;
+			this.total = total;
+			this.poolWait = poolWait;
+			this.poolSaturated = poolSaturated;
+			this.bytesOut = bytesOut;
+			this.bytesIn = bytesIn;
+			this.failures = failures;
+			this.statusCounts = statusCounts;
+		}
+		/**
+		 * 接続時間.
+		 * @return LatencyStats
+		 */
+		public LatencyStats getConnect(){
+			return connect;
+		}
+		/**
+		 * 応答ヘッダ受信までの時間（TTFB）.
+		 * @return LatencyStats
+		 */
+		public LatencyStats getTimeToFirstByte(){
+			return ttfb;
+		}
+		/**
+		 * 全体時間.
+		 * @return LatencyStats
+		 */
+		public LatencyStats getTotal(){
+			return total;
+		}
+		/**
+		 * コネクションプールの空き待ち時間.
+		 * @return LatencyStats
+		 */
+		public LatencyStats getPoolWait(){
+			return poolWait;
+		}
+		/**
+		 * コネクションプールの接続取得で最大接続数に達した回数.
+		 * @return 回数
+		 */
+		public long getPoolSaturated(){
+			return poolSaturated;
+		}
+		/**
+		 * 送信バイト数.
+		 * @return バイト数
+		 */
+		public long getBytesOut(){
+			return bytesOut;
+		}
+		/**
+		 * 受信バイト数.
+		 * @return バイト数
+		 */
+		public long getBytesIn(){
+			return bytesIn;
+		}
+		/**
+		 * 失敗件数.
+		 * @return 件数
+		 */
+		public long getFailures(){
+			return failures;
+		}
+		/**
+		 * HTTPステータスコード別件数.
+		 * @return ステータスコード → 件数
+		 */
+		public Map<Integer, Long> getStatusCounts(){
+			return statusCounts;
+		}
+		@Override
+		public String toString(){
+			return "connect[" + connect + "], ttfb[" + ttfb + "], total[" + total + "], poolWait[" + poolWait + "]"
+				+ ", poolSaturated=" + poolSaturated + ", bytesOut=" + bytesOut + ", bytesIn=" + bytesIn
+				+ ", failures=" + failures + ", status=" + statusCounts;
+		}
+	}
+}
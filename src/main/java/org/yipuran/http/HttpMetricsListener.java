@@ -0,0 +1,52 @@
+package org.yipuran.http;
+
+/**
+ * HTTP要求の計測通知.
+ * <PRE>
+ * HttpClientBuilder / HttpsClientBuilder の metrics(HttpMetricsListener) で指定すると、
+ * HttpClient#execute の各実行（リトライは１回毎）で以下が通知される。
+ * host は "scheme://host:port" である。時間はナノ秒。
+ * 通知は要求を実行するスレッドで行われるので、実装はスレッドセーフかつ短時間で終了すること。
+ * インメモリ集計の実装は HttpMetrics
+ * </PRE>
+ */
+public interface HttpMetricsListener{
+	/**
+	 * 接続確立.
+	 * HttpConnectionPool では新しいソケットの TCP接続（https は TLSハンドシェイク含む）時間、
+	 * HttpURLConnection では connect() の時間（Keep-Alive で再利用した場合は短い）
+	 * @param host 要求先ホスト
+	 * @param connectNanos 接続時間
+	 */
+	default void connected(String host, long connectNanos){}
+	/**
+	 * コネクションプールの接続取得.
+	 * @param host 要求先ホスト
+	 * @param waitNanos 空き待ち時間
+	 * @param leased 取得後のホストの使用中接続数
+	 * @param maxPerHost ホスト毎の最大接続数
+	 */
+	default void poolAcquired(String host, long waitNanos, int leased, int maxPerHost){}
+	/**
+	 * 応答ステータス受信.
+	 * @param host 要求先ホスト
+	 * @param status HTTPステータスコード
+	 * @param ttfbNanos 実行開始から応答ヘッダ受信までの時間
+	 */
+	default void responded(String host, int status, long ttfbNanos){}
+	/**
+	 * 正常終了.
+	 * @param host 要求先ホスト
+	 * @param totalNanos 実行開始から応答読込終了までの時間
+	 * @param bytesOut 送信バイト数（圧縮後）
+	 * @param bytesIn 受信バイト数（展開前、InputStream Consumer が読込んだ分）
+	 */
+	default void completed(String host, long totalNanos, long bytesOut, long bytesIn){}
+	/**
+	 * 異常終了.
+	 * @param host 要求先ホスト
+	 * @param totalNanos 実行開始から異常発生までの時間
+	 * @param cause 発生した例外
+	 */
+	default void failed(String host, long totalNanos, Throwable cause){}
+}
@@ -0,0 +1,269 @@
+package org.yipuran.http;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * HTTP要求のタイムアウト、リトライ、サーキットブレーカー規則.
+ * <PRE>
+ * HttpClientBuilder / HttpsClientBuilder の policy(HttpPolicy) で指定する。
+ * 指定しない場合は、タイムアウト無し（無限）、リトライ無し、サーキットブレーカー無しである。
+ *
+ * HttpPolicy policy = HttpPolicy.of()
+ *                    .connectTimeout(3000)
+ *                    .readTimeout(10000)
+ *                    .totalTimeout(30000)
+ *                    .retry(3, 200, 5000)
+ *                    .circuitBreaker(5, 30000);
+ *
+ * ・connectTimeout  接続タイムアウト（ミリ秒）、コネクションプールの空き待ちもこの時間で打ち切る。
+ * ・readTimeout     読込タイムアウト（ミリ秒）
+ * ・totalTimeout    リトライを含めた execute 全体のタイムアウト（ミリ秒）、超過すると接続を切断する。
+ * ・retry           冪等なメソッド（GET, HEAD, PUT, DELETE, OPTIONS, TRACE）のみ、
+ *                   IOException、または retryStatus のステータス（デフォルト 502, 503, 504）の場合に
+ *                   指数バックオフ（ジッター付き）で再実行する。
+ *                   HTTPヘッダ、応答読込の Consumer 実行後の失敗は再実行しない。
+ *                   送信 OutputStream Consumer は再実行時に再度呼び出される。
+ * ・circuitBreaker  ホスト（scheme://host:port）毎に、連続 failureThreshold 回失敗（IOException、ステータス 500以上）すると
+ *                   openDuration ミリ秒の間、要求を送信せずに CircuitOpenException とする。
+ *                   経過後の１要求が成功すれば復帰し、失敗すれば再び openDuration の間遮断する。
+ *
+ * サーキットブレーカーの状態は HttpPolicy インスタンスが保持するので、同じホストへの要求には同じ HttpPolicy を共有すること。
+ * 設定メソッドは HttpPolicy を共有する前に実行すること。
+ * </PRE>
+ */
+public final class HttpPolicy{
+	/** policy 未指定時の規則 */
+	static final HttpPolicy DEFAULT = new HttpPolicy();
+	private static final Set<String> IDEMPOTENT = new HashSet<>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE"));
+	private static volatile ScheduledExecutorService timer;
+
+	private int connectTimeout;
+	private int readTimeout;
+	private long totalTimeout;
+	private int maxRetries;
+	private long initialBackoff = 100L;
+	private long maxBackoff = 10000L;
+	private Set<Integer> retryStatus = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(502, 503, 504)));
+	private int failureThreshold;
+	private long openDuration;
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	private HttpPolicy(){}
+
+	/**
+	 * HttpPolicy 生成.
+	 * @return タイムアウト無し、リトライ無し、サーキットブレーカー無しの HttpPolicy
+	 */
+	public static HttpPolicy of(){
+		return new HttpPolicy();
+	}
+	/**
+	 * 接続タイムアウト指定.
+	 * @param millis ミリ秒、0 は無限
+	 * @return HttpPolicy
+	 */
+	public HttpPolicy connectTimeout(int millis){
+		if (millis < 0) throw new IllegalArgumentException("connectTimeout must not be negative : " + millis);
+		connectTimeout = millis;
+		return this;
+	}
+	/**
+	 * 読込タイムアウト指定.
+	 * @param millis ミリ秒、0 は無限
+	 * @return HttpPolicy
+	 */
+	public HttpPolicy readTimeout(int millis){
+		if (millis < 0) throw new IllegalArgumentException("readTimeout must not be negative : " + millis);
+		readTimeout = millis;
+		return this;
+	}
+	/**
+	 * 全体タイムアウト指定.
+	 * @param millis リトライを含めた execute 全体のミリ秒、0 は無限
+	 * @return HttpPolicy
+	 */
+	public HttpPolicy totalTimeout(long millis){
+		if (millis < 0) throw new IllegalArgumentException("totalTimeout must not be negative : " + millis);
+		totalTimeout = millis;
+		return this;
+	}
+	/**
+	 * リトライ指定.
+	 * <PRE>
+	 * n 回目（0 始まり）の再実行前の待ち時間は、min(maxBackoff, initialBackoff × 2^n) の 1/2 ～ 1 倍のランダムな時間
+	 * </PRE>
+	 * @param maxRetries 最大再実行回数
+	 * @param initialBackoff 初回の待ち時間（ミリ秒）
+	 * @param maxBackoff 待ち時間の上限（ミリ秒）
+	 * @return HttpPolicy
+	 */
+	public HttpPolicy retry(int maxRetries, long initialBackoff, long maxBackoff){
+		if (maxRetries < 0 || initialBackoff < 0 || maxBackoff < initialBackoff)
+			throw new IllegalArgumentException("retry(" + maxRetries + ", " + initialBackoff + ", " + maxBackoff + ")");
+		this.maxRetries = maxRetries;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		return this;
+	}
+	/**
+	 * リトライ対象のHTTPステータス指定.
+	 * @param status HTTPステータスコード、デフォルトは 502, 503, 504
+	 * @return HttpPolicy
+	 */
+	public HttpPolicy retryStatus(int...status){
+		retryStatus = Collections.unmodifiableSet(Arrays.stream(status).boxed().collect(Collectors.toSet()));
+		return this;
+	}
+	/**
+	 * サーキットブレーカー指定.
+	 * @param failureThreshold 遮断する連続失敗回数、0 はサーキットブレーカー無し
+	 * @param openDuration 遮断時間（ミリ秒）
+	 * @return HttpPolicy
+	 */
+	public HttpPolicy circuitBreaker(int failureThreshold, long openDuration){
+		if (failureThreshold < 0 || openDuration < 0)
+			throw new IllegalArgumentException("circuitBreaker(" + failureThreshold + ", " + openDuration + ")");
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+		return this;
+	}
+	/**
+	 * 接続タイムアウト.
+	 * @return ミリ秒、0 は無限
+	 */
+	public int getConnectTimeout(){
+		return connectTimeout;
+	}
+	/**
+	 * 読込タイムアウト.
+	 * @return ミリ秒、0 は無限
+	 */
+	public int getReadTimeout(){
+		return readTimeout;
+	}
+	/**
+	 * 全体タイムアウト.
+	 * @return ミリ秒、0 は無限
+	 */
+	public long getTotalTimeout(){
+		return totalTimeout;
+	}
+	/**
+	 * 最大再実行回数.
+	 * @return maxRetries
+	 */
+	public int getMaxRetries(){
+		return maxRetries;
+	}
+	/**
+	 * サーキットブレーカー遮断判定.
+	 * @param url 要求先URL
+	 * @return true = url のホストへの要求は遮断中
+	 */
+	public boolean isOpen(URL url){
+		CircuitBreaker b = breakers.get(HttpConnectionPool.hostKey(url));
+		return b != null && b.isOpen(System.currentTimeMillis());
+	}
+
+	/** 冪等なメソッドで再実行回数が残っているか */
+	boolean canRetry(String method, int attempt){
+		return attempt < maxRetries && IDEMPOTENT.contains(method);
+	}
+	/** リトライ対象ステータスか */
+	boolean isRetryStatus(int status){
+		return retryStatus.contains(status);
+	}
+	/** attempt 回目の再実行前の待ち時間 */
+	long backoff(int attempt){
+		long d = Math.min(maxBackoff, initialBackoff << Math.min(attempt, 30));
+		return d / 2 + ThreadLocalRandom.current().nextLong(d / 2 + 1);
+	}
+	/**
+	 * 要求前のサーキットブレーカー判定、遮断中は CircuitOpenException.
+	 * @return true = 遮断時間経過後の試行要求
+	 */
+	boolean acquire(URL url) throws CircuitOpenException{
+		if (failureThreshold < 1) return false;
+		CircuitBreaker b = breakers.computeIfAbsent(HttpConnectionPool.hostKey(url), k->new CircuitBreaker());
+		int r = b.tryAcquire(System.currentTimeMillis(), openDuration);
+		if (r < 0){
+			throw new CircuitOpenException(HttpConnectionPool.hostKey(url));
+		}
+		return r > 0;
+	}
+	/** 要求結果をサーキットブレーカーに記録 */
+	void record(URL url, boolean success){
+		if (failureThreshold < 1) return;
+		CircuitBreaker b = breakers.get(HttpConnectionPool.hostKey(url));
+		if (b==null) return;
+		if (success){
+			b.success();
+		}else{
+			b.failure(System.currentTimeMillis(), failureThreshold, openDuration);
+		}
+	}
+	/** 成功・失敗を記録しない試行要求の終了、次の要求で再試行できるようにする。 */
+	void abandon(URL url){
+		if (failureThreshold < 1) return;
+		CircuitBreaker b = breakers.get(HttpConnectionPool.hostKey(url));
+		if (b != null) b.abandon();
+	}
+	/** totalTimeout 監視用タイマー */
+	static ScheduledExecutorService timer(){
+		if (timer==null){
+			synchronized(HttpPolicy.class){
+				if (timer==null){
+					timer = Executors.newSingleThreadScheduledExecutor(r->{
+						Thread t = new Thread(r, "HttpPolicy-timer");
+						t.setDaemon(true);
+						return t;
+					});
+				}
+			}
+		}
+		return timer;
+	}
+	/** ホスト毎のサーキットブレーカー */
+	private static final class CircuitBreaker{
+		private int failures;
+		private long openUntil;
+		private boolean trial;
+		synchronized boolean isOpen(long now){
+			return openUntil > now || trial;
+		}
+		/** @return 0 = 通常、1 = 試行、-1 = 遮断 */
+		synchronized int tryAcquire(long now, long openDuration){
+			if (openUntil==0) return 0;
+			if (openUntil > now || trial) return -1;
+			// 遮断時間経過後は１要求だけ試行する。
+			trial = true;
+			return 1;
+		}
+		synchronized void success(){
+			failures = 0;
+			openUntil = 0;
+			trial = false;
+		}
+		synchronized void abandon(){
+			trial = false;
+		}
+		synchronized void failure(long now, int threshold, long openDuration){
+			failures++;
+			if (trial || failures >= threshold){
+				openUntil = now + openDuration;
+				trial = false;
+			}
+		}
+	}
+}
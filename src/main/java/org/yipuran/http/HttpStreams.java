@@ -0,0 +1,224 @@
+package org.yipuran.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * HTTP 送受信ストリーミング.
+ * <PRE>
+ * HttpClient / HttpsClient の execute、executeAsync に渡す Consumer を生成する。
+ * 送信データ、受信データ全体をメモリに展開せず、一定サイズのバッファで逐次転送するので、
+ * 大きなデータも一定のメモリで送受信できる。（HttpUtil#send の代替）
+ * 転送バッファはスレッド毎に再利用される。
+ *
+ * 送信データも逐次送信するには、HttpClientBuilder#chunked(int) で chunked 転送を指定する。
+ *
+ * HttpClient client = HttpClientBuilder.of("http://xxx/xxx")
+ *                    .method("POST")
+ *                    .contentType("application/json; charset=utf-8")
+ *                    .chunked(HttpStreams.BUFFER_SIZE)
+ *                    .build();
+ *
+ * // ファイルを送信して、応答をファイルに保存
+ * int status = client.execute(HttpStreams.fromFile(src), (type, m)->{}, HttpStreams.toFile(dest));
+ *
+ * // Reader から UTF-8 で送信して、応答を文字列として逐次処理
+ * int status = client.execute(HttpStreams.from(reader, StandardCharsets.UTF_8), (type, m)->{}
+ * , HttpStreams.decode(StandardCharsets.UTF_8, cb->{
+ *      // cb は呼出し中のみ有効
+ *      System.out.print(cb);
+ * }));
+ * </PRE>
+ */
+public final class HttpStreams{
+	/** 転送バッファサイズ */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(()->new byte[BUFFER_SIZE]);
+
+	private HttpStreams(){}
+
+	/**
+	 * InputStream → OutputStream 転送.
+	 * @param in InputStream
+	 * @param out OutputStream
+	 * @return 転送バイト数
+	 * @throws IOException
+	 */
+	public static long transfer(InputStream in, OutputStream out) throws IOException{
+		byte[] buf = BUFFER.get();
+		long total = 0;
+		int n;
+		while((n = in.read(buf)) >= 0){
+			out.write(buf, 0, n);
+			total += n;
+		}
+		return total;
+	}
+	/**
+	 * InputStream を送信する Consumer.
+	 * @param in 送信データ InputStream、close は呼出し側で行う。
+	 * @return 送信 OutputStream Consumer
+	 */
+	public static Consumer<OutputStream> from(InputStream in){
+		return out->{
+			try{
+				transfer(in, out);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		};
+	}
+	/**
+	 * ファイルを送信する Consumer.
+	 * @param path 送信ファイル
+	 * @return 送信 OutputStream Consumer
+	 */
+	public static Consumer<OutputStream> fromFile(Path path){
+		return out->{
+			try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+				byte[] buf = BUFFER.get();
+				ByteBuffer bb = ByteBuffer.wrap(buf);
+				int n;
+				while((n = channel.read(bb)) >= 0){
+					out.write(buf, 0, n);
+					bb.clear();
+				}
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		};
+	}
+	/**
+	 * Reader の文字を指定文字セットで逐次エンコードして送信する Consumer.
+	 * @param reader 送信データ Reader、close は呼出し側で行う。
+	 * @param charset 文字セット
+	 * @return 送信 OutputStream Consumer
+	 */
+	public static Consumer<OutputStream> from(Reader reader, Charset charset){
+		return out->{
+			CharsetEncoder encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			CharBuffer cb = CharBuffer.allocate(BUFFER_SIZE / 4);
+			ByteBuffer bb = ByteBuffer.allocate(BUFFER_SIZE);
+			try{
+				boolean eof = false;
+				while(!eof){
+					eof = reader.read(cb) < 0;
+					cb.flip();
+					encode(encoder, cb, bb, eof, out);
+					cb.compact();
+				}
+				while(encoder.flush(bb).isOverflow()){
+					writeBuffer(bb, out);
+				}
+				writeBuffer(bb, out);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		};
+	}
+	/**
+	 * 応答を OutputStream に転送する Consumer.
+	 * @param out 出力先 OutputStream、close は呼出し側で行う。
+	 * @return 受信 InputStream Consumer
+	 */
+	public static Consumer<InputStream> to(OutputStream out){
+		return in->{
+			try{
+				transfer(in, out);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		};
+	}
+	/**
+	 * 応答をファイルに保存する Consumer.
+	 * @param path 保存先ファイル、存在する場合は上書き
+	 * @return 受信 InputStream Consumer
+	 */
+	public static Consumer<InputStream> toFile(Path path){
+		return in->{
+			try(OutputStream out = Files.newOutputStream(path)){
+				transfer(in, out);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		};
+	}
+	/**
+	 * 応答を指定文字セットで逐次デコードする Consumer.
+	 * <PRE>
+	 * 受信したバイト列を一定サイズ毎に文字へデコードして consumer に渡す。
+	 * マルチバイト文字がバッファ境界で分断されても、次の受信データと合わせてデコードする。
+	 * consumer に渡す CharBuffer は再利用されるので、呼出し中のみ有効である。
+	 * </PRE>
+	 * @param charset 文字セット
+	 * @param consumer デコードした文字を受け取る Consumer
+	 * @return 受信 InputStream Consumer
+	 */
+	public static Consumer<InputStream> decode(Charset charset, Consumer<CharBuffer> consumer){
+		return in->{
+			CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			// consumer 内で transfer 等が呼ばれてもよいようにスレッド毎のバッファは使用しない。
+			byte[] buf = new byte[BUFFER_SIZE];
+			ByteBuffer bb = ByteBuffer.wrap(buf);
+			CharBuffer cb = CharBuffer.allocate(BUFFER_SIZE);
+			try{
+				int n = 0;
+				while(n >= 0){
+					n = in.read(buf, bb.position(), bb.remaining());
+					if (n > 0) bb.position(bb.position() + n);
+					bb.flip();
+					CoderResult result;
+					do{
+						result = decoder.decode(bb, cb, n < 0);
+						deliver(cb, consumer);
+					}while(result.isOverflow());
+					bb.compact();
+				}
+				while(decoder.flush(cb).isOverflow()){
+					deliver(cb, consumer);
+				}
+				deliver(cb, consumer);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		};
+	}
+
+	private static void encode(CharsetEncoder encoder, CharBuffer cb, ByteBuffer bb, boolean endOfInput, OutputStream out) throws IOException{
+		CoderResult result;
+		do{
+			result = encoder.encode(cb, bb, endOfInput);
+			if (result.isError()) result.throwException();
+			writeBuffer(bb, out);
+		}while(result.isOverflow());
+	}
+	private static void writeBuffer(ByteBuffer bb, OutputStream out) throws IOException{
+		if (bb.position() > 0) out.write(bb.array(), 0, bb.position());
+		bb.clear();
+	}
+	private static void deliver(CharBuffer cb, Consumer<CharBuffer> consumer){
+		cb.flip();
+		if (cb.hasRemaining()) consumer.accept(cb);
+		cb.clear();
+	}
+}
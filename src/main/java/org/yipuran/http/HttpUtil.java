@@ -25,6 +25,7 @@ import org.yipuran.xml.AbstractXmlHandler;
  * 指定ＵＲＬへの HTTP送信または、HTTP(BASIC認証)送信を行う。
  * </pre>
  * @author dvctcyamada
+ * @deprecated HttpClientBuilder / HttpsClientBuilder と HttpStreams を使用する。
  */
 @Deprecated
 public final class HttpUtil{
@@ -1,22 +1,19 @@
 package org.yipuran.http;
 
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.net.Authenticator;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URL;
-import java.util.List;
+import java.security.GeneralSecurityException;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.BiConsumer;
-import java.util.function.Consumer;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.X509TrustManager;
 
 /**
  * HttpsClient.
@@ -54,18 +51,20 @@ import javax.net.ssl.X509TrustManager;
  * });
  *
  *  注意すべきは、１つのインスタンスで併用はできない。
+ *
+ * HttpsClientBuilder#connectionPool(HttpConnectionPool) を指定すると、HttpsURLConnection の代わりに
+ * HttpConnectionPool の Keep-Alive ソケットで送受信し、TLSハンドシェイクを省略する。（Proxy 指定時を除く）
+ * SSLContext は SslContextCache で共有されるので、新しい接続も TLSセッション再開による簡略ハンドシェイクになる。
  *  </PRE>
  */
-public class HttpsClient{
-	private URL url;
-	private String method;
-	private String contentType;
+public class HttpsClient extends HttpClient{
 	private String proxy_server;
 	private String proxy_user;
 	private String proxy_passwd;
 	private Integer proxy_port;
-	private Map<String, String> headerOptions;
 	private int httpresponsecode;
+	/** SSLSocketFactory、null は SslContextCache.trustAll() */
+	private final SSLSocketFactory factory;
 	/**
 	 * コンストラクタ.
 	 * @param url HTTP先URL
@@ -73,10 +72,20 @@ public class HttpsClient{
 	 * @param contentType contentType指定文字列
 	 */
 	protected HttpsClient(URL url, String method, String contentType, Map<String, String> headerOptions){
-		this.url = url;
-		this.method = method;
-		this.contentType = contentType;
-		this.headerOptions = headerOptions;
+		super(url, method, contentType, headerOptions);
+		factory = null;
+	}
+	/**
+	 * コンストラクタ（コネクションプール指定）.
+	 * @param url HTTP先URL
+	 * @param method HTTPメソッド
+	 * @param contentType contentType指定文字列
+	 * @param headerOptions 追加するHTTPヘッダ
+	 * @param pool HttpConnectionPool
+	 */
+	protected HttpsClient(URL url, String method, String contentType, Map<String, String> headerOptions, HttpConnectionPool pool){
+		super(url, method, contentType, headerOptions, pool);
+		factory = null;
 	}
 	/**
 	 * コンストラクタ（Proxy指定）.
@@ -90,77 +99,81 @@ public class HttpsClient{
 	 * @param map パラメータMap 値は、URLエンコードされてなければならない。HttpsClientBuilder を使用することで送信するパラメータ値のエンコードは保証される。
 	 */
 	protected HttpsClient(URL url, String method, String contentType, Map<String, String> headerOptions, String proxy_server, String proxy_user, String proxy_passwd, Integer proxy_port){
-		this.url = url;
-		this.method = method;
-		this.contentType = contentType;
-		this.headerOptions = headerOptions;
+		super(url, method, contentType, headerOptions);
 		this.proxy_server = proxy_server;
 		this.proxy_user = proxy_user;
 		this.proxy_passwd = proxy_passwd;
 		this.proxy_port = proxy_port;
+		factory = null;
 	}
 	/**
-	 * HTTPS要求送受信.
-	 * @param outconsumer 送信 OutputStream Consumer
-	 * @param consumer HTTPS通信結果、受け取ったHTTP ContentType、HTTPヘッダを読取り処理する BiConsumer
-	 * @param headconsumer HTTPS通信結果、受け取ったHTTP ContentType、HTTPヘッダを読取り処理する BiConsumer
-	 * @param readconsumer 要求した結果の受け取り InputStream を指定する Consumer
+	 * コンストラクタ（Builder の全指定）.
+	 * @param url HTTP先URL
+	 * @param method HTTPメソッド
+	 * @param contentType contentType指定文字列
+	 * @param headerOptions 追加するHTTPヘッダ
+	 * @param pool HttpConnectionPool、null の場合は HttpsURLConnection で送受信する。
+	 * @param proxy_server Proxyサーバ名、null は Proxy を使用しない。
+	 * @param proxy_user Proxyユーザ名
+	 * @param proxy_passwd Proxyパスワード
+	 * @param proxy_port Proxyポート番号
+	 * @param executor executeAsync 実行 Executor、null は HttpExecutors.defaultExecutor()
+	 * @param chunkSize chunked 転送のチャンクサイズ、0 は送信データ全体を送信
+	 * @param policy タイムアウト、リトライ規則、null は規則無し
+	 * @param decompress true = Accept-Encoding を送信して応答を展開する。
+	 * @param gzipRequest true = 送信データを gzip 圧縮する。
+	 * @param metrics 計測通知、null は通知しない。
+	 * @param factory SSLSocketFactory、null は SslContextCache.trustAll()
 	 */
-	public int execute(Consumer<OutputStream> outconsumer, BiConsumer<String, Map<String, List<String>>> headconsumer, Consumer<InputStream> inconsumer){
-		int status;
-		try{
-			SSLContext ctx = SSLContext.getInstance("SSL");
-			ctx.init(null, new X509TrustManager[]{ new NonAuthentication() }, null);
-			SSLSocketFactory factory = ctx.getSocketFactory();
-
-			HttpsURLConnection uc;
-			if (proxy_server != null){
-				// Proxy利用
-				if (proxy_user != null && proxy_passwd != null){
-					Authenticator.setDefault(new Authenticator(){
-						@Override
-						protected PasswordAuthentication getPasswordAuthentication() {
-							return new PasswordAuthentication(proxy_user, proxy_passwd.toCharArray());
-						}
-					});
-				}
-				Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxy_server, Optional.ofNullable(proxy_port).orElse(80)));
-				uc = (HttpsURLConnection)url.openConnection(proxy);
-			}else{
-				uc = (HttpsURLConnection)url.openConnection();
-			}
-			uc.setSSLSocketFactory(factory);
-
-			/* HTTPリクエストヘッダの設定 */
-			uc.setDoOutput(true);              // こちらからのデータ送信を可能とする
-			uc.setReadTimeout(0);              // 読み取りタイムアウト値をミリ秒単位で設定(0は無限)
-			uc.setRequestMethod(method);       // URL 要求のメソッドを設定
-			if (contentType != null) uc.setRequestProperty("Content-Type", contentType);
-			if (headerOptions.size() > 0) {
-				headerOptions.entrySet().stream().forEach(e->{
-					uc.setRequestProperty(e.getKey(), e.getValue());
+	HttpsClient(URL url, String method, String contentType, Map<String, String> headerOptions, HttpConnectionPool pool
+			, String proxy_server, String proxy_user, String proxy_passwd, Integer proxy_port
+			, Executor executor, int chunkSize, HttpPolicy policy, boolean decompress, boolean gzipRequest, HttpMetricsListener metrics
+			, SSLSocketFactory factory){
+		super(url, method, contentType, headerOptions, pool, executor, chunkSize, policy, decompress, gzipRequest, metrics);
+		this.proxy_server = proxy_server;
+		this.proxy_user = proxy_user;
+		this.proxy_passwd = proxy_passwd;
+		this.proxy_port = proxy_port;
+		this.factory = factory;
+	}
+	/* @see org.yipuran.http.HttpClient#openConnection(java.net.URL) */
+	@Override
+	protected HttpURLConnection openConnection(URL url) throws IOException{
+		HttpsURLConnection uc;
+		if (proxy_server != null){
+			// Proxy利用
+			if (proxy_user != null && proxy_passwd != null){
+				Authenticator.setDefault(new Authenticator(){
+					@Override
+					protected PasswordAuthentication getPasswordAuthentication() {
+						return new PasswordAuthentication(proxy_user, proxy_passwd.toCharArray());
+					}
 				});
 			}
-			// コネクション確立→送信
-			uc.connect();
-
-			try(OutputStream out = uc.getOutputStream()){
-				outconsumer.accept(out);
-				out.flush();
-			}
-
-			status = uc.getResponseCode();
-			if (httpresponsecode != 200){
-				throw new RuntimeException("HTTP response " + httpresponsecode);
-			}
-			// 戻り値取得
-			headconsumer.accept(uc.getContentType(), uc.getHeaderFields());
-			// 応答読込
-			inconsumer.accept(uc.getInputStream());
-		}catch(Exception e){
-		   throw new RuntimeException(e);
+			Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxy_server, Optional.ofNullable(proxy_port).orElse(80)));
+			uc = (HttpsURLConnection)url.openConnection(proxy);
+		}else{
+			uc = (HttpsURLConnection)url.openConnection();
+		}
+		try{
+			uc.setSSLSocketFactory(sslSocketFactory());
+		}catch(GeneralSecurityException e){
+			throw new IOException(e);
+		}
+		return uc;
+	}
+	/* @see org.yipuran.http.HttpClient#sslSocketFactory() */
+	@Override
+	protected SSLSocketFactory sslSocketFactory() throws GeneralSecurityException{
+		return factory==null ? SslContextCache.trustAll() : factory;
+	}
+	/* @see org.yipuran.http.HttpClient#checkStatus(int) */
+	@Override
+	protected void checkStatus(int status){
+		httpresponsecode = status;
+		if (httpresponsecode != 200){
+			throw new RuntimeException("HTTP response " + httpresponsecode);
 		}
-		return status;
 	}
 
 	/**
@@ -4,6 +4,9 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * HttpsClientを生成するビルダー.
@@ -13,6 +16,14 @@ public final class HttpsClientBuilder{
 	private String method;
 	private String contentType;
 	private Map<String, String> headerOptions;
+	private HttpConnectionPool pool;
+	private Executor executor;
+	private int chunkSize;
+	private HttpPolicy policy;
+	private boolean decompress;
+	private boolean gzipRequest;
+	private HttpMetricsListener metrics;
+	private SSLSocketFactory factory;
 	private String proxy_server;
 	private String proxy_user;
 	private String proxy_passwd;
@@ -80,6 +91,109 @@ public final class HttpsClientBuilder{
 		this.proxy_port = proxy_port;
 		return this;
 	}
+	/**
+	 * コネクションプール指定.
+	 * <PRE>
+	 * 指定すると HttpURLConnection の代わりに HttpConnectionPool の Keep-Alive ソケットで送受信する。
+	 * HttpConnectionPool は複数の Builder で共有できる。
+	 * </PRE>
+	 * @param pool HttpConnectionPool
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder connectionPool(HttpConnectionPool pool){
+		this.pool = pool;
+		return this;
+	}
+	/**
+	 * executeAsync 実行 Executor 指定.
+	 * <PRE>
+	 * 未指定の場合は HttpExecutors.defaultExecutor()（仮想スレッドまたは上限付きスレッドプール）
+	 * </PRE>
+	 * @param executor Executor
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder executor(Executor executor){
+		this.executor = executor;
+		return this;
+	}
+	/**
+	 * chunked 転送指定.
+	 * <PRE>
+	 * 送信データをメモリに保持せず、chunkSize 毎に Transfer-Encoding: chunked で送信する。
+	 * 大きなデータの送信に使用する。（HttpStreams 参照）
+	 * </PRE>
+	 * @param chunkSize チャンクサイズ（バイト）
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder chunked(int chunkSize){
+		if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive : " + chunkSize);
+		this.chunkSize = chunkSize;
+		return this;
+	}
+	/**
+	 * タイムアウト、リトライ、サーキットブレーカー規則指定.
+	 * <PRE>
+	 * 未指定の場合は、タイムアウト無し（無限）、リトライ無し、サーキットブレーカー無し。
+	 * サーキットブレーカーの状態は HttpPolicy が保持するので、同じホストへの要求には同じ HttpPolicy を指定すること。
+	 * </PRE>
+	 * @param policy HttpPolicy
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder policy(HttpPolicy policy){
+		this.policy = policy;
+		return this;
+	}
+	/**
+	 * 応答圧縮指定.
+	 * <PRE>
+	 * Accept-Encoding: gzip, deflate を送信し、Content-Encoding が gzip / deflate の応答を展開して
+	 * 要求した結果の受け取り InputStream Consumer に渡す。HTTPヘッダは受信したまま渡す。
+	 * </PRE>
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder compression(){
+		return compression(false);
+	}
+	/**
+	 * 応答圧縮、送信データ圧縮指定.
+	 * <PRE>
+	 * compression() に加えて、gzipRequest = true の場合は送信 OutputStream Consumer が書き込んだデータを
+	 * gzip 圧縮し、Content-Encoding: gzip を付けて送信する。（要求先が gzip 送信に対応していること）
+	 * </PRE>
+	 * @param gzipRequest true = 送信データを gzip 圧縮する。
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder compression(boolean gzipRequest){
+		this.decompress = true;
+		this.gzipRequest = gzipRequest;
+		return this;
+	}
+	/**
+	 * SSLSocketFactory 指定.
+	 * <PRE>
+	 * 未指定の場合は証明書検証を行わない SslContextCache.trustAll()
+	 * TLSセッションを再開できるよう SslContextCache.of(KeyStore, char[], KeyStore) で取得した共有の SSLSocketFactory を指定すること。
+	 * </PRE>
+	 * @param factory SSLSocketFactory
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder sslSocketFactory(SSLSocketFactory factory){
+		this.factory = factory;
+		return this;
+	}
+	/**
+	 * 計測通知指定.
+	 * <PRE>
+	 * 接続時間、応答ヘッダ受信までの時間、全体時間、送受信バイト数、HTTPステータス、コネクションプールの空き待ちを通知する。
+	 * インメモリ集計は HttpMetrics を指定する。
+	 * </PRE>
+	 * @param metrics HttpMetricsListener
+	 * @return HttpsClientBuilder
+	 */
+	public HttpsClientBuilder metrics(HttpMetricsListener metrics){
+		this.metrics = metrics;
+		return this;
+	}
 	/**
 	 * HttpsClient生成.
 	 * @return HttpsClient
@@ -88,7 +202,9 @@ public final class HttpsClientBuilder{
 		if (method==null) {
 			throw new RuntimeException("method is unknown");
 		}
-		if (proxy_server==null) return new HttpsClient(url, method, contentType, headerOptions);
-		return new HttpsClient(url, method, contentType, headerOptions, proxy_server, proxy_user, proxy_passwd, proxy_port);
+		// Proxy 指定時はコネクションプールを使用しない。
+		return new HttpsClient(url, method, contentType, headerOptions, proxy_server==null ? pool : null
+				, proxy_server, proxy_user, proxy_passwd, proxy_port
+				, executor, chunkSize, policy, decompress, gzipRequest, metrics, factory);
 	}
 }
@@ -0,0 +1,179 @@
+package org.yipuran.http;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * HttpClient#execute １回分の実行状態.
+ * <PRE>
+ * HttpPolicy の接続・読込タイムアウトを全体タイムアウトの残り時間で制限し、
+ * 全体タイムアウトに達したら実行中の接続を切断する。
+ * HttpMetricsListener 指定時は、実行毎の時間、送受信バイト数を通知する。
+ * </PRE>
+ */
+final class RequestContext implements AutoCloseable{
+	private final HttpPolicy policy;
+	private final long deadline;
+	private final ScheduledFuture<?> watchdog;
+	private final HttpMetricsListener listener;
+	private final String host;
+	private volatile Closeable connection;
+	private volatile boolean expired;
+	private long attemptStart;
+	private long bytesOut;
+	private long bytesIn;
+
+	RequestContext(HttpPolicy policy){
+		this(policy, null, null);
+	}
+	RequestContext(HttpPolicy policy, HttpMetricsListener listener, String host){
+		this.policy = policy;
+		this.listener = listener;
+		this.host = host;
+		if (policy.getTotalTimeout() > 0){
+			deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getTotalTimeout());
+			watchdog = HttpPolicy.timer().schedule(this::expire, policy.getTotalTimeout(), TimeUnit.MILLISECONDS);
+		}else{
+			deadline = 0;
+			watchdog = null;
+		}
+	}
+	HttpPolicy policy(){
+		return policy;
+	}
+	/**
+	 * 接続タイムアウト.
+	 * @return ミリ秒、0 は無限
+	 * @throws SocketTimeoutException 全体タイムアウト超過
+	 */
+	int connectTimeout() throws SocketTimeoutException{
+		return limit(policy.getConnectTimeout());
+	}
+	/**
+	 * 読込タイムアウト.
+	 * @return ミリ秒、0 は無限
+	 * @throws SocketTimeoutException 全体タイムアウト超過
+	 */
+	int readTimeout() throws SocketTimeoutException{
+		return limit(policy.getReadTimeout());
+	}
+	/**
+	 * 全体タイムアウト時に切断する接続を登録する.
+	 * @param connection 接続を閉じる Closeable
+	 * @throws SocketTimeoutException 既に全体タイムアウト超過
+	 */
+	void bind(Closeable connection) throws SocketTimeoutException{
+		this.connection = connection;
+		if (expired){
+			closeQuietly(connection);
+			throw timeout();
+		}
+	}
+	/**
+	 * 再実行前の待機.
+	 * @param attempt 再実行回数（0 始まり）
+	 * @return false = 待機すると全体タイムアウトを超えるので再実行しない。
+	 */
+	boolean backoff(int attempt){
+		long wait = policy.backoff(attempt);
+		if (deadline != 0 && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) >= deadline) return false;
+		try{
+			Thread.sleep(wait);
+			return true;
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	/** 実行（リトライ毎）開始 */
+	void start(){
+		attemptStart = System.nanoTime();
+		bytesOut = 0;
+		bytesIn = 0;
+	}
+	/** 送信バイト数を計測する Consumer */
+	Consumer<OutputStream> countOut(Consumer<OutputStream> outconsumer){
+		if (listener==null) return outconsumer;
+		return out->outconsumer.accept(new FilterOutputStream(out){
+			@Override
+			public void write(int b) throws IOException{
+				out.write(b);
+				bytesOut++;
+			}
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException{
+				out.write(b, off, len);
+				bytesOut += len;
+			}
+		});
+	}
+	/** 受信バイト数を計測する InputStream */
+	InputStream countIn(InputStream in){
+		if (listener==null) return in;
+		return new FilterInputStream(in){
+			@Override
+			public int read() throws IOException{
+				int b = in.read();
+				if (b >= 0) bytesIn++;
+				return b;
+			}
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException{
+				int n = in.read(b, off, len);
+				if (n > 0) bytesIn += n;
+				return n;
+			}
+		};
+	}
+	void connected(long connectNanos){
+		if (listener != null) listener.connected(host, connectNanos);
+	}
+	void poolAcquired(long waitNanos, int leased, int maxPerHost){
+		if (listener != null) listener.poolAcquired(host, waitNanos, leased, maxPerHost);
+	}
+	void responded(int status){
+		if (listener != null) listener.responded(host, status, System.nanoTime() - attemptStart);
+	}
+	void completed(){
+		if (listener != null) listener.completed(host, System.nanoTime() - attemptStart, bytesOut, bytesIn);
+	}
+	void failed(Throwable cause){
+		if (listener != null) listener.failed(host, System.nanoTime() - attemptStart, cause);
+	}
+	boolean isExpired(){
+		return expired;
+	}
+	SocketTimeoutException timeout(){
+		return new SocketTimeoutException("total timeout " + policy.getTotalTimeout() + "ms exceeded");
+	}
+	@Override
+	public void close(){
+		if (watchdog != null) watchdog.cancel(false);
+		connection = null;
+	}
+	private void expire(){
+		expired = true;
+		Closeable c = connection;
+		if (c != null) closeQuietly(c);
+	}
+	private int limit(int timeout) throws SocketTimeoutException{
+		if (deadline==0) return timeout;
+		long remain = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		if (remain <= 0) throw timeout();
+		return timeout==0 ? (int)Math.min(remain, Integer.MAX_VALUE) : (int)Math.min(remain, timeout);
+	}
+	private static void closeQuietly(Closeable c){
+		try{
+			c.close();
+		}catch(IOException e){
+		}
+	}
+}
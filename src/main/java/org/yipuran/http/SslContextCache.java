@@ -0,0 +1,292 @@
+package org.yipuran.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * SSLContext / SSLSocketFactory キャッシュ.
+ * <PRE>
+ * 鍵・証明書（KeyStore）毎に SSLContext を１つだけ生成して共有する。
+ * SSLContext が共有されるので TLSセッションキャッシュも共有され、同じホストへの２回目以降の
+ * HTTPS 接続はセッション再開（簡略ハンドシェイク）になる。
+ * HttpsClient は証明書検証を行わない trustAll() を使用する。
+ * 別の鍵・証明書を使用する場合は HttpsClientBuilder#sslSocketFactory(SSLSocketFactory) に of(...) の結果を指定する。
+ *
+ * HttpsClient client = HttpsClientBuilder.of("https://xxx/xxx")
+ *                    .method("POST")
+ *                    .sslSocketFactory(SslContextCache.of(keyStore, password, trustStore))
+ *                    .build();
+ *
+ * sessionCache(int, int) で、以後生成、および生成済の SSLContext のクライアントセッションキャッシュ数、有効時間を指定する。
+ * stats() で、キャッシュした SSLSocketFactory が行ったハンドシェイク数、時間、セッション再開率を取得する。
+ * ハンドシェイク時間はソケット生成からハンドシェイク完了通知までの時間である。
+ * </PRE>
+ */
+public final class SslContextCache{
+	private static final ConcurrentMap<String, MeasuredSSLSocketFactory> CACHE = new ConcurrentHashMap<>();
+	private static volatile int sessionCacheSize = -1;
+	private static volatile int sessionTimeout = -1;
+
+	private SslContextCache(){}
+
+	/**
+	 * 証明書検証を行わない SSLSocketFactory.
+	 * NonAuthentication を TrustManager とする SSLContext の SSLSocketFactory
+	 * @return SSLSocketFactory
+	 * @throws GeneralSecurityException
+	 */
+	public static SSLSocketFactory trustAll() throws GeneralSecurityException{
+		return get("trustAll", ()->{
+			SSLContext ctx = SSLContext.getInstance("SSL");
+			ctx.init(null, new X509TrustManager[]{ new NonAuthentication() }, null);
+			return ctx;
+		});
+	}
+	/**
+	 * KeyStore 指定の SSLSocketFactory.
+	 * <PRE>
+	 * キャッシュのキーは、KeyStore に格納された証明書、keyStore の秘密鍵と鍵パスワードから求めたダイジェストなので、
+	 * 同じ内容の KeyStore であれば別インスタンスでも同じ SSLSocketFactory を返す。
+	 * 鍵パスワードが誤っている場合は、キャッシュ済であっても UnrecoverableKeyException となる。
+	 * </PRE>
+	 * @param keyStore クライアント認証の鍵 KeyStore、null はクライアント認証無し
+	 * @param keyPassword keyStore の鍵パスワード
+	 * @param trustStore 信頼する証明書 KeyStore、null は JDK デフォルト
+	 * @return SSLSocketFactory
+	 * @throws GeneralSecurityException 鍵パスワードの誤り（UnrecoverableKeyException）等
+	 */
+	public static SSLSocketFactory of(KeyStore keyStore, char[] keyPassword, KeyStore trustStore) throws GeneralSecurityException{
+		String key = "key=" + fingerprint(keyStore, keyPassword) + ";trust=" + fingerprint(trustStore, null);
+		return get(key, ()->{
+			KeyManager[] km = null;
+			if (keyStore != null){
+				KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+				kmf.init(keyStore, keyPassword);
+				km = kmf.getKeyManagers();
+			}
+			TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			tmf.init(trustStore);
+			TrustManager[] tm = tmf.getTrustManagers();
+			SSLContext ctx = SSLContext.getInstance("TLS");
+			ctx.init(km, tm, null);
+			return ctx;
+		});
+	}
+	/**
+	 * TLSセッションキャッシュ指定.
+	 * @param size セッションキャッシュ数、0 は無制限
+	 * @param timeoutSeconds セッション有効時間（秒）、0 は無制限
+	 */
+	public static void sessionCache(int size, int timeoutSeconds){
+		if (size < 0 || timeoutSeconds < 0) throw new IllegalArgumentException("sessionCache(" + size + ", " + timeoutSeconds + ")");
+		sessionCacheSize = size;
+		sessionTimeout = timeoutSeconds;
+		CACHE.values().forEach(f->configure(f.context));
+	}
+	/**
+	 * ハンドシェイク統計.
+	 * @return キャッシュした全 SSLSocketFactory のハンドシェイク統計
+	 */
+	public static TlsHandshakeStats stats(){
+		long count = 0;
+		long resumed = 0;
+		long nanos = 0;
+		for(MeasuredSSLSocketFactory f : CACHE.values()){
+			count += f.handshakes.sum();
+			resumed += f.resumed.sum();
+			nanos += f.nanos.sum();
+		}
+		return new TlsHandshakeStats(count, resumed, nanos);
+	}
+	/**
+	 * キャッシュ破棄.
+	 * 以後の取得では SSLContext を新たに生成する。
+	 */
+	public static void clear(){
+		CACHE.clear();
+	}
+
+	private static SSLSocketFactory get(String key, ContextFactory factory) throws GeneralSecurityException{
+		MeasuredSSLSocketFactory f = CACHE.get(key);
+		if (f != null) return f;
+		SSLContext ctx = factory.create();
+		configure(ctx);
+		MeasuredSSLSocketFactory created = new MeasuredSSLSocketFactory(ctx);
+		f = CACHE.putIfAbsent(key, created);
+		return f==null ? created : f;
+	}
+	private static void configure(SSLContext ctx){
+		SSLSessionContext sc = ctx.getClientSessionContext();
+		if (sc==null) return;
+		if (sessionCacheSize >= 0) sc.setSessionCacheSize(sessionCacheSize);
+		if (sessionTimeout >= 0) sc.setSessionTimeout(sessionTimeout);
+	}
+	/**
+	 * KeyStore のダイジェスト.
+	 * @param ks KeyStore
+	 * @param keyPassword null 以外は秘密鍵を取り出して鍵と鍵パスワードもダイジェストに含める。
+	 * @return ダイジェストの16進文字列
+	 * @throws GeneralSecurityException 鍵パスワードの誤り等で秘密鍵を取り出せない
+	 */
+	private static String fingerprint(KeyStore ks, char[] keyPassword) throws GeneralSecurityException{
+		if (ks==null) return "default";
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		if (keyPassword != null){
+			md.update(new String(keyPassword).getBytes(StandardCharsets.UTF_8));
+		}
+		for(String alias : Collections.list(ks.aliases())){
+			md.update(alias.getBytes(StandardCharsets.UTF_8));
+			if (keyPassword != null && ks.isKeyEntry(alias)){
+				// 取り出せない鍵（HSM 等）は getEncoded() が null、証明書と鍵パスワードで区別する。
+				Key k = ks.getKey(alias, keyPassword);
+				byte[] encoded = k==null ? null : k.getEncoded();
+				if (encoded != null) md.update(encoded);
+			}
+			Certificate[] chain = ks.getCertificateChain(alias);
+			if (chain==null){
+				Certificate c = ks.getCertificate(alias);
+				chain = c==null ? new Certificate[0] : new Certificate[]{ c };
+			}
+			for(Certificate c : chain){
+				md.update(c.getEncoded());
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for(byte b : md.digest()){
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	@FunctionalInterface
+	private interface ContextFactory{
+		SSLContext create() throws GeneralSecurityException;
+	}
+
+	/** ハンドシェイクを計測する SSLSocketFactory */
+	private static final class MeasuredSSLSocketFactory extends SSLSocketFactory{
+		private final SSLContext context;
+		private final SSLSocketFactory delegate;
+		private final LongAdder handshakes = new LongAdder();
+		private final LongAdder resumed = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		MeasuredSSLSocketFactory(SSLContext context){
+			this.context = context;
+			delegate = context.getSocketFactory();
+		}
+		private Socket measure(Socket socket){
+			if (socket instanceof SSLSocket){
+				long startNanos = System.nanoTime();
+				long startMillis = System.currentTimeMillis();
+				((SSLSocket)socket).addHandshakeCompletedListener(e->{
+					nanos.add(System.nanoTime() - startNanos);
+					handshakes.increment();
+					// 再開したセッションはハンドシェイク開始前に生成されている。
+					if (e.getSession().getCreationTime() < startMillis) resumed.increment();
+				});
+			}
+			return socket;
+		}
+		@Override
+		public String[] getDefaultCipherSuites(){
+			return delegate.getDefaultCipherSuites();
+		}
+		@Override
+		public String[] getSupportedCipherSuites(){
+			return delegate.getSupportedCipherSuites();
+		}
+		@Override
+		public Socket createSocket() throws IOException{
+			return measure(delegate.createSocket());
+		}
+		@Override
+		public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException{
+			return measure(delegate.createSocket(s, host, port, autoClose));
+		}
+		@Override
+		public Socket createSocket(String host, int port) throws IOException{
+			return measure(delegate.createSocket(host, port));
+		}
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException{
+			return measure(delegate.createSocket(host, port, localHost, localPort));
+		}
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException{
+			return measure(delegate.createSocket(host, port));
+		}
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException{
+			return measure(delegate.createSocket(address, port, localAddress, localPort));
+		}
+	}
+
+	/**
+	 * TLSハンドシェイク統計.
+	 */
+	public static final class TlsHandshakeStats{
+		private final long handshakes;
+		private final long resumed;
+		private final long nanos;
+		private TlsHandshakeStats(long handshakes, long resumed, long nanos){
+			this.handshakes = handshakes;
+			this.resumed = resumed;
+			this.nanos = nanos;
+		}
+		/**
+		 * ハンドシェイク数.
+		 * @return 完了したハンドシェイク数
+		 */
+		public long getHandshakes(){
+			return handshakes;
+		}
+		/**
+		 * セッション再開数.
+		 * @return 簡略ハンドシェイクでセッション再開した数
+		 */
+		public long getResumed(){
+			return resumed;
+		}
+		/**
+		 * セッション再開率.
+		 * @return 0.0 ～ 1.0、ハンドシェイク無しは 0.0
+		 */
+		public double getResumptionRate(){
+			return handshakes==0 ? 0.0 : (double)resumed / handshakes;
+		}
+		/**
+		 * 平均ハンドシェイク時間.
+		 * @return ミリ秒、ハンドシェイク無しは 0.0
+		 */
+		public double getAverageHandshakeMillis(){
+			return handshakes==0 ? 0.0 : (double)nanos / handshakes / TimeUnit.MILLISECONDS.toNanos(1);
+		}
+		@Override
+		public String toString(){
+			return String.format("handshakes=%d, resumed=%d, resumptionRate=%.3f, averageHandshakeMillis=%.3f"
+					, handshakes, resumed, getResumptionRate(), getAverageHandshakeMillis());
+		}
+	}
+}
@@ -1,15 +1,21 @@
 package org.yipuran.util.pch;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 /**
  * デカルト積（直積）生成.
  * <PRE>
  * 同じ型の Listを複数渡して、デカルト積を求める。
+ * 並列に生成する場合は、parallelStream() を使用する。
  * </PRE>
  */
 public class Cartesian<T> {
@@ -36,79 +42,34 @@ public class Cartesian<T> {
      * @return Listの入れ子
      */
     public List<List<T>> product(){
-        int total = 1;
-        int[] max = new int[lists.length];
-        for(int i=0; i < lists.length; i++){
-            max[i] = lists[i].size();
-        }
-        int[] initProduct = new int[lists.length];
-        Arrays.fill(initProduct, 1);
-        for(List<T> list:lists){
-            total *= list.size();
-        }
         List<List<T>> rlist = new ArrayList<>();
-        int finalTotal = total;
-        Iterator<List<T>> itr = new Iterator<List<T>>() {
-            int index = -1;
-            int[] presentProduct;
-            @Override
-            public boolean hasNext(){
-                index++;
-                return index < finalTotal;
-            }
-            @Override
-            public List<T> next() {
-                if (index == 0){
-                    presentProduct = initProduct;
-                }else{
-                    presentProduct = generateNextProduct(presentProduct, max);
-                }
-                List<T> result = new ArrayList<>();
-                for(int i=0; i < presentProduct.length; i++){
-                    result.add(lists[i].get(presentProduct[i] - 1));
-                }
-                return result;
-            }
-        };
-        itr.forEachRemaining(rlist::add);
+        iterable().forEach(rlist::add);
         return rlist;
     }
 
     /**
      * デカルト積リストのIterable生成
+     * <PRE>
+     * 総数は求めずに最後の組で終了するので、総数が long を超えても先頭から列挙できる。
+     * </PRE>
      * @return List の Iterable
      */
     public Iterable<List<T>> iterable(){
-        int total = 1;
-        int[] max = new int[lists.length];
-        for(int i=0; i < lists.length; i++){
-            max[i] = lists[i].size();
-        }
-        int[] initProduct = new int[lists.length];
-        Arrays.fill(initProduct, 1);
-        for(List<T> list:lists){
-            total *= list.size();
-        }
-        int finalTotal = total;
+        int[] max = radix();
         return () -> new Iterator<List<T>>() {
-            int index = -1;
-            int[] presentProduct;
+            int[] presentProduct = initProduct(max);
             @Override
             public boolean hasNext(){
-                index++;
-                return index < finalTotal;
+                return presentProduct != null;
             }
             @Override
             public List<T> next() {
-                if (index == 0){
-                    presentProduct = initProduct;
-                }else{
-                    presentProduct = generateNextProduct(presentProduct, max);
-                }
+                if (presentProduct==null) throw new NoSuchElementException();
                 List<T> result = new ArrayList<>();
                 for(int i=0; i < presentProduct.length; i++){
                     result.add(lists[i].get(presentProduct[i] - 1));
                 }
+                if (!nextProduct(presentProduct, max)) presentProduct = null;
                 return result;
             }
         };
@@ -147,26 +108,200 @@ public class Cartesian<T> {
         };
     }
 
-    private int[] generateNextProduct(int[] curr, int[] max){
-        int n = curr.length - 1;
-        curr[n]++;
-        for(int i=n; i > 0; i--){
-            if (curr[i] > max[i]){
-                curr[i] = 1;
-                curr[i-1]++;
+    /** 先頭の組、空の List があれば null */
+    private static int[] initProduct(int[] max){
+        for(int m : max){
+            if (m < 1) return null;
+        }
+        int[] initProduct = new int[max.length];
+        Arrays.fill(initProduct, 1);
+        return initProduct;
+    }
+    /** 次の組に進める、最後の組であれば false */
+    private static boolean nextProduct(int[] curr, int[] max){
+        for(int i=curr.length - 1; 0 <= i; i--){
+            if (curr[i] < max[i]){
+                curr[i]++;
+                return true;
             }
+            curr[i] = 1;
         }
-        return curr;
+        return false;
     }
     /**
      * デカルト積結果総数
-     * @return
+     * @return 各 List の要素数の積
+     * @throws ArithmeticException 総数が int を超える場合、sizeExact を使用する。
      */
     public int size() {
-    	int res = 1;
-    	for(List<T> l:lists) {
-    		res *= l.size();
-    	}
-    	return res;
+        return Math.toIntExact(Ranks.product(radix()));
+    }
+    /**
+     * デカルト積結果総数を BigInteger で求める
+     * @return 各 List の要素数の積
+     */
+    public BigInteger sizeExact() {
+        return Ranks.productExact(radix());
+    }
+    private int[] radix(){
+        int[] radix = new int[lists.length];
+        for(int i=0; i < lists.length; i++){
+            radix[i] = lists[i].size();
+        }
+        return radix;
+    }
+
+    /**
+     * デカルト積 Spliterator 取得.
+     * <PRE>
+     * 生成順の順位の範囲で分割できる Spliterator、分割した範囲の先頭の組は順位から直接求める。
+     * 順序は iterable() と同じである。
+     * </PRE>
+     * @return Spliterator&lt;List&lt;T&gt;&gt;
+     * @throws ArithmeticException 結果総数が long を超える場合
+     */
+    public Spliterator<List<T>> spliterator(){
+        return new RankSpliterator<>(new Space<>(lists));
+    }
+    /**
+     * デカルト積 Stream 取得.
+     * @return Stream&lt;List&lt;T&gt;&gt;
+     */
+    public Stream<List<T>> stream(){
+        return StreamSupport.stream(spliterator(), false);
+    }
+    /**
+     * デカルト積 並列 Stream 取得.
+     * @return 順位の範囲で分割して並列に生成する Stream&lt;List&lt;T&gt;&gt;
+     */
+    public Stream<List<T>> parallelStream(){
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * デカルト積の順位指定取得.
+     * <PRE>
+     * 生成順の rank 番目（0 起点）を先頭から辿らずに求める。範囲を分けて別の JVM で生成する、中断した位置から再開する場合に使用する。
+     * </PRE>
+     * @param rank 順位、0 ～ size() - 1
+     * @return List&lt;T&gt;
+     * @throws IndexOutOfBoundsException 順位が範囲外の場合
+     */
+    public List<T> get(long rank){
+        return new Space<>(lists).at(rank);
+    }
+    /**
+     * デカルト積の順位.
+     * <PRE>
+     * get(long) の逆で、生成結果の生成順の順位を求める。要素は equals で各 List の位置を求める。
+     * </PRE>
+     * @param element 生成結果
+     * @return 順位、生成結果ではない場合は -1
+     */
+    public long rankOf(List<T> element){
+        return new Space<>(lists).rankOf(element);
+    }
+    /**
+     * デカルト積の要素位置の訪問.
+     * <PRE>
+     * 生成順に、各 List の要素位置（0 起点）の配列を visitor に渡す。
+     * 配列は再利用して生成結果ごとに List を生成しないので、探索の条件判定に使用する。保持する場合は複製する。
+     * </PRE>
+     * @param visitor 要素位置の配列を受け取る Consumer
+     */
+    public void visit(Consumer<int[]> visitor){
+        new Space<>(lists).visit(visitor);
+    }
+    /**
+     * デカルト積の読取専用 List の訪問.
+     * <PRE>
+     * 生成順に、生成結果を読取専用の List で visitor に渡す。
+     * List は再利用して次の生成結果で内容が変わるので、保持する場合は new ArrayList&lt;&gt;(list) で複製する。
+     * </PRE>
+     * @param visitor 生成結果を受け取る Consumer
+     */
+    public void visitView(Consumer<List<T>> visitor){
+        new Space<>(lists).visitView(visitor);
+    }
+    /**
+     * デカルト積の枝刈り探索.
+     * <PRE>
+     * 先頭から 1 要素ずつ深さ優先で生成し、生成途中の先頭部分を prefix で判定する。
+     * prefix が false の先頭部分から続く生成結果は生成しないので、条件を満たさない部分を丸ごと省いて探索する。
+     * 全ての List の要素を決めた生成結果も prefix で判定し、true の場合に consumer に渡す。
+     * 探索順は compute と同じ生成順になる。
+     * prefix に渡す List は読取専用で再利用する。consumer に渡す List は生成結果ごとに新しく生成する。
+     * </PRE>
+     * @param prefix 先頭部分の Predicate、true = 探索を続ける
+     * @param consumer 条件を満たす生成結果を受け取る Consumer
+     */
+    public void search(Predicate<List<T>> prefix, Consumer<List<T>> consumer){
+        if (lists.length==0) return;
+        new PrefixSearch<T>(lists.length){
+            @Override
+            protected int first(int i){
+                return 0;
+            }
+            @Override
+            protected int limit(int i){
+                return lists[i].size();
+            }
+            @Override
+            protected T element(int i, int position){
+                return lists[i].get(position);
+            }
+        }.search(prefix, consumer);
+    }
+
+    /** デカルト積の順位空間、添字は各 List の要素数を基数とする数 */
+    private static final class Space<T> implements RankSpace<T>{
+        private final List<T>[] lists;
+        private final int[] radix;
+        private final long size;
+        Space(List<T>[] lists){
+            this.lists = lists;
+            radix = new int[lists.length];
+            for(int i=0; i < lists.length; i++){
+                radix[i] = lists[i].size();
+            }
+            size = Ranks.product(radix);
+        }
+        @Override
+        public long size(){
+            return size;
+        }
+        @Override
+        public int width(){
+            return radix.length;
+        }
+        @Override
+        public void unrank(long rank, int[] idx){
+            Ranks.unrankMixed(radix, rank, idx);
+        }
+        @Override
+        public void next(int[] idx){
+            Ranks.nextMixed(radix, idx);
+        }
+        @Override
+        public int position(int[] idx, int i){
+            return idx[i];
+        }
+        @Override
+        public T element(int i, int position){
+            return lists[i].get(position);
+        }
+        @Override
+        public boolean indexOf(List<T> element, int[] idx){
+            if (element.size() != lists.length) return false;
+            for(int i=0; i < idx.length; i++){
+                idx[i] = lists[i].indexOf(element.get(i));
+                if (idx[i] < 0) return false;
+            }
+            return true;
+        }
+        @Override
+        public long rank(int[] idx){
+            return Ranks.rankMixed(radix, idx);
+        }
     }
 }
@@ -1,12 +1,16 @@
 package org.yipuran.util.pch;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
@@ -21,6 +25,9 @@ import java.util.stream.StreamSupport;
  * Spliterator&lt;List&lt;String&gt;&gt; spliterator = Spliterators.spliteratorUnknownSize(c.iterator(3), 0);
  * Stream&lt;List&lt;String&gt;&gt; stream = StreamSupport.stream(spliterator, false);
  * stream.map(e->e.stream().collect(Collectors.joining(""))).forEach(System.out::println);
+ *
+ * 並列に生成する場合は、parallelStream(int) を使用する。
+ * c.parallelStream(3).filter(e->…).count();
  * </PRE>
  * @since 4.11
  */
@@ -73,40 +80,44 @@ public class Combinations<T> {
 	}
 	/**
 	 * 組み合わせ総数を求める
-	 * @param len
-	 * @return
+	 * @param len nCr の r
+	 * @return nCr
+	 * @throws ArithmeticException 総数が long を超える場合、sizeExact を使用する。
 	 */
 	public long size(int len) {
-		return nCr(list.size(), len);
+		return Ranks.binomial(list.size(), len);
+	}
+	/**
+	 * 組み合わせ総数を BigInteger で求める
+	 * @param len nCr の r
+	 * @return nCr
+	 */
+	public BigInteger sizeExact(int len) {
+		return Ranks.binomialExact(list.size(), len);
 	}
 	/**
 	 * 組み合わせ結果 Iterable＜List＜T＞＞の生成
+	 * <PRE>
+	 * 総数は求めずに最後の組み合わせで終了するので、総数が long を超えても先頭から列挙できる。
+	 * </PRE>
 	 * @param len nCr の r
 	 * @return Iterable&lt;List&lt;T&gt;&gt;
 	 */
 	public Iterable<List<T>> iterable(int len){
 		return ()-> new Iterator<List<T>>() {
-			int index = -1;
-			long total = nCr(list.size(), len);
-			int[] currCombination = new int[len];
+			int[] currCombination = initCombination(list.size(), len);
 			@Override
 			public boolean hasNext() {
-				index++;
-				return index < total;
+				return currCombination != null;
 			}
 			@Override
 			public List<T> next(){
-				if (index==0){
-					for(int i=0; i < currCombination.length; i++){
-						currCombination[i] = i + 1;
-					}
-				}else{
-					currCombination = generateNextCombination(currCombination, list.size(), len);
-				}
+				if (currCombination==null) throw new NoSuchElementException();
 				List<T> result = new ArrayList<>();
 				for(int aCurrCombination : currCombination) {
 					result.add(list.get(aCurrCombination - 1));
 				}
+				if (!nextCombination(currCombination, list.size(), len)) currCombination = null;
 				return result;
 			}
 		};
@@ -144,34 +155,194 @@ public class Combinations<T> {
 			}
 		};
 	}
-	private long nCr(int n, int r){
-		int rfact = 1, nfact = 1, nrfact = 1, temp1 = n - r, temp2 = r;
-		if (r > n - r){
-			temp1 = r;
-			temp2 = n - r;
-		}
-		for(int i = 1; i <= n; i++){
-			if (i <= temp2){
-				rfact *= i;
-				nrfact *= i;
-			}else if(i <= temp1){
-				nrfact *= i;
-			}
-			nfact *= i;
+	/** 先頭の組み合わせ、組み合わせが無ければ null */
+	static int[] initCombination(int n, int r){
+		if (r < 0 || n < r) return null;
+		int[] temp = new int[r];
+		for(int i=0; i < r; i++){
+			temp[i] = i + 1;
 		}
-		return (long)(nfact / (rfact * nrfact));
+		return temp;
 	}
-	private int[] generateNextCombination(int[] temp, int n, int r){
+	/** 次の組み合わせに進める、最後の組み合わせであれば false */
+	static boolean nextCombination(int[] temp, int n, int r){
 		int m = r;
 		int maxVal = n;
-		while(temp[m - 1] == maxVal){
+		while(0 < m && temp[m - 1] == maxVal){
 			m = m - 1;
 			maxVal--;
 		}
+		if (m==0) return false;
 		temp[m-1]++;
 		for(int j=m; j < r; j++){
 			temp[j] = temp[j - 1] + 1;
 		}
-		return temp;
+		return true;
+	}
+	/**
+	 * 組み合わせ結果 Spliterator 取得.
+	 * <PRE>
+	 * 生成順の順位の範囲で分割できる Spliterator、分割した範囲の先頭の組み合わせは順位から直接求める。
+	 * 順序は iterator(int) と同じである。
+	 * </PRE>
+	 * @param len nCr の r
+	 * @return Spliterator&lt;List&lt;T&gt;&gt;
+	 * @throws ArithmeticException 組み合わせ総数が long を超える場合
+	 */
+	public Spliterator<List<T>> spliterator(int len){
+		return new RankSpliterator<>(space(len));
+	}
+	/**
+	 * 組み合わせ結果 Stream 取得.
+	 * @param len nCr の r
+	 * @return Stream&lt;List&lt;T&gt;&gt;
+	 */
+	public Stream<List<T>> stream(int len){
+		return StreamSupport.stream(spliterator(len), false);
+	}
+	/**
+	 * 組み合わせ結果 並列 Stream 取得.
+	 * @param len nCr の r
+	 * @return 順位の範囲で分割して並列に生成する Stream&lt;List&lt;T&gt;&gt;
+	 */
+	public Stream<List<T>> parallelStream(int len){
+		return StreamSupport.stream(spliterator(len), true);
+	}
+	/**
+	 * 組み合わせの順位指定取得.
+	 * <PRE>
+	 * 生成順の rank 番目（0 起点）を先頭から辿らずに求める。範囲を分けて別の JVM で生成する、中断した位置から再開する場合に使用する。
+	 * </PRE>
+	 * @param len nCr の r
+	 * @param rank 順位、0 ～ size(len) - 1
+	 * @return List&lt;T&gt;
+	 * @throws IndexOutOfBoundsException 順位が範囲外の場合
+	 */
+	public List<T> get(int len, long rank){
+		return space(len).at(rank);
+	}
+	/**
+	 * 組み合わせの順位.
+	 * <PRE>
+	 * get(int, long) の逆で、生成結果の生成順の順位を求める。要素は equals で生成元の位置を求める。
+	 * </PRE>
+	 * @param element 生成結果
+	 * @return 順位、生成結果ではない場合は -1
+	 */
+	public long rankOf(List<T> element){
+		if (element.isEmpty() || list.size() < element.size()) return -1;
+		return space(element.size()).rankOf(element);
+	}
+
+	/**
+	 * 組み合わせの要素位置の訪問.
+	 * <PRE>
+	 * 生成順に、生成元の List の要素位置（0 起点）の配列を visitor に渡す。
+	 * 配列は再利用して生成結果ごとに List を生成しないので、探索の条件判定に使用する。保持する場合は複製する。
+	 * </PRE>
+	 * @param len nCr の r
+	 * @param visitor 要素位置の配列を受け取る Consumer
+	 */
+	public void visit(int len, Consumer<int[]> visitor){
+		space(len).visit(visitor);
+	}
+	/**
+	 * 組み合わせの読取専用 List の訪問.
+	 * <PRE>
+	 * 生成順に、生成結果を読取専用の List で visitor に渡す。
+	 * List は再利用して次の生成結果で内容が変わるので、保持する場合は new ArrayList&lt;&gt;(list) で複製する。
+	 * </PRE>
+	 * @param len nCr の r
+	 * @param visitor 生成結果を受け取る Consumer
+	 */
+	public void visitView(int len, Consumer<List<T>> visitor){
+		space(len).visitView(visitor);
+	}
+	/**
+	 * 組み合わせの枝刈り探索.
+	 * <PRE>
+	 * 先頭から 1 要素ずつ深さ優先で生成し、生成途中の先頭部分を prefix で判定する。
+	 * prefix が false の先頭部分から続く生成結果は生成しないので、条件を満たさない部分を丸ごと省いて探索する。
+	 * 長さが len に達した生成結果も prefix で判定し、true の場合に consumer に渡す。
+	 * 探索順は compute と同じ生成順になる。
+	 * prefix に渡す List は読取専用で再利用する。consumer に渡す List は生成結果ごとに新しく生成する。
+	 * </PRE>
+	 * @param len nCr の r
+	 * @param prefix 先頭部分の Predicate、true = 探索を続ける
+	 * @param consumer 条件を満たす生成結果を受け取る Consumer
+	 */
+	public void search(int len, Predicate<List<T>> prefix, Consumer<List<T>> consumer){
+		if (len < 1 || list.size() < len){
+			throw new IllegalArgumentException();
+		}
+		int n = list.size();
+		new PrefixSearch<T>(len){
+			@Override
+			protected int first(int i){
+				return i==0 ? 0 : pos[i - 1] + 1;
+			}
+			@Override
+			protected int limit(int i){
+				return n - len + i + 1;
+			}
+			@Override
+			protected T element(int i, int position){
+				return list.get(position);
+			}
+		}.search(prefix, consumer);
+	}
+	private RankSpace<T> space(int len){
+		if (len < 1 || list.size() < len){
+			throw new IllegalArgumentException();
+		}
+		return new Space<>(list, len);
+	}
+
+	/** 組み合わせの順位空間、添字は昇順の要素位置 */
+	private static final class Space<T> implements RankSpace<T>{
+		private final List<T> list;
+		private final int len;
+		private final long size;
+		Space(List<T> list, int len){
+			this.list = list;
+			this.len = len;
+			size = Ranks.binomial(list.size(), len);
+		}
+		@Override
+		public long size(){
+			return size;
+		}
+		@Override
+		public int width(){
+			return len;
+		}
+		@Override
+		public void unrank(long rank, int[] idx){
+			Ranks.unrankCombination(list.size(), len, rank, idx, 0);
+		}
+		@Override
+		public void next(int[] idx){
+			Ranks.nextCombination(list.size(), len, idx, 0);
+		}
+		@Override
+		public int position(int[] idx, int i){
+			return idx[i];
+		}
+		@Override
+		public T element(int i, int position){
+			return list.get(position);
+		}
+		@Override
+		public boolean indexOf(List<T> element, int[] idx){
+			for(int i=0; i < len; i++){
+				idx[i] = list.indexOf(element.get(i));
+				if (idx[i] < 0 || (i > 0 && idx[i] <= idx[i - 1])) return false;
+			}
+			return true;
+		}
+		@Override
+		public long rank(int[] idx){
+			return Ranks.rankCombination(list.size(), len, idx, 0);
+		}
 	}
 }
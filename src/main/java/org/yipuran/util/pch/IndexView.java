@@ -0,0 +1,32 @@
+package org.yipuran.util.pch;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * 添字の配列が示す生成結果の読取専用 List.
+ * <PRE>
+ * 添字の配列を参照するだけで要素を複製しないので、添字の配列を更新すると内容が変わる。
+ * 保持する場合は new ArrayList&lt;&gt;(view) で複製する。
+ * </PRE>
+ */
+final class IndexView<T> extends AbstractList<T> implements RandomAccess{
+	private final RankSpace<T> space;
+	private final int[] idx;
+	private final int size;
+
+	IndexView(RankSpace<T> space, int[] idx){
+		this.space = space;
+		this.idx = idx;
+		size = space.length();
+	}
+	@Override
+	public T get(int i){
+		if (i < 0 || size <= i) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		return space.element(i, space.position(idx, i));
+	}
+	@Override
+	public int size(){
+		return size;
+	}
+}
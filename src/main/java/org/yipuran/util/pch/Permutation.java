@@ -1,18 +1,23 @@
 package org.yipuran.util.pch;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
  * 順列.
  * <PRE>
  * 順列(Permutation) を生成するためのクラス、生成元のリスト、配列はユニークで null を含んでは意味がない。
+ * 並列に生成する場合は、parallelStream(int) を使用する。
  * </PRE>
  */
 public class Permutation<T>{
@@ -60,53 +65,54 @@ public class Permutation<T>{
 	/**
 	 * 順列生成する並びの長さ
 	 * @param len 生成する並びの長さ
-	 * @return
+	 * @return nPr = nCr * r!
+	 * @throws ArithmeticException 総数が long を超える場合、sizeExact を使用する。
 	 */
 	public long size(int len) {
-		long rfact = (long)factorial(len);
-		return nCr(list.size(), len) * rfact;
+		return Math.multiplyExact(Ranks.binomial(list.size(), len), Ranks.factorial(len));
+	}
+	/**
+	 * 順列総数を BigInteger で求める
+	 * @param len 生成する並びの長さ
+	 * @return nPr = nCr * r!
+	 */
+	public BigInteger sizeExact(int len) {
+		return Ranks.binomialExact(list.size(), len).multiply(Ranks.factorialExact(len));
 	}
 
 	/**
 	 * 順列 Iterable＜List＜T＞＞の生成
+	 * <PRE>
+	 * 総数は求めずに最後の順列で終了するので、総数が long を超えても先頭から列挙できる。
+	 * </PRE>
 	 * @param len 生成する並びの長さ
 	 * @return Iterable&lt;List&lt;T&gt;&gt;
 	 */
 	public Iterable<List<T>> iterable(int len){
-		long rfact = (long)factorial(len);
-		long total = nCr(list.size(), len) * rfact;
 		return ()-> new Iterator<List<T>>(){
-			int index = -1;
-			int permNo = 0;
-			int[] currPermutation = new int[len];
-			int[] currCombination = new int[len];
+			int[] currCombination = Combinations.initCombination(list.size(), len);
+			int[] currPermutation = Combinations.initCombination(len, len);
 			@Override
 			public boolean hasNext() {
-				index++;
-				return index < total;
+				return currCombination != null;
 			}
 			@Override
 			public List<T> next(){
-				if (index==0){
-					permNo = 0;
-					for(int i=0; i < currCombination.length; i++){
-						currCombination[i] = i + 1;
-						currPermutation[i] = i + 1;
-					}
-				}else if(((permNo + 1) % rfact)==0){
-					permNo++;
-					currCombination = generateNextCombination(currCombination, list.size(), len);
-					for(int i=0; i < currCombination.length; i++){
-						currPermutation[i] = i + 1;
-					}
-				}else{
-					permNo++;
-					currPermutation = generateNextPermutation(currPermutation, len);
-				}
+				if (currCombination==null) throw new NoSuchElementException();
 				List<T> result = new ArrayList<>();
 				for(int i=0; i < len; i++){
 					result.add(list.get(currCombination[currPermutation[i] - 1] - 1));
 				}
+				// 組み合わせ毎に並びを一巡させてから、次の組み合わせに進む。
+				if (!nextPermutation(currPermutation, len)){
+					if (Combinations.nextCombination(currCombination, list.size(), len)){
+						for(int i=0; i < len; i++){
+							currPermutation[i] = i + 1;
+						}
+					}else{
+						currCombination = null;
+					}
+				}
 				return result;
 			}
 		};
@@ -144,48 +150,13 @@ public class Permutation<T>{
 			}
 		};
 	}
-	private double factorial(int n) {
-		int nfact = 1;
-		for(int i=1; i <= n; i++) {
-			nfact *= i;
-		}
-		return nfact;
-	}
-	private long nCr(int n, int r){
-		int rfact=1, nfact=1, nrfact=1, temp1=n - r, temp2=r;
-		if (r > n - r){
-			temp1 = r;
-			temp2 = n - r;
-		}
-		for(int i=1; i <= n; i++){
-			if (i <= temp2){
-				rfact *= i;
-				nrfact *= i;
-			}else if(i <= temp1){
-				nrfact *= i;
-			}
-			nfact *= i;
-		}
-		return (long)(nfact / (rfact * nrfact));
-	}
-	private int[] generateNextCombination(int[] temp, int n, int r) {
-		int m = r;
-		int maxVal = n;
-		while(temp[m - 1]==maxVal){
-			m = m - 1;
-			maxVal--;
-		}
-		temp[m-1]++;
-		for(int j=m; j < r; j++){
-			temp[j] = temp[j-1] + 1;
-		}
-		return temp;
-	}
-	private int[] generateNextPermutation(int[] temp, int n){
+	/** 次の並びに進める、最後の並びであれば false */
+	private boolean nextPermutation(int[] temp, int n){
 		int m = n - 1;
-		while(temp[m-1] > temp[m]) {
+		while(0 < m && temp[m-1] > temp[m]) {
 			m--;
 		}
+		if (m <= 0) return false;
 		int k=n;
 		while(temp[m-1] > temp[k-1]){
 			k--;
@@ -203,6 +174,207 @@ public class Permutation<T>{
 			p++;
 			q--;
 		}
-		return temp;
+		return true;
+	}
+	/**
+	 * 順列 Spliterator 取得.
+	 * <PRE>
+	 * 生成順の順位の範囲で分割できる Spliterator、分割した範囲の先頭の順列は順位から直接求める。
+	 * 順序は iterator(int) と同じである。
+	 * </PRE>
+	 * @param len 生成する並びの長さ
+	 * @return Spliterator&lt;List&lt;T&gt;&gt;
+	 * @throws ArithmeticException 順列総数が long を超える場合
+	 */
+	public Spliterator<List<T>> spliterator(int len){
+		return new RankSpliterator<>(space(len));
+	}
+	/**
+	 * 順列 Stream 取得.
+	 * @param len 生成する並びの長さ
+	 * @return Stream&lt;List&lt;T&gt;&gt;
+	 */
+	public Stream<List<T>> stream(int len){
+		return StreamSupport.stream(spliterator(len), false);
+	}
+	/**
+	 * 順列 並列 Stream 取得.
+	 * @param len 生成する並びの長さ
+	 * @return 順位の範囲で分割して並列に生成する Stream&lt;List&lt;T&gt;&gt;
+	 */
+	public Stream<List<T>> parallelStream(int len){
+		return StreamSupport.stream(spliterator(len), true);
+	}
+	/**
+	 * 順列の順位指定取得.
+	 * <PRE>
+	 * 生成順の rank 番目（0 起点）を先頭から辿らずに求める。範囲を分けて別の JVM で生成する、中断した位置から再開する場合に使用する。
+	 * </PRE>
+	 * @param len 生成する並びの長さ
+	 * @param rank 順位、0 ～ size(len) - 1
+	 * @return List&lt;T&gt;
+	 * @throws IndexOutOfBoundsException 順位が範囲外の場合
+	 */
+	public List<T> get(int len, long rank){
+		return space(len).at(rank);
+	}
+	/**
+	 * 順列の順位.
+	 * <PRE>
+	 * get(int, long) の逆で、生成結果の生成順の順位を求める。要素は equals で生成元の位置を求める。
+	 * </PRE>
+	 * @param element 生成結果
+	 * @return 順位、生成結果ではない場合は -1
+	 */
+	public long rankOf(List<T> element){
+		if (element.isEmpty() || list.size() < element.size()) return -1;
+		return space(element.size()).rankOf(element);
+	}
+
+	/**
+	 * 順列の要素位置の訪問.
+	 * <PRE>
+	 * 生成順に、生成元の List の要素位置（0 起点）の配列を visitor に渡す。
+	 * 配列は再利用して生成結果ごとに List を生成しないので、探索の条件判定に使用する。保持する場合は複製する。
+	 * </PRE>
+	 * @param len 生成する並びの長さ
+	 * @param visitor 要素位置の配列を受け取る Consumer
+	 */
+	public void visit(int len, Consumer<int[]> visitor){
+		space(len).visit(visitor);
+	}
+	/**
+	 * 順列の読取専用 List の訪問.
+	 * <PRE>
+	 * 生成順に、生成結果を読取専用の List で visitor に渡す。
+	 * List は再利用して次の生成結果で内容が変わるので、保持する場合は new ArrayList&lt;&gt;(list) で複製する。
+	 * </PRE>
+	 * @param len 生成する並びの長さ
+	 * @param visitor 生成結果を受け取る Consumer
+	 */
+	public void visitView(int len, Consumer<List<T>> visitor){
+		space(len).visitView(visitor);
+	}
+	/**
+	 * 順列の枝刈り探索.
+	 * <PRE>
+	 * 先頭から 1 要素ずつ深さ優先で生成し、生成途中の先頭部分を prefix で判定する。
+	 * prefix が false の先頭部分から続く生成結果は生成しないので、条件を満たさない部分を丸ごと省いて探索する。
+	 * 長さが len に達した生成結果も prefix で判定し、true の場合に consumer に渡す。
+	 * 探索順は先頭からの要素位置の辞書順で、組み合わせごとに並べる compute の順序とは異なる。
+	 * prefix に渡す List は読取専用で再利用する。consumer に渡す List は生成結果ごとに新しく生成する。
+	 * </PRE>
+	 * @param len 生成する並びの長さ
+	 * @param prefix 先頭部分の Predicate、true = 探索を続ける
+	 * @param consumer 条件を満たす生成結果を受け取る Consumer
+	 */
+	public void search(int len, Predicate<List<T>> prefix, Consumer<List<T>> consumer){
+		if (len < 1 || list.size() < len){
+			throw new IllegalArgumentException();
+		}
+		boolean[] used = new boolean[list.size()];
+		new PrefixSearch<T>(len){
+			@Override
+			protected int first(int i){
+				return 0;
+			}
+			@Override
+			protected int limit(int i){
+				return used.length;
+			}
+			@Override
+			protected T element(int i, int position){
+				return list.get(position);
+			}
+			@Override
+			protected boolean available(int position){
+				return !used[position];
+			}
+			@Override
+			protected void enter(int position){
+				used[position] = true;
+			}
+			@Override
+			protected void leave(int position){
+				used[position] = false;
+			}
+		}.search(prefix, consumer);
+	}
+	private RankSpace<T> space(int len){
+		if (len < 1 || list.size() < len){
+			throw new IllegalArgumentException();
+		}
+		return new Space<>(list, len);
+	}
+
+	/**
+	 * 順列の順位空間.
+	 * 添字の前半 len 個は選んだ要素位置の組み合わせ、後半 len 個はその並びの順列で、組み合わせ毎に len! 個の順列が並ぶ。
+	 */
+	private static final class Space<T> implements RankSpace<T>{
+		private final List<T> list;
+		private final int len;
+		private final long rfact;
+		private final long size;
+		Space(List<T> list, int len){
+			this.list = list;
+			this.len = len;
+			rfact = Ranks.factorial(len);
+			size = Math.multiplyExact(Ranks.binomial(list.size(), len), rfact);
+		}
+		@Override
+		public long size(){
+			return size;
+		}
+		@Override
+		public int width(){
+			return len * 2;
+		}
+		@Override
+		public void unrank(long rank, int[] idx){
+			Ranks.unrankCombination(list.size(), len, rank / rfact, idx, 0);
+			Ranks.unrankPermutation(len, rank % rfact, idx, len);
+		}
+		@Override
+		public void next(int[] idx){
+			if (Ranks.nextPermutation(len, idx, len)) return;
+			Ranks.nextCombination(list.size(), len, idx, 0);
+			for(int i=0; i < len; i++){
+				idx[len + i] = i;
+			}
+		}
+		@Override
+		public int length(){
+			return len;
+		}
+		@Override
+		public int position(int[] idx, int i){
+			return idx[idx[len + i]];
+		}
+		@Override
+		public T element(int i, int position){
+			return list.get(position);
+		}
+		@Override
+		public boolean indexOf(List<T> element, int[] idx){
+			int[] pos = new int[len];
+			for(int i=0; i < len; i++){
+				pos[i] = list.indexOf(element.get(i));
+				if (pos[i] < 0) return false;
+			}
+			// 組み合わせは要素位置の昇順、順列は各要素の組み合わせ内の位置
+			int[] sorted = pos.clone();
+			Arrays.sort(sorted);
+			for(int i=0; i < len; i++){
+				if (i > 0 && sorted[i]==sorted[i - 1]) return false;
+				idx[i] = sorted[i];
+				idx[len + i] = Arrays.binarySearch(sorted, pos[i]);
+			}
+			return true;
+		}
+		@Override
+		public long rank(int[] idx){
+			return Ranks.rankCombination(list.size(), len, idx, 0) * rfact + Ranks.rankPermutation(len, idx, len);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package org.yipuran.util.pch;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 先頭部分で枝刈りする深さ優先探索.
+ * <PRE>
+ * 生成結果の先頭から 1 要素ずつ要素位置を決め、決めた先頭部分（prefix）を Predicate で判定する。
+ * false の場合は、その先頭部分から続く全ての生成結果を生成しない。
+ * 長さが len に達して true の生成結果だけを複製して Consumer に渡す。
+ * 各位置の候補は first ～ limit - 1 の要素位置で、available が false の位置は飛ばす。
+ * </PRE>
+ */
+abstract class PrefixSearch<T>{
+	protected final int len;
+	protected final int[] pos;
+	private final Prefix prefixView = new Prefix();
+	private int depth;
+	private Predicate<List<T>> prefix;
+	private Consumer<List<T>> consumer;
+
+	PrefixSearch(int len){
+		this.len = len;
+		pos = new int[len];
+	}
+	/**
+	 * i 番目の候補の最初の要素位置.
+	 * @param i 位置、pos[0] ～ pos[i-1] は決定済
+	 * @return 要素位置
+	 */
+	protected abstract int first(int i);
+	/**
+	 * i 番目の候補の要素位置の上限.
+	 * @param i 位置、pos[0] ～ pos[i-1] は決定済
+	 * @return 上限（この値を含まない）
+	 */
+	protected abstract int limit(int i);
+	/**
+	 * 要素.
+	 * @param i 生成結果の位置
+	 * @param position 要素位置
+	 * @return 要素
+	 */
+	protected abstract T element(int i, int position);
+	/**
+	 * 要素位置が候補になるか.
+	 * @param position 要素位置
+	 * @return false = 飛ばす
+	 */
+	protected boolean available(int position){
+		return true;
+	}
+	/**
+	 * 要素位置を決めて次の位置に進む前に呼ばれる.
+	 * @param position 要素位置
+	 */
+	protected void enter(int position){
+	}
+	/**
+	 * 次の位置から戻った後に呼ばれる.
+	 * @param position 要素位置
+	 */
+	protected void leave(int position){
+	}
+	/**
+	 * 探索.
+	 * @param prefix 先頭部分の Predicate、渡す List は読取専用で再利用する。
+	 * @param consumer 条件を満たす生成結果を受け取る Consumer
+	 */
+	void search(Predicate<List<T>> prefix, Consumer<List<T>> consumer){
+		this.prefix = prefix;
+		this.consumer = consumer;
+		dfs(0);
+	}
+	private void dfs(int i){
+		for(int v=first(i), m=limit(i); v < m; v++){
+			if (!available(v)) continue;
+			pos[i] = v;
+			depth = i + 1;
+			if (!prefix.test(prefixView)) continue;
+			if (depth==len){
+				consumer.accept(new ArrayList<>(prefixView));
+				continue;
+			}
+			enter(v);
+			dfs(i + 1);
+			leave(v);
+		}
+	}
+
+	/** 決定済の先頭部分の読取専用 List */
+	private final class Prefix extends AbstractList<T> implements RandomAccess{
+		@Override
+		public T get(int i){
+			if (i < 0 || depth <= i) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + depth);
+			return element(i, pos[i]);
+		}
+		@Override
+		public int size(){
+			return depth;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.yipuran.util.pch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 順位付きの生成空間.
+ * <PRE>
+ * 順列、組み合わせ等の生成順の k 番目（順位）を添字の配列で表し、RankSpliterator が順位の範囲で分割して生成する。
+ * 添字の配列は生成元の要素の位置で、生成する List は get で求める。
+ * 逆に生成結果から添字を indexOf、添字から順位を rank で求める。
+ * visit、visitView は添字の配列と List を再利用して、生成結果ごとに生成しない。
+ * </PRE>
+ */
+interface RankSpace<T>{
+	/**
+	 * 生成総数.
+	 * @return 総数
+	 */
+	long size();
+	/**
+	 * 添字の配列の長さ.
+	 * @return 長さ
+	 */
+	int width();
+	/**
+	 * 順位から添字を求める.
+	 * @param rank 0 ～ size() - 1
+	 * @param idx 結果を格納する添字の配列
+	 */
+	void unrank(long rank, int[] idx);
+	/**
+	 * 次の順位の添字に更新する.
+	 * @param idx 添字の配列、最後の順位では呼ばれない。
+	 */
+	void next(int[] idx);
+	/**
+	 * 生成結果の i 番目の生成元の要素位置.
+	 * @param idx 添字の配列
+	 * @param i 生成結果の位置
+	 * @return 要素位置
+	 */
+	int position(int[] idx, int i);
+	/**
+	 * 生成元の要素.
+	 * @param i 生成結果の位置
+	 * @param position 要素位置
+	 * @return 要素
+	 */
+	T element(int i, int position);
+	/**
+	 * 生成結果の添字を求める.
+	 * @param element 生成結果
+	 * @param idx 結果を格納する添字の配列
+	 * @return false = 生成結果ではない。
+	 */
+	boolean indexOf(List<T> element, int[] idx);
+	/**
+	 * 添字の順位.
+	 * @param idx 添字の配列
+	 * @return 順位
+	 */
+	long rank(int[] idx);
+
+	/**
+	 * 生成結果の長さ.
+	 * @return 長さ、添字の配列の長さと異なる場合は override する。
+	 */
+	default int length(){
+		return width();
+	}
+	/**
+	 * 添字が示す生成結果.
+	 * @param idx 添字の配列
+	 * @return 生成結果
+	 */
+	default List<T> get(int[] idx){
+		int len = length();
+		List<T> result = new ArrayList<>(len);
+		for(int i=0; i < len; i++){
+			result.add(element(i, position(idx, i)));
+		}
+		return result;
+	}
+	/**
+	 * 全ての生成結果の要素位置を生成順に渡す.
+	 * @param visitor 要素位置の配列を受け取る Consumer、配列は再利用する。
+	 */
+	default void visit(Consumer<int[]> visitor){
+		long size = size();
+		if (size==0) return;
+		int[] idx = new int[width()];
+		int[] pos = new int[length()];
+		unrank(0, idx);
+		for(long k=0;; k++){
+			for(int i=0; i < pos.length; i++){
+				pos[i] = position(idx, i);
+			}
+			visitor.accept(pos);
+			if (k + 1 >= size) break;
+			next(idx);
+		}
+	}
+	/**
+	 * 全ての生成結果を読取専用の List で生成順に渡す.
+	 * @param visitor 生成結果を受け取る Consumer、List は再利用して次の生成結果で内容が変わる。
+	 */
+	default void visitView(Consumer<List<T>> visitor){
+		long size = size();
+		if (size==0) return;
+		int[] idx = new int[width()];
+		List<T> view = new IndexView<>(this, idx);
+		unrank(0, idx);
+		for(long k=0;; k++){
+			visitor.accept(view);
+			if (k + 1 >= size) break;
+			next(idx);
+		}
+	}
+	/**
+	 * 順位の生成結果.
+	 * @param rank 0 ～ size() - 1
+	 * @return 生成結果
+	 * @throws IndexOutOfBoundsException 範囲外の場合
+	 */
+	default List<T> at(long rank){
+		if (rank < 0 || size() <= rank) throw new IndexOutOfBoundsException("rank: " + rank + ", size: " + size());
+		int[] idx = new int[width()];
+		unrank(rank, idx);
+		return get(idx);
+	}
+	/**
+	 * 生成結果の順位.
+	 * @param element 生成結果
+	 * @return 順位、生成結果ではない場合は -1
+	 */
+	default long rankOf(List<T> element){
+		int[] idx = new int[width()];
+		return indexOf(element, idx) ? rank(idx) : -1;
+	}
+}
@@ -0,0 +1,73 @@
+package org.yipuran.util.pch;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 順位の範囲で分割する Spliterator.
+ * <PRE>
+ * [origin, fence) の順位の範囲を生成する。trySplit は範囲を半分に分け、分けた先頭は RankSpace#unrank で
+ * 開始位置の添字を直接求めるので、並列 Stream の各スレッドは先頭から辿らずに担当範囲を生成する。
+ * 範囲内は RankSpace#next で順に生成する。
+ * </PRE>
+ */
+final class RankSpliterator<T> implements Spliterator<List<T>>{
+	private final RankSpace<T> space;
+	private long origin;
+	private final long fence;
+	private int[] idx;
+
+	RankSpliterator(RankSpace<T> space){
+		this(space, 0, space.size());
+	}
+	private RankSpliterator(RankSpace<T> space, long origin, long fence){
+		this.space = space;
+		this.origin = origin;
+		this.fence = fence;
+	}
+	@Override
+	public boolean tryAdvance(Consumer<? super List<T>> action){
+		if (origin >= fence) return false;
+		position();
+		action.accept(space.get(idx));
+		origin++;
+		return true;
+	}
+	@Override
+	public void forEachRemaining(Consumer<? super List<T>> action){
+		if (origin >= fence) return;
+		position();
+		for(;;){
+			action.accept(space.get(idx));
+			if (++origin >= fence) break;
+			space.next(idx);
+		}
+	}
+	@Override
+	public Spliterator<List<T>> trySplit(){
+		long mid = (origin + fence) >>> 1;
+		if (mid <= origin) return null;
+		RankSpliterator<T> prefix = new RankSpliterator<>(space, origin, mid);
+		origin = mid;
+		idx = null;
+		return prefix;
+	}
+	@Override
+	public long estimateSize(){
+		return fence - origin;
+	}
+	@Override
+	public int characteristics(){
+		return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+	/** 現在の順位の添字、未生成の場合は unrank、生成済の場合は次の順位 */
+	private void position(){
+		if (idx==null){
+			idx = new int[space.width()];
+			space.unrank(origin, idx);
+		}else{
+			space.next(idx);
+		}
+	}
+}
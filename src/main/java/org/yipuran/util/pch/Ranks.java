@@ -0,0 +1,303 @@
+package org.yipuran.util.pch;
+
+import java.math.BigInteger;
+
+/**
+ * 順位計算.
+ * <PRE>
+ * 生成総数、順位は long で計算し、long を超える場合は ArithmeticException とする。
+ * 総数を求めるだけの場合は BigInteger の ～Exact を使用する。
+ * </PRE>
+ */
+final class Ranks{
+	private Ranks(){}
+
+	/** パスカルの三角形の行数、66 行目までは全ての値が long に収まる。 */
+	private static final int PASCAL_ROWS = 67;
+	/** 二項係数のキャッシュ、PASCAL[n][r] = nCr */
+	private static final long[][] PASCAL = new long[PASCAL_ROWS][];
+	static{
+		for(int n=0; n < PASCAL_ROWS; n++){
+			PASCAL[n] = new long[n + 1];
+			PASCAL[n][0] = PASCAL[n][n] = 1;
+			for(int r=1; r < n; r++){
+				PASCAL[n][r] = PASCAL[n - 1][r - 1] + PASCAL[n - 1][r];
+			}
+		}
+	}
+
+	/**
+	 * 二項係数 nCr.
+	 * <PRE>
+	 * n が 66 以下はパスカルの三角形のキャッシュから求める。
+	 * それ以外は途中の積を約分してから掛けるので、結果が long に収まれば途中で桁あふれしない。
+	 * </PRE>
+	 * @param n n
+	 * @param r r
+	 * @return nCr、r &lt; 0 または n &lt; r は 0
+	 * @throws ArithmeticException 結果が long を超える場合
+	 */
+	static long binomial(long n, long r){
+		if (r < 0 || n < r) return 0;
+		if (n < PASCAL_ROWS) return PASCAL[(int)n][(int)r];
+		if (r > n - r) r = n - r;
+		long c = 1;
+		for(long i=1; i <= r; i++){
+			// c * (n - r + i) / i は整数、c と i の公約数で約分すると i / g は (n - r + i) を割り切る。
+			long g = gcd(c, i);
+			c = Math.multiplyExact(c / g, (n - r + i) / (i / g));
+		}
+		return c;
+	}
+	/**
+	 * 二項係数 nCr（BigInteger）.
+	 * @param n n
+	 * @param r r
+	 * @return nCr、r &lt; 0 または n &lt; r は 0
+	 */
+	static BigInteger binomialExact(long n, long r){
+		try{
+			return BigInteger.valueOf(binomial(n, r));
+		}catch(ArithmeticException e){
+			if (r > n - r) r = n - r;
+			BigInteger c = BigInteger.ONE;
+			for(long i=1; i <= r; i++){
+				c = c.multiply(BigInteger.valueOf(n - r + i)).divide(BigInteger.valueOf(i));
+			}
+			return c;
+		}
+	}
+	/**
+	 * 階乗.
+	 * @param n n
+	 * @return n!
+	 * @throws ArithmeticException 結果が long を超える場合
+	 */
+	static long factorial(int n){
+		long f = 1;
+		for(int i=2; i <= n; i++){
+			f = Math.multiplyExact(f, i);
+		}
+		return f;
+	}
+	/**
+	 * 階乗（BigInteger）.
+	 * @param n n
+	 * @return n!
+	 */
+	static BigInteger factorialExact(int n){
+		BigInteger f = BigInteger.ONE;
+		for(int i=2; i <= n; i++){
+			f = f.multiply(BigInteger.valueOf(i));
+		}
+		return f;
+	}
+	/**
+	 * 累乗.
+	 * @param n 底
+	 * @param r 指数
+	 * @return n の r 乗
+	 * @throws ArithmeticException 結果が long を超える場合
+	 */
+	static long power(long n, int r){
+		long p = 1;
+		for(int i=0; i < r; i++){
+			p = Math.multiplyExact(p, n);
+		}
+		return p;
+	}
+	/**
+	 * 各桁の基数の積.
+	 * @param radix 各桁の基数
+	 * @return 積
+	 * @throws ArithmeticException 結果が long を超える場合
+	 */
+	static long product(int[] radix){
+		long p = 1;
+		for(int r : radix){
+			p = Math.multiplyExact(p, r);
+		}
+		return p;
+	}
+	/**
+	 * 各桁の基数の積（BigInteger）.
+	 * @param radix 各桁の基数
+	 * @return 積
+	 */
+	static BigInteger productExact(int[] radix){
+		BigInteger p = BigInteger.ONE;
+		for(int r : radix){
+			p = p.multiply(BigInteger.valueOf(r));
+		}
+		return p;
+	}
+	/**
+	 * 組み合わせの添字を求める.
+	 * <PRE>
+	 * 0 ～ n-1 から r 個を選ぶ辞書順の組み合わせの rank 番目を、idx[offset] ～ idx[offset + r - 1] に昇順で格納する。
+	 * </PRE>
+	 * @param n 要素数
+	 * @param r 選ぶ数
+	 * @param rank 順位
+	 * @param idx 結果の配列
+	 * @param offset 格納開始位置
+	 */
+	static void unrankCombination(int n, int r, long rank, int[] idx, int offset){
+		int v = 0;
+		for(int i=0; i < r; i++){
+			// 位置 i が v の組み合わせの数は、残り r-i-1 個を v+1 ～ n-1 から選ぶ数
+			for(long c; rank >= (c = binomial(n - v - 1, r - i - 1)); v++){
+				rank -= c;
+			}
+			idx[offset + i] = v++;
+		}
+	}
+	/**
+	 * 組み合わせの順位.
+	 * <PRE>
+	 * 辞書順の順位は、補数 n-1-idx[i] の組み合わせ数の和を総数から引いて求める。
+	 * </PRE>
+	 * @param n 要素数
+	 * @param r 選ぶ数
+	 * @param idx 昇順の添字
+	 * @param offset 開始位置
+	 * @return 順位
+	 */
+	static long rankCombination(int n, int r, int[] idx, int offset){
+		long rank = binomial(n, r) - 1;
+		for(int i=0; i < r; i++){
+			rank -= binomial(n - 1 - idx[offset + i], r - i);
+		}
+		return rank;
+	}
+	/**
+	 * 次の組み合わせの添字.
+	 * @param n 要素数
+	 * @param r 選ぶ数
+	 * @param idx 昇順の添字
+	 * @param offset 開始位置
+	 * @return false = 最後の組み合わせ
+	 */
+	static boolean nextCombination(int n, int r, int[] idx, int offset){
+		int i = r - 1;
+		while(i >= 0 && idx[offset + i]==n - r + i) i--;
+		if (i < 0) return false;
+		idx[offset + i]++;
+		for(int j=i + 1; j < r; j++){
+			idx[offset + j] = idx[offset + j - 1] + 1;
+		}
+		return true;
+	}
+	/**
+	 * 順列の添字を求める.
+	 * <PRE>
+	 * 0 ～ r-1 の辞書順の順列の rank 番目を idx[offset] ～ idx[offset + r - 1] に格納する。
+	 * </PRE>
+	 * @param r 長さ、20 以下
+	 * @param rank 順位
+	 * @param idx 結果の配列
+	 * @param offset 格納開始位置
+	 */
+	static void unrankPermutation(int r, long rank, int[] idx, int offset){
+		boolean[] used = new boolean[r];
+		for(int i=0; i < r; i++){
+			long f = factorial(r - i - 1);
+			int k = (int)(rank / f);
+			rank %= f;
+			int v = 0;
+			for(;; v++){
+				if (!used[v] && k-- == 0) break;
+			}
+			used[v] = true;
+			idx[offset + i] = v;
+		}
+	}
+	/**
+	 * 順列の順位（Lehmer code）.
+	 * @param r 長さ
+	 * @param idx 0 ～ r-1 の順列
+	 * @param offset 開始位置
+	 * @return 順位
+	 */
+	static long rankPermutation(int r, int[] idx, int offset){
+		long rank = 0;
+		for(int i=0; i < r; i++){
+			// 後ろにある小さい値の数
+			int k = 0;
+			for(int j=i + 1; j < r; j++){
+				if (idx[offset + j] < idx[offset + i]) k++;
+			}
+			rank += k * factorial(r - i - 1);
+		}
+		return rank;
+	}
+	/**
+	 * 次の順列の添字.
+	 * @param r 長さ
+	 * @param idx 添字
+	 * @param offset 開始位置
+	 * @return false = 最後の順列（降順）、添字は変更しない。
+	 */
+	static boolean nextPermutation(int r, int[] idx, int offset){
+		int i = r - 2;
+		while(i >= 0 && idx[offset + i] > idx[offset + i + 1]) i--;
+		if (i < 0) return false;
+		int j = r - 1;
+		while(idx[offset + j] < idx[offset + i]) j--;
+		swap(idx, offset + i, offset + j);
+		for(int p=offset + i + 1, q=offset + r - 1; p < q; p++, q--){
+			swap(idx, p, q);
+		}
+		return true;
+	}
+	/**
+	 * 混合基数の添字を求める.
+	 * @param radix 各桁の基数、最後の桁が最も速く変わる。
+	 * @param rank 順位
+	 * @param idx 結果の配列
+	 */
+	static void unrankMixed(int[] radix, long rank, int[] idx){
+		for(int i=radix.length - 1; i >= 0; i--){
+			idx[i] = (int)(rank % radix[i]);
+			rank /= radix[i];
+		}
+	}
+	/**
+	 * 混合基数の順位.
+	 * @param radix 各桁の基数
+	 * @param idx 添字
+	 * @return 順位
+	 */
+	static long rankMixed(int[] radix, int[] idx){
+		long rank = 0;
+		for(int i=0; i < radix.length; i++){
+			rank = rank * radix[i] + idx[i];
+		}
+		return rank;
+	}
+	/**
+	 * 次の混合基数の添字.
+	 * @param radix 各桁の基数
+	 * @param idx 添字
+	 */
+	static void nextMixed(int[] radix, int[] idx){
+		for(int i=radix.length - 1; i >= 0; i--){
+			if (++idx[i] < radix[i]) return;
+			idx[i] = 0;
+		}
+	}
+
+	private static long gcd(long a, long b){
+		while(b != 0){
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+	private static void swap(int[] a, int i, int j){
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+}
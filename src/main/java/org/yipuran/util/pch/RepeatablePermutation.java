@@ -5,8 +5,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 /**
  * 重複順列.
@@ -19,6 +21,9 @@ import java.util.stream.StreamSupport;
  *
  * RepeatablePermutation<String> rs = RepeatablePermutation.of(Arrays.asList("A", "B", "C"));
  * rs.compute(3).stream().map(e->e.stream().collect(Collectors.joining(""))).forEach(System.out::println);
+ *
+ * 並列に生成する場合は、parallelStream(int) を使用する。
+ * rs.parallelStream(3).filter(e->…).count();
  * </PRE>
  *
  * @since Ver 4.13
@@ -344,4 +349,170 @@ public class RepeatablePermutation<T>{
 		}
 		return null;
 	}
+
+	/**
+	 * 重複順列 Spliterator 取得.
+	 * <PRE>
+	 * 生成順の順位の範囲で分割できる Spliterator、分割した範囲の先頭の順列は順位から直接求める。
+	 * 順序は compute(int) と同じである。compute と異なり、インスタンスの状態を使用しないので複数スレッドで使用できる。
+	 * </PRE>
+	 * @param len 順列 nPr の r
+	 * @return Spliterator&lt;List&lt;T&gt;&gt;
+	 * @throws ArithmeticException 順列総数が long を超える場合
+	 */
+	public Spliterator<List<T>> spliterator(int len){
+		return new RankSpliterator<>(space(len));
+	}
+	/**
+	 * 重複順列 Stream 取得.
+	 * @param len 順列 nPr の r
+	 * @return Stream&lt;List&lt;T&gt;&gt;
+	 */
+	public Stream<List<T>> stream(int len){
+		return StreamSupport.stream(spliterator(len), false);
+	}
+	/**
+	 * 重複順列 並列 Stream 取得.
+	 * @param len 順列 nPr の r
+	 * @return 順位の範囲で分割して並列に生成する Stream&lt;List&lt;T&gt;&gt;
+	 */
+	public Stream<List<T>> parallelStream(int len){
+		return StreamSupport.stream(spliterator(len), true);
+	}
+	/**
+	 * 重複順列の順位指定取得.
+	 * <PRE>
+	 * 生成順の rank 番目（0 起点）を先頭から辿らずに求める。範囲を分けて別の JVM で生成する、中断した位置から再開する場合に使用する。
+	 * </PRE>
+	 * @param len 順列 nPr の r
+	 * @param rank 順位、0 ～ size(len) - 1
+	 * @return List&lt;T&gt;
+	 * @throws IndexOutOfBoundsException 順位が範囲外の場合
+	 */
+	public List<T> get(int len, long rank){
+		return space(len).at(rank);
+	}
+	/**
+	 * 重複順列の順位.
+	 * <PRE>
+	 * get(int, long) の逆で、生成結果の生成順の順位を求める。要素は equals で生成元の位置を求める。
+	 * </PRE>
+	 * @param element 生成結果
+	 * @return 順位、生成結果ではない場合は -1
+	 */
+	public long rankOf(List<T> element){
+		if (element.isEmpty() || list.size() < element.size()) return -1;
+		return space(element.size()).rankOf(element);
+	}
+
+	/**
+	 * 重複順列の要素位置の訪問.
+	 * <PRE>
+	 * 生成順に、生成元の List の要素位置（0 起点）の配列を visitor に渡す。
+	 * 配列は再利用して生成結果ごとに List を生成しないので、探索の条件判定に使用する。保持する場合は複製する。
+	 * </PRE>
+	 * @param len 順列 nPr の r
+	 * @param visitor 要素位置の配列を受け取る Consumer
+	 */
+	public void visit(int len, Consumer<int[]> visitor){
+		space(len).visit(visitor);
+	}
+	/**
+	 * 重複順列の読取専用 List の訪問.
+	 * <PRE>
+	 * 生成順に、生成結果を読取専用の List で visitor に渡す。
+	 * List は再利用して次の生成結果で内容が変わるので、保持する場合は new ArrayList&lt;&gt;(list) で複製する。
+	 * </PRE>
+	 * @param len 順列 nPr の r
+	 * @param visitor 生成結果を受け取る Consumer
+	 */
+	public void visitView(int len, Consumer<List<T>> visitor){
+		space(len).visitView(visitor);
+	}
+	/**
+	 * 重複順列の枝刈り探索.
+	 * <PRE>
+	 * 先頭から 1 要素ずつ深さ優先で生成し、生成途中の先頭部分を prefix で判定する。
+	 * prefix が false の先頭部分から続く生成結果は生成しないので、条件を満たさない部分を丸ごと省いて探索する。
+	 * 長さが len に達した生成結果も prefix で判定し、true の場合に consumer に渡す。
+	 * 探索順は compute と同じ生成順になる。
+	 * prefix に渡す List は読取専用で再利用する。consumer に渡す List は生成結果ごとに新しく生成する。
+	 * </PRE>
+	 * @param len 順列 nPr の r
+	 * @param prefix 先頭部分の Predicate、true = 探索を続ける
+	 * @param consumer 条件を満たす生成結果を受け取る Consumer
+	 */
+	public void search(int len, Predicate<List<T>> prefix, Consumer<List<T>> consumer){
+		if (len > list.size()) throw new IllegalArgumentException("list size over");
+		if (len < 1) throw new IllegalArgumentException();
+		int n = list.size();
+		new PrefixSearch<T>(len){
+			@Override
+			protected int first(int i){
+				return 0;
+			}
+			@Override
+			protected int limit(int i){
+				return n;
+			}
+			@Override
+			protected T element(int i, int position){
+				return list.get(position);
+			}
+		}.search(prefix, consumer);
+	}
+	private RankSpace<T> space(int len){
+		if (len > list.size()) throw new IllegalArgumentException("list size over");
+		if (len < 1) throw new IllegalArgumentException();
+		return new Space<>(list, len);
+	}
+
+	/** 重複順列の順位空間、添字は要素数を基数とする len 桁の数 */
+	private static final class Space<T> implements RankSpace<T>{
+		private final List<T> list;
+		private final int[] radix;
+		private final long size;
+		Space(List<T> list, int len){
+			this.list = list;
+			radix = new int[len];
+			Arrays.fill(radix, list.size());
+			size = Ranks.power(list.size(), len);
+		}
+		@Override
+		public long size(){
+			return size;
+		}
+		@Override
+		public int width(){
+			return radix.length;
+		}
+		@Override
+		public void unrank(long rank, int[] idx){
+			Ranks.unrankMixed(radix, rank, idx);
+		}
+		@Override
+		public void next(int[] idx){
+			Ranks.nextMixed(radix, idx);
+		}
+		@Override
+		public int position(int[] idx, int i){
+			return idx[i];
+		}
+		@Override
+		public T element(int i, int position){
+			return list.get(position);
+		}
+		@Override
+		public boolean indexOf(List<T> element, int[] idx){
+			for(int i=0; i < idx.length; i++){
+				idx[i] = list.indexOf(element.get(i));
+				if (idx[i] < 0) return false;
+			}
+			return true;
+		}
+		@Override
+		public long rank(int[] idx){
+			return Ranks.rankMixed(radix, idx);
+		}
+	}
 }
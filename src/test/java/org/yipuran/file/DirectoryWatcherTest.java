@@ -0,0 +1,53 @@
+package org.yipuran.file;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryWatcherTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void watch() throws Exception {
+		File root = folder.newFolder("root");
+		File old = new File(root, "old.log");
+		Files.write(old.toPath(), new byte[1]);
+		LinkedBlockingQueue<List<FileChange>> queue = new LinkedBlockingQueue<>();
+		try(DirectoryWatcher watcher = DirectoryWatcher.of(root.toPath()).debounce(100).filter(p->!p.toString().endsWith(".tmp"))
+				.start(queue::add)){
+			Assert.assertTrue(watcher.isRunning());
+			File sub = new File(root, "a/b");
+			sub.mkdirs();
+			Files.write(new File(sub, "new.log").toPath(), new byte[3]);
+			Files.write(new File(sub, "skip.tmp").toPath(), new byte[3]);
+			Files.write(old.toPath(), new byte[5]);
+			Map<Path, FileChange.Kind> changes = new HashMap<>();
+			while(changes.size() < 2){
+				List<FileChange> list = queue.poll(10, TimeUnit.SECONDS);
+				Assert.assertNotNull("no event", list);
+				list.forEach(c->changes.put(c.getPath(), c.getKind()));
+			}
+			Assert.assertEquals(FileChange.Kind.CREATED, changes.get(new File(sub, "new.log").toPath().toAbsolutePath()));
+			Assert.assertEquals(FileChange.Kind.MODIFIED, changes.get(old.toPath().toAbsolutePath()));
+			Assert.assertEquals(2, changes.size());
+
+			// サブディレクトリ配下の作成後に登録されたディレクトリも監視する。
+			Files.delete(new File(sub, "new.log").toPath());
+			List<FileChange> list = queue.poll(10, TimeUnit.SECONDS);
+			Assert.assertNotNull("no event", list);
+			Assert.assertEquals(1, list.size());
+			Assert.assertEquals(FileChange.Kind.DELETED, list.get(0).getKind());
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package org.yipuran.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileChannelLockTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private String path;
+
+	@Before
+	public void setUp() {
+		path = new File(folder.getRoot(), "test.lock").getPath();
+	}
+
+	@Test
+	public void exclusive() throws InterruptedException {
+		FileChannelLock shared = new FileChannelLock(path);
+		AtomicInteger inside = new AtomicInteger();
+		AtomicInteger max = new AtomicInteger();
+		AtomicInteger count = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for(int i=0; i < 4; i++){
+			// 共有インスタンスとスレッド毎のインスタンス
+			FileChannelLock lock = i % 2==0 ? shared : new FileChannelLock(path);
+			Thread t = new Thread(()->{
+				for(int n=0; n < 200; n++){
+					Assert.assertTrue(lock.begin());
+					try{
+						max.accumulateAndGet(inside.incrementAndGet(), Math::max);
+						count.incrementAndGet();
+						inside.decrementAndGet();
+					}finally{
+						lock.end();
+					}
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for(Thread t : threads) t.join();
+		Assert.assertEquals(1, max.get());
+		Assert.assertEquals(800, count.get());
+		Assert.assertTrue(new File(path).exists());
+		shared.close();
+	}
+
+	@Test
+	public void timeout() throws InterruptedException {
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		Thread holder = new Thread(()->{
+			try(FileChannelLock lock = new FileChannelLock(path)){
+				Assert.assertTrue(lock.tryBegin());
+				locked.countDown();
+				done.await();
+			}catch(InterruptedException e){
+			}
+		});
+		holder.start();
+		locked.await();
+		try(FileChannelLock lock = new FileChannelLock(path)){
+			long start = System.nanoTime();
+			Assert.assertFalse(lock.begin(100, TimeUnit.MILLISECONDS));
+			Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+			Assert.assertFalse(lock.tryBegin());
+			done.countDown();
+			holder.join();
+			Assert.assertTrue(lock.begin(1, TimeUnit.SECONDS));
+			Assert.assertTrue(lock.isLocked());
+			lock.end();
+			Assert.assertFalse(lock.isLocked());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void reentry() {
+		try(FileChannelLock lock = new FileChannelLock(path)){
+			Assert.assertTrue(lock.begin());
+			lock.begin();
+		}
+	}
+}
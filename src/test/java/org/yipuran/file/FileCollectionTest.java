@@ -0,0 +1,90 @@
+package org.yipuran.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileCollectionTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File root;
+
+	@Before
+	public void setUp() throws IOException {
+		root = folder.newFolder("root");
+		for(int i=0; i < 5; i++){
+			File d = new File(root, "d" + i + "/e/f");
+			d.mkdirs();
+			for(int j=0; j < 4; j++){
+				Files.write(new File(d.getParentFile(), "a" + j + ".txt").toPath(), new byte[j]);
+				Files.write(new File(d, "b" + j + ".log").toPath(), new byte[j]);
+			}
+		}
+	}
+
+	@Test
+	public void scan() {
+		List<File> list = FileCollection.of(root.getPath()).scan();
+		Assert.assertEquals(root, list.get(0));
+		Assert.assertEquals(1 + 5 * 3 + 5 * 8, list.size());
+		// ディレクトリはその配下より前
+		for(int i=0; i < list.size(); i++){
+			File parent = list.get(i).getParentFile();
+			if (!list.get(i).equals(root)) Assert.assertTrue(list.indexOf(parent) < i);
+		}
+	}
+	@Test
+	public void scanParallel() {
+		FileCollection fc = FileCollection.of(root.getPath());
+		Assert.assertEquals(fc.scan(), fc.scanParallel());
+		Assert.assertEquals(fc.scanProvision(f->f.getName().endsWith(".log"))
+				, fc.scanParallel(f->f.getName().endsWith(".log"), new ForkJoinPool(4)));
+	}
+	@Test
+	public void anyMatch() {
+		FileCollection fc = FileCollection.of(root.getPath());
+		Assert.assertTrue(fc.anyMatch(f->f.getName().equals("b3.log")));
+		Assert.assertFalse(fc.anyMatch(f->f.getName().equals("none")));
+		Assert.assertTrue(FileCollection.of(new File(root, "none").getPath()).anyMatch(f->true));
+	}
+	@Test
+	public void stream() {
+		try(Stream<Path> stream = FileCollection.of(root.getPath()).stream()){
+			Optional<Path> p = stream.filter(e->e.getFileName().toString().endsWith(".log")).findFirst();
+			Assert.assertTrue(p.isPresent());
+		}
+		try(Stream<Path> stream = FileCollection.of(root.getPath()).stream((p, a)->a.isRegularFile() && a.size()==3)){
+			Assert.assertEquals(10, stream.count());
+		}
+		List<Path> paths;
+		try(Stream<Path> stream = FileCollection.of(root.getPath()).stream()){
+			paths = stream.collect(Collectors.toList());
+		}
+		Assert.assertEquals(FileCollection.of(root.getPath()).scan().stream().map(File::toPath).collect(Collectors.toList()), paths);
+	}
+	@Test
+	public void symbolicLinkLoop() throws IOException {
+		Path link = new File(root, "d0/e/loop").toPath();
+		try{
+			Files.createSymbolicLink(link, root.toPath());
+		}catch(UnsupportedOperationException | IOException e){
+			return;
+		}
+		FileCollection fc = FileCollection.of(root.getPath());
+		List<File> list = fc.scan();
+		Assert.assertTrue(list.contains(link.toFile()));
+		Assert.assertEquals(list, fc.scanParallel());
+	}
+}
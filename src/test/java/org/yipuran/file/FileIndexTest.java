@@ -0,0 +1,101 @@
+package org.yipuran.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileIndexTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File root;
+	private Path indexFile;
+
+	@Before
+	public void setUp() throws IOException {
+		root = folder.newFolder("root");
+		for(int i=0; i < 3; i++){
+			File d = new File(root, "d" + i + "/e");
+			d.mkdirs();
+			for(int j=0; j < 3; j++){
+				Files.write(new File(d, "f" + j + ".txt").toPath(), new byte[j]);
+			}
+		}
+		indexFile = new File(folder.getRoot(), "root.index").toPath();
+	}
+
+	@Test
+	public void refresh() throws IOException {
+		FileCollection fc = FileCollection.of(root.getPath());
+		try(FileIndex index = fc.index(indexFile)){
+			FileIndex.Diff diff = index.refresh();
+			Assert.assertEquals(9, diff.getAdded().size());
+			Assert.assertEquals(fc.scan(), index.scan());
+			Assert.assertTrue(index.refresh().isEmpty());
+			index.save();
+		}
+		Files.write(new File(root, "d0/e/f0.txt").toPath(), new byte[10]);
+		Files.write(new File(root, "d1/new.txt").toPath(), new byte[1]);
+		new File(root, "d2/e/f1.txt").delete();
+		File d3 = new File(root, "d3/x");
+		d3.mkdirs();
+		Files.write(new File(d3, "y.txt").toPath(), new byte[1]);
+
+		try(FileIndex index = fc.index(indexFile)){
+			Assert.assertEquals(1 + 3 * 2 + 9, index.size());
+			FileIndex.Diff diff = index.refresh();
+			Assert.assertEquals(Arrays.asList(new File(root, "d0/e/f0.txt").toPath().toAbsolutePath()), diff.getModified());
+			Assert.assertEquals(2, diff.getAdded().size());
+			Assert.assertTrue(diff.getAdded().contains(new File(d3, "y.txt").toPath().toAbsolutePath()));
+			Assert.assertEquals(Arrays.asList(new File(root, "d2/e/f1.txt").toPath().toAbsolutePath()), diff.getRemoved());
+			Assert.assertEquals(fc.scan(), index.scan());
+		}
+	}
+	@Test
+	public void watch() throws Exception {
+		FileCollection fc = FileCollection.of(root.getPath());
+		try(FileIndex index = fc.index(null)){
+			index.refresh();
+			index.watch();
+			Assert.assertTrue(index.refresh().isEmpty());
+			Files.write(new File(root, "d1/e/f2.txt").toPath(), new byte[20]);
+			File dir = new File(root, "d0/e");
+			for(File f : dir.listFiles()){
+				f.delete();
+			}
+			dir.delete();
+			List<Path> removed = new ArrayList<>();
+			List<Path> modified = new ArrayList<>();
+			// WatchService の通知を待つ
+			for(int i=0; i < 100 && removed.size() < 3; i++){
+				Thread.sleep(100);
+				FileIndex.Diff diff = index.refresh();
+				removed.addAll(diff.getRemoved());
+				modified.addAll(diff.getModified());
+			}
+			Assert.assertEquals(3, removed.size());
+			Assert.assertTrue(modified.contains(new File(root, "d1/e/f2.txt").toPath().toAbsolutePath()));
+			Assert.assertEquals(fc.scan(), index.scan());
+		}
+	}
+	@Test
+	public void missingRoot() {
+		File none = new File(root, "none");
+		try(FileIndex index = FileCollection.of(none.getPath()).index(null)){
+			Assert.assertTrue(index.refresh().isEmpty());
+			Assert.assertEquals(Collections.emptyList(), index.scan());
+		}catch(IOException e){
+			Assert.fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.yipuran.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileRotatorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private Path target;
+	private Path backupDir;
+
+	@Before
+	public void setUp() {
+		target = new File(folder.getRoot(), "app.log").toPath();
+		backupDir = new File(folder.getRoot(), "backup").toPath();
+	}
+	private static String gunzip(Path p) throws IOException {
+		try(InputStream in = new GZIPInputStream(Files.newInputStream(p))){
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] b = new byte[1024];
+			for(int n; (n = in.read(b)) > 0; ) out.write(b, 0, n);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void rotate() throws Exception {
+		try(FileRotator rotator = FileRotator.of(target, backupDir).format("app-#.log").maxFiles(3)){
+			List<CompletableFuture<Path>> futures = new ArrayList<>();
+			for(int i=0; i < 5; i++){
+				Files.write(target, ("line" + i).getBytes(StandardCharsets.UTF_8));
+				futures.add(rotator.rotate());
+				Assert.assertFalse(Files.exists(target));
+			}
+			Path last = futures.get(4).get(10, TimeUnit.SECONDS);
+			Assert.assertTrue(last.getFileName().toString().matches("app-\\d{8}-\\d{6}-\\d{3}(-\\d+)?\\.log\\.gz"));
+			Assert.assertEquals("line4", gunzip(last));
+			List<Path> backups = rotator.backups();
+			Assert.assertEquals(3, backups.size());
+			Assert.assertEquals(last, backups.get(0));
+			Assert.assertEquals("line2", gunzip(backups.get(2)));
+		}
+	}
+
+	@Test
+	public void limits() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try(FileRotator rotator = FileRotator.of(target, backupDir).compress(false).executor(executor).maxTotalSize(250)){
+			for(int i=0; i < 4; i++){
+				Files.write(target, new byte[100]);
+				rotator.rotate().get(10, TimeUnit.SECONDS);
+			}
+			Assert.assertEquals(2, rotator.backups().size());
+			Assert.assertTrue(rotator.backups().get(0).getFileName().toString().startsWith("app.log."));
+		}finally{
+			executor.shutdown();
+		}
+		File old = new File(backupDir.toFile(), "app.log.20000101-000000-000");
+		Files.write(old.toPath(), new byte[1]);
+		try(FileRotator rotator = FileRotator.of(target, backupDir).compress(false).maxAge(1, TimeUnit.DAYS)){
+			Files.write(target, new byte[1]);
+			rotator.rotate().get(10, TimeUnit.SECONDS);
+			Assert.assertFalse(old.exists());
+			Assert.assertEquals(3, rotator.backups().size());
+		}
+	}
+
+	@Test
+	public void newestKept() throws Exception {
+		try(FileRotator rotator = FileRotator.of(target, backupDir).compress(false).maxTotalSize(50)){
+			for(int i=0; i < 2; i++){
+				Files.write(target, new byte[100]);
+				Path p = rotator.rotate().get(10, TimeUnit.SECONDS);
+				// 単独で合計サイズを超える最新のバックアップは残し、それより古いものを削除する。
+				Assert.assertEquals(Collections.singletonList(p), rotator.backups());
+			}
+		}
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try(FileRotator rotator = FileRotator.of(target, backupDir).compress(false).executor(executor).maxAge(1, TimeUnit.MILLISECONDS)){
+			for(int i=0; i < 2; i++){
+				// 削除の判定をローテーションから遅らせて、最新のバックアップも経過時間を超えさせる。
+				executor.submit(()->{
+					Thread.sleep(20);
+					return null;
+				});
+				Files.write(target, new byte[1]);
+				Path p = rotator.rotate().get(10, TimeUnit.SECONDS);
+				Assert.assertEquals(Collections.singletonList(p), rotator.backups());
+			}
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void rotateIfNeeded() throws Exception {
+		try(FileRotator rotator = FileRotator.of(target, backupDir).triggerSize(10)){
+			Assert.assertNull(rotator.rotateIfNeeded());
+			Files.write(target, new byte[5]);
+			Assert.assertNull(rotator.rotateIfNeeded());
+			Files.write(target, new byte[10]);
+			Assert.assertNotNull(rotator.rotateIfNeeded().get(10, TimeUnit.SECONDS));
+			Assert.assertFalse(Files.exists(target));
+		}
+		try(FileRotator rotator = FileRotator.of(target, backupDir).triggerInterval(50, TimeUnit.MILLISECONDS)){
+			Files.write(target, new byte[1]);
+			Assert.assertNull(rotator.rotateIfNeeded());
+			Thread.sleep(60);
+			Assert.assertNotNull(rotator.rotateIfNeeded());
+		}
+	}
+
+	@Test
+	public void fileBackup() throws Exception {
+		File dir = folder.getRoot();
+		Files.write(target, new byte[1]);
+		try(FileRotator rotator = new FileBackup("app.log", "bk_#.txt", 5).rotator(dir, backupDir.toFile())){
+			Path p = rotator.rotate().get(10, TimeUnit.SECONDS);
+			Assert.assertTrue(p.getFileName().toString().matches("bk_\\d{8}-\\d{6}-\\d{3}\\.txt\\.gz"));
+		}
+	}
+}
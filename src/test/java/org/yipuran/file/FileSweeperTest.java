@@ -0,0 +1,139 @@
+package org.yipuran.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSweeperTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File root;
+	private long old;
+
+	@Before
+	public void setUp() throws IOException {
+		root = folder.newFolder("root");
+		old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10);
+		for(int i=0; i < 2; i++){
+			File d = i==0 ? root : new File(root, "sub");
+			d.mkdirs();
+			for(int j=0; j < 5; j++){
+				write(new File(d, "old" + j + ".log"), 100, old);
+				write(new File(d, "new" + j + ".log"), 100, System.currentTimeMillis());
+			}
+			write(new File(d, "old.txt"), 1000, old);
+			write(new File(d, "keep.log"), 100, old);
+		}
+	}
+	private static void write(File f, int size, long mtime) throws IOException {
+		Files.write(f.toPath(), new byte[size]);
+		Files.setLastModifiedTime(f.toPath(), FileTime.fromMillis(mtime));
+	}
+
+	@Test
+	public void execute() {
+		FileSweeper.Result result = FileSweeper.of(root.toPath())
+			.olderThan(5, TimeUnit.DAYS)
+			.include(".*\\.log")
+			.excludeNames("keep.log")
+			.batchSize(2)
+			.execute();
+		Assert.assertFalse(result.isDryRun());
+		Assert.assertEquals(12, result.getScanned());
+		Assert.assertEquals(5, result.getDeleted());
+		Assert.assertEquals(500, result.getDeletedBytes());
+		Assert.assertTrue(result.getFailed().isEmpty());
+		Assert.assertFalse(new File(root, "old0.log").exists());
+		Assert.assertTrue(new File(root, "new0.log").exists());
+		Assert.assertTrue(new File(root, "old.txt").exists());
+		Assert.assertTrue(new File(root, "keep.log").exists());
+		Assert.assertTrue(new File(root, "sub/old0.log").exists());
+	}
+
+	@Test
+	public void recursiveDryRun() {
+		List<Path> list = Collections.synchronizedList(new ArrayList<>());
+		FileSweeper.Result result = FileSweeper.of(root.toPath())
+			.maxDepth(Integer.MAX_VALUE)
+			.modifiedBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1))
+			.largerThan(500)
+			.dryRun(true)
+			.onDelete(list::add)
+			.execute();
+		Assert.assertTrue(result.isDryRun());
+		Assert.assertEquals(24, result.getScanned());
+		Assert.assertEquals(2, result.getDeleted());
+		Assert.assertEquals(2000, result.getDeletedBytes());
+		Assert.assertEquals(2, list.size());
+		Assert.assertTrue(new File(root, "old.txt").exists());
+		Assert.assertTrue(new File(root, "sub/old.txt").exists());
+	}
+
+	@Test
+	public void rateLimit() {
+		long start = System.nanoTime();
+		FileSweeper.Result result = FileSweeper.of(root.toPath())
+			.maxDepth(Integer.MAX_VALUE)
+			.rule((p, a)->a.lastModifiedTime().toMillis()==old)
+			.batchSize(1)
+			.parallelism(3)
+			.rateLimit(40)
+			.execute();
+		Assert.assertEquals(14, result.getDeleted());
+		// 14 件を 40件/秒 なので、最初の１件を除いて 13 * 25ms 以上かかる。
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(13 * 25));
+		Assert.assertEquals(10, FileCollection.of(root.getPath()).scanProvision(File::isFile).size());
+	}
+
+	@Test
+	public void emptyDirectoriesAndLinks() throws Exception {
+		File sub = new File(root, "sub");
+		File empty = new File(root, "empty");
+		File inner = new File(root, "parent/inner");
+		inner.mkdirs();
+		empty.mkdirs();
+		Path link = new File(root, "link").toPath();
+		Path broken = new File(root, "broken").toPath();
+		Files.createSymbolicLink(link, new File(root, "new0.log").toPath());
+		Files.createSymbolicLink(broken, new File(root, "none").toPath());
+		for(Path p : new Path[]{ link, broken, empty.toPath(), inner.toPath(), inner.getParentFile().toPath(), sub.toPath() }){
+			Files.setAttribute(p, "basic:lastModifiedTime", FileTime.fromMillis(old), LinkOption.NOFOLLOW_LINKS);
+		}
+		// 直下だけが対象、parent は空ではないので残る。
+		DirectorySweep.main(new String[]{ "5", root.getPath(), "keep.log" });
+		Assert.assertFalse(empty.exists());
+		Assert.assertFalse(Files.exists(link, LinkOption.NOFOLLOW_LINKS));
+		Assert.assertFalse(Files.exists(broken, LinkOption.NOFOLLOW_LINKS));
+		Assert.assertTrue(new File(root, "new0.log").exists());
+		Assert.assertTrue(inner.exists());
+		Assert.assertTrue(sub.exists());
+		Assert.assertFalse(new File(root, "old0.log").exists());
+		Assert.assertTrue(new File(root, "keep.log").exists());
+
+		// 空になったディレクトリは深い順に削除し、ファイルが残るディレクトリは削除しない。
+		FileSweeper.Result result = FileSweeper.of(root.toPath())
+			.maxDepth(Integer.MAX_VALUE)
+			.olderThan(5, TimeUnit.DAYS)
+			.excludeNames("keep.log")
+			.emptyDirectories(true)
+			.execute();
+		Assert.assertEquals(6 + 2, result.getDeleted());
+		Assert.assertTrue(result.getFailed().isEmpty());
+		Assert.assertFalse(inner.getParentFile().exists());
+		Assert.assertTrue(sub.exists());
+		Assert.assertTrue(new File(sub, "keep.log").exists());
+	}
+}
@@ -0,0 +1,91 @@
+package org.yipuran.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileTransferTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File from;
+	private File to;
+	private List<Path> sources;
+
+	@Before
+	public void setUp() throws IOException {
+		from = folder.newFolder("from");
+		to = new File(folder.getRoot(), "to");
+		for(int i=0; i < 3; i++){
+			File d = new File(from, "d" + i);
+			d.mkdirs();
+			for(int j=0; j < 4; j++){
+				Path p = new File(d, "f" + j + ".dat").toPath();
+				Files.write(p, new byte[1000 * j + i]);
+				Files.setLastModifiedTime(p, FileTime.fromMillis(1500000000000L + j));
+			}
+		}
+		new File(from, "empty").mkdirs();
+		try(Stream<Path> stream = FileCollection.of(from.getPath()).stream()){
+			sources = stream.skip(1).collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void copy() throws IOException {
+		FileTransfer.Result result = FileTransfer.of(from.toPath(), to.toPath()).parallelism(3).copy(sources);
+		Assert.assertEquals(12, result.getItems().size());
+		Assert.assertTrue(result.getFailed().isEmpty());
+		Assert.assertEquals(3 * (0 + 1000 + 2000 + 3000) + 4 * (0 + 1 + 2), result.getBytes());
+		Assert.assertTrue(new File(to, "empty").isDirectory());
+		for(FileTransfer.Item i : result.getItems()){
+			Assert.assertFalse(i.isRenamed());
+			Assert.assertArrayEquals(Files.readAllBytes(i.getSource()), Files.readAllBytes(i.getTarget()));
+			Assert.assertEquals(Files.getLastModifiedTime(i.getSource()), Files.getLastModifiedTime(i.getTarget()));
+		}
+		Assert.assertEquals(4, new File(to, "d0").list().length);
+	}
+
+	@Test
+	public void move() {
+		FileTransfer.Result result = FileTransfer.of(from.toPath(), to.toPath()).move(sources);
+		Assert.assertTrue(result.getFailed().isEmpty());
+		for(FileTransfer.Item i : result.getItems()){
+			Assert.assertTrue(i.isRenamed());
+			Assert.assertFalse(Files.exists(i.getSource()));
+			Assert.assertTrue(Files.isRegularFile(i.getTarget()));
+		}
+		Assert.assertTrue(new File(from, "d0").isDirectory());
+	}
+
+	@Test
+	public void replaceExisting() throws IOException {
+		new File(to, "d1").mkdirs();
+		Files.write(new File(to, "d1/f2.dat").toPath(), new byte[1]);
+		FileTransfer.Result result = FileTransfer.of(from.toPath(), to.toPath()).replaceExisting(false).copy(sources);
+		Assert.assertEquals(1, result.getFailed().size());
+		Assert.assertTrue(result.getFailed().get(0).getError() instanceof FileAlreadyExistsException);
+		Assert.assertEquals(1, new File(to, "d1/f2.dat").length());
+		Assert.assertEquals(11, result.getItems().stream().filter(FileTransfer.Item::isSuccess).count());
+	}
+
+	@Test
+	public void moveFiles() {
+		List<Path> moved = FileUtil.moveFiles(from, FileCollection.of(from.getPath()).scan(), to);
+		Assert.assertEquals(12, moved.size());
+		Assert.assertTrue(moved.contains(new File(to, "d0/f0.dat").toPath()));
+		Assert.assertEquals(3002, new File(to, "d2/f3.dat").length());
+		Assert.assertFalse(new File(from, "d2/f3.dat").exists());
+	}
+}
@@ -0,0 +1,57 @@
+package org.yipuran.file;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IPathTest {
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException, URISyntaxException {
+		// テストクラスと同じディレクトリにリソースを作成する。
+		file = Paths.get(IPathTest.class.getResource("IPathTest.class").toURI()).resolveSibling("ipath-test.txt");
+		Files.write(file, "abc\0あいう\n".getBytes(StandardCharsets.UTF_8));
+		IPath.clearCache();
+	}
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+		IPath.clearCache();
+	}
+
+	@Test
+	public void readText() {
+		Assert.assertEquals("abc\0あいう\n", IPath.readText("ipath-test.txt"));
+		Assert.assertEquals("abc\0あいう\n", IPath.readText(IPathTest.class, "ipath-test.txt"));
+		Charset sjis = Charset.forName("MS932");
+		Assert.assertNotEquals("abc\0あいう\n", IPath.readText("ipath-test.txt", sjis));
+		Assert.assertEquals(IPath.getCurrentPathFile("ipath-test.txt").toPath(), file);
+	}
+
+	@Test
+	public void cache() throws IOException {
+		String s = IPath.readText("ipath-test.txt");
+		Assert.assertSame(s, IPath.readText(IPathTest.class, "ipath-test.txt"));
+		Files.write(file, "changed".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+		Assert.assertEquals("changed", IPath.readText("ipath-test.txt"));
+		Assert.assertNotSame(IPath.readTextNoCache(IPathTest.class, "ipath-test.txt", StandardCharsets.UTF_8),
+			IPath.readText("ipath-test.txt"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void notFound() {
+		IPath.readText("not-found.txt");
+	}
+}
@@ -0,0 +1,191 @@
+package org.yipuran.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipProcessorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File createTree() throws IOException {
+		File root = folder.newFolder("logs");
+		Files.write(new File(root, "a.txt").toPath(), "aaaaaaaaaaaaaaaaaaaa".getBytes(StandardCharsets.UTF_8));
+		File sub = new File(root, "sub");
+		sub.mkdir();
+		Files.write(new File(sub, "app.log").toPath(), String.join("\n", Collections.nCopies(1000, "line")).getBytes(StandardCharsets.UTF_8));
+		byte[] big = new byte[(int)ParallelZip.MEMORY_LIMIT + 12345];
+		new Random(1).nextBytes(big);
+		Files.write(new File(sub, "big.bin").toPath(), big);
+		Files.write(new File(sub, "empty").toPath(), new byte[0]);
+		return root;
+	}
+
+	@Test
+	public void compressParallel() throws IOException {
+		File root = createTree();
+		ZipProcessor processor = ()->Arrays.asList(FileCollection.of(root.getAbsolutePath()));
+		File serial = new File(folder.getRoot(), "serial.zip");
+		File parallel = new File(folder.getRoot(), "parallel.zip");
+		Collection<String> expected = processor.compress(serial.getAbsolutePath());
+		Collection<String> entries = processor.compressParallel(parallel.getAbsolutePath(), f->true, new ForkJoinPool(3));
+		Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(entries));
+
+		try(ZipFile zip = new ZipFile(parallel)){
+			List<String> names = new ArrayList<>();
+			for(ZipEntry e : Collections.list(zip.entries())){
+				names.add(e.getName());
+				if (e.isDirectory()) continue;
+				Path source = new File(folder.getRoot(), e.getName()).toPath();
+				try(InputStream in = zip.getInputStream(e)){
+					Assert.assertArrayEquals(e.getName(), Files.readAllBytes(source), readAll(in));
+				}
+			}
+			Assert.assertEquals(new ArrayList<>(entries), names);
+		}
+	}
+	@Test
+	public void decompress() throws IOException {
+		File root = createTree();
+		ZipProcessor processor = ()->Arrays.asList(FileCollection.of(root.getAbsolutePath()));
+		File zip = new File(folder.getRoot(), "p.zip");
+		processor.compressParallel(zip.getAbsolutePath(), f->!f.getName().equals("big.bin"));
+		File dir = folder.newFolder("out");
+		ZipProcessor.decompress(zip.getAbsolutePath(), dir.getAbsolutePath());
+		Assert.assertArrayEquals(Files.readAllBytes(new File(root, "sub/app.log").toPath())
+				, Files.readAllBytes(new File(dir, "logs/sub/app.log").toPath()));
+		Assert.assertFalse(new File(dir, "logs/sub/big.bin").exists());
+	}
+
+	@Test
+	public void decompressSerialCompressed() throws IOException {
+		File root = createTree();
+		ZipProcessor processor = ()->Arrays.asList(FileCollection.of(root.getAbsolutePath()));
+		File zip = new File(folder.getRoot(), "s.zip");
+		processor.compress(zip.getAbsolutePath());
+		File dir = folder.newFolder("out");
+		Set<String> entries = ZipProcessor.decompressParallel(zip.getAbsolutePath(), dir.getAbsolutePath());
+		Assert.assertEquals(ZipProcessor.viewPath(zip.getAbsolutePath()), entries);
+		Assert.assertArrayEquals(Files.readAllBytes(new File(root, "sub/big.bin").toPath())
+				, Files.readAllBytes(new File(dir, "logs/sub/big.bin").toPath()));
+		Assert.assertEquals(0L, new File(dir, "logs/sub/empty").length());
+	}
+	@Test
+	public void decompressSelected() throws IOException {
+		File root = createTree();
+		ZipProcessor processor = ()->Arrays.asList(FileCollection.of(root.getAbsolutePath()));
+		File zip = new File(folder.getRoot(), "p.zip");
+		processor.compressParallel(zip.getAbsolutePath());
+		File dir = folder.newFolder("out");
+		Set<String> entries = ZipProcessor.decompress(zip.getAbsolutePath(), dir.getAbsolutePath(), n->n.endsWith(".txt"));
+		Assert.assertEquals(new TreeSet<>(Arrays.asList("logs/a.txt")), entries);
+		Assert.assertTrue(new File(dir, "logs/a.txt").isFile());
+		Assert.assertFalse(new File(dir, "logs/sub").exists());
+	}
+	@Test(expected=RuntimeException.class)
+	public void decompressOutside() throws IOException {
+		File zip = new File(folder.getRoot(), "evil.zip");
+		try(ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip))){
+			zos.putNextEntry(new ZipEntry("../evil.txt"));
+			zos.write(1);
+		}
+		ZipProcessor.decompress(zip.getAbsolutePath(), folder.newFolder("out").getAbsolutePath());
+	}
+
+	@Test
+	public void stream() throws IOException {
+		File root = createTree();
+		ZipProcessor processor = ()->Arrays.asList(FileCollection.of(root.getAbsolutePath()));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		List<String> completed = new ArrayList<>();
+		long[] written = new long[1];
+		Collection<String> entries = processor.compress(out, f->!f.getName().equals("big.bin"), (e, bytes, nanos)->{
+			completed.add(e.getName());
+			Assert.assertTrue(bytes >= written[0]);
+			written[0] = bytes;
+		});
+		out.write(0);
+		Assert.assertEquals(entries.size(), completed.size());
+		Assert.assertTrue(written[0] > 0 && written[0] < out.size());
+
+		Map<String, byte[]> data = new HashMap<>();
+		Set<String> names = ZipProcessor.decompress(new ByteArrayInputStream(out.toByteArray(), 0, out.size() - 1), (e, in)->{
+			if (!e.isDirectory()) data.put(e.getName(), readAll(in));
+		}, (e, bytes, nanos)->{
+			Assert.assertTrue(e.getSize() >= 0);
+		});
+		Assert.assertEquals(new TreeSet<>(completed), names);
+		Assert.assertArrayEquals(Files.readAllBytes(new File(root, "sub/app.log").toPath()), data.get("/logs/sub/app.log"));
+		Assert.assertEquals(0, data.get("/logs/sub/empty").length);
+	}
+
+	@Test
+	public void compressIncremental() throws IOException {
+		File root = createTree();
+		ZipProcessor processor = ()->Arrays.asList(FileCollection.of(root.getAbsolutePath()));
+		File zip = new File(folder.getRoot(), "inc.zip");
+		Collection<String> first = processor.compressIncremental(zip.getAbsolutePath());
+		Assert.assertTrue(new File(zip.getPath() + ".manifest").isFile());
+
+		File a = new File(root, "a.txt");
+		long mtime = a.lastModified();
+		// サイズ、更新時刻が同じなら前回の圧縮データを複写する。
+		Files.write(a.toPath(), "bbbbbbbbbbbbbbbbbbbb".getBytes(StandardCharsets.UTF_8));
+		a.setLastModified(mtime);
+		File log = new File(root, "sub/app.log");
+		Files.write(log.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+		new File(root, "sub/empty").delete();
+		Files.write(new File(root, "sub/new.txt").toPath(), "new".getBytes(StandardCharsets.UTF_8));
+		File big = new File(root, "sub/big.bin");
+		big.setLastModified(big.lastModified() - 10000);
+
+		Collection<String> second = processor.compressIncremental(zip.getAbsolutePath());
+		Assert.assertEquals(first.size(), second.size());
+		Assert.assertTrue(second.contains("logs/sub/new.txt"));
+		Assert.assertFalse(second.contains("logs/sub/empty"));
+		try(ZipFile zf = new ZipFile(zip)){
+			Assert.assertArrayEquals("aaaaaaaaaaaaaaaaaaaa".getBytes(StandardCharsets.UTF_8), readAll(zf.getInputStream(zf.getEntry("logs/a.txt"))));
+			Assert.assertArrayEquals("changed".getBytes(StandardCharsets.UTF_8), readAll(zf.getInputStream(zf.getEntry("logs/sub/app.log"))));
+			Assert.assertArrayEquals(Files.readAllBytes(big.toPath()), readAll(zf.getInputStream(zf.getEntry("logs/sub/big.bin"))));
+			Assert.assertEquals(new ArrayList<>(second), Collections.list(zf.entries()).stream().map(ZipEntry::getName).collect(Collectors.toList()));
+		}
+		File[] left = folder.getRoot().listFiles((d, n)->n.endsWith(".tmp"));
+		Assert.assertEquals(0, left.length);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		int n;
+		while((n = in.read(b)) > 0){
+			out.write(b, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,153 @@
+package org.yipuran.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.yipuran.util.test.Allocations;
+
+public class Base64UtilTest{
+
+	@Test
+	public void byteBuffer(){
+		Random random = new Random(1);
+		for(int len=0; len < 100; len++){
+			byte[] data = new byte[len];
+			random.nextBytes(data);
+			ByteBuffer encoded = ByteBuffer.allocate(Base64Util.encodedLength(len));
+			Base64Util.encode(ByteBuffer.wrap(data), encoded, true);
+			Assert.assertEquals(Base64.getEncoder().encodeToString(data), new String(encoded.array(), StandardCharsets.US_ASCII));
+
+			encoded.flip();
+			ByteBuffer decoded = ByteBuffer.allocateDirect(len);
+			Base64Util.decode(encoded, decoded);
+			Assert.assertFalse(encoded.hasRemaining());
+			decoded.flip();
+			byte[] result = new byte[decoded.remaining()];
+			decoded.get(result);
+			Assert.assertArrayEquals(data, result);
+		}
+	}
+
+	@Test
+	public void partialInput(){
+		ByteBuffer src = ByteBuffer.wrap("abcde".getBytes());
+		ByteBuffer dst = ByteBuffer.allocate(8);
+		Assert.assertEquals(4, Base64Util.encode(src, dst, false));
+		Assert.assertEquals(2, src.remaining());
+		Assert.assertEquals(4, Base64Util.encode(src, dst, true));
+		Assert.assertEquals("YWJjZGU=", new String(dst.array(), StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void stream() throws IOException{
+		byte[] data = new byte[100000];
+		new Random(2).nextBytes(data);
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		try(OutputStream out = Base64Util.encoder(bo)){
+			for(int i=0; i < data.length; i += 777){
+				out.write(data, i, Math.min(777, data.length - i));
+			}
+		}
+		Assert.assertEquals(Base64.getEncoder().encodeToString(data), bo.toString("US-ASCII"));
+
+		byte[] mime = Base64.getMimeEncoder().encode(data);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try(InputStream in = Base64Util.decoder(new ByteArrayInputStream(mime))){
+			byte[] buf = new byte[1000];
+			int n;
+			while((n = in.read(buf)) >= 0){
+				result.write(buf, 0, n);
+			}
+		}
+		Assert.assertArrayEquals(data, result.toByteArray());
+	}
+
+	@Test
+	public void compatible(){
+		Assert.assertEquals(Base64Util.base64Encode("yipuran"), Base64.getEncoder().encodeToString("yipuran".getBytes()));
+	}
+
+	@Test
+	public void illegalPadding(){
+		for(String s : new String[]{ "AB=C", "A===", "=AAA", "AA==AAAA", "AAA=AA==", "AA==A" }){
+			try{
+				Base64Util.decode(ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII)), ByteBuffer.allocate(16));
+				Assert.fail(s);
+			}catch(IllegalArgumentException e){
+			}
+		}
+		ByteBuffer dst = ByteBuffer.allocate(16);
+		Assert.assertEquals(4, Base64Util.decode(ByteBuffer.wrap("AAAAAA==".getBytes(StandardCharsets.US_ASCII)), dst));
+	}
+
+	@Test
+	public void streamIllegalPadding() throws IOException{
+		// パディングの後のデータがバッファ境界を越えても検出する。
+		StringBuilder sb = new StringBuilder();
+		while(sb.length() < 4092) sb.append("AAAA");
+		for(String s : new String[]{ "AB=C", "AA==\nAAAA", sb + "AA==\n\n" + sb }){
+			try(InputStream in = Base64Util.decoder(new ByteArrayInputStream(s.getBytes(StandardCharsets.US_ASCII)))){
+				while(in.read() >= 0);
+				Assert.fail(s);
+			}catch(IOException e){
+			}
+		}
+		try(InputStream in = Base64Util.decoder(new ByteArrayInputStream((sb + "AA==\r\n").getBytes(StandardCharsets.US_ASCII)))){
+			int n = 0;
+			while(in.read() >= 0) n++;
+			Assert.assertEquals(sb.length() / 4 * 3 + 1, n);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void writeAfterClose() throws IOException{
+		OutputStream out = Base64Util.encoder(new ByteArrayOutputStream());
+		out.close();
+		out.write('a');
+	}
+
+	/** ByteBuffer 間の変換と java.util.Base64 のメモリ確保量を比較する。 */
+	@Test
+	public void compareWithJavaUtil(){
+		byte[] data = new byte[3 * 64 * 1024];
+		new Random(3).nextBytes(data);
+		ByteBuffer src = ByteBuffer.wrap(data);
+		ByteBuffer encoded = ByteBuffer.allocate(Base64Util.encodedLength(data.length));
+		ByteBuffer decoded = ByteBuffer.allocate(data.length);
+		int count = 50;
+		// 初回の呼び出しでクラスをロードしておく
+		roundTrip(src, encoded, decoded);
+		Base64.getDecoder().decode(Base64.getEncoder().encode(data));
+		long allocated = Allocations.measure(()->{
+			for(int i=0; i < count; i++){
+				roundTrip(src, encoded, decoded);
+			}
+		});
+		Assert.assertArrayEquals(data, decoded.array());
+		long javaAllocated = Allocations.measure(()->{
+			for(int i=0; i < count; i++){
+				Base64.getDecoder().decode(Base64.getEncoder().encode(data));
+			}
+		});
+		// 変換毎に結果の配列を確保しない。
+		Assert.assertTrue("allocated " + allocated, allocated < 64 * 1024);
+		Assert.assertTrue("java.util.Base64 allocated " + javaAllocated, javaAllocated > (long)data.length * count);
+	}
+	private static void roundTrip(ByteBuffer src, ByteBuffer encoded, ByteBuffer decoded){
+		src.clear();
+		encoded.clear();
+		decoded.clear();
+		Base64Util.encode(src, encoded, true);
+		encoded.flip();
+		Base64Util.decode(encoded, decoded);
+	}
+}
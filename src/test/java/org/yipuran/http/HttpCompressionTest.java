@@ -0,0 +1,117 @@
+package org.yipuran.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpCompressionTest {
+	private static final String TEXT = "compressed response body, compressed response body, compressed response body";
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		try(GZIPOutputStream out = new GZIPOutputStream(bo)){
+			out.write(data);
+		}
+		return bo.toByteArray();
+	}
+	private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+		try(DeflaterOutputStream out = new DeflaterOutputStream(bo, deflater)){
+			out.write(data);
+		}finally{
+			deflater.end();
+		}
+		return bo.toByteArray();
+	}
+	/** Content-Length 付きの応答 */
+	private static String response(String encoding, byte[] body) {
+		return "HTTP/1.1 200 OK\r\nContent-Encoding: " + encoding + "\r\nContent-Length: " + body.length + "\r\n\r\n"
+			+ new String(body, StandardCharsets.ISO_8859_1);
+	}
+	/** 要求を実行して展開した応答本体を返す */
+	private static String get(HttpClientBuilder builder) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		int status = builder.method("GET").build().execute(out->{}, (t, h)->{}, HttpStreams.to(body));
+		return status + ":" + new String(body.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void decode() throws IOException {
+		byte[] data = TEXT.getBytes(StandardCharsets.ISO_8859_1);
+		String gz = new String(gzip(data), StandardCharsets.ISO_8859_1);
+		for(HttpConnectionPool pool : Arrays.asList(null, HttpConnectionPool.of())){
+			try(ScriptedServer server = new ScriptedServer()){
+				server.reply(response("gzip", gzip(data)), false)
+					.reply(response("x-gzip", gzip(data)), false)
+					.reply(response("deflate", deflate(data, false)), false)
+					.reply(response("deflate", deflate(data, true)), false)
+					.reply(response("identity", data), false)
+					// gzip ヘッダがチャンク境界で分断される。
+					.reply("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nTransfer-Encoding: chunked\r\n\r\n"
+						+ "1\r\n" + gz.substring(0, 1) + "\r\n"
+						+ Integer.toHexString(gz.length() - 1) + "\r\n" + gz.substring(1) + "\r\n0\r\n\r\n", false);
+				HttpClientBuilder builder = HttpClientBuilder.of(server.url("/").toString()).compression();
+				if (pool != null) builder.connectionPool(pool);
+				for(int i=0; i < 6; i++){
+					Assert.assertEquals("reply " + i, "200:" + TEXT, get(builder));
+				}
+				for(String request : server.requests){
+					Assert.assertTrue(request, request.contains("\r\nAccept-Encoding: gzip, deflate\r\n"));
+				}
+			}finally{
+				if (pool != null) pool.close();
+			}
+		}
+	}
+
+	@Test
+	public void emptyBody() throws IOException {
+		for(HttpConnectionPool pool : Arrays.asList(null, HttpConnectionPool.of())){
+			try(ScriptedServer server = new ScriptedServer()){
+				server.reply("HTTP/1.1 204 No Content\r\nContent-Encoding: gzip\r\n\r\n", false)
+					.reply("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nContent-Length: 0\r\n\r\n", false)
+					.reply("HTTP/1.1 200 OK\r\nContent-Encoding: deflate\r\nContent-Length: 0\r\n\r\n", false)
+					.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+				HttpClientBuilder builder = HttpClientBuilder.of(server.url("/").toString()).compression();
+				if (pool != null) builder.connectionPool(pool);
+				Assert.assertEquals("204:", get(builder));
+				Assert.assertEquals("200:", get(builder));
+				Assert.assertEquals("200:", get(builder));
+				Assert.assertEquals("200:ok", get(builder));
+			}finally{
+				if (pool != null) pool.close();
+			}
+		}
+	}
+
+	@Test
+	public void disabled() throws IOException {
+		byte[] compressed = gzip(TEXT.getBytes(StandardCharsets.ISO_8859_1));
+		for(HttpConnectionPool pool : Arrays.asList(null, HttpConnectionPool.of())){
+			try(ScriptedServer server = new ScriptedServer()){
+				server.reply(response("gzip", compressed), false);
+				HttpClientBuilder builder = HttpClientBuilder.of(server.url("/").toString());
+				if (pool != null) builder.connectionPool(pool);
+				// 指定しなければ Accept-Encoding を送信せず、応答もそのまま渡す。
+				Assert.assertEquals("200:" + new String(compressed, StandardCharsets.ISO_8859_1), get(builder));
+				Assert.assertFalse(server.requests.get(0), server.requests.get(0).toLowerCase().contains("accept-encoding: gzip"));
+			}finally{
+				if (pool != null) pool.close();
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void corrupt() throws IOException {
+		HttpCompression.decode("gzip", new ByteArrayInputStream(new byte[]{ 1, 2, 3, 4 })).read();
+	}
+}
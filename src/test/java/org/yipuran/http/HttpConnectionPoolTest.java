@@ -0,0 +1,226 @@
+package org.yipuran.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpConnectionPoolTest {
+	static{
+		// HttpServer は応答ヘッダと本体を別に送信するので、Nagle で遅延させない。
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+	private HttpServer server;
+	private URL url;
+	/** 要求毎の接続元ポート */
+	private List<Integer> ports = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", ex->{
+			ports.add(ex.getRemoteAddress().getPort());
+			byte[] b = "ok".getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(200, b.length);
+			try(OutputStream out = ex.getResponseBody()){
+				out.write(b);
+			}
+		});
+		server.start();
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+	}
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+	private static void get(HttpConnectionPool pool, URL url, SSLSocketFactory factory) throws IOException {
+		try(ClientExchange ex = pool.open(url, "GET", new LinkedHashMap<>(), factory, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+			Assert.assertEquals(200, ex.status());
+		}
+	}
+	/** 要求を送信して "ステータス:本体" を返す */
+	private static String fetch(HttpConnectionPool pool, URL url, String method, Map<String, String> headers) throws IOException {
+		try(ClientExchange ex = pool.open(url, method, headers, null, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+			if (ex.status() >= 400) return ex.status() + ":";
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try(InputStream in = ex.body()){
+				byte[] buf = new byte[1024];
+				for(int n; (n = in.read(buf)) >= 0;) body.write(buf, 0, n);
+			}
+			return ex.status() + ":" + body.toString("ISO-8859-1");
+		}
+	}
+	private static String fetch(HttpConnectionPool pool, URL url, String method) throws IOException {
+		return fetch(pool, url, method, new LinkedHashMap<>());
+	}
+	private static SSLSocketFactory newFactory() throws Exception {
+		SSLContext ctx = SSLContext.getInstance("TLS");
+		ctx.init(null, null, null);
+		return ctx.getSocketFactory();
+	}
+
+	@Test
+	public void separateBySslFactory() throws Exception {
+		SSLSocketFactory a = newFactory();
+		SSLSocketFactory b = newFactory();
+		try(HttpConnectionPool pool = HttpConnectionPool.of(2, 200)){
+			get(pool, url, a);
+			get(pool, url, b);
+			get(pool, url, a);
+			// a の接続は a だけが再利用し、b は別の接続
+			Assert.assertEquals(ports.get(0), ports.get(2));
+			Assert.assertNotEquals(ports.get(0), ports.get(1));
+			Assert.assertEquals(2, pool.hostCount());
+			Assert.assertEquals(2, pool.idleCount());
+			// アイドルタイムアウト後はホストの管理情報も破棄する。
+			Thread.sleep(300);
+			pool.evictIdle();
+			Assert.assertEquals(0, pool.idleCount());
+			Assert.assertEquals(0, pool.hostCount());
+			get(pool, url, a);
+			Assert.assertEquals(1, pool.hostCount());
+		}
+	}
+
+	@Test
+	public void reuse() throws IOException {
+		try(HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			for(int i=0; i < 5; i++){
+				Assert.assertEquals("200:ok", fetch(pool, url, "GET"));
+			}
+			Assert.assertEquals(1, new HashSet<>(ports).size());
+			Assert.assertEquals(1, pool.idleCount());
+			Assert.assertEquals(0, pool.leasedCount());
+		}
+	}
+
+	@Test
+	public void framing() throws IOException {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			server.reply("HTTP/1.1 100 Continue\r\n\r\n"
+					+ "HTTP/1.1 200 OK\r\nContent-Length: 5\r\nX-A: 1\r\nx-a: 2\r\n\r\nhello", false)
+				.reply("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\n", false)
+				.reply("HTTP/1.1 204 No Content\r\n\r\n", false)
+				.reply("HTTP/1.1 304 Not Modified\r\nContent-Length: 10\r\n\r\n", false)
+				.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+			URL u = server.url("/a");
+			try(ClientExchange ex = pool.open(u, "GET", new LinkedHashMap<>(), null, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+				Assert.assertEquals(200, ex.status());
+				Assert.assertEquals("1,2", ex.header("x-A"));
+				Assert.assertEquals(Collections.singletonList("HTTP/1.1 200 OK"), ex.headerFields().get(null));
+			}
+			Assert.assertEquals("200:", fetch(pool, u, "HEAD"));
+			Assert.assertEquals("204:", fetch(pool, u, "GET"));
+			Assert.assertEquals("304:", fetch(pool, u, "GET"));
+			Assert.assertEquals("200:ok", fetch(pool, u, "GET"));
+			// 本体の無い応答の後も同じ接続で次の応答を正しく区切ること
+			Assert.assertEquals(1, server.connections());
+			Assert.assertTrue(server.requests.get(0).startsWith("GET /a HTTP/1.1\r\n"));
+			Assert.assertTrue(server.requests.get(1).startsWith("HEAD /a HTTP/1.1\r\n"));
+		}
+	}
+
+	@Test
+	public void notReusable() throws IOException {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			// 長さ無しは切断までが本体
+			server.reply("HTTP/1.1 200 OK\r\n\r\nuntil eof", true)
+				.reply("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 2\r\n\r\nok", true)
+				.reply("HTTP/1.0 200 OK\r\nContent-Length: 2\r\n\r\nok", true)
+				.reply("HTTP/1.0 200 OK\r\nConnection: keep-alive\r\nContent-Length: 2\r\n\r\nok", false)
+				.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+			URL u = server.url("/");
+			Assert.assertEquals("200:until eof", fetch(pool, u, "GET"));
+			Assert.assertEquals(0, pool.idleCount());
+			Assert.assertEquals("200:ok", fetch(pool, u, "GET"));
+			Assert.assertEquals(0, pool.idleCount());
+			Assert.assertEquals("200:ok", fetch(pool, u, "GET"));
+			Assert.assertEquals(0, pool.idleCount());
+			Assert.assertEquals("200:ok", fetch(pool, u, "GET"));
+			Assert.assertEquals(1, pool.idleCount());
+			Assert.assertEquals("200:ok", fetch(pool, u, "GET"));
+			Assert.assertEquals(4, server.connections());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidStatusLine() throws IOException {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			server.reply("SMTP ready\r\n\r\n", true);
+			fetch(pool, server.url("/"), "GET");
+		}
+	}
+
+	@Test
+	public void staleRetry() throws Exception {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			// Connection: close を付けずにサーバ側で切断する。
+			server.reply("HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\none", true)
+				.reply("HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\ntwo", false);
+			URL u = server.url("/");
+			Assert.assertEquals("200:one", fetch(pool, u, "GET"));
+			Assert.assertEquals(1, pool.idleCount());
+			Thread.sleep(100);
+			Assert.assertEquals("200:two", fetch(pool, u, "GET"));
+			Assert.assertEquals(2, server.connections());
+			Assert.assertEquals(0, pool.leasedCount());
+		}
+	}
+
+	@Test
+	public void keepAliveTimeout() throws Exception {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			server.reply("HTTP/1.1 200 OK\r\nKeep-Alive: timeout=1\r\nContent-Length: 2\r\n\r\nok", false);
+			Assert.assertEquals("200:ok", fetch(pool, server.url("/"), "GET"));
+			pool.evictIdle();
+			Assert.assertEquals(1, pool.idleCount());
+			// 応答の Keep-Alive: timeout が idleTimeout より短ければそちらで破棄する。
+			Thread.sleep(1100);
+			pool.evictIdle();
+			Assert.assertEquals(0, pool.idleCount());
+		}
+	}
+
+	/** Keep-Alive では接続を再利用し、Connection: close では要求毎に接続すること */
+	@Test
+	public void connectionPerRequest() throws IOException {
+		int count = 50;
+		Map<String, String> close = new LinkedHashMap<>();
+		close.put("Connection", "close");
+		try(HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			for(int i=0; i < count; i++){
+				Assert.assertEquals("200:ok", fetch(pool, url, "GET"));
+			}
+			Assert.assertEquals(1, new HashSet<>(ports).size());
+			ports.clear();
+			for(int i=0; i < count; i++){
+				Assert.assertEquals("200:ok", fetch(pool, url, "GET", close));
+			}
+			Assert.assertEquals(count, new HashSet<>(ports).size());
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.yipuran.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpExecutorsTest {
+	private HttpServer server;
+	private String url;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", ex->{
+			byte[] b = "ok".getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(200, b.length);
+			try(OutputStream out = ex.getResponseBody()){
+				out.write(b);
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+	/** 例外完了の原因 */
+	private static Throwable cause(CompletableFuture<Integer> future) throws InterruptedException {
+		try{
+			future.get(10, TimeUnit.SECONDS);
+			Assert.fail();
+			return null;
+		}catch(ExecutionException e){
+			return e.getCause();
+		}catch(TimeoutException e){
+			throw new AssertionError(e);
+		}
+	}
+	private static boolean isVirtual(Thread t) {
+		try{
+			Method m = Thread.class.getMethod("isVirtual");
+			return (Boolean)m.invoke(t);
+		}catch(ReflectiveOperationException e){
+			return false;
+		}
+	}
+
+	@Test
+	public void completesWithStatus() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor(r->new Thread(r, "test-async"));
+		try{
+			AtomicReference<Thread> thread = new AtomicReference<>();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			CompletableFuture<Integer> future = HttpClientBuilder.of(url).method("GET").executor(executor).build()
+				.executeAsync(out->{}, (t, h)->thread.set(Thread.currentThread()), HttpStreams.to(body));
+			Assert.assertEquals(200, (int)future.get(10, TimeUnit.SECONDS));
+			Assert.assertEquals("ok", body.toString("UTF-8"));
+			Assert.assertEquals("test-async", thread.get().getName());
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void defaultExecutor() throws Exception {
+		AtomicReference<Thread> thread = new AtomicReference<>();
+		CompletableFuture<Integer> future = HttpClientBuilder.of(url).method("GET").build()
+			.executeAsync(out->{}, (t, h)->thread.set(Thread.currentThread()), in->{});
+		Assert.assertEquals(200, (int)future.get(10, TimeUnit.SECONDS));
+		Thread t = thread.get();
+		Assert.assertNotSame(Thread.currentThread(), t);
+		// 仮想スレッド、または上限付きスレッドプールのデーモンスレッド
+		Assert.assertTrue(t.getName(), isVirtual(t) || (t.isDaemon() && t.getName().startsWith("HttpClient-async-")));
+		Assert.assertSame(HttpExecutors.defaultExecutor(), HttpExecutors.defaultExecutor());
+	}
+
+	@Test
+	public void transportError() throws Exception {
+		int port;
+		try(ServerSocket s = new ServerSocket(0)){
+			port = s.getLocalPort();
+		}
+		// 接続拒否
+		CompletableFuture<Integer> future = HttpClientBuilder.of("http://127.0.0.1:" + port + "/").method("GET").build()
+			.executeAsync(out->{}, (t, h)->{}, in->{});
+		Throwable cause = cause(future);
+		Assert.assertTrue(String.valueOf(cause), cause instanceof RuntimeException && cause.getCause() instanceof IOException);
+
+		// 不正な応答
+		try(ScriptedServer scripted = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of()){
+			scripted.reply("SMTP ready\r\n\r\n", true);
+			future = HttpClientBuilder.of(scripted.url("/").toString()).method("GET").connectionPool(pool).build()
+				.executeAsync(out->{}, (t, h)->{}, in->{});
+			cause = cause(future);
+			Assert.assertTrue(String.valueOf(cause), cause instanceof RuntimeException && cause.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void rejected() throws Exception {
+		ExecutorService executor = HttpExecutors.newBoundedExecutor(1, 1);
+		CountDownLatch latch = new CountDownLatch(1);
+		try{
+			// 実行中１件、待ち行列１件で満杯にする。
+			executor.execute(()->{
+				try{
+					latch.await();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			});
+			executor.execute(()->{});
+			HttpClient client = HttpClientBuilder.of(url).method("GET").executor(executor).build();
+			CompletableFuture<Integer> future = client.executeAsync(out->{}, (t, h)->{}, in->{});
+			Assert.assertTrue(future.isCompletedExceptionally());
+			Assert.assertTrue(cause(future) instanceof RejectedExecutionException);
+
+			latch.countDown();
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			Assert.assertTrue(cause(client.executeAsync(out->{}, (t, h)->{}, in->{})) instanceof RejectedExecutionException);
+		}finally{
+			latch.countDown();
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.yipuran.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpMetricsTest {
+	private static final String HOST = "http://example:80";
+
+	@Test
+	public void histogram() {
+		HttpMetrics metrics = new HttpMetrics();
+		for(int i=1; i <= 100; i++){
+			metrics.responded(HOST, i==100 ? 503 : 200, TimeUnit.MICROSECONDS.toNanos(i));
+		}
+		HttpMetrics.LatencyStats ttfb = metrics.snapshot().get(HOST).getTimeToFirstByte();
+		Assert.assertEquals(100, ttfb.getCount());
+		Assert.assertEquals(0.0505, ttfb.getMeanMillis(), 1e-9);
+		Assert.assertEquals(0.1, ttfb.getMaxMillis(), 1e-9);
+		// 50 マイクロ秒は 32 ～ 63 の区間、上限値で近似する。
+		Assert.assertEquals(0.063, ttfb.getPercentileMillis(50), 1e-9);
+		// 99 マイクロ秒の区間の上限 127 は最大値 100 で制限する。
+		Assert.assertEquals(0.1, ttfb.getPercentileMillis(99), 1e-9);
+		Assert.assertEquals(0.001, ttfb.getPercentileMillis(0), 1e-9);
+		Assert.assertEquals(99L, (long)metrics.snapshot().get(HOST).getStatusCounts().get(200));
+		Assert.assertEquals(1L, (long)metrics.snapshot().get(HOST).getStatusCounts().get(503));
+	}
+
+	@Test
+	public void snapshot() {
+		HttpMetrics metrics = new HttpMetrics();
+		metrics.poolAcquired(HOST, 1000, 1, 2);
+		metrics.poolAcquired(HOST, 1000, 2, 2);
+		metrics.completed(HOST, 5000, 10, 20);
+		metrics.failed(HOST, 5000, new IOException());
+		HttpMetrics.HostStats stats = metrics.snapshot().get(HOST);
+		Assert.assertEquals(2, stats.getPoolWait().getCount());
+		Assert.assertEquals(1, stats.getPoolSaturated());
+		Assert.assertEquals(10, stats.getBytesOut());
+		Assert.assertEquals(20, stats.getBytesIn());
+		Assert.assertEquals(1, stats.getFailures());
+		Assert.assertEquals(2, stats.getTotal().getCount());
+		Assert.assertEquals(0, stats.getConnect().getCount());
+		Assert.assertEquals(0.0, stats.getConnect().getPercentileMillis(50), 0.0);
+		metrics.reset();
+		Assert.assertTrue(metrics.snapshot().isEmpty());
+	}
+
+	/** gzipRequest 指定時の送信バイト数は圧縮後、サーバが受信したバイト数と一致すること */
+	@Test
+	public void bytesOutWithGzipRequest() throws IOException {
+		AtomicLong received = new AtomicLong();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", ex->{
+			long n = 0;
+			try(InputStream in = ex.getRequestBody()){
+				byte[] buf = new byte[4096];
+				for(int r; (r = in.read(buf)) >= 0;) n += r;
+			}
+			received.set(n);
+			byte[] b = "ok".getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(200, b.length);
+			try(OutputStream out = ex.getResponseBody()){
+				out.write(b);
+			}
+		});
+		server.start();
+		byte[] data = new byte[10000];
+		Arrays.fill(data, (byte)'a');
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		try(HttpConnectionPool pool = HttpConnectionPool.of()){
+			for(HttpConnectionPool p : Arrays.asList(null, pool)){
+				HttpMetrics metrics = new HttpMetrics();
+				HttpClientBuilder builder = HttpClientBuilder.of(url).method("POST").compression(true).metrics(metrics);
+				if (p != null) builder.connectionPool(p);
+				builder.build().execute(out->{
+					try{
+						out.write(data);
+					}catch(IOException e){
+						throw new UncheckedIOException(e);
+					}
+				}, (t, h)->{}, in->{});
+				long bytesOut = metrics.snapshot().values().iterator().next().getBytesOut();
+				Assert.assertEquals(received.get(), bytesOut);
+				Assert.assertTrue("bytesOut " + bytesOut, bytesOut < data.length);
+			}
+		}finally{
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package org.yipuran.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpPolicyTest {
+	private HttpServer server;
+	private String url;
+	private HttpConnectionPool pool;
+	private final AtomicInteger hits = new AtomicInteger();
+	/** 要求回数（1 始まり）→ 応答ステータス */
+	private volatile IntUnaryOperator status = n->200;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", ex->{
+			byte[] b = "ok".getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(status.applyAsInt(hits.incrementAndGet()), b.length);
+			try(OutputStream out = ex.getResponseBody()){
+				out.write(b);
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		pool = HttpConnectionPool.of();
+	}
+	@After
+	public void tearDown() {
+		pool.close();
+		server.stop(0);
+	}
+	private HttpClient client(String method, HttpPolicy policy) {
+		return HttpClientBuilder.of(url).method(method).connectionPool(pool).policy(policy).build();
+	}
+	/** 要求実行、400 以上の応答は応答本体の読込で IOException になるので 0 を返す。 */
+	private static int get(HttpClient client) {
+		try{
+			return client.execute(out->{}, (t, h)->{}, in->{});
+		}catch(RuntimeException e){
+			if (e.getCause() instanceof IOException && !(e.getCause() instanceof CircuitOpenException)) return 0;
+			throw e;
+		}
+	}
+
+	@Test
+	public void retryStatus() {
+		status = n->n < 3 ? 503 : 200;
+		HttpPolicy policy = HttpPolicy.of().retry(3, 1, 5).retryStatus(503);
+		Assert.assertEquals(200, get(client("GET", policy)));
+		Assert.assertEquals(3, hits.get());
+	}
+
+	@Test
+	public void noRetryNonIdempotent() {
+		status = n->503;
+		HttpPolicy policy = HttpPolicy.of().retry(3, 1, 5).retryStatus(503);
+		Assert.assertEquals(0, get(client("POST", policy)));
+		Assert.assertEquals(1, hits.get());
+	}
+
+	@Test
+	public void backoff() {
+		HttpPolicy policy = HttpPolicy.of().retry(10, 100, 1000);
+		for(int attempt=0; attempt < 10; attempt++){
+			long d = Math.min(1000, 100L << attempt);
+			long wait = policy.backoff(attempt);
+			Assert.assertTrue(attempt + ":" + wait, d / 2 <= wait && wait <= d);
+		}
+	}
+
+	@Test
+	public void circuitBreaker() throws Exception {
+		status = n->500;
+		HttpPolicy policy = HttpPolicy.of().circuitBreaker(2, 200);
+		HttpClient client = client("GET", policy);
+		Assert.assertEquals(0, get(client));
+		Assert.assertFalse(policy.isOpen(new URL(url)));
+		Assert.assertEquals(0, get(client));
+		Assert.assertTrue(policy.isOpen(new URL(url)));
+		try{
+			get(client);
+			Assert.fail();
+		}catch(RuntimeException e){
+			Assert.assertTrue(e.getCause() instanceof CircuitOpenException);
+		}
+		Assert.assertEquals(2, hits.get());
+		// 遮断時間経過後の試行が成功すると閉じる。
+		Thread.sleep(250);
+		status = n->200;
+		Assert.assertEquals(200, get(client));
+		Assert.assertFalse(policy.isOpen(new URL(url)));
+		Assert.assertEquals(200, get(client));
+	}
+
+	@Test
+	public void callerExceptionIsNotFailure() throws Exception {
+		HttpPolicy policy = HttpPolicy.of().circuitBreaker(1, 10000);
+		HttpClient client = client("POST", policy);
+		for(int i=0; i < 3; i++){
+			try{
+				client.execute(out->{
+					throw new IllegalStateException("caller bug");
+				}, (t, h)->{}, in->{});
+				Assert.fail();
+			}catch(RuntimeException e){
+				Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			try{
+				client.execute(out->{}, (t, h)->{}, in->{
+					throw new IllegalStateException("caller bug");
+				});
+				Assert.fail();
+			}catch(RuntimeException e){
+				Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+		Assert.assertFalse(policy.isOpen(new URL(url)));
+		// 送信路のエラーを包んだ例外は失敗とする。
+		try{
+			client.execute(out->{
+				throw new UncheckedIOException(new IOException("broken pipe"));
+			}, (t, h)->{}, in->{});
+			Assert.fail();
+		}catch(RuntimeException e){
+		}
+		Assert.assertTrue(policy.isOpen(new URL(url)));
+	}
+
+	@Test
+	public void callerExceptionInTrial() throws Exception {
+		HttpPolicy policy = HttpPolicy.of().circuitBreaker(1, 100);
+		HttpClient client = client("POST", policy);
+		status = n->500;
+		Assert.assertEquals(0, get(client));
+		Assert.assertTrue(policy.isOpen(new URL(url)));
+		Thread.sleep(150);
+		// 試行要求が呼出し側の例外で終わっても、次の要求で再試行できること
+		try{
+			client.execute(out->{
+				throw new IllegalStateException("caller bug");
+			}, (t, h)->{}, in->{});
+			Assert.fail();
+		}catch(RuntimeException e){
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		status = n->200;
+		Assert.assertEquals(200, get(client));
+		Assert.assertFalse(policy.isOpen(new URL(url)));
+	}
+}
@@ -0,0 +1,201 @@
+package org.yipuran.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpStreamsTest {
+	static{
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private HttpServer server;
+	private String url;
+	/** 最後の要求の Transfer-Encoding */
+	private volatile String transferEncoding;
+
+	@Before
+	public void setUp() throws IOException {
+		// 要求本体をそのまま chunked 転送で返す。
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", ex->{
+			transferEncoding = ex.getRequestHeaders().getFirst("Transfer-Encoding");
+			ex.sendResponseHeaders(200, 0);
+			try(InputStream in = ex.getRequestBody(); OutputStream out = ex.getResponseBody()){
+				HttpStreams.transfer(in, out);
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+	private static String body(ClientExchange ex) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(InputStream in = ex.body()){
+			HttpStreams.transfer(in, out);
+		}
+		return out.toString("UTF-8");
+	}
+
+	@Test
+	public void chunkedResponse() throws IOException {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			// チャンク拡張、トレーラを読み飛ばし、同じ接続で次の応答を読むこと
+			server.reply("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+					+ "5;name=value\r\nhello\r\n"
+					+ "1\r\n,\r\n"
+					+ "6\r\n world\r\n"
+					+ "0\r\nX-Trailer: 1\r\n\r\n", false)
+				.reply("HTTP/1.1 200 OK\r\nTransfer-Encoding: gzip, chunked\r\n\r\n0\r\n\r\n", false)
+				.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+			URL u = server.url("/");
+			try(ClientExchange ex = pool.open(u, "GET", new LinkedHashMap<>(), null, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+				Assert.assertEquals("hello, world", body(ex));
+			}
+			try(ClientExchange ex = pool.open(u, "GET", new LinkedHashMap<>(), null, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+				Assert.assertEquals("", body(ex));
+			}
+			try(ClientExchange ex = pool.open(u, "GET", new LinkedHashMap<>(), null, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+				Assert.assertEquals("ok", body(ex));
+			}
+			Assert.assertEquals(1, server.connections());
+		}
+	}
+
+	@Test
+	public void invalidChunkSize() throws IOException {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			server.reply("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\nhello\r\n0\r\n\r\n", true)
+				.reply("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n10\r\nshort", true);
+			URL u = server.url("/");
+			for(int i=0; i < 2; i++){
+				try(ClientExchange ex = pool.open(u, "GET", new LinkedHashMap<>(), null, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+					body(ex);
+					Assert.fail();
+				}catch(IOException e){
+				}
+			}
+			Assert.assertEquals(0, pool.idleCount());
+		}
+	}
+
+	@Test
+	public void chunkedRequest() throws IOException {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			server.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false)
+				.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+			URL u = server.url("/");
+			byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+			try(ClientExchange ex = pool.open(u, "POST", new LinkedHashMap<>(), null, 4
+				, HttpStreams.from(new ByteArrayInputStream(data)), new RequestContext(HttpPolicy.of()))){
+				Assert.assertEquals("ok", body(ex));
+			}
+			// 送信データが空でも終端チャンクを送信する。
+			try(ClientExchange ex = pool.open(u, "POST", new LinkedHashMap<>(), null, 4, out->{}, new RequestContext(HttpPolicy.of()))){
+				Assert.assertEquals("ok", body(ex));
+			}
+			String request = server.requests.get(0);
+			Assert.assertTrue(request.contains("\r\nTransfer-Encoding: chunked\r\n"));
+			Assert.assertFalse(request.toLowerCase().contains("content-length"));
+			Assert.assertTrue(request.endsWith("\r\n\r\n0123456789"));
+			Assert.assertTrue(server.requests.get(1).endsWith("\r\n\r\n"));
+			Assert.assertEquals(1, server.connections());
+		}
+	}
+
+	@Test
+	public void chunkedRequestNotRetried() throws Exception {
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of(2, 30000)){
+			// Connection: close を付けずにサーバ側で切断する。
+			server.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", true)
+				.reply("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+			URL u = server.url("/");
+			try(ClientExchange ex = pool.open(u, "GET", new LinkedHashMap<>(), null, 0, out->{}, new RequestContext(HttpPolicy.of()))){
+				Assert.assertEquals("ok", body(ex));
+			}
+			Assert.assertEquals(1, pool.idleCount());
+			Thread.sleep(100);
+			// 送信データを再生成できないので、閉じられた接続で失敗しても再送しない。
+			try{
+				pool.open(u, "POST", new LinkedHashMap<>(), null, 4
+					, HttpStreams.from(new ByteArrayInputStream(new byte[10])), new RequestContext(HttpPolicy.of())).close();
+				Assert.fail();
+			}catch(IOException e){
+			}
+			Assert.assertEquals(1, server.connections());
+			Assert.assertEquals(0, pool.leasedCount());
+		}
+	}
+
+	@Test
+	public void fileRoundTrip() throws IOException {
+		byte[] data = new byte[HttpStreams.BUFFER_SIZE * 3 + 17];
+		new Random(1).nextBytes(data);
+		Path src = folder.newFile("src.bin").toPath();
+		Files.write(src, data);
+		try(HttpConnectionPool pool = HttpConnectionPool.of()){
+			for(HttpConnectionPool p : new HttpConnectionPool[]{ null, pool }){
+				Path dest = folder.getRoot().toPath().resolve(p==null ? "direct.bin" : "pooled.bin");
+				HttpClientBuilder builder = HttpClientBuilder.of(url).method("POST").chunked(8192);
+				if (p != null) builder.connectionPool(p);
+				int status = builder.build().execute(HttpStreams.fromFile(src), (t, h)->{}, HttpStreams.toFile(dest));
+				Assert.assertEquals(200, status);
+				Assert.assertEquals("chunked", transferEncoding);
+				Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+			}
+		}
+	}
+
+	@Test
+	public void decode() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i < HttpStreams.BUFFER_SIZE; i++){
+			sb.append((char)('あ' + i % 80));
+		}
+		String text = sb.toString();
+		StringBuilder result = new StringBuilder();
+		int status = HttpClientBuilder.of(url).method("POST").chunked(1000).build()
+			.execute(HttpStreams.from(new StringReader(text), StandardCharsets.UTF_8), (t, h)->{}
+			, HttpStreams.decode(StandardCharsets.UTF_8, result::append));
+		Assert.assertEquals(200, status);
+		Assert.assertEquals(text, result.toString());
+
+		// マルチバイト文字がチャンク境界で分断されても復元すること
+		try(ScriptedServer server = new ScriptedServer();
+			HttpConnectionPool pool = HttpConnectionPool.of()){
+			server.reply("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+					+ "1\r\n\u00e3\r\n2\r\n\u0081\u0082\r\n4\r\n\u00e3\u0081\u0084x\r\n0\r\n\r\n", false);
+			StringBuilder split = new StringBuilder();
+			HttpClientBuilder.of(server.url("/").toString()).method("GET").connectionPool(pool).build()
+				.execute(out->{}, (t, h)->{}, HttpStreams.decode(StandardCharsets.UTF_8, split::append));
+			Assert.assertEquals("あいx", split.toString());
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.yipuran.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 応答のバイト列をそのまま返すテスト用 HTTP サーバ.
+ * <PRE>
+ * 要求を受信する毎に reply で登録した応答を順に送信する。close = true の応答は送信後にソケットを閉じる。
+ * com.sun.net.httpserver.HttpServer では作れない 1xx、長さ無しの応答、サーバ側の切断を再現する。
+ * 受信した要求（ヘッダと本体）は requests で参照する。
+ * </PRE>
+ */
+final class ScriptedServer implements Closeable{
+	private final ServerSocket server;
+	private final Queue<String[]> replies = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger connections = new AtomicInteger();
+	final List<String> requests = new CopyOnWriteArrayList<>();
+
+	ScriptedServer() throws IOException{
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread t = new Thread(this::accept, "ScriptedServer");
+		t.setDaemon(true);
+		t.start();
+	}
+	ScriptedServer reply(String response, boolean close){
+		replies.add(new String[]{ response, close ? "close" : "" });
+		return this;
+	}
+	URL url(String path) throws IOException{
+		return new URL("http://127.0.0.1:" + server.getLocalPort() + path);
+	}
+	/** 受け付けた接続数 */
+	int connections(){
+		return connections.get();
+	}
+	@Override
+	public void close() throws IOException{
+		server.close();
+	}
+	private void accept(){
+		try{
+			for(;;){
+				Socket s = server.accept();
+				connections.incrementAndGet();
+				Thread t = new Thread(()->serve(s), "ScriptedServer-conn");
+				t.setDaemon(true);
+				t.start();
+			}
+		}catch(IOException e){
+		}
+	}
+	private void serve(Socket s){
+		try(Socket socket = s){
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+			for(;;){
+				String request = readRequest(in);
+				if (request==null) return;
+				requests.add(request);
+				String[] reply = replies.poll();
+				if (reply==null) return;
+				out.write(reply[0].getBytes(StandardCharsets.ISO_8859_1));
+				out.flush();
+				if (!reply[1].isEmpty()) return;
+			}
+		}catch(IOException e){
+		}
+	}
+	/** 要求ヘッダと本体（Content-Length、chunked）を読込む、chunked の本体は展開する。 */
+	private static String readRequest(InputStream in) throws IOException{
+		String head = readUntil(in, "\r\n\r\n");
+		if (head==null) return null;
+		String lower = head.toLowerCase() + "\r\n";
+		StringBuilder sb = new StringBuilder(head).append("\r\n\r\n");
+		if (lower.contains("transfer-encoding: chunked")){
+			for(;;){
+				int size = Integer.parseInt(readUntil(in, "\r\n").trim(), 16);
+				if (size==0){
+					readUntil(in, "\r\n");
+					break;
+				}
+				byte[] b = new byte[size];
+				for(int n=0; n < size;) n += in.read(b, n, size - n);
+				sb.append(new String(b, StandardCharsets.ISO_8859_1));
+				readUntil(in, "\r\n");
+			}
+		}else{
+			int i = lower.indexOf("content-length:");
+			if (i >= 0){
+				int size = Integer.parseInt(lower.substring(i + 15, lower.indexOf("\r\n", i)).trim());
+				byte[] b = new byte[size];
+				for(int n=0; n < size;) n += in.read(b, n, size - n);
+				sb.append(new String(b, StandardCharsets.ISO_8859_1));
+			}
+		}
+		return sb.toString();
+	}
+	private static String readUntil(InputStream in, String end) throws IOException{
+		StringBuilder sb = new StringBuilder();
+		int b;
+		while((b = in.read()) >= 0){
+			sb.append((char)b);
+			int n = sb.length() - end.length();
+			if (n >= 0 && sb.indexOf(end, n)==n) return sb.substring(0, n);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,168 @@
+package org.yipuran.http;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+public class SslContextCacheTest {
+	private static final char[] PASSWORD = "changeit".toCharArray();
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+	/** 127.0.0.1 の自己署名証明書と鍵 */
+	private static KeyStore serverKeys;
+	/** 別の鍵ペア、証明書は serverKeys と異なる */
+	private static KeyStore otherKeys;
+	private HttpsServer server;
+	private String url;
+
+	/** keytool で鍵ペアと自己署名証明書を生成する。 */
+	private static KeyStore generate(String name) throws Exception {
+		File keytool = new File(System.getProperty("java.home"), "bin/keytool");
+		Assume.assumeTrue("keytool not found", keytool.canExecute());
+		File file = new File(folder.getRoot(), name + ".p12");
+		Process p = new ProcessBuilder(keytool.getPath(), "-genkeypair", "-alias", "server", "-keyalg", "EC"
+				, "-dname", "CN=127.0.0.1", "-ext", "SAN=ip:127.0.0.1", "-validity", "1", "-storetype", "PKCS12"
+				, "-keystore", file.getPath(), "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+			.redirectErrorStream(true).start();
+		p.getInputStream().close();
+		Assert.assertEquals(0, p.waitFor());
+		KeyStore ks = KeyStore.getInstance("PKCS12");
+		try(InputStream in = Files.newInputStream(file.toPath())){
+			ks.load(in, PASSWORD);
+		}
+		return ks;
+	}
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		serverKeys = generate("server");
+		otherKeys = generate("other");
+	}
+	@AfterClass
+	public static void tearDownClass() {
+		SslContextCache.clear();
+	}
+	@Before
+	public void setUp() throws Exception {
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(serverKeys, PASSWORD);
+		SSLContext ctx = SSLContext.getInstance("TLS");
+		ctx.init(kmf.getKeyManagers(), null, null);
+		server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setHttpsConfigurator(new HttpsConfigurator(ctx));
+		server.createContext("/", ex->{
+			byte[] b = "ok".getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(200, b.length);
+			try(OutputStream out = ex.getResponseBody()){
+				out.write(b);
+			}
+		});
+		server.start();
+		url = "https://127.0.0.1:" + server.getAddress().getPort() + "/";
+		SslContextCache.clear();
+	}
+	@After
+	public void tearDown() {
+		server.stop(0);
+		// JDK のデフォルト値に戻す。
+		SslContextCache.sessionCache(20480, 86400);
+	}
+	/** 接続毎にハンドシェイクする要求を count 回実行し、完了通知を待つ。 */
+	private void request(SSLSocketFactory factory, int count) throws Exception {
+		long before = SslContextCache.stats().getHandshakes();
+		try(HttpConnectionPool pool = HttpConnectionPool.of()){
+			HttpsClient client = HttpsClientBuilder.of(url).method("GET").addHeaderProperty("Connection", "close")
+				.connectionPool(pool).sslSocketFactory(factory).build();
+			for(int i=0; i < count; i++){
+				Assert.assertEquals(200, client.execute(out->{}, (t, h)->{}, in->{}));
+			}
+		}
+		// ハンドシェイク完了は別スレッドで通知される。
+		for(int i=0; i < 500 && SslContextCache.stats().getHandshakes() < before + count; i++){
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(before + count, SslContextCache.stats().getHandshakes());
+	}
+
+	@Test
+	public void resumption() throws Exception {
+		Assert.assertEquals(0, SslContextCache.stats().getHandshakes());
+		Assert.assertEquals(0.0, SslContextCache.stats().getResumptionRate(), 0.0);
+		request(SslContextCache.of(null, null, serverKeys), 10);
+		SslContextCache.TlsHandshakeStats stats = SslContextCache.stats();
+		// 最初の接続だけが完全なハンドシェイク
+		Assert.assertEquals(9, stats.getResumed());
+		Assert.assertEquals(0.9, stats.getResumptionRate(), 1e-9);
+		Assert.assertTrue(stats.getAverageHandshakeMillis() > 0);
+	}
+
+	@Test
+	public void sessionCache() throws Exception {
+		SSLSocketFactory factory = SslContextCache.of(null, null, serverKeys);
+		// 生成済の SSLContext にも適用され、有効時間を過ぎたセッションは再開しない。
+		SslContextCache.sessionCache(0, 1);
+		request(factory, 1);
+		Thread.sleep(1100);
+		request(factory, 1);
+		Assert.assertEquals(0, SslContextCache.stats().getResumed());
+		try{
+			SslContextCache.sessionCache(-1, 0);
+			Assert.fail();
+		}catch(IllegalArgumentException e){
+		}
+	}
+
+	@Test
+	public void clear() throws Exception {
+		SSLSocketFactory factory = SslContextCache.of(null, null, serverKeys);
+		request(factory, 2);
+		Assert.assertSame(factory, SslContextCache.of(null, null, serverKeys));
+		Assert.assertSame(SslContextCache.trustAll(), SslContextCache.trustAll());
+		SslContextCache.clear();
+		Assert.assertEquals(0, SslContextCache.stats().getHandshakes());
+		Assert.assertNotSame(factory, SslContextCache.of(null, null, serverKeys));
+	}
+
+	@Test
+	public void keyMaterial() throws Exception {
+		SSLSocketFactory factory = SslContextCache.of(serverKeys, PASSWORD, null);
+		Assert.assertSame(factory, SslContextCache.of(serverKeys, PASSWORD.clone(), null));
+		// キャッシュ済でも鍵パスワードの誤りはエラー
+		try{
+			SslContextCache.of(serverKeys, "wrong".toCharArray(), null);
+			Assert.fail();
+		}catch(UnrecoverableKeyException e){
+		}
+		// 証明書が同じでも秘密鍵が異なれば別の SSLContext
+		KeyStore mixed = KeyStore.getInstance("PKCS12");
+		mixed.load(null, null);
+		Certificate[] chain = serverKeys.getCertificateChain("server");
+		mixed.setKeyEntry("server", otherKeys.getKey("server", PASSWORD), PASSWORD, chain);
+		Assert.assertTrue(Arrays.equals(chain, mixed.getCertificateChain("server")));
+		Assert.assertNotSame(factory, SslContextCache.of(mixed, PASSWORD, null));
+	}
+}
@@ -0,0 +1,20 @@
+package org.yipuran.util.pch;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * テスト用の要素リスト.
+ */
+final class Lists {
+	private Lists() {}
+	/**
+	 * 0 ～ n-1 の List.
+	 * @param n 要素数
+	 * @return List&lt;Integer&gt;
+	 */
+	static List<Integer> list(int n) {
+		return IntStream.range(0, n).boxed().collect(Collectors.toList());
+	}
+}
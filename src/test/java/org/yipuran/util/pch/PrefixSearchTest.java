@@ -0,0 +1,72 @@
+package org.yipuran.util.pch;
+
+import static org.yipuran.util.pch.Lists.list;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrefixSearchTest {
+	/** 先頭部分の和が limit 以下、途中で超えると以降も超える */
+	private static Predicate<List<Integer>> sumAtMost(int limit) {
+		return p->p.stream().mapToInt(Integer::intValue).sum() <= limit;
+	}
+
+	@Test
+	public void sameAsFilter() {
+		for(int n=1; n <= 6; n++){
+			for(int r=1; r <= n; r++){
+				Predicate<List<Integer>> pred = sumAtMost(n);
+				List<List<Integer>> result = new ArrayList<>();
+				Combinations<Integer> c = Combinations.of(list(n));
+				c.search(r, pred, result::add);
+				Assert.assertEquals(c.compute(r).stream().filter(pred).collect(Collectors.toList()), result);
+				result.clear();
+				Homogeneous<Integer> h = Homogeneous.of(list(n));
+				h.search(r, pred, result::add);
+				Assert.assertEquals(h.compute(r).stream().filter(pred).collect(Collectors.toList()), result);
+				result.clear();
+				RepeatablePermutation<Integer> rp = RepeatablePermutation.of(list(n));
+				rp.search(r, pred, result::add);
+				Assert.assertEquals(rp.compute(r).stream().filter(pred).collect(Collectors.toList()), result);
+				result.clear();
+				// 順列は探索順が異なるので集合で比較する。
+				Permutation<Integer> p = Permutation.of(list(n));
+				p.search(r, pred, result::add);
+				List<List<Integer>> expected = p.compute(r).stream().filter(pred).collect(Collectors.toList());
+				Assert.assertEquals(expected.size(), result.size());
+				Assert.assertEquals(new HashSet<>(expected), new HashSet<>(result));
+			}
+		}
+		@SuppressWarnings("unchecked")
+		Cartesian<String> cp = Cartesian.of(Arrays.asList("a", "b"), Arrays.asList("x", "y", "z"), Arrays.asList("1", "2"));
+		Predicate<List<String>> noBy = e->!(e.contains("b") && e.contains("y"));
+		List<List<String>> result = new ArrayList<>();
+		cp.search(noBy, result::add);
+		Assert.assertEquals(cp.product().stream().filter(noBy).collect(Collectors.toList()), result);
+	}
+
+	@Test
+	public void pruned() {
+		// 30P30 は全件を生成できないが、先頭の要素で枝刈りすると探索は 1 件
+		int[] tested = new int[1];
+		List<List<Integer>> result = new ArrayList<>();
+		Permutation.of(list(30)).search(30, p->{
+			tested[0]++;
+			return p.get(p.size() - 1)==p.size() - 1;
+		}, result::add);
+		Assert.assertEquals(Arrays.asList(list(30)), result);
+		Assert.assertTrue("tested " + tested[0], tested[0] <= 30 * 30);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void readOnly() {
+		Combinations.of(list(3)).search(2, p->p.add(9), p->{});
+	}
+}
@@ -0,0 +1,155 @@
+package org.yipuran.util.pch;
+
+import static org.yipuran.util.pch.Lists.list;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RankTest {
+	/** 全順位で get が生成順と一致し、rankOf が逆になること */
+	private static <T> void assertRank(List<List<T>> expected, LongFunction<List<T>> get, ToLongFunction<List<T>> rankOf) {
+		for(int i=0; i < expected.size(); i++){
+			Assert.assertEquals(expected.get(i), get.apply(i));
+			Assert.assertEquals(i, rankOf.applyAsLong(expected.get(i)));
+		}
+	}
+
+	@Test
+	public void roundTrip() {
+		for(int n=1; n <= 6; n++){
+			for(int r=1; r <= n; r++){
+				int len = r;
+				Combinations<Integer> c = Combinations.of(list(n));
+				assertRank(c.compute(r), k->c.get(len, k), c::rankOf);
+				Permutation<Integer> p = Permutation.of(list(n));
+				assertRank(p.compute(r), k->p.get(len, k), p::rankOf);
+				Homogeneous<Integer> h = Homogeneous.of(list(n));
+				assertRank(h.compute(r), k->h.get(len, k), h::rankOf);
+				RepeatablePermutation<Integer> rp = RepeatablePermutation.of(list(n));
+				assertRank(rp.compute(r), k->rp.get(len, k), rp::rankOf);
+			}
+		}
+		@SuppressWarnings("unchecked")
+		Cartesian<String> cp = Cartesian.of(Arrays.asList("a", "b"), Arrays.asList("x", "y", "z"), Arrays.asList("1", "2"));
+		assertRank(cp.product(), cp::get, cp::rankOf);
+	}
+
+	@Test
+	public void notGenerated() {
+		Assert.assertEquals(-1, Combinations.of(list(5)).rankOf(Arrays.asList(2, 1)));
+		Assert.assertEquals(-1, Combinations.of(list(5)).rankOf(Arrays.asList(1, 9)));
+		Assert.assertEquals(-1, Combinations.of(list(3)).rankOf(Arrays.asList(0, 1, 2, 3)));
+		Assert.assertEquals(-1, Permutation.of(list(5)).rankOf(Arrays.asList(1, 1)));
+		Assert.assertEquals(-1, Homogeneous.of(list(5)).rankOf(Arrays.asList(2, 1)));
+		Assert.assertEquals(-1, RepeatablePermutation.of(list(5)).rankOf(Arrays.asList(1, 7)));
+		@SuppressWarnings("unchecked")
+		Cartesian<String> cp = Cartesian.of(Arrays.asList("a", "b"), Arrays.asList("x", "y"));
+		Assert.assertEquals(-1, cp.rankOf(Arrays.asList("a")));
+		Assert.assertEquals(-1, cp.rankOf(Arrays.asList("x", "a")));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void outOfRange() {
+		Combinations.of(list(5)).get(2, 10);
+	}
+
+	@Test
+	public void largeSpace() {
+		// 20P10 は int を超える。末尾と中間の順位を直接求める。
+		Permutation<Integer> p = Permutation.of(list(20));
+		long last = 184756L * 3628800L - 1;
+		Assert.assertEquals(Arrays.asList(19, 18, 17, 16, 15, 14, 13, 12, 11, 10), p.get(10, last));
+		Assert.assertEquals(last, p.rankOf(Arrays.asList(19, 18, 17, 16, 15, 14, 13, 12, 11, 10)));
+		long mid = last / 2;
+		Assert.assertEquals(mid, p.rankOf(p.get(10, mid)));
+		RepeatablePermutation<Integer> rp = RepeatablePermutation.of(list(20));
+		Assert.assertEquals(Arrays.asList(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1), rp.get(12, 1));
+	}
+
+	@Test
+	public void size() {
+		// パスカルの三角形のキャッシュと乗算の計算が一致すること
+		for(int n=0; n <= 70; n++){
+			BigInteger c = BigInteger.ONE;
+			for(int r=0; r <= n; r++){
+				Assert.assertEquals(c, Ranks.binomialExact(n, r));
+				if (c.bitLength() < 64) Assert.assertEquals(c.longValue(), Ranks.binomial(n, r));
+				c = c.multiply(BigInteger.valueOf(n - r)).divide(BigInteger.valueOf(r + 1));
+			}
+		}
+		Assert.assertEquals(155117520L, Combinations.of(list(30)).size(15));
+		Assert.assertEquals(Ranks.factorialExact(100).divide(Ranks.factorialExact(50).pow(2)), Combinations.of(list(100)).sizeExact(50));
+		Assert.assertEquals(670442572800L, Permutation.of(list(20)).size(10));
+		Assert.assertEquals(Ranks.factorialExact(30), Permutation.of(list(30)).sizeExact(30));
+		Assert.assertEquals(Combinations.of(list(40)).size(20), Homogeneous.of(list(21)).size(20));
+		@SuppressWarnings("unchecked")
+		Cartesian<Integer> cp = Cartesian.of(list(70000), list(70000));
+		Assert.assertEquals(BigInteger.valueOf(70000L * 70000L), cp.sizeExact());
+		Assert.assertEquals(Collections.nCopies(2, 69999), cp.get(70000L * 70000L - 1));
+	}
+
+	@Test
+	public void iterableCount() {
+		// 総数を求めずに終了しても件数が size と一致すること
+		for(int n=1; n <= 6; n++){
+			for(int r=0; r <= n + 1; r++){
+				Assert.assertEquals(Combinations.of(list(n)).size(r), count(Combinations.of(list(n)).iterable(r)));
+				Assert.assertEquals(Permutation.of(list(n)).size(r), count(Permutation.of(list(n)).iterable(r)));
+				Assert.assertEquals(Homogeneous.of(list(n)).size(r), count(Homogeneous.of(list(n)).iterable(r)));
+			}
+		}
+		@SuppressWarnings("unchecked")
+		Cartesian<Integer> cp = Cartesian.of(list(2), list(0), list(3));
+		Assert.assertEquals(0, count(cp.iterable()));
+		Assert.assertEquals(0, cp.product().size());
+	}
+	private static long count(Iterable<?> iterable) {
+		long count = 0;
+		Iterator<?> it = iterable.iterator();
+		while(it.hasNext()){
+			// hasNext を重ねて呼んでも進まないこと
+			Assert.assertTrue(it.hasNext());
+			it.next();
+			count++;
+		}
+		try{
+			it.next();
+			Assert.fail();
+		}catch(NoSuchElementException e){
+		}
+		return count;
+	}
+
+	@Test
+	public void iterableBeyondLong() {
+		// 総数が long を超えても先頭から列挙できること
+		Iterator<List<Integer>> p = Permutation.of(list(30)).iterator(30);
+		Assert.assertEquals(list(30), p.next());
+		List<Integer> second = list(30);
+		Collections.swap(second, 28, 29);
+		Assert.assertEquals(second, p.next());
+		Assert.assertEquals(list(50), Combinations.of(list(100)).iterable(50).iterator().next());
+		Assert.assertEquals(Collections.nCopies(50, 0), Homogeneous.of(list(100)).iterable(50).iterator().next());
+		@SuppressWarnings("unchecked")
+		Cartesian<Integer> cp = Cartesian.of(Collections.nCopies(70, list(2)).toArray(new List[0]));
+		Assert.assertEquals(Collections.nCopies(70, 0), cp.iterable().iterator().next());
+		// 抑制付きの最初の一致
+		List<Integer> first = list(27);
+		first.addAll(Arrays.asList(28, 29, 27));
+		Assert.assertEquals(first, Permutation.of(list(30)).iterable(30, l->l.get(29)==27).iterator().next());
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void sizeOverflow() {
+		Combinations.of(list(100)).size(50);
+	}
+}
@@ -0,0 +1,117 @@
+package org.yipuran.util.pch;
+
+import static org.yipuran.util.pch.Lists.list;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpliteratorTest {
+	private static <T> List<List<T>> collect(Spliterator<List<T>> s) {
+		List<List<T>> result = new ArrayList<>();
+		s.forEachRemaining(result::add);
+		return result;
+	}
+	/** 任意の位置で分割して、各範囲を tryAdvance、forEachRemaining で生成しても順序が同じであること */
+	private static <T> void assertSplit(List<List<T>> expected, IntFunction<Spliterator<List<T>>> factory) {
+		for(int at=0; at <= expected.size(); at++){
+			Spliterator<List<T>> s = factory.apply(0);
+			List<List<T>> result = new ArrayList<>();
+			for(int i=0; i < at && s.tryAdvance(result::add); i++);
+			Spliterator<List<T>> prefix = s.trySplit();
+			if (prefix != null) prefix.forEachRemaining(result::add);
+			s.forEachRemaining(result::add);
+			Assert.assertEquals(expected, result);
+		}
+	}
+
+	@Test
+	public void combinations() {
+		for(int n=1; n <= 7; n++){
+			for(int r=1; r <= n; r++){
+				Combinations<Integer> c = Combinations.of(list(n));
+				List<List<Integer>> expected = c.compute(r);
+				int len = r;
+				Assert.assertEquals(expected, collect(c.spliterator(r)));
+				Assert.assertEquals(expected.size(), c.spliterator(r).estimateSize());
+				Assert.assertEquals(expected, c.parallelStream(r).collect(Collectors.toList()));
+				assertSplit(expected, i->c.spliterator(len));
+			}
+		}
+	}
+
+	@Test
+	public void permutation() {
+		for(int n=1; n <= 6; n++){
+			for(int r=1; r <= n; r++){
+				Permutation<Integer> p = Permutation.of(list(n));
+				List<List<Integer>> expected = p.compute(r);
+				int len = r;
+				Assert.assertEquals(expected, collect(p.spliterator(r)));
+				Assert.assertEquals(expected, p.parallelStream(r).collect(Collectors.toList()));
+				assertSplit(expected, i->p.spliterator(len));
+			}
+		}
+	}
+
+	@Test
+	public void homogeneous() {
+		for(int n=1; n <= 5; n++){
+			for(int r=1; r <= 6; r++){
+				Homogeneous<Integer> h = Homogeneous.of(list(n));
+				List<List<Integer>> expected = h.compute(r);
+				int len = r;
+				Assert.assertEquals(h.size(r), expected.size());
+				Assert.assertEquals(expected, collect(h.spliterator(r)));
+				Assert.assertEquals(expected, h.parallelStream(r).collect(Collectors.toList()));
+				assertSplit(expected, i->h.spliterator(len));
+			}
+		}
+	}
+
+	@Test
+	public void repeatablePermutation() {
+		for(int n=1; n <= 5; n++){
+			for(int r=1; r <= n; r++){
+				RepeatablePermutation<Integer> rp = RepeatablePermutation.of(list(n));
+				List<List<Integer>> expected = rp.compute(r);
+				int len = r;
+				Assert.assertEquals(expected, collect(rp.spliterator(r)));
+				Assert.assertEquals(expected, rp.parallelStream(r).collect(Collectors.toList()));
+				assertSplit(expected, i->rp.spliterator(len));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void cartesian() {
+		Cartesian<String> c = Cartesian.of(Arrays.asList("a", "b"), Arrays.asList("x", "y", "z"), Arrays.asList("1", "2"));
+		List<List<String>> expected = c.product();
+		Assert.assertEquals(expected, collect(c.spliterator()));
+		Assert.assertEquals(expected, c.parallelStream().collect(Collectors.toList()));
+		assertSplit(expected, i->c.spliterator());
+		Assert.assertEquals(0, Cartesian.of(Arrays.asList("a"), new ArrayList<String>()).stream().count());
+	}
+
+	@Test
+	public void largeSpace() {
+		// 20C10 * 10! は int を超える。先頭と末尾の範囲だけを生成する。
+		Permutation<Integer> p = Permutation.of(list(20));
+		Spliterator<List<Integer>> s = p.spliterator(10);
+		long size = s.estimateSize();
+		Assert.assertEquals(184756L * 3628800L, size);
+		while(s.estimateSize() > 1){
+			s.trySplit();
+		}
+		List<List<Integer>> last = collect(s);
+		Assert.assertEquals(Arrays.asList(Arrays.asList(19, 18, 17, 16, 15, 14, 13, 12, 11, 10)), last);
+		Assert.assertEquals(10L * 9 * 8 * 7 * 6 * 5, Permutation.of(list(10)).parallelStream(6).filter(e->e.get(0) < 100).count());
+	}
+}
@@ -0,0 +1,73 @@
+package org.yipuran.util.pch;
+
+import static org.yipuran.util.pch.Lists.list;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.yipuran.util.test.Allocations;
+
+public class VisitorTest {
+
+	/** list(n) の要素は要素位置と同じなので、visit の要素位置も生成結果と一致する */
+	@Test
+	public void order() {
+		for(int n=1; n <= 5; n++){
+			for(int r=1; r <= n; r++){
+				List<List<Integer>> views = new ArrayList<>();
+				List<List<Integer>> idx = new ArrayList<>();
+				Combinations<Integer> c = Combinations.of(list(n));
+				c.visitView(r, v->views.add(new ArrayList<>(v)));
+				c.visit(r, a->idx.add(Arrays.stream(a).boxed().collect(Collectors.toList())));
+				Assert.assertEquals(c.compute(r), views);
+				Assert.assertEquals(c.compute(r), idx);
+				views.clear();
+				idx.clear();
+				Permutation<Integer> p = Permutation.of(list(n));
+				p.visitView(r, v->views.add(new ArrayList<>(v)));
+				p.visit(r, a->idx.add(Arrays.stream(a).boxed().collect(Collectors.toList())));
+				Assert.assertEquals(p.compute(r), views);
+				Assert.assertEquals(p.compute(r), idx);
+				views.clear();
+				Homogeneous<Integer> h = Homogeneous.of(list(n));
+				h.visitView(r, v->views.add(new ArrayList<>(v)));
+				Assert.assertEquals(h.compute(r), views);
+				views.clear();
+				RepeatablePermutation<Integer> rp = RepeatablePermutation.of(list(n));
+				rp.visitView(r, v->views.add(new ArrayList<>(v)));
+				Assert.assertEquals(rp.compute(r), views);
+			}
+		}
+		@SuppressWarnings("unchecked")
+		Cartesian<String> cp = Cartesian.of(Arrays.asList("a", "b"), Arrays.asList("x", "y", "z"));
+		List<List<String>> views = new ArrayList<>();
+		List<String> idx = new ArrayList<>();
+		cp.visitView(v->views.add(new ArrayList<>(v)));
+		cp.visit(a->idx.add(a[0] + "" + a[1]));
+		Assert.assertEquals(cp.product(), views);
+		Assert.assertEquals(Arrays.asList("00", "01", "02", "10", "11", "12"), idx);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void readOnly() {
+		Combinations.of(list(3)).visitView(2, v->v.set(0, 9));
+	}
+
+	@Test
+	public void allocation() {
+		Permutation<Integer> p = Permutation.of(list(10));
+		long[] sum = new long[1];
+		// 初回の呼び出しでクラスをロードしておく
+		p.visitView(5, v->sum[0] += v.get(0));
+		long allocated = Allocations.measure(()->{
+			p.visitView(5, v->sum[0] += v.get(0));
+			p.visit(5, a->sum[0] += a[0]);
+		});
+		// 10P5 = 30240 件、生成結果ごとに List を生成すると 1M バイトを超える。
+		Assert.assertTrue("allocated " + allocated, allocated < 64 * 1024);
+	}
+}
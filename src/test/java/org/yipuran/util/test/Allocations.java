@@ -0,0 +1,32 @@
+package org.yipuran.util.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Assume;
+
+/**
+ * テスト用のメモリ確保量計測.
+ * <PRE>
+ * スレッド毎のメモリ確保量を計測できない JVM では、Assume でテストをスキップする。
+ * </PRE>
+ */
+public final class Allocations{
+	private Allocations(){}
+	/**
+	 * 現在のスレッドで処理が確保したバイト数.
+	 * @param task 計測する処理
+	 * @return バイト数
+	 */
+	public static long measure(Runnable task){
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue("thread allocated memory is not supported"
+			, mx instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)mx).isThreadAllocatedMemorySupported()
+			&& ((com.sun.management.ThreadMXBean)mx).isThreadAllocatedMemoryEnabled());
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)mx;
+		long tid = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(tid);
+		task.run();
+		return bean.getThreadAllocatedBytes(tid) - before;
+	}
+}